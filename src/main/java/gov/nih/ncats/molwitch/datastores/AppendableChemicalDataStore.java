@@ -0,0 +1,555 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import gov.nih.ncats.common.iter.CloseableIterator;
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.io.ChemFormat;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * A {@link ChemicalDataStore} backed by an uncompressed SD file that new
+ * records can be appended to while other threads keep reading.
+ *
+ * <p>
+ * Appended bytes are written to the end of the file first and only then are the new record
+ * offsets published, atomically, to readers, so a reader never sees a partially written record.
+ * Since each append only writes the new records, the cost of appending
+ * does not depend on how large the file already is.
+ * </p>
+ * <p>
+ * Appends are not durable until {@link #commit()} is called.  Commits are grouped:
+ * if several threads commit at the same time they share a single fsync.
+ * Publishing appended records to readers is atomic but the on disk sidecar is not kept in step:
+ * the record offsets are saved to the same sidecar index used by {@link ChemicalDataStore#forIndexedFile(File)}
+ * only when this store is closed, not on every commit.  If the process dies before then, the next open only has to
+ * parse the records appended since the sidecar was last written, and a record that was only partly
+ * written is truncated, see {@link #open(File)}.  Writing the sidecar only checksums
+ * a fixed number of sampled blocks of the file so closing doesn't get slower as the file grows.
+ * </p>
+ * <p>
+ * An open store holds an exclusive {@link FileChannel#tryLock() lock} on the file
+ * so that only one store, in this or any other process, can append to it at a time.
+ * The lock is released when the store is closed.
+ * </p>
+ *
+ * Example usage:
+ * <pre>
+ * {@code
+ * try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(sdFile)){
+ *     for(Chemical c : newCompounds){
+ *         store.append(c);
+ *     }
+ *     store.commit();
+ * }
+ * }
+ * </pre>
+ *
+ * This class is threadsafe.
+ */
+public final class AppendableChemicalDataStore implements ChemicalDataStore {
+
+    private static final byte[] DELIMITER = "$$$$\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final File file;
+    private final File indexFile;
+    private final FileChannel channel;
+    /**
+     * guarded by lock.
+     */
+    private final OffsetTable boundaries;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Serializes appending threads.
+     */
+    private final Object appendLock = new Object();
+    /**
+     * Serializes fsyncs.
+     */
+    private final Object syncLock = new Object();
+
+    private volatile long writtenPosition;
+    /**
+     * guarded by syncLock.
+     */
+    private long syncedPosition;
+    private volatile boolean closed;
+
+    /**
+     * Open the given SD file for reading and appending, creating
+     * an empty file if it doesn't exist.  If the file ends with a record that is missing
+     * its {@code $$$$} delimiter, it is assumed to be a partial record left by an append
+     * that was interrupted, so it is truncated back to the end of the last complete record.
+     * Any whitespace after the last record is also removed.
+     * This is the same as {@link #open(File, boolean) open(sdFile, false)}.
+     *
+     * @param sdFile the uncompressed SD file; can not be null.
+     * @return a new AppendableChemicalDataStore which must be closed when done.
+     * @throws IOException if there is a problem reading the file, the file is compressed
+     * or the file is already open for appending by another store.
+     */
+    public static AppendableChemicalDataStore open(File sdFile) throws IOException{
+        return open(sdFile, false);
+    }
+
+    /**
+     * Open the given SD file for reading and appending, creating
+     * an empty file if it doesn't exist.
+     *
+     * @param sdFile the uncompressed SD file; can not be null.
+     * @param terminateLastRecord what to do if the file ends with a record that is missing its
+     *                            {@code $$$$} delimiter: if {@code true}, the record is kept
+     *                            and a delimiter is added, which is what files written by other tools
+     *                            that leave off the last delimiter need; if {@code false}, the record is treated
+     *                            as a partial record from an interrupted append and is truncated.
+     * @return a new AppendableChemicalDataStore which must be closed when done.
+     * @throws IOException if there is a problem reading the file, the file is compressed
+     * or the file is already open for appending by another store.
+     */
+    public static AppendableChemicalDataStore open(File sdFile, boolean terminateLastRecord) throws IOException{
+        return new AppendableChemicalDataStore(Objects.requireNonNull(sdFile), terminateLastRecord);
+    }
+
+    private AppendableChemicalDataStore(File file, boolean terminateLastRecord) throws IOException{
+        this.file = file;
+        this.indexFile = RecordIndexFile.sidecarFor(file);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lockFile();
+            repairLastRecord(terminateLastRecord);
+            //reuse the sidecar loading so only new data is parsed
+            //but don't map the file since a live mapping would prevent truncating it on some platforms
+            OffsetTable parsed = FileChemicalDataStore.readRecordBoundaries(file, indexFile);
+            if (parsed.size() == 0) {
+                parsed.add(0);
+            }
+            long count = parsed.size();
+            if (count > 1 && isBlank(parsed.get(count - 2), parsed.last())) {
+                //the parser turns trailing whitespace into a last "record"
+                parsed = copyOf(parsed, count - 1);
+            }
+            boundaries = parsed;
+            long end = boundaries.last();
+            //drop any trailing whitespace after the last record
+            if (channel.size() > end) {
+                channel.truncate(end);
+            }
+            writtenPosition = end;
+            syncedPosition = end;
+        }catch(IOException | RuntimeException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void lockFile() throws IOException{
+        FileLock fileLock;
+        try {
+            fileLock = channel.tryLock();
+        }catch(OverlappingFileLockException e){
+            //already locked by this JVM
+            fileLock = null;
+        }
+        if(fileLock ==null){
+            throw new IOException("file is already open for appending: " + file.getAbsolutePath());
+        }
+    }
+
+    private boolean isBlank(long from, long to) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(4096, to - from));
+        for(long position = from; position < to; position += buffer.capacity()){
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            readFully(buffer, position);
+            for(int i=0; i< buffer.limit(); i++){
+                if(!Character.isWhitespace(buffer.get(i))){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static OffsetTable copyOf(OffsetTable table, long size){
+        OffsetTable copy = new OffsetTable((int) Math.min(Integer.MAX_VALUE, size));
+        for(long i=0; i< size; i++){
+            copy.add(table.get(i));
+        }
+        return copy;
+    }
+
+    private void repairLastRecord(boolean terminate) throws IOException{
+        long size = channel.size();
+        if(size ==0){
+            return;
+        }
+        int sampleSize = (int) Math.min(size, 4);
+        ByteBuffer first = ByteBuffer.allocate(sampleSize);
+        readFully(first, 0);
+        //appending to or truncating the compressed bytes would corrupt the file
+        if(CompressedFiles.isCompressed(first.array(), sampleSize)){
+            throw new IOException("compressed files can not be appended to: " + file.getAbsolutePath());
+        }
+        //look at the last line of the file ignoring any amount of trailing whitespace
+        long contentEnd = lastIndexOf(size, b-> !Character.isWhitespace(b)) +1;
+        if(contentEnd ==0){
+            return;
+        }
+        long lastLineStart = lastIndexOf(contentEnd, b-> b == '\n') +1;
+        if(contentEnd - lastLineStart >= 4){
+            ByteBuffer lastLine = ByteBuffer.allocate(4);
+            readFully(lastLine, lastLineStart);
+            if(new String(lastLine.array(), StandardCharsets.US_ASCII).equals("$$$$")){
+                return;
+            }
+        }
+        if(!terminate){
+            //a torn append would turn into a garbage record if we terminated it
+            channel.truncate(lastDelimiterEnd(contentEnd));
+            return;
+        }
+        ByteBuffer lastByte = ByteBuffer.allocate(1);
+        readFully(lastByte, size -1);
+        byte[] terminator = lastByte.get(0) == '\n' ? DELIMITER : ("\n" + "$$$$\n").getBytes(StandardCharsets.US_ASCII);
+        writeFully(ByteBuffer.wrap(terminator), size);
+    }
+
+    /**
+     * Scan backwards for the last line that starts with {@code $$$$}.
+     * @param end the offset (exclusive) to start scanning backwards from;
+     *            the line ending at this offset must not be a delimiter line.
+     * @return the offset just past the newline that ends the last delimiter line
+     * or 0 if there isn't one.
+     * @throws IOException if there is a problem reading the file.
+     */
+    private long lastDelimiterEnd(long end) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(4096, end)));
+        //number of consecutive $ at the start of the line after the current byte
+        int dollars =0;
+        long nextNewline = -1;
+        for(long to = end; to >0; to -= buffer.limit()){
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to));
+            long from = to - buffer.limit();
+            readFully(buffer, from);
+            for(int i= buffer.limit() -1; i>=0; i--){
+                byte b = buffer.get(i);
+                if(b == '$'){
+                    dollars++;
+                    continue;
+                }
+                if(b == '\n'){
+                    if(dollars >= 4){
+                        return nextNewline +1;
+                    }
+                    nextNewline = from + i;
+                }
+                dollars =0;
+            }
+        }
+        return dollars >= 4 ? nextNewline +1 : 0;
+    }
+
+    /**
+     * Scan backwards for the last byte before the given offset that matches the given predicate.
+     * @param end the offset (exclusive) to start scanning backwards from.
+     * @param predicate the test for each byte.
+     * @return the offset of the matching byte or -1 if no byte matches.
+     * @throws IOException if there is a problem reading the file.
+     */
+    private long lastIndexOf(long end, IntPredicate predicate) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(4096, end)));
+        for(long to = end; to >0; to -= buffer.limit()){
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to));
+            long from = to - buffer.limit();
+            readFully(buffer, from);
+            for(int i= buffer.limit() -1; i>=0; i--){
+                if(predicate.test(buffer.get(i))){
+                    return from + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Append the given raw record.  A {@code $$$$} delimiter line is added if the record
+     * doesn't already end with one.
+     * @param rawRecord the record text; can not be null and must not contain more than one record.
+     * @return the offset of the new record.
+     * @throws IOException if there is a problem writing.
+     * @throws IllegalArgumentException if the text contains more than one record.
+     */
+    public long append(String rawRecord) throws IOException{
+        return appendAll(Collections.singletonList(rawRecord));
+    }
+
+    /**
+     * Append the given Chemical written in the default SD format.
+     * @param chemical the Chemical to write; can not be null.
+     * @return the offset of the new record.
+     * @throws IOException if there is a problem writing.
+     */
+    public long append(Chemical chemical) throws IOException{
+        return append(chemical.toSd());
+    }
+
+    /**
+     * Append the given Chemical written in the given SD format.
+     * @param chemical the Chemical to write; can not be null.
+     * @param spec the SD format specification; can not be null.
+     * @return the offset of the new record.
+     * @throws IOException if there is a problem writing.
+     */
+    public long append(Chemical chemical, ChemFormat.SdfFormatSpecification spec) throws IOException{
+        return append(chemical.toSd(spec));
+    }
+
+    /**
+     * Append all the given raw records with a single write.
+     * Records are written UTF-8 encoded.
+     * @param rawRecords the record texts; can not be null and each must be a single record.
+     * @return the offset of the first new record.
+     * @throws IOException if there is a problem writing.
+     * @throws IllegalArgumentException if any text contains more than one record.
+     */
+    public long appendAll(Collection<String> rawRecords) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long[] lengths = new long[rawRecords.size()];
+        int i=0;
+        for(String raw : rawRecords){
+            byte[] normalized = normalize(raw).getBytes(StandardCharsets.UTF_8);
+            bytes.write(normalized, 0, normalized.length);
+            lengths[i++] = normalized.length;
+        }
+        synchronized (appendLock){
+            checkNotClosed();
+            long start = writtenPosition;
+            try {
+                writeFully(ByteBuffer.wrap(bytes.toByteArray()), start);
+            }catch(IOException | RuntimeException e){
+                //don't leave a partial record that a later shorter append wouldn't overwrite
+                try {
+                    channel.truncate(start);
+                }catch(IOException suppressed){
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            long firstOffset;
+            lock.writeLock().lock();
+            try{
+                firstOffset = boundaries.size() -1;
+                long boundary = start;
+                for(long length : lengths){
+                    boundary += length;
+                    boundaries.add(boundary);
+                }
+            }finally{
+                lock.writeLock().unlock();
+            }
+            writtenPosition = start + bytes.size();
+            return firstOffset;
+        }
+    }
+
+    private static String normalize(String raw){
+        String record = raw.endsWith("\n") ? raw : raw + "\n";
+        int lineStart =0;
+        boolean terminated = false;
+        while(lineStart < record.length()){
+            int lineEnd = record.indexOf('\n', lineStart) +1;
+            if(record.startsWith("$$$$", lineStart)){
+                if(lineEnd != record.length()){
+                    throw new IllegalArgumentException("raw record must contain only one record");
+                }
+                terminated = true;
+            }
+            lineStart = lineEnd;
+        }
+        return terminated ? record : record + "$$$$\n";
+    }
+
+    /**
+     * Force everything appended so far to disk.  If another thread is already
+     * syncing, this waits for it and only syncs again if there are appends that sync didn't cover,
+     * so concurrent committers share fsyncs.
+     * @throws IOException if there is a problem syncing.
+     */
+    public void commit() throws IOException{
+        long target = writtenPosition;
+        synchronized (syncLock){
+            if(syncedPosition >= target){
+                return;
+            }
+            long position = writtenPosition;
+            channel.force(false);
+            syncedPosition = position;
+        }
+    }
+
+    @Override
+    public long getSize() {
+        lock.readLock().lock();
+        try{
+            return boundaries.size() -1;
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getRaw(long offset) {
+        long begin, end;
+        lock.readLock().lock();
+        try{
+            if(offset <0 || offset >= boundaries.size() -1){
+                throw new IndexOutOfBoundsException("offset " + offset + " size " + (boundaries.size() -1));
+            }
+            begin = boundaries.get(offset);
+            end = boundaries.get(offset +1);
+        }finally{
+            lock.readLock().unlock();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - begin));
+        try {
+            readFully(buffer, begin);
+            return new String(buffer.array(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public boolean hasEfficientRandomAccess() {
+        return true;
+    }
+
+    @Override
+    public Chemical get(long offset) {
+        String raw = getRaw(offset);
+        if (raw != null) {
+            try {
+                return Chemical.parse(raw);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Iterate over the records that were in this store when this method was called.
+     * @return a new CloseableIterator.
+     */
+    @Override
+    public CloseableIterator<String> getRawIterator() {
+        long size = getSize();
+        return new CloseableIterator<String>() {
+            private long next =0;
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public String next() {
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                return getRaw(next++);
+            }
+
+            @Override
+            public void close() {
+                next = size;
+            }
+        };
+    }
+
+    @Override
+    public CloseableIterator<Chemical> getIterator() {
+        return CloseableIterator.map(getRawIterator(), s-> {
+            try{
+                return Chemical.parse(s);
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void checkNotClosed(){
+        if(closed){
+            throw new IllegalStateException("already closed");
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException{
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer, position + buffer.position()) < 0){
+                throw new EOFException("unexpected end of file " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException{
+        while(buffer.hasRemaining()){
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Commits any appended records, saves the record offsets to the sidecar index
+     * and closes the file.  This is the only time the sidecar is written.
+     * @throws IOException if there is a problem writing.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock){
+            if(closed){
+                return;
+            }
+            closed = true;
+        }
+        try {
+            commit();
+            lock.readLock().lock();
+            try {
+                RecordIndexFile.create(file, boundaries, boundaries.size()).write(indexFile);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }finally {
+            channel.close();
+        }
+    }
+}
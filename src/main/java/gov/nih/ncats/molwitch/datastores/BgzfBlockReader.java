@@ -0,0 +1,144 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads individual BGZF blocks written by {@link BgzfBlockWriter}
+ * (or any other BGZF writer such as bgzip) by their compressed offset.
+ *
+ * <p>
+ * BgzfBlockReader objects are threadsafe: all reads use positional
+ * {@link FileChannel} reads and a new {@link Inflater} per block.
+ * </p>
+ */
+final class BgzfBlockReader {
+
+    private final FileChannel channel;
+
+    BgzfBlockReader(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * A decompressed block.
+     */
+    static final class Block {
+        final long compressedOffset;
+        final int compressedSize;
+        final byte[] data;
+
+        Block(long compressedOffset, int compressedSize, byte[] data) {
+            this.compressedOffset = compressedOffset;
+            this.compressedSize = compressedSize;
+            this.data = data;
+        }
+
+        long nextBlockOffset() {
+            return compressedOffset + compressedSize;
+        }
+    }
+
+    /**
+     * Read and decompress the block that starts at the given compressed offset.
+     * @param compressedOffset the file offset of the start of the block.
+     * @return a new Block.
+     * @throws IOException if the data at that offset is not a valid BGZF block.
+     */
+    Block readBlock(long compressedOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(BgzfBlockWriter.HEADER_SIZE);
+        readFully(header, compressedOffset);
+        byte[] h = header.array();
+        if (h[0] != 0x1f || h[1] != (byte) 0x8b || (h[3] & 4) == 0
+                || h[12] != 'B' || h[13] != 'C') {
+            throw new IOException("not a BGZF block at offset " + compressedOffset);
+        }
+        int blockSize = ((h[16] & 0xff) | (h[17] & 0xff) << 8) + 1;
+        ByteBuffer block = ByteBuffer.allocate(blockSize - BgzfBlockWriter.HEADER_SIZE);
+        readFully(block, compressedOffset + BgzfBlockWriter.HEADER_SIZE);
+        byte[] b = block.array();
+        int compressedLength = b.length - BgzfBlockWriter.FOOTER_SIZE;
+        int uncompressedLength = (b[compressedLength + 4] & 0xff)
+                | (b[compressedLength + 5] & 0xff) << 8
+                | (b[compressedLength + 6] & 0xff) << 16
+                | (b[compressedLength + 7] & 0xff) << 24;
+        byte[] data = new byte[uncompressedLength];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(b, 0, compressedLength);
+            int inflated = 0;
+            while (inflated < uncompressedLength) {
+                int n = inflater.inflate(data, inflated, uncompressedLength - inflated);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("truncated BGZF block at offset " + compressedOffset);
+                }
+                inflated += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt BGZF block at offset " + compressedOffset, e);
+        } finally {
+            inflater.end();
+        }
+        return new Block(compressedOffset, blockSize, data);
+    }
+
+    /**
+     * Read the uncompressed bytes between the two virtual offsets.
+     * @param start the virtual offset to start from (inclusive).
+     * @param end the virtual offset to end at (exclusive).
+     * @param cached a previously read block that will be reused if it is the first block needed;
+     *               may be null.
+     * @param out the stream to write the uncompressed bytes to.
+     * @return the last block read which may be reused by the next call.
+     * @throws IOException if there is a problem reading the blocks.
+     */
+    Block read(long start, long end, Block cached, ByteArrayOutputStream out) throws IOException {
+        long endBlockOffset = end >>> 16;
+        int endOffsetInBlock = (int) (end & 0xFFFF);
+        long blockOffset = start >>> 16;
+        int offsetInBlock = (int) (start & 0xFFFF);
+        Block block = cached;
+        while (blockOffset < endBlockOffset || (blockOffset == endBlockOffset && offsetInBlock < endOffsetInBlock)) {
+            if (block == null || block.compressedOffset != blockOffset) {
+                block = readBlock(blockOffset);
+            }
+            int to = blockOffset == endBlockOffset ? endOffsetInBlock : block.data.length;
+            out.write(block.data, offsetInBlock, to - offsetInBlock);
+            blockOffset = block.nextBlockOffset();
+            offsetInBlock = 0;
+        }
+        return block;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new EOFException("unexpected end of BGZF file at offset " + position);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes data as a sequence of BGZF blocks: each block
+ * is a complete gzip member of at most 64KB whose header contains
+ * a {@code BC} extra field with the compressed size of the block,
+ * so the output is still a valid gzip file that can be read by any
+ * gzip tool but a reader can also jump straight to any block.
+ *
+ * <p>
+ * Positions in the uncompressed data are given as "virtual offsets":
+ * the compressed file offset of the block shifted left 16 bits
+ * OR'ed with the offset into the uncompressed block.
+ * Since virtual offsets only increase as more data is written they can
+ * be stored in an {@link OffsetTable}.
+ * </p>
+ *
+ * This class is NOT threadsafe.
+ */
+final class BgzfBlockWriter implements Closeable {
+    /**
+     * The maximum number of uncompressed bytes per block,
+     * leaving room so that even a stored (uncompressed) block fits in 64KB.
+     */
+    static final int MAX_BLOCK_DATA_SIZE = 0xff00;
+
+    static final int HEADER_SIZE = 18;
+    static final int FOOTER_SIZE = 8;
+    static final int MAX_BLOCK_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[MAX_BLOCK_DATA_SIZE];
+    private int bufferLength;
+    private final byte[] compressed = new byte[MAX_BLOCK_SIZE];
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final Deflater storer = new Deflater(Deflater.NO_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private long compressedOffset;
+
+    BgzfBlockWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Get the virtual offset of the next byte that will be written.
+     * @return the virtual offset.
+     */
+    long getVirtualOffset() {
+        return (compressedOffset << 16) | bufferLength;
+    }
+
+    /**
+     * Write a complete record.  If the record will fit
+     * in a single block but not the remaining space of the current block,
+     * then a new block is started so that reading the record back only needs
+     * to decompress one block.
+     *
+     * @param record the bytes to write.
+     * @param offset the offset into the array to start from.
+     * @param length the number of bytes to write.
+     * @return the virtual offset of the start of the record.
+     * @throws IOException if there is a problem writing.
+     */
+    long writeRecord(byte[] record, int offset, int length) throws IOException {
+        if (length <= MAX_BLOCK_DATA_SIZE && bufferLength + length > MAX_BLOCK_DATA_SIZE) {
+            flushBlock();
+        }
+        long start = getVirtualOffset();
+        int written = 0;
+        while (written < length) {
+            int len = Math.min(length - written, MAX_BLOCK_DATA_SIZE - bufferLength);
+            System.arraycopy(record, offset + written, buffer, bufferLength, len);
+            bufferLength += len;
+            written += len;
+            if (bufferLength == MAX_BLOCK_DATA_SIZE) {
+                flushBlock();
+            }
+        }
+        return start;
+    }
+
+    private void flushBlock() throws IOException {
+        if (bufferLength == 0) {
+            return;
+        }
+        writeBlock(buffer, bufferLength);
+        bufferLength = 0;
+    }
+
+    private void writeBlock(byte[] data, int length) throws IOException {
+        int compressedLength = deflate(deflater, data, length);
+        if (compressedLength < 0) {
+            //incompressible data store it as is which is guaranteed to fit
+            compressedLength = deflate(storer, data, length);
+        }
+        int blockSize = HEADER_SIZE + compressedLength + FOOTER_SIZE;
+        byte[] header = new byte[]{
+                0x1f, (byte) 0x8b, 8, 4, //magic, deflate, FEXTRA
+                0, 0, 0, 0,             //mtime
+                0, (byte) 0xff,         //extra flags, unknown OS
+                6, 0,                   //XLEN
+                'B', 'C', 2, 0,         //BGZF subfield
+                (byte) (blockSize - 1), (byte) ((blockSize - 1) >>> 8)
+        };
+        out.write(header);
+        out.write(compressed, 0, compressedLength);
+        crc.reset();
+        crc.update(data, 0, length);
+        writeIntLE((int) crc.getValue());
+        writeIntLE(length);
+        compressedOffset += blockSize;
+    }
+
+    private int deflate(Deflater d, byte[] data, int length) {
+        int maxCompressedLength = MAX_BLOCK_SIZE - HEADER_SIZE - FOOTER_SIZE;
+        d.reset();
+        d.setInput(data, 0, length);
+        d.finish();
+        int compressedLength = 0;
+        while (!d.finished()) {
+            int n = d.deflate(compressed, compressedLength, maxCompressedLength - compressedLength);
+            compressedLength += n;
+            if (compressedLength == maxCompressedLength && !d.finished()) {
+                return -1;
+            }
+        }
+        return compressedLength;
+    }
+
+    private void writeIntLE(int value) throws IOException {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    /**
+     * Flush any remaining data, write the standard empty BGZF end of file block
+     * and close the underlying stream.
+     * @throws IOException if there is a problem writing.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            //EOF marker is an empty block
+            writeBlock(new byte[0], 0);
+        } finally {
+            deflater.end();
+            storer.end();
+            out.close();
+        }
+    }
+}
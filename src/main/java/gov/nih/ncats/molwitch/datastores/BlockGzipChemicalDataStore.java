@@ -0,0 +1,199 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import gov.nih.ncats.common.iter.CloseableIterator;
+import gov.nih.ncats.molwitch.Chemical;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link ChemicalDataStore} backed by a block compressed (BGZF) SD file
+ * where each record is looked up by its virtual offset so random access
+ * only has to decompress the block(s) containing that record.
+ *
+ * @see BlockGzipConverter
+ */
+class BlockGzipChemicalDataStore implements ChemicalDataStore {
+
+    private final FileChannel channel;
+    private final BgzfBlockReader reader;
+    /**
+     * Record i spans virtualOffsets[i] (inclusive) to virtualOffsets[i+1] (exclusive).
+     */
+    private final OffsetTable virtualOffsets;
+
+    BlockGzipChemicalDataStore(File file) throws IOException{
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            reader = new BgzfBlockReader(channel);
+            File indexFile = BlockGzipConverter.getIndexFileFor(file);
+            RecordIndexFile index = RecordIndexFile.read(indexFile);
+            if (index != null && index.isValidFor(file, false)) {
+                virtualOffsets = index.getBoundaries();
+            } else {
+                virtualOffsets = scanVirtualOffsets();
+                try {
+                    RecordIndexFile.create(file, virtualOffsets, virtualOffsets.size()).write(indexFile);
+                } catch (IOException e) {
+                    //the sidecar is only an optimization (directory may be read only)
+                    //so failing to write it shouldn't prevent using the store
+                }
+            }
+        }catch(IOException | RuntimeException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Decompress every block to find the record boundaries.  This is only needed
+     * if the file wasn't written by {@link BlockGzipConverter} or has changed since.
+     */
+    private OffsetTable scanVirtualOffsets() throws IOException{
+        OffsetTable offsets = new OffsetTable();
+        offsets.add(0);
+        long fileLength = channel.size();
+        long blockOffset = 0;
+        long bytesSinceBoundary = 0;
+        long virtualOffset = 0;
+        //number of '$' seen at the start of the current line or -1 if not a delimiter
+        int dollarCount = 0;
+        while(blockOffset < fileLength){
+            BgzfBlockReader.Block block = reader.readBlock(blockOffset);
+            byte[] data = block.data;
+            for(int i=0; i< data.length; i++){
+                byte b = data[i];
+                bytesSinceBoundary++;
+                virtualOffset = i + 1 < data.length ? (blockOffset << 16) | (i + 1) : block.nextBlockOffset() << 16;
+                if(b == '\n'){
+                    if(dollarCount >= 4){
+                        offsets.add(virtualOffset);
+                        bytesSinceBoundary = 0;
+                    }
+                    dollarCount = 0;
+                }else if(dollarCount >= 0 && dollarCount < 4){
+                    dollarCount = b == '$' ? dollarCount + 1 : -1;
+                }
+            }
+            blockOffset = block.nextBlockOffset();
+        }
+        if(bytesSinceBoundary > 1){
+            //last record
+            offsets.add(virtualOffset);
+        }
+        return offsets;
+    }
+
+    @Override
+    public long getSize() {
+        return Math.max(0, virtualOffsets.size() -1);
+    }
+
+    @Override
+    public String getRaw(long offset) {
+        if(offset <0 || offset >= getSize()){
+            throw new IndexOutOfBoundsException("offset " + offset + " size " + getSize());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try {
+            reader.read(virtualOffsets.get(offset), virtualOffsets.get(offset + 1), null, out);
+            return new String(out.toByteArray());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public boolean hasEfficientRandomAccess() {
+        return true;
+    }
+
+    @Override
+    public Chemical get(long offset) {
+        String raw = getRaw(offset);
+        if (raw != null) {
+            try {
+                return Chemical.parse(raw);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public CloseableIterator<String> getRawIterator() {
+        return new CloseableIterator<String>() {
+            private long next = 0;
+            //consecutive records are usually in the same block
+            private BgzfBlockReader.Block lastBlock;
+            private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+
+            @Override
+            public boolean hasNext() {
+                return next < getSize();
+            }
+
+            @Override
+            public String next() {
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                out.reset();
+                try {
+                    lastBlock = reader.read(virtualOffsets.get(next), virtualOffsets.get(next + 1), lastBlock, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                next++;
+                return new String(out.toByteArray());
+            }
+
+            @Override
+            public void close() {
+                next = Long.MAX_VALUE;
+                lastBlock = null;
+            }
+        };
+    }
+
+    @Override
+    public CloseableIterator<Chemical> getIterator() {
+        return CloseableIterator.map(getRawIterator(), s-> {
+            try{
+                return Chemical.parse(s);
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import gov.nih.ncats.common.io.InputStreamSupplier;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Converts a plain or gzip compressed SD file into
+ * a block compressed (BGZF) file that can be opened with
+ * {@link ChemicalDataStore#forBlockGzipFile(File)}.
+ *
+ * <p>
+ * The output is a valid gzip file made of many small gzip members.
+ * Records that fit in a single block never straddle two blocks
+ * so random access to a record only has to decompress one block.
+ * The virtual offset of each record is written to a sidecar index file
+ * named {@code out.getName() + ".mwbgzi"}.
+ * </p>
+ *
+ * Example usage:
+ * <pre>
+ * {@code
+ * BlockGzipConverter.convert(new File("pubchem.sdf.gz"), new File("pubchem.sdf.bgz"));
+ *
+ * try(ChemicalDataStore store = ChemicalDataStore.forBlockGzipFile(new File("pubchem.sdf.bgz"))){
+ *     Chemical c = store.get(12345);
+ * }
+ * }
+ * </pre>
+ */
+public final class BlockGzipConverter {
+
+    static final String INDEX_SUFFIX = ".mwbgzi";
+
+    private BlockGzipConverter(){
+        //can not instantiate
+    }
+
+    /**
+     * Get the sidecar index file for the given block compressed file.
+     * @param blockGzipFile the block compressed file.
+     * @return a new File; will never be null.
+     */
+    public static File getIndexFileFor(File blockGzipFile){
+        return new File(blockGzipFile.getParentFile(), blockGzipFile.getName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Convert the given SD file, which may be gzip compressed, into a block compressed file
+     * and write its sidecar index.
+     * @param sdFile the file to convert; can not be null.
+     * @param out the block compressed file to write; can not be null and will be overwritten if it exists.
+     * @return the number of records written.
+     * @throws IOException if there is a problem reading or writing.
+     */
+    public static long convert(File sdFile, File out) throws IOException{
+        return convert(InputStreamSupplier.forFile(sdFile), out);
+    }
+
+    /**
+     * Convert the SD data from the given supplier into a block compressed file
+     * and write its sidecar index.
+     * @param sdData the data to convert; can not be null.
+     * @param out the block compressed file to write; can not be null and will be overwritten if it exists.
+     * @return the number of records written.
+     * @throws IOException if there is a problem reading or writing.
+     */
+    public static long convert(InputStreamSupplier sdData, File out) throws IOException{
+        Objects.requireNonNull(sdData);
+        Objects.requireNonNull(out);
+        OffsetTable virtualOffsets = new OffsetTable();
+        byte[] record = new byte[8192];
+        int recordLength = 0;
+        int lineStart = 0;
+        byte[] chunk = new byte[1 << 16];
+        try(InputStream in = sdData.get();
+            BgzfBlockWriter writer = new BgzfBlockWriter(new BufferedOutputStream(new FileOutputStream(out)))){
+            int n;
+            while((n = in.read(chunk)) > 0){
+                for(int i=0; i< n; i++){
+                    if(recordLength == record.length){
+                        record = Arrays.copyOf(record, record.length * 2);
+                    }
+                    byte b = chunk[i];
+                    record[recordLength++] = b;
+                    if(b == '\n'){
+                        if(isDelimiterLine(record, lineStart, recordLength)){
+                            virtualOffsets.add(writer.writeRecord(record, 0, recordLength));
+                            recordLength = 0;
+                        }
+                        lineStart = recordLength;
+                    }
+                }
+            }
+            if(recordLength > 1){
+                //last record
+                virtualOffsets.add(writer.writeRecord(record, 0, recordLength));
+            }
+            virtualOffsets.add(writer.getVirtualOffset());
+        }
+        RecordIndexFile.create(out, virtualOffsets, virtualOffsets.size()).write(getIndexFileFor(out));
+        return virtualOffsets.size() -1;
+    }
+
+    static boolean isDelimiterLine(byte[] data, int lineStart, int lineEnd){
+        return lineEnd - lineStart >= 4
+                && data[lineStart] == '$' && data[lineStart +1] == '$'
+                && data[lineStart +2] == '$' && data[lineStart +3] == '$';
+    }
+}
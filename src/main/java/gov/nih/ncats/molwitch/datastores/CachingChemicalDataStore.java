@@ -0,0 +1,346 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import gov.nih.ncats.common.iter.CloseableIterator;
+import gov.nih.ncats.molwitch.Chemical;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ChemicalDataStore} decorator that keeps the most recently
+ * used parsed {@link Chemical}s and raw record Strings in memory
+ * so repeated requests for the same records don't re-read and re-parse them.
+ * The iterators and streams are passed through to the wrapped store and do not use or fill the caches.
+ *
+ * <p>
+ * Since Chemical objects are mutable, by default {@link #get(long)} returns a
+ * {@link Chemical#copy()} of the cached Chemical so callers can't change what other callers see;
+ * copying is much cheaper than parsing.  If all callers treat the returned Chemicals as read only,
+ * use {@link CopyPolicy#SHARED} to return the cached instance itself.
+ * </p>
+ *
+ * Example usage:
+ * <pre>
+ * {@code
+ * ChemicalDataStore store = CachingChemicalDataStore.builder(ChemicalDataStore.forFile(sdFile))
+ *                                       .maxChemicals(10_000)
+ *                                       .maxRawCharacters(50_000_000)
+ *                                       .build();
+ * }
+ * </pre>
+ *
+ * This class is threadsafe if the wrapped store is.
+ */
+public final class CachingChemicalDataStore implements ChemicalDataStore {
+    /**
+     * Default maximum number of parsed Chemicals to cache.
+     */
+    public static final int DEFAULT_MAX_CHEMICALS = 1_000;
+    /**
+     * Default maximum total length of raw Strings to cache.
+     */
+    public static final long DEFAULT_MAX_RAW_CHARACTERS = 10_000_000L;
+
+    /**
+     * What {@link #get(long)} returns for cached Chemicals.
+     */
+    public enum CopyPolicy {
+        /**
+         * Return a new copy of the cached Chemical each time, the cached
+         * Chemical is never returned to callers.
+         */
+        COPY,
+        /**
+         * Return the cached Chemical itself to every caller;
+         * callers must not modify it.
+         */
+        SHARED
+    }
+
+    private final ChemicalDataStore delegate;
+    private final CopyPolicy copyPolicy;
+    private final WeightedLruCache<Chemical> chemicals;
+    private final WeightedLruCache<String> raws;
+
+    private CachingChemicalDataStore(Builder builder) {
+        this.delegate = builder.delegate;
+        this.copyPolicy = builder.copyPolicy;
+        this.chemicals = new WeightedLruCache<>(builder.maxChemicals, c -> 1L);
+        this.raws = new WeightedLruCache<>(builder.maxRawCharacters, String::length);
+    }
+
+    /**
+     * Create a new Builder to wrap the given store.
+     * @param delegate the store to wrap; can not be null.
+     * @return a new Builder; will never be null.
+     * @throws NullPointerException if delegate is null.
+     */
+    public static Builder builder(ChemicalDataStore delegate) {
+        return new Builder(delegate);
+    }
+
+    @Override
+    public long getSize() {
+        return delegate.getSize();
+    }
+
+    @Override
+    public String getRaw(long offset) {
+        String raw = raws.get(offset);
+        if (raw == null) {
+            raw = delegate.getRaw(offset);
+            if (raw != null) {
+                raws.put(offset, raw);
+            }
+        }
+        return raw;
+    }
+
+    @Override
+    public Chemical get(long offset) {
+        Chemical chemical = chemicals.get(offset);
+        if (chemical == null) {
+            chemical = delegate.get(offset);
+            if (chemical == null) {
+                return null;
+            }
+            chemicals.put(offset, chemical);
+        }
+        return copyPolicy == CopyPolicy.COPY ? chemical.copy() : chemical;
+    }
+
+    @Override
+    public CloseableIterator<String> getRawIterator() {
+        return delegate.getRawIterator();
+    }
+
+    @Override
+    public CloseableIterator<Chemical> getIterator() {
+        return delegate.getIterator();
+    }
+
+    @Override
+    public boolean hasEfficientRandomAccess() {
+        return delegate.hasEfficientRandomAccess();
+    }
+
+    @Override
+    public Set<String> getIndexedProperties() {
+        return delegate.getIndexedProperties();
+    }
+
+    @Override
+    public long[] findByProperty(String name, String value) {
+        return delegate.findByProperty(name, value);
+    }
+
+    @Override
+    public Spliterator<String> rawSpliterator() {
+        return delegate.rawSpliterator();
+    }
+
+    @Override
+    public Spliterator<Chemical> spliterator() {
+        return delegate.spliterator();
+    }
+
+    @Override
+    public Stream<String> rawStream() {
+        return delegate.rawStream();
+    }
+
+    @Override
+    public Stream<Chemical> stream() {
+        return delegate.stream();
+    }
+
+    /**
+     * Remove everything from both caches.  The statistics are not reset.
+     */
+    public void clearCache() {
+        chemicals.clear();
+        raws.clear();
+    }
+
+    /**
+     * Get a snapshot of the statistics of the parsed Chemical cache.
+     * The weight of this cache is the number of Chemicals.
+     * @return a new Stats object; will never be null.
+     */
+    public Stats getChemicalStats() {
+        return chemicals.getStats();
+    }
+
+    /**
+     * Get a snapshot of the statistics of the raw String cache.
+     * The weight of this cache is the total number of characters.
+     * @return a new Stats object; will never be null.
+     */
+    public Stats getRawStats() {
+        return raws.getStats();
+    }
+
+    /**
+     * Clears the caches and closes the wrapped store.
+     * @throws IOException if there is a problem closing the wrapped store.
+     */
+    @Override
+    public void close() throws IOException {
+        clearCache();
+        delegate.close();
+    }
+
+    /**
+     * Cache statistics.
+     */
+    public static final class Stats {
+        private final long hitCount, missCount, evictionCount;
+        private final int size;
+        private final long weight;
+
+        Stats(long hitCount, long missCount, long evictionCount, int size, long weight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        /**
+         * Number of lookups that were found in the cache.
+         * @return the number of hits.
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Number of lookups that had to go to the wrapped store.
+         * @return the number of misses.
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Number of entries removed to keep the cache under its maximum weight.
+         * @return the number of evictions.
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Number of entries currently cached.
+         * @return the number of entries.
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * The current total weight of the cached entries.
+         * @return the weight.
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        /**
+         * The ratio of hits to all lookups.
+         * @return a number between 0 and 1 or {@code NaN} if there have been no lookups.
+         */
+        public double getHitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? Double.NaN : hitCount / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats [hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+                    + ", size=" + size + ", weight=" + weight + "]";
+        }
+    }
+
+    /**
+     * Builder for a {@link CachingChemicalDataStore}.
+     */
+    public static final class Builder {
+        private final ChemicalDataStore delegate;
+        private int maxChemicals = DEFAULT_MAX_CHEMICALS;
+        private long maxRawCharacters = DEFAULT_MAX_RAW_CHARACTERS;
+        private CopyPolicy copyPolicy = CopyPolicy.COPY;
+
+        private Builder(ChemicalDataStore delegate) {
+            this.delegate = Objects.requireNonNull(delegate);
+        }
+
+        /**
+         * Set the maximum number of parsed Chemicals to cache.
+         * @param maxChemicals the maximum number; must be &ge; 0 where 0 disables the Chemical cache.
+         * @return this.
+         * @throws IllegalArgumentException if maxChemicals &lt; 0.
+         */
+        public Builder maxChemicals(int maxChemicals) {
+            if (maxChemicals < 0) {
+                throw new IllegalArgumentException("maxChemicals must be >= 0");
+            }
+            this.maxChemicals = maxChemicals;
+            return this;
+        }
+
+        /**
+         * Set the maximum total number of characters of raw record Strings to cache.
+         * @param maxRawCharacters the maximum number of characters; must be &ge; 0 where 0 disables the raw cache.
+         * @return this.
+         * @throws IllegalArgumentException if maxRawCharacters &lt; 0.
+         */
+        public Builder maxRawCharacters(long maxRawCharacters) {
+            if (maxRawCharacters < 0) {
+                throw new IllegalArgumentException("maxRawCharacters must be >= 0");
+            }
+            this.maxRawCharacters = maxRawCharacters;
+            return this;
+        }
+
+        /**
+         * Set what {@link CachingChemicalDataStore#get(long)} returns; defaults to {@link CopyPolicy#COPY}.
+         * @param copyPolicy the policy; can not be null.
+         * @return this.
+         * @throws NullPointerException if copyPolicy is null.
+         */
+        public Builder copyPolicy(CopyPolicy copyPolicy) {
+            this.copyPolicy = Objects.requireNonNull(copyPolicy);
+            return this;
+        }
+
+        /**
+         * Create a new {@link CachingChemicalDataStore}.
+         * @return a new CachingChemicalDataStore; will never be null.
+         */
+        public CachingChemicalDataStore build() {
+            return new CachingChemicalDataStore(this);
+        }
+    }
+}
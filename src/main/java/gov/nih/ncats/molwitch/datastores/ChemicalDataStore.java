@@ -25,7 +25,16 @@ import gov.nih.ncats.molwitch.Chemical;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface ChemicalDataStore extends Closeable {
 
@@ -39,6 +48,126 @@ public interface ChemicalDataStore extends Closeable {
 
     CloseableIterator<Chemical> getIterator();
 
+    /**
+     * Get the names of the SD data items whose values are indexed
+     * so {@link #findByProperty(String, String)} doesn't have to scan every record.
+     *
+     * @return an unmodifiable Set of names; will never be null but may be empty.
+     *
+     * <strong>Implementation Note</strong>: by default, this returns an empty set.
+     */
+    default Set<String> getIndexedProperties(){
+        return Collections.emptySet();
+    }
+
+    /**
+     * Find the offsets of all the records that have an SD data item with the given name and value,
+     * for example a registry number or CAS number.
+     *
+     * @param name the name of the data item; can not be null.
+     * @param value the value to look for which must equal the data item value with leading and trailing whitespace removed;
+     *              multi-line values are joined with {@code '\n'}.  Can not be null.
+     * @return a new sorted array of record offsets; will never be null but may be empty.
+     * @throws NullPointerException if any parameter is null.
+     *
+     * <strong>Implementation Note</strong>: by default, this scans every raw record in order
+     * without parsing the structures.  Implementations that index the given name
+     * (see {@link #getIndexedProperties()}) should override this to do a lookup instead.
+     */
+    default long[] findByProperty(String name, String value){
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(value);
+        LongStream.Builder offsets = LongStream.builder();
+        try(CloseableIterator<String> iter = getRawIterator()){
+            long offset =0;
+            while(iter.hasNext()){
+                String raw = iter.next();
+                if(raw !=null && PropertyIndex.hasValue(raw, name, value)){
+                    offsets.add(offset);
+                }
+                offset++;
+            }
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return offsets.build().toArray();
+    }
+
+    /**
+     * Are {@link #get(long)} and {@link #getRaw(long)} cheap enough to call for every record
+     * in any order, so that records can be processed in parallel by handing out ranges of offsets.
+     * Stores where random access has to re-read the data from the beginning, such as compressed files,
+     * should return {@code false} so callers read the records sequentially with {@link #getRawIterator()} instead.
+     *
+     * @return {@code true} if random access is efficient; {@code false} otherwise.
+     *
+     * <strong>Implementation Note</strong>: by default, this returns {@code false}.
+     */
+    default boolean hasEfficientRandomAccess(){
+        return false;
+    }
+
+    /**
+     * Create a {@link Spliterator} over the raw records that splits by record offset
+     * so that the records can be processed in parallel.
+     *
+     * @return a new Spliterator; will never be null.
+     *
+     * <strong>Implementation Note</strong>: by default, this returns a {@link Spliterator#SIZED}
+     * and {@link Spliterator#SUBSIZED} Spliterator that calls {@link #getRaw(long)} for each record,
+     * implementations where random access is expensive should override this method.
+     */
+    default Spliterator<String> rawSpliterator(){
+        return new RecordSpliterator<>(this::getRaw, 0, getSize());
+    }
+
+    /**
+     * Create a {@link Spliterator} over the records that splits by record offset
+     * so that the records can be parsed and processed in parallel.
+     *
+     * @return a new Spliterator; will never be null.
+     *
+     * <strong>Implementation Note</strong>: by default, this returns a {@link Spliterator#SIZED}
+     * and {@link Spliterator#SUBSIZED} Spliterator that calls {@link #get(long)} for each record,
+     * implementations where random access is expensive should override this method.
+     */
+    default Spliterator<Chemical> spliterator(){
+        return new RecordSpliterator<>(this::get, 0, getSize());
+    }
+
+    /**
+     * Create a sequential Stream of the raw records in order.  Call {@link Stream#parallel()}
+     * on the returned stream to process the records on multiple threads.
+     * The returned Stream should be closed when done.
+     *
+     * @return a new Stream; will never be null.
+     *
+     * <strong>Implementation Note</strong>: by default, this creates a stream from {@link #rawSpliterator()}.
+     */
+    default Stream<String> rawStream(){
+        return StreamSupport.stream(rawSpliterator(), false);
+    }
+
+    /**
+     * Create a sequential Stream of the records in order.  Call {@link Stream#parallel()}
+     * on the returned stream to parse and process the records on multiple threads:
+     * <pre>
+     * {@code
+     * try(Stream<Chemical> s = store.stream()){
+     *     long count = s.parallel().filter(c -> c.getAtomCount() > 50).count();
+     * }
+     * }
+     * </pre>
+     * The returned Stream should be closed when done.
+     *
+     * @return a new Stream; will never be null.
+     *
+     * <strong>Implementation Note</strong>: by default, this creates a stream from {@link #spliterator()}.
+     */
+    default Stream<Chemical> stream(){
+        return StreamSupport.stream(spliterator(), false);
+    }
+
 
     static ChemicalDataStore forFile(File f) throws IOException{
         return forFile(InputStreamSupplier.forFile(f));
@@ -63,4 +192,69 @@ public interface ChemicalDataStore extends Closeable {
     static ChemicalDataStore forFile(InputStreamSupplier inputStreamSupplier, int estimatedNumberOfRecords) throws IOException{
         return new FileChemicalDataStore(inputStreamSupplier, estimatedNumberOfRecords);
     }
+
+    /**
+     * Create a new ChemicalDataStore for the given file that saves the record offsets
+     * into a sidecar index file next to it named {@code f.getName() + ".mwidx"}.
+     * If a valid sidecar already exists, then the offsets are loaded from it instead
+     * of parsing the whole file.  If records were appended to an uncompressed file since the
+     * sidecar was written, only the new records are parsed and the sidecar is updated;
+     * a fixed number of blocks sampled from the previously indexed bytes are checksummed
+     * to check that they weren't changed.
+     * If the file was otherwise changed, including being rewritten with the same length,
+     * then the sidecar is rebuilt.
+     *
+     * @param f the file to read; can not be null.
+     * @return a new ChemicalDataStore; will never be null.
+     * @throws IOException if there is a problem reading the file.
+     */
+    static ChemicalDataStore forIndexedFile(File f) throws IOException{
+        return forIndexedFile(f, RecordIndexFile.sidecarFor(f));
+    }
+
+    /**
+     * Create a new ChemicalDataStore for the given file that saves the record offsets
+     * into the given sidecar index file.
+     *
+     * @param f the file to read; can not be null.
+     * @param indexFile the sidecar index file to use; can not be null.
+     * @return a new ChemicalDataStore; will never be null.
+     * @throws IOException if there is a problem reading the file.
+     * @see #forIndexedFile(File)
+     */
+    static ChemicalDataStore forIndexedFile(File f, File indexFile) throws IOException{
+        return new FileChemicalDataStore(InputStreamSupplier.forFile(f), 1000, Objects.requireNonNull(indexFile), Collections.emptySet());
+    }
+
+    /**
+     * Create a new ChemicalDataStore for the given file that saves the record offsets
+     * into a sidecar index file next to it, like {@link #forIndexedFile(File)},
+     * and also indexes the values of the given SD data items so {@link #findByProperty(String, String)}
+     * is a hash lookup.  The property index is built while the record offsets are parsed and is saved
+     * to its own sidecar file named {@code f.getName() + ".mwidx.props"}.
+     *
+     * @param f the file to read; can not be null.
+     * @param propertiesToIndex the names of the SD data items to index; can not be null.
+     * @return a new ChemicalDataStore; will never be null.
+     * @throws IOException if there is a problem reading the file.
+     */
+    static ChemicalDataStore forIndexedFile(File f, Set<String> propertiesToIndex) throws IOException{
+        return new FileChemicalDataStore(InputStreamSupplier.forFile(f), 1000, RecordIndexFile.sidecarFor(f),
+                                        new LinkedHashSet<>(propertiesToIndex));
+    }
+
+    /**
+     * Create a new ChemicalDataStore for a block compressed (BGZF) SD file
+     * such as one written by {@link BlockGzipConverter}.  Record offsets are
+     * read from the sidecar index written by the converter;  if the sidecar is missing
+     * or out of date, then the file is scanned once to rebuild it.
+     * Random access to a record only decompresses the block(s) that contain it.
+     *
+     * @param f the block compressed file to read; can not be null.
+     * @return a new ChemicalDataStore; will never be null.
+     * @throws IOException if there is a problem reading the file or it is not block compressed.
+     */
+    static ChemicalDataStore forBlockGzipFile(File f) throws IOException{
+        return new BlockGzipChemicalDataStore(Objects.requireNonNull(f));
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import gov.nih.ncats.common.io.IOUtil;
+import gov.nih.ncats.common.iter.CloseableIterator;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over a {@link CloseableIterator} that closes the iterator
+ * as soon as it is exhausted or an action throws, so that any resources the iterator holds
+ * (open files, producer threads etc) are released even if nobody closes the Stream created from it.
+ * Splitting hands off batches of already read records so the wrapped iterator is only
+ * ever read by the thread that owns this Spliterator.
+ *
+ * A Spliterator that is abandoned before it is exhausted can not know it isn't going
+ * to be used again, so callers that stop early should use {@link #close()}
+ * (or the {@code onClose} of a Stream made from it) to release the iterator.
+ *
+ * @param <T> the type of record.
+ */
+final class ClosingIteratorSpliterator<T> implements Spliterator<T>, Closeable {
+
+    private final CloseableIterator<T> iterator;
+    private final Spliterator<T> delegate;
+    private boolean closed;
+
+    /**
+     * Create a new ClosingIteratorSpliterator.
+     * @param iterator the iterator to wrap; will be closed when exhausted.
+     * @param size the estimated number of records the iterator will return.
+     * @param characteristics the characteristics of the iterated records.
+     */
+    ClosingIteratorSpliterator(CloseableIterator<T> iterator, long size, int characteristics) {
+        this.iterator = Objects.requireNonNull(iterator);
+        this.delegate = Spliterators.spliterator(iterator, size, characteristics);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        if (closed) {
+            return false;
+        }
+        boolean advanced = false;
+        try {
+            advanced = delegate.tryAdvance(action);
+        } finally {
+            if (!advanced) {
+                close();
+            }
+        }
+        return advanced;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        if (closed) {
+            return;
+        }
+        try {
+            delegate.forEachRemaining(action);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (closed) {
+            return null;
+        }
+        try {
+            return delegate.trySplit();
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        return closed ? 0 : delegate.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return delegate.characteristics();
+    }
+
+    /**
+     * Close the wrapped iterator; after this, this Spliterator will not return any more records.
+     * Calling this more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            IOUtil.closeQuietly(iterator);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import gov.nih.ncats.common.io.InputStreamSupplier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Utility methods to tell if a data file is compressed
+ * and therefore can't be memory mapped, appended to or
+ * addressed by byte offsets into the file itself.
+ */
+final class CompressedFiles {
+    /**
+     * The number of leading bytes compared to see if a supplier decompresses a file.
+     */
+    private static final int SAMPLE_SIZE = 512;
+
+    private CompressedFiles(){
+        //can not instantiate
+    }
+
+    /**
+     * Does the given file start with the magic number of a
+     * compression format that {@link InputStreamSupplier#forFile(File)} decompresses,
+     * which is currently gzip (including block gzip) or zip.
+     *
+     * @param file the file to check.
+     * @return {@code true} if the file is compressed; an empty file is not compressed.
+     * @throws IOException if there is a problem reading the file.
+     */
+    static boolean isCompressed(File file) throws IOException{
+        byte[] magic = new byte[4];
+        int length;
+        try(InputStream in = new FileInputStream(file)){
+            length = readSample(in, magic);
+        }
+        return isCompressed(magic, length);
+    }
+
+    /**
+     * Does the given sample of the start of a file begin with a gzip or zip magic number.
+     * @param sample the first bytes of the file.
+     * @param length the number of valid bytes in the sample.
+     * @return {@code true} if the sample starts with a known compression magic number.
+     */
+    static boolean isCompressed(byte[] sample, int length){
+        if(length >=2 && sample[0] == 0x1f && sample[1] == (byte) 0x8b){
+            return true;
+        }
+        return length >=4 && sample[0] == 'P' && sample[1] == 'K' && sample[2] == 3 && sample[3] == 4;
+    }
+
+    /**
+     * Does the given supplier return the bytes of the given file as they are
+     * so offsets into its stream are also offsets into the file.  This is {@code false}
+     * if the file is compressed or if the supplier transforms the file in any other way.
+     *
+     * @param supplier the supplier backed by the given file.
+     * @param file the file to check.
+     * @return {@code true} if the supplier reads the file as-is.
+     * @throws IOException if there is a problem reading the file.
+     */
+    static boolean readsFileAsIs(InputStreamSupplier supplier, File file) throws IOException{
+        byte[] fileSample = new byte[SAMPLE_SIZE];
+        byte[] suppliedSample = new byte[SAMPLE_SIZE];
+        int fileLength;
+        try(InputStream in = new FileInputStream(file)){
+            fileLength = readSample(in, fileSample);
+        }
+        if(isCompressed(fileSample, fileLength)){
+            return false;
+        }
+        int suppliedLength;
+        try(InputStream in = supplier.get()){
+            suppliedLength = readSample(in, suppliedSample);
+        }
+        return fileLength == suppliedLength && Arrays.equals(fileSample, suppliedSample);
+    }
+
+    private static int readSample(InputStream in, byte[] sample) throws IOException{
+        int length =0;
+        int read;
+        while(length < sample.length && (read = in.read(sample, length, sample.length - length)) >0){
+            length += read;
+        }
+        return length;
+    }
+}
@@ -22,23 +22,39 @@ import gov.nih.ncats.common.io.IOUtil;
 import gov.nih.ncats.common.io.InputStreamSupplier;
 import gov.nih.ncats.common.io.TextLineParser;
 import gov.nih.ncats.common.iter.CloseableIterator;
-import gov.nih.ncats.common.util.Range;
 import gov.nih.ncats.common.yield.Yield;
 import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.internal.DataItemCollector;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class FileChemicalDataStore implements ChemicalDataStore {
 
     private final InputStreamSupplier inputStreamSupplier;
-    private List<Range> recordRanges;
+    /**
+     * Record i spans recordBoundaries[i] (inclusive) to recordBoundaries[i+1] (exclusive).
+     */
+    private OffsetTable recordBoundaries;
+    /**
+     * Index of selected data item values; empty if no properties are indexed.
+     */
+    private PropertyIndex propertyIndex;
+    /**
+     * Memory mapping of uncompressed data files for random access;
+     * null if the data isn't an uncompressed file.
+     */
+    private volatile MappedFileRegions mappedFile;
 
     FileChemicalDataStore(InputStreamSupplier inputStreamSupplier) throws IOException{
         this(inputStreamSupplier, 1000);
@@ -46,40 +62,163 @@ public class FileChemicalDataStore implements ChemicalDataStore {
     }
 
     FileChemicalDataStore(InputStreamSupplier inputStreamSupplier, int estimatedNumberOfRecords) throws IOException{
+        this(inputStreamSupplier, estimatedNumberOfRecords, null, Collections.emptySet());
+    }
+
+    /**
+     * Create a new FileChemicalDataStore.
+     * @param inputStreamSupplier the supplier of the data.
+     * @param estimatedNumberOfRecords the estimated number of records used to presize internal structures.
+     * @param indexFile the sidecar file to load the record offsets from and save them to;
+     *                  if null, then no sidecar is used and the whole file is parsed.
+     *                  If not null, then the inputStreamSupplier must be backed by a File.
+     * @param propertiesToIndex the names of the SD data items to index while parsing,
+     *                          which are also saved to a sidecar next to the indexFile if there is one;
+     *                          can not be null but may be empty.
+     * @throws IOException if there is a problem parsing the data.
+     */
+    FileChemicalDataStore(InputStreamSupplier inputStreamSupplier, int estimatedNumberOfRecords, File indexFile,
+                          Set<String> propertiesToIndex) throws IOException{
+        this(inputStreamSupplier, estimatedNumberOfRecords, indexFile, propertiesToIndex, true);
+    }
+
+    private FileChemicalDataStore(InputStreamSupplier inputStreamSupplier, int estimatedNumberOfRecords, File indexFile,
+                          Set<String> propertiesToIndex, boolean map) throws IOException{
         this.inputStreamSupplier = Objects.requireNonNull(inputStreamSupplier);
-        recordRanges = new ArrayList<>(estimatedNumberOfRecords);
-        parseRanges();
-    }
-
-    private void parseRanges() throws IOException{
-        long startOffset=0;
-        try(TextLineParser parser = new TextLineParser(inputStreamSupplier.get())){
-            while(parser.hasNextLine()){
-                String line = parser.nextLine();
-//                System.out.print(line);
-                if(line.startsWith("$$$$")){
-                    long nextOffset =parser.getPosition();
-                    recordRanges.add(new Range(startOffset, nextOffset -1));
-                    startOffset= nextOffset;
-                }
+        recordBoundaries = new OffsetTable(estimatedNumberOfRecords +1);
+        propertyIndex = new PropertyIndex(propertiesToIndex);
+        Optional<File> file = inputStreamSupplier.getFile();
+        //only offsets into files that the supplier reads as-is are offsets into the file itself
+        boolean uncompressed = file.isPresent() && CompressedFiles.readsFileAsIs(inputStreamSupplier, file.get());
+        if(indexFile ==null) {
+            parseRanges(0);
+        }else{
+            File dataFile = file.orElseThrow(()-> new IllegalArgumentException("sidecar index requires a file"));
+            loadOrBuildIndex(dataFile, indexFile, uncompressed);
+        }
+        mappedFile = uncompressed && map ? MappedFileRegions.map(file.get()) : null;
+    }
+
+    /**
+     * Get the record boundaries of the given file, loading them from the given sidecar index
+     * and only parsing what the sidecar doesn't cover.  Unlike creating a FileChemicalDataStore,
+     * the file is not memory mapped, so it can still be truncated afterwards.
+     * @param dataFile the file to parse.
+     * @param indexFile the sidecar file to load the record offsets from and save them to.
+     * @return a new OffsetTable owned by the caller.
+     * @throws IOException if there is a problem parsing the data.
+     */
+    static OffsetTable readRecordBoundaries(File dataFile, File indexFile) throws IOException{
+        return new FileChemicalDataStore(InputStreamSupplier.forFile(dataFile), 1000, indexFile,
+                                            Collections.emptySet(), false).recordBoundaries;
+    }
+
+    private void loadOrBuildIndex(File dataFile, File indexFile, boolean uncompressed) throws IOException{
+        RecordIndexFile index = RecordIndexFile.read(indexFile);
+        File propertyFile = PropertyIndex.sidecarFor(indexFile);
+        PropertyIndex loadedProperties = null;
+        boolean valid = index !=null && index.isValidFor(dataFile, uncompressed);
+        if(valid && !propertyIndex.isEmpty()){
+            loadedProperties = PropertyIndex.read(propertyFile);
+            //properties must cover the same records
+            valid = loadedProperties !=null
+                    && loadedProperties.getTags().equals(propertyIndex.getTags())
+                    && loadedProperties.getIndexedLength() == index.getIndexedLength();
+        }
+        long resumeFrom =0;
+        if(valid){
+            recordBoundaries = index.getBoundaries();
+            if(loadedProperties !=null){
+                propertyIndex = loadedProperties;
             }
-            if(parser.getPosition() -1 > startOffset) {
-                //last range
-                recordRanges.add(new Range(startOffset, parser.getPosition() - 1));
+            resumeFrom = index.getIndexedLength();
+        }else{
+            index = null;
+        }
+        //parse anything that was appended since the index was written
+        long terminatedEnd = parseRanges(resumeFrom);
+        if(index !=null && index.isCurrentFor(dataFile)){
+            return;
+        }
+        long numberOfTerminatedBoundaries = recordBoundaries.size();
+        if(numberOfTerminatedBoundaries >1 && recordBoundaries.last() > terminatedEnd){
+            //don't persist partially written last record
+            numberOfTerminatedBoundaries--;
+        }
+        try {
+            if(!propertyIndex.isEmpty()){
+                propertyIndex.write(propertyFile, terminatedEnd, numberOfTerminatedBoundaries -1);
             }
+            RecordIndexFile.create(dataFile, recordBoundaries, numberOfTerminatedBoundaries).write(indexFile);
+        }catch(IOException e){
+            //the sidecar is only an optimization (directory may be read only)
+            //so failing to write it shouldn't prevent using the store
         }
     }
+
+    /**
+     * Parse the record ranges starting at the given offset which must be the start of a record.
+     * @param from the offset to start parsing from.
+     * @return the end offset (exclusive) of the last record terminated by a {@code $$$$} line
+     * or {@code from} if no records were terminated.
+     * @throws IOException if there is a problem reading the data.
+     */
+    private long parseRanges(long from) throws IOException{
+        long startOffset=from;
+        if(recordBoundaries.size() ==0){
+            recordBoundaries.add(from);
+        }
+        try(InputStream in = inputStreamSupplier.get()){
+            IOUtil.blockingSkip(in, from);
+            DataItemCollector collector = propertyIndex.isEmpty()? null :
+                    propertyIndex.newCollector(()-> recordBoundaries.size() -1);
+            try(TextLineParser parser = new TextLineParser(in, from)) {
+                while (parser.hasNextLine()) {
+                    String line = parser.nextLine();
+                    if(collector !=null && !line.startsWith("$$$$")){
+                        collector.accept(line);
+                    }
+                    if (line.startsWith("$$$$")) {
+                        if(collector !=null){
+                            collector.endRecord();
+                        }
+                        long nextOffset = parser.getPosition();
+                        recordBoundaries.add(nextOffset);
+                        startOffset = nextOffset;
+                    }
+                }
+                if(collector !=null){
+                    collector.endRecord();
+                }
+                if (parser.getPosition() - 1 > startOffset) {
+                    //last range
+                    recordBoundaries.add(parser.getPosition());
+                }
+            }
+        }
+        return startOffset;
+    }
+
     @Override
     public long getSize() {
-        return recordRanges.size();
+        return Math.max(0, recordBoundaries.size() -1);
     }
 
     @Override
     public String getRaw(long offset) {
-        Range range = recordRanges.get( (int) offset);
-        byte[] array = new byte[(int) range.getLength()];
+        if(offset <0 || offset >= getSize()){
+            throw new IndexOutOfBoundsException("offset " + offset + " size " + getSize());
+        }
+        long begin = recordBoundaries.get(offset);
+        long end = recordBoundaries.get(offset +1);
+        MappedFileRegions mapped = mappedFile;
+        if(mapped !=null && end <= mapped.length()){
+            return new String(mapped.read(begin, (int) (end - begin)));
+        }
+        //compressed, closed or appended after we mapped
+        byte[] array = new byte[(int) (end - begin)];
         try(InputStream in = inputStreamSupplier.get()){
-            IOUtil.blockingSkip(in, range.getBegin());
+            IOUtil.blockingSkip(in, begin);
             IOUtil.blockingRead(in, array);
             return new String(array);
         } catch (IOException e) {
@@ -139,9 +278,83 @@ public class FileChemicalDataStore implements ChemicalDataStore {
         });
     }
 
+    /**
+     * Only uncompressed files are memory mapped; every random access to any other
+     * data re-reads it from the beginning.
+     */
     @Override
-    public void close() throws IOException {
+    public boolean hasEfficientRandomAccess() {
+        return mappedFile !=null;
+    }
+
+    @Override
+    public Set<String> getIndexedProperties() {
+        return propertyIndex.getTags();
+    }
+
+    @Override
+    public long[] findByProperty(String name, String value) {
+        if(propertyIndex.getTags().contains(Objects.requireNonNull(name))){
+            return propertyIndex.find(name, Objects.requireNonNull(value));
+        }
+        return ChemicalDataStore.super.findByProperty(name, value);
+    }
+
+    /**
+     * Compressed files have to be read sequentially, so the returned Spliterator
+     * reads the file on the thread that owns it and hands off batches of records
+     * to other threads when split.  The underlying file is closed once all the records
+     * have been read; use {@link #rawStream()} and close the Stream if you might stop early.
+     */
+    @Override
+    public Spliterator<String> rawSpliterator() {
+        if(mappedFile !=null){
+            return ChemicalDataStore.super.rawSpliterator();
+        }
+        return new ClosingIteratorSpliterator<>(getRawIterator(), getSize(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Compressed files have to be read sequentially, so the returned Spliterator
+     * reads the file on the thread that owns it and hands off batches of records
+     * to other threads when split.  The underlying file is closed once all the records
+     * have been read; use {@link #stream()} and close the Stream if you might stop early.
+     */
+    @Override
+    public Spliterator<Chemical> spliterator() {
+        if(mappedFile !=null){
+            return ChemicalDataStore.super.spliterator();
+        }
+        return new ClosingIteratorSpliterator<>(getIterator(), getSize(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    @Override
+    public Stream<String> rawStream() {
+        if(mappedFile !=null){
+            return ChemicalDataStore.super.rawStream();
+        }
+        ClosingIteratorSpliterator<String> spliterator = new ClosingIteratorSpliterator<>(getRawIterator(), getSize(), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false)
+                        .onClose(spliterator::close);
+    }
 
+    @Override
+    public Stream<Chemical> stream() {
+        if(mappedFile !=null){
+            return ChemicalDataStore.super.stream();
+        }
+        ClosingIteratorSpliterator<Chemical> spliterator = new ClosingIteratorSpliterator<>(getIterator(), getSize(), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false)
+                        .onClose(spliterator::close);
+    }
+
+    @Override
+    public void close() throws IOException {
+        MappedFileRegions mapped = mappedFile;
+        mappedFile = null;
+        if(mapped !=null){
+            mapped.close();
+        }
     }
 
 }
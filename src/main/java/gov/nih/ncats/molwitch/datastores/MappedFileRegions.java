@@ -0,0 +1,125 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read only memory mapping of a whole file that can be
+ * randomly accessed by byte offset.  Since a single mapping
+ * can be at most 2GB, larger files are split over multiple fixed size mappings
+ * and reads that straddle two mappings are stitched together.
+ *
+ * <p>
+ * MappedFileRegions objects are threadsafe: reads only use absolute positions
+ * of private duplicates of the mapped buffers so concurrent readers never share buffer state.
+ * </p>
+ */
+final class MappedFileRegions implements Closeable {
+
+    static final int DEFAULT_REGION_SIZE = 1 << 30;
+
+    private final long length;
+    private final int regionSize;
+    private volatile MappedByteBuffer[] regions;
+
+    /**
+     * Map the current contents of the given file.  Any bytes appended
+     * to the file after it is mapped are not visible.
+     * @param file the file to map.
+     * @return a new MappedFileRegions.
+     * @throws IOException if there is a problem mapping the file.
+     */
+    static MappedFileRegions map(File file) throws IOException {
+        return map(file, DEFAULT_REGION_SIZE);
+    }
+
+    static MappedFileRegions map(File file, int regionSize) throws IOException {
+        if (regionSize < 1) {
+            throw new IllegalArgumentException("region size must be >= 1");
+        }
+        return new MappedFileRegions(file, regionSize);
+    }
+
+    private MappedFileRegions(File file, int regionSize) throws IOException {
+        this.regionSize = regionSize;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            length = channel.size();
+            int numberOfRegions = (int) ((length + regionSize - 1) / regionSize);
+            MappedByteBuffer[] buffers = new MappedByteBuffer[numberOfRegions];
+            for (int i = 0; i < numberOfRegions; i++) {
+                long start = (long) i * regionSize;
+                buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, length - start));
+            }
+            regions = buffers;
+        }
+    }
+
+    /**
+     * Get the number of bytes that are mapped.
+     * @return the length of the file when it was mapped.
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * Read the given range of bytes.
+     * @param offset the byte offset in the file to start reading from.
+     * @param numberOfBytes the number of bytes to read.
+     * @return a new byte array of length numberOfBytes.
+     * @throws IndexOutOfBoundsException if the range is not completely inside the mapped file.
+     * @throws IllegalStateException if this has been closed.
+     */
+    byte[] read(long offset, int numberOfBytes) {
+        if (offset < 0 || numberOfBytes < 0 || offset + numberOfBytes > length) {
+            throw new IndexOutOfBoundsException("offset " + offset + " length " + numberOfBytes + " file length " + length);
+        }
+        MappedByteBuffer[] buffers = regions;
+        if (buffers == null) {
+            throw new IllegalStateException("already closed");
+        }
+        byte[] array = new byte[numberOfBytes];
+        int copied = 0;
+        while (copied < numberOfBytes) {
+            long position = offset + copied;
+            int regionIndex = (int) (position / regionSize);
+            int regionOffset = (int) (position % regionSize);
+            //duplicate so we don't change the shared buffer's position
+            ByteBuffer region = buffers[regionIndex].duplicate();
+            region.position(regionOffset);
+            int len = Math.min(numberOfBytes - copied, region.remaining());
+            region.get(array, copied, len);
+            copied += len;
+        }
+        return array;
+    }
+
+    @Override
+    public void close() {
+        //can't explicitly unmap so just drop our references
+        regions = null;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import java.util.Arrays;
+
+/**
+ * A compact, append only table of non-decreasing {@code long} values
+ * such as the byte offsets of record boundaries in a file.
+ *
+ * <p>
+ * Values are grouped into blocks of 64.  Each full block stores its first value
+ * as a base and every other value as a delta from that base bit packed using
+ * only as many bits as the largest delta in the block needs.  Since record
+ * offsets in a block are close together this typically takes 2-3 bytes per value instead
+ * of the 8 bytes of a {@code long[]} (or the ~40 bytes of a {@code List} of objects)
+ * while still allowing constant time random access.
+ * </p>
+ *
+ * This class is NOT threadsafe.
+ */
+final class OffsetTable {
+
+    private static final int BLOCK_SHIFT = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private long[] blockBases;
+    private long[] blockBitOffsets;
+    private byte[] blockBitsPerValue;
+    private int numberOfFullBlocks;
+
+    private long[] packed;
+    private long packedBitLength;
+
+    private final long[] pending = new long[BLOCK_SIZE];
+    private int pendingCount;
+
+    private long size;
+
+    OffsetTable() {
+        this(1000);
+    }
+
+    /**
+     * Create a new empty OffsetTable.
+     * @param estimatedSize the estimated number of values that will be added used to presize
+     *                      internal arrays.
+     */
+    OffsetTable(int estimatedSize) {
+        int estimatedBlocks = Math.max(1, estimatedSize / BLOCK_SIZE);
+        blockBases = new long[estimatedBlocks];
+        blockBitOffsets = new long[estimatedBlocks];
+        blockBitsPerValue = new byte[estimatedBlocks];
+        //assume ~16 bits per value
+        packed = new long[Math.max(2, estimatedSize / 4)];
+    }
+
+    /**
+     * Append the given value.
+     * @param value the value to add; must be greater than or equal to the last value added.
+     * @throws IllegalArgumentException if value is less than the last value.
+     */
+    void add(long value) {
+        if (size > 0 && value < last()) {
+            throw new IllegalArgumentException("values must be non-decreasing: " + value + " < " + last());
+        }
+        pending[pendingCount++] = value;
+        size++;
+        if (pendingCount == BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Get the number of values in this table.
+     * @return the number of values.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Get the last value added.
+     * @return the last value.
+     * @throws IndexOutOfBoundsException if the table is empty.
+     */
+    long last() {
+        return get(size - 1);
+    }
+
+    /**
+     * Get the value at the given index.
+     * @param index the index to get.
+     * @return the value.
+     * @throws IndexOutOfBoundsException if the index is not in the range [0, size).
+     */
+    long get(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " size " + size);
+        }
+        int block = (int) (index >>> BLOCK_SHIFT);
+        int offsetInBlock = (int) (index & BLOCK_MASK);
+        if (block == numberOfFullBlocks) {
+            return pending[offsetInBlock];
+        }
+        long base = blockBases[block];
+        int bits = blockBitsPerValue[block];
+        if (offsetInBlock == 0 || bits == 0) {
+            return base;
+        }
+        return base + readBits(blockBitOffsets[block] + (long) (offsetInBlock - 1) * bits, bits);
+    }
+
+    /**
+     * Get an estimate of the number of bytes of memory this table uses.
+     * @return the number of bytes.
+     */
+    long estimatedSizeInBytes() {
+        return 8L * packed.length + 17L * blockBases.length + 8L * BLOCK_SIZE;
+    }
+
+    private void flushBlock() {
+        long base = pending[0];
+        long maxDelta = pending[BLOCK_SIZE - 1] - base;
+        int bits = 64 - Long.numberOfLeadingZeros(maxDelta);
+
+        if (numberOfFullBlocks == blockBases.length) {
+            int newLength = blockBases.length * 2;
+            blockBases = Arrays.copyOf(blockBases, newLength);
+            blockBitOffsets = Arrays.copyOf(blockBitOffsets, newLength);
+            blockBitsPerValue = Arrays.copyOf(blockBitsPerValue, newLength);
+        }
+        blockBases[numberOfFullBlocks] = base;
+        blockBitOffsets[numberOfFullBlocks] = packedBitLength;
+        blockBitsPerValue[numberOfFullBlocks] = (byte) bits;
+        if (bits > 0) {
+            //the first value is the base so it doesn't need to be stored
+            long requiredWords = ((packedBitLength + (long) (BLOCK_SIZE - 1) * bits) >>> 6) + 2;
+            if (requiredWords > packed.length) {
+                packed = Arrays.copyOf(packed, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(requiredWords, packed.length * 3L / 2)));
+            }
+            for (int i = 1; i < BLOCK_SIZE; i++) {
+                writeBits(packedBitLength, bits, pending[i] - base);
+                packedBitLength += bits;
+            }
+        }
+        numberOfFullBlocks++;
+        pendingCount = 0;
+    }
+
+    private void writeBits(long bitPosition, int bits, long value) {
+        int word = (int) (bitPosition >>> 6);
+        int shift = (int) (bitPosition & 63);
+        packed[word] |= value << shift;
+        if (shift + bits > 64) {
+            packed[word + 1] |= value >>> (64 - shift);
+        }
+    }
+
+    private long readBits(long bitPosition, int bits) {
+        int word = (int) (bitPosition >>> 6);
+        int shift = (int) (bitPosition & 63);
+        long value = packed[word] >>> shift;
+        if (shift + bits > 64) {
+            value |= packed[word + 1] << (64 - shift);
+        }
+        return bits == 64 ? value : value & ((1L << bits) - 1);
+    }
+}
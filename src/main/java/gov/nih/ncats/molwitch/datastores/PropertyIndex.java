@@ -0,0 +1,330 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import gov.nih.ncats.molwitch.internal.DataItemCollector;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An in memory hash index of selected SD data item values
+ * to the offsets of the records that have them, which can be persisted
+ * to a sidecar file next to a {@link RecordIndexFile}.
+ *
+ * <p>
+ * The sidecar stores the indexed length of the offset index it was
+ * written with so it is only used if it covers exactly the same records.
+ * </p>
+ *
+ * This class is NOT threadsafe while it is being built; once built
+ * it may be read by multiple threads.
+ */
+final class PropertyIndex {
+    /**
+     * The file extension appended to the offset index file name to make the property sidecar file name.
+     */
+    static final String SUFFIX = ".props";
+
+    private static final int MAGIC = 0x4D575049; //MWPI
+    private static final int VERSION = 1;
+
+    private static final long[] EMPTY = new long[0];
+
+    private final Map<String, Map<String, Offsets>> byTag;
+    private long indexedLength;
+
+    /**
+     * Create a new empty PropertyIndex.
+     * @param tags the data item names to index.
+     */
+    PropertyIndex(Collection<String> tags) {
+        byTag = new LinkedHashMap<>();
+        for (String tag : tags) {
+            byTag.put(tag, new HashMap<>());
+        }
+    }
+
+    static File sidecarFor(File indexFile) {
+        return new File(indexFile.getParentFile(), indexFile.getName() + SUFFIX);
+    }
+
+    /**
+     * Get the names of the indexed data items.
+     * @return an unmodifiable Set; will never be null.
+     */
+    Set<String> getTags() {
+        return Collections.unmodifiableSet(byTag.keySet());
+    }
+
+    boolean isEmpty() {
+        return byTag.isEmpty();
+    }
+
+    /**
+     * Get the end offset of the data this index covers which was given to {@link #write(File, long, long)}.
+     * @return the indexed length.
+     */
+    long getIndexedLength() {
+        return indexedLength;
+    }
+
+    /**
+     * Index the given value for the given record.
+     * @param tag the data item name; ignored if not one of the indexed tags.
+     * @param value the value.
+     * @param recordOffset the record offset; must be added in increasing order.
+     */
+    void add(String tag, String value, long recordOffset) {
+        Map<String, Offsets> values = byTag.get(tag);
+        if (values == null) {
+            return;
+        }
+        Offsets offsets = values.get(value);
+        if (offsets == null) {
+            values.put(value, new Offsets(recordOffset));
+        } else if (offsets.last() != recordOffset) {
+            offsets.add(recordOffset);
+        }
+    }
+
+    /**
+     * Create a new collector that parses record lines and adds the values of the
+     * indexed data items to this index.
+     * @param recordOffset supplies the offset of the record whose lines are being collected.
+     * @return a new {@link DataItemCollector}; will never be null.
+     */
+    DataItemCollector newCollector(LongSupplier recordOffset) {
+        return new DataItemCollector(getTags(), (tag, value) -> add(tag, value, recordOffset.getAsLong()));
+    }
+
+    /**
+     * Does the given raw record have a data item with the given name whose trimmed value
+     * equals the given value.
+     * @param rawRecord the text of a single SD record.
+     * @param tag the data item name.
+     * @param value the value.
+     * @return {@code true} if it does.
+     */
+    static boolean hasValue(String rawRecord, String tag, String value) {
+        return DataItemCollector.hasValue(rawRecord, tag, value);
+    }
+
+    /**
+     * Find the offsets of the records with the given data item value.
+     * @param tag the data item name.
+     * @param value the value which must exactly equal the trimmed data item value.
+     * @return a new sorted array of record offsets; will never be null but may be empty.
+     * @throws IllegalArgumentException if the tag is not indexed.
+     */
+    long[] find(String tag, String value) {
+        Map<String, Offsets> values = byTag.get(tag);
+        if (values == null) {
+            throw new IllegalArgumentException(tag + " is not indexed");
+        }
+        Offsets offsets = values.get(value);
+        return offsets == null ? EMPTY : Arrays.copyOf(offsets.offsets, offsets.size);
+    }
+
+    /**
+     * Read the given sidecar file.
+     * @param sidecar the sidecar file to read.
+     * @return the PropertyIndex or {@code null} if the file does not exist
+     * or is not a valid sidecar.
+     */
+    static PropertyIndex read(File sidecar) {
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(sidecar)), crc))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long indexedLength = in.readLong();
+            int numberOfTags = in.readInt();
+            if (numberOfTags < 0 || numberOfTags > sidecar.length()) {
+                return null;
+            }
+            List<String> tags = new ArrayList<>();
+            for (int i = 0; i < numberOfTags; i++) {
+                tags.add(readString(in, sidecar.length()));
+            }
+            PropertyIndex index = new PropertyIndex(tags);
+            index.indexedLength = indexedLength;
+            for (String tag : tags) {
+                Map<String, Offsets> values = index.byTag.get(tag);
+                int numberOfValues = in.readInt();
+                for (int i = 0; i < numberOfValues; i++) {
+                    String value = readString(in, sidecar.length());
+                    int count = in.readInt();
+                    if (count < 1 || count > sidecar.length()) {
+                        return null;
+                    }
+                    long[] offsets = new long[count];
+                    long previous = 0;
+                    for (int j = 0; j < count; j++) {
+                        previous += RecordIndexFile.readVarLong(in);
+                        offsets[j] = previous;
+                    }
+                    values.put(value, new Offsets(offsets));
+                }
+            }
+            long expectedChecksum = crc.getValue();
+            if (expectedChecksum != new DataInputStream(in).readLong()) {
+                return null;
+            }
+            return index;
+        } catch (IOException | RuntimeException e) {
+            //truncated or unreadable treat as missing
+            return null;
+        }
+    }
+
+    /**
+     * Atomically write the part of this index covering the first {@code numberOfRecords} records
+     * to the given sidecar file by writing to a uniquely named temp file first and then renaming it.
+     * @param sidecar the file to write.
+     * @param indexedLength the indexed length of the offset index these records correspond to.
+     * @param numberOfRecords only records with offsets less than this are written.
+     * @throws IOException if there is a problem writing the file.
+     */
+    void write(File sidecar, long indexedLength, long numberOfRecords) throws IOException {
+        //unique temp file so concurrent writers of the same sidecar don't write over each other
+        File tmp = Files.createTempFile(sidecar.getAbsoluteFile().getParentFile().toPath(), sidecar.getName(), ".tmp").toFile();
+        try {
+            writeTo(tmp, indexedLength, numberOfRecords);
+            try {
+                Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private void writeTo(File tmp, long indexedLength, long numberOfRecords) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            DataOutputStream checked = new DataOutputStream(new CheckedOutputStream(out, crc));
+            checked.writeInt(MAGIC);
+            checked.writeInt(VERSION);
+            checked.writeLong(indexedLength);
+            checked.writeInt(byTag.size());
+            for (String tag : byTag.keySet()) {
+                writeString(checked, tag);
+            }
+            for (Map<String, Offsets> values : byTag.values()) {
+                List<Map.Entry<String, Integer>> toWrite = new ArrayList<>(values.size());
+                for (Map.Entry<String, Offsets> entry : values.entrySet()) {
+                    //done adding (at least up to here) so release the spare capacity
+                    entry.getValue().trim();
+                    int count = countLessThan(entry.getValue(), numberOfRecords);
+                    if (count > 0) {
+                        toWrite.add(new AbstractMap.SimpleEntry<>(entry.getKey(), count));
+                    }
+                }
+                checked.writeInt(toWrite.size());
+                for (Map.Entry<String, Integer> entry : toWrite) {
+                    writeString(checked, entry.getKey());
+                    long[] offsets = values.get(entry.getKey()).offsets;
+                    checked.writeInt(entry.getValue());
+                    long previous = 0;
+                    for (int j = 0; j < entry.getValue(); j++) {
+                        RecordIndexFile.writeVarLong(checked, offsets[j] - previous);
+                        previous = offsets[j];
+                    }
+                }
+            }
+            checked.flush();
+            out.writeLong(crc.getValue());
+        }
+    }
+
+    private static int countLessThan(Offsets sortedOffsets, long max) {
+        int count = 0;
+        while (count < sortedOffsets.size && sortedOffsets.offsets[count] < max) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * The sorted offsets of the records with a value, in an array that grows by doubling
+     * so that adding the offsets of a common value is amortized constant time.
+     */
+    private static final class Offsets {
+        private long[] offsets;
+        private int size;
+
+        Offsets(long first) {
+            offsets = new long[]{first};
+            size = 1;
+        }
+
+        Offsets(long[] offsets) {
+            this.offsets = offsets;
+            this.size = offsets.length;
+        }
+
+        long last() {
+            return offsets[size - 1];
+        }
+
+        void add(long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(4, size * 2));
+            }
+            offsets[size++] = offset;
+        }
+
+        void trim() {
+            if (size != offsets.length) {
+                offsets = Arrays.copyOf(offsets, size);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        //not writeUTF since values may be longer than 64K
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, long maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An on-disk sidecar file that stores the record boundaries
+ * of a data file so they don't have to be re-parsed every time
+ * the file is opened.
+ *
+ * <p>
+ * The sidecar stores the length and last modified time of the data file
+ * at the time it was indexed and a checksum of a fixed number of blocks sampled
+ * from the start, end and evenly spaced points in between of the indexed data
+ * so we can detect if the data file has been changed or just appended to.
+ * Creating and checking a sidecar only reads those sampled blocks so the cost doesn't grow
+ * with the size of the data file; an in place rewrite that keeps the same length
+ * is caught by the last modified time but a rewrite that also grows the file
+ * is only caught if it touches one of the sampled blocks.
+ * The contents of the sidecar itself are also checksummed so
+ * a truncated or corrupt sidecar is ignored instead of returning bad offsets.
+ * </p>
+ *
+ * Only records that were terminated by a {@code $$$$} line are stored
+ * so that a partially written last record is always re-parsed.
+ */
+final class RecordIndexFile {
+    /**
+     * The file extension appended to the data file name to make the sidecar file name.
+     */
+    static final String SUFFIX = ".mwidx";
+
+    private static final int MAGIC = 0x4D574958; //MWIX
+    private static final int VERSION = 4;
+    private static final int SAMPLE_SIZE = 4096;
+    private static final int NUMBER_OF_SAMPLES = 16;
+
+    private final long fileLength;
+    private final long lastModified;
+    private final long sampleChecksum;
+    /**
+     * Record i spans boundaries[i] (inclusive) to boundaries[i+1] (exclusive)
+     * so the last element is the end of the last terminated record.
+     */
+    private final OffsetTable boundaries;
+
+    private RecordIndexFile(long fileLength, long lastModified, long sampleChecksum, OffsetTable boundaries) {
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.sampleChecksum = sampleChecksum;
+        this.boundaries = boundaries;
+    }
+
+    /**
+     * Get the default sidecar file for the given data file.
+     * @param dataFile the data file.
+     * @return a new File in the same directory; will never be null.
+     */
+    static File sidecarFor(File dataFile) {
+        return new File(dataFile.getParentFile(), dataFile.getName() + SUFFIX);
+    }
+
+    /**
+     * Create a new RecordIndexFile describing the current state of the given data file.
+     * @param dataFile the data file that was parsed.
+     * @param boundaries the record boundaries; the first element should be 0.
+     * @param numberOfBoundaries the number of boundaries to store; the last stored boundary should be
+     *                   the end of the last record terminated by a {@code $$$$}.
+     * @return a new RecordIndexFile.
+     * @throws IOException if there is a problem reading the data file.
+     */
+    static RecordIndexFile create(File dataFile, OffsetTable boundaries, long numberOfBoundaries) throws IOException {
+        OffsetTable copy = boundaries;
+        if (numberOfBoundaries != boundaries.size()) {
+            copy = new OffsetTable();
+            for (long i = 0; i < numberOfBoundaries; i++) {
+                copy.add(boundaries.get(i));
+            }
+        }
+        long length = dataFile.length();
+        return new RecordIndexFile(length, dataFile.lastModified(), sampleChecksum(dataFile, length), copy);
+    }
+
+    /**
+     * Read the given sidecar file.
+     * @param sidecar the sidecar file to read.
+     * @return the RecordIndexFile or {@code null} if the file does not exist
+     * or is not a valid sidecar.
+     */
+    static RecordIndexFile read(File sidecar) {
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(sidecar)), crc))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fileLength = in.readLong();
+            long lastModified = in.readLong();
+            long sampleChecksum = in.readLong();
+            long numberOfBoundaries = in.readLong();
+            //each boundary takes at least 1 byte
+            if (numberOfBoundaries < 1 || numberOfBoundaries > sidecar.length()) {
+                return null;
+            }
+            OffsetTable boundaries = new OffsetTable((int) Math.min(Integer.MAX_VALUE, numberOfBoundaries));
+            long previous = 0;
+            for (long i = 0; i < numberOfBoundaries; i++) {
+                previous += readVarLong(in);
+                boundaries.add(previous);
+            }
+            long expectedChecksum = crc.getValue();
+            //the stored checksum is not part of the checksum
+            long actualChecksum = new DataInputStream(in).readLong();
+            if (expectedChecksum != actualChecksum) {
+                return null;
+            }
+            return new RecordIndexFile(fileLength, lastModified, sampleChecksum, boundaries);
+        } catch (IOException e) {
+            //truncated or unreadable treat as missing
+            return null;
+        }
+    }
+
+    /**
+     * Atomically write this index to the given sidecar file
+     * by writing to a uniquely named temp file first and then renaming it,
+     * so concurrent writers of the same sidecar never see each other's partial output.
+     * @param sidecar the file to write to.
+     * @throws IOException if there is a problem writing the file.
+     */
+    void write(File sidecar) throws IOException {
+        //unique temp file so concurrent writers of the same sidecar don't write over each other
+        File tmp = Files.createTempFile(sidecar.getAbsoluteFile().getParentFile().toPath(), sidecar.getName(), ".tmp").toFile();
+        try {
+            writeTo(tmp);
+            try {
+                Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private void writeTo(File tmp) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            DataOutputStream checked = new DataOutputStream(new CheckedOutputStream(out, crc));
+            checked.writeInt(MAGIC);
+            checked.writeInt(VERSION);
+            checked.writeLong(fileLength);
+            checked.writeLong(lastModified);
+            checked.writeLong(sampleChecksum);
+            checked.writeLong(boundaries.size());
+            long previous = 0;
+            for (long i = 0; i < boundaries.size(); i++) {
+                long boundary = boundaries.get(i);
+                writeVarLong(checked, boundary - previous);
+                previous = boundary;
+            }
+            checked.flush();
+            out.writeLong(crc.getValue());
+        }
+    }
+
+    /**
+     * Get the record boundaries.
+     * @return the boundaries table; the caller takes ownership of it and may append to it.
+     */
+    OffsetTable getBoundaries() {
+        return boundaries;
+    }
+
+    /**
+     * Get the end offset of the last indexed record which is where parsing
+     * should resume to find any records not in this index.
+     * @return the offset.
+     */
+    long getIndexedLength() {
+        return boundaries.last();
+    }
+
+    /**
+     * Does this index exactly describe the current state of the given data file.
+     * @param dataFile the data file.
+     * @return {@code true} if the length and last modified time haven't changed.
+     */
+    boolean isCurrentFor(File dataFile) {
+        return dataFile.length() == fileLength && dataFile.lastModified() == lastModified;
+    }
+
+    /**
+     * Can this index be used for the given data file.  The index is usable
+     * if the file hasn't changed or, for uncompressed files, if the file has only been appended to
+     * in which case parsing only has to resume from {@link #getIndexedLength()}.
+     * A file that is the same length but was modified since it was indexed is treated as changed,
+     * and a file that grew has the sampled blocks of its previously indexed bytes checked.
+     *
+     * @param dataFile the data file.
+     * @param appendable can the data file offsets be resumed after an append; this should be
+     *                   {@code false} for compressed files where appending changes the compressed bytes.
+     * @return {@code true} if the offsets in this index are still valid.
+     * @throws IOException if there is a problem reading the data file.
+     */
+    boolean isValidFor(File dataFile, boolean appendable) throws IOException {
+        long currentLength = dataFile.length();
+        if (currentLength < fileLength) {
+            return false;
+        }
+        if (!isCurrentFor(dataFile) && (!appendable || currentLength == fileLength)) {
+            //rewritten in place
+            return false;
+        }
+        return sampleChecksum(dataFile, fileLength) == sampleChecksum;
+    }
+
+    /**
+     * Boundaries are stored as unsigned variable length deltas from the previous
+     * boundary, 7 bits per byte, which is usually 2 bytes per record.
+     */
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed variable length value");
+    }
+
+    /**
+     * Checksum the first {@code length} bytes of the data file.  Small files are checksummed
+     * completely, larger ones only have {@value #NUMBER_OF_SAMPLES} blocks read: the first block,
+     * the last block and the rest evenly spaced between them.
+     */
+    private static long sampleChecksum(File dataFile, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        try (RandomAccessFile raf = new RandomAccessFile(dataFile, "r")) {
+            if (raf.length() < length) {
+                throw new EOFException("data file shorter than " + length);
+            }
+            if (length <= (long) SAMPLE_SIZE * NUMBER_OF_SAMPLES) {
+                byte[] all = new byte[(int) length];
+                raf.readFully(all);
+                crc.update(all, 0, all.length);
+                return crc.getValue();
+            }
+            byte[] sample = new byte[SAMPLE_SIZE];
+            long lastStart = length - SAMPLE_SIZE;
+            for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+                raf.seek(lastStart * i / (NUMBER_OF_SAMPLES - 1));
+                raf.readFully(sample);
+                crc.update(sample, 0, SAMPLE_SIZE);
+            }
+        }
+        return crc.getValue();
+    }
+}
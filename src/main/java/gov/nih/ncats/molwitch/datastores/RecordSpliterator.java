@@ -0,0 +1,94 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * A {@link Spliterator} over a range of record offsets of a {@link ChemicalDataStore}
+ * that looks up each record by its offset.  Since the number of records in each half is known,
+ * splitting is exact and cheap so parallel streams can evenly divide the records
+ * across threads.
+ *
+ * @param <T> the type of record.
+ */
+final class RecordSpliterator<T> implements Spliterator<T> {
+
+    private final LongFunction<T> getter;
+    private long index;
+    private final long end;
+
+    /**
+     * Create a new RecordSpliterator.
+     * @param getter the function to get the record at a given offset which must be
+     *               safe to call from multiple threads.
+     * @param from the first offset (inclusive).
+     * @param to the last offset (exclusive).
+     */
+    RecordSpliterator(LongFunction<T> getter, long from, long to) {
+        this.getter = Objects.requireNonNull(getter);
+        this.index = from;
+        this.end = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        if (index >= end) {
+            return false;
+        }
+        action.accept(getter.apply(index++));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        long i = index;
+        //update index first in case action throws
+        index = end;
+        for (; i < end; i++) {
+            action.accept(getter.apply(i));
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        long mid = (index + end) >>> 1;
+        if (mid <= index) {
+            return null;
+        }
+        RecordSpliterator<T> prefix = new RecordSpliterator<>(getter, index, mid);
+        index = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+    }
+}
@@ -0,0 +1,658 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import gov.nih.ncats.common.io.IOUtil;
+import gov.nih.ncats.common.iter.CloseableIterator;
+import gov.nih.ncats.molwitch.Chemical;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link ChemicalDataStore} that presents many SD files (shards)
+ * as one store with a single global offset space: offsets 0 to the size of the first shard-1
+ * are the records of the first shard, followed by the records of the second shard and so on.
+ *
+ * <p>
+ * Shards are only opened when they are needed.  The number of records in each shard is
+ * computed the first time an offset at or past that shard is requested and then remembered,
+ * so routing an offset to its shard is a binary search over the cumulative record counts.
+ * At most {@link Builder#maxOpenShards(int)} shards are kept open; the least recently used
+ * shard is closed when another one needs to be opened.  A shard that is still being read
+ * by another thread is closed when that thread is done with it.
+ * </p>
+ * <p>
+ * The spliterators and streams split at shard boundaries so that parallel streams
+ * process different shards concurrently with each shard read sequentially.
+ * Creating or splitting them doesn't open any shards: they are only
+ * {@link Spliterator#SIZED} if the record counts of their shards are already known,
+ * otherwise each shard's count is remembered when the thread processing it opens it.
+ * </p>
+ *
+ * Example usage:
+ * <pre>
+ * {@code
+ * try(ChemicalDataStore store = ShardedChemicalDataStore.builder(shardFiles)
+ *                                                .maxOpenShards(32)
+ *                                                .build();
+ *     Stream<Chemical> stream = store.stream()){
+ *
+ *     stream.parallel().forEach(...);
+ * }
+ * }
+ * </pre>
+ *
+ * This class is threadsafe if the shard stores are.
+ */
+public final class ShardedChemicalDataStore implements ChemicalDataStore {
+    /**
+     * Default maximum number of shards to keep open at the same time.
+     */
+    public static final int DEFAULT_MAX_OPEN_SHARDS = 16;
+
+    /**
+     * Opens a single shard.
+     */
+    @FunctionalInterface
+    public interface ShardOpener {
+        /**
+         * Open the given shard file.
+         * @param shard the shard file.
+         * @return a new ChemicalDataStore; can not be null.
+         * @throws IOException if there is a problem opening the shard.
+         */
+        ChemicalDataStore open(File shard) throws IOException;
+    }
+
+    private final List<File> shardFiles;
+    private final ShardOpener opener;
+    private final int maxOpenShards;
+
+    /**
+     * cumulativeEnds[i] is the global offset one past the last record of shard i;
+     * only the first knownShards entries are valid.
+     */
+    private final long[] cumulativeEnds;
+    private volatile int knownShards;
+    private final Object countLock = new Object();
+    /**
+     * the number of records in each shard or -1 if not known yet;
+     * unlike cumulativeEnds these can be learned in any order.
+     */
+    private final AtomicLongArray shardSizes;
+
+    /**
+     * guarded by itself.
+     */
+    private final LinkedHashMap<Integer, OpenShard> openShards = new LinkedHashMap<>(16, 0.75F, true);
+    /**
+     * shards that were evicted while still leased and so haven't been closed yet;
+     * guarded by openShards.
+     */
+    private final List<OpenShard> evictedShards = new ArrayList<>();
+    private boolean closed;
+    /**
+     * do the shards have efficient random access; null until known.
+     */
+    private volatile Boolean randomAccessShards;
+
+    private ShardedChemicalDataStore(Builder builder) {
+        this.shardFiles = new ArrayList<>(builder.shardFiles);
+        this.opener = builder.opener;
+        this.maxOpenShards = builder.maxOpenShards;
+        this.randomAccessShards = builder.randomAccessShards;
+        this.cumulativeEnds = new long[shardFiles.size()];
+        this.shardSizes = new AtomicLongArray(shardFiles.size());
+        for (int i = 0; i < shardFiles.size(); i++) {
+            shardSizes.set(i, -1);
+        }
+    }
+
+    /**
+     * Create a new Builder for the given shard files in global offset order.
+     * @param shardFiles the shard files; can not be null or contain nulls.
+     * @return a new Builder; will never be null.
+     */
+    public static Builder builder(List<File> shardFiles) {
+        return new Builder(shardFiles);
+    }
+
+    /**
+     * Get the number of shards.
+     * @return the number of shards.
+     */
+    public int getNumberOfShards() {
+        return shardFiles.size();
+    }
+
+    private static final class OpenShard {
+        private final ChemicalDataStore store;
+        /**
+         * guarded by openShards.
+         */
+        private int leases;
+        private boolean evicted;
+        private boolean closed;
+
+        OpenShard(ChemicalDataStore store) {
+            this.store = store;
+        }
+    }
+
+    private OpenShard acquire(int shard) {
+        synchronized (openShards) {
+            checkNotClosed();
+            OpenShard openShard = openShards.get(shard);
+            if (openShard != null) {
+                openShard.leases++;
+                return openShard;
+            }
+        }
+        //open outside the lock since it may be slow
+        ChemicalDataStore store;
+        try {
+            store = Objects.requireNonNull(opener.open(shardFiles.get(shard)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (openShards) {
+            OpenShard openShard = openShards.get(shard);
+            if (closed || openShard != null) {
+                //closed or another thread opened it first
+                IOUtil.closeQuietly(store);
+                checkNotClosed();
+                openShard.leases++;
+                return openShard;
+            }
+            openShard = new OpenShard(store);
+            openShard.leases = 1;
+            openShards.put(shard, openShard);
+            Iterator<OpenShard> iter = openShards.values().iterator();
+            while (openShards.size() > maxOpenShards && iter.hasNext()) {
+                OpenShard eldest = iter.next();
+                iter.remove();
+                eldest.evicted = true;
+                if (eldest.leases == 0) {
+                    eldest.closed = true;
+                    IOUtil.closeQuietly(eldest.store);
+                } else {
+                    evictedShards.add(eldest);
+                }
+            }
+            return openShard;
+        }
+    }
+
+    private void release(OpenShard openShard) {
+        synchronized (openShards) {
+            openShard.leases--;
+            if (openShard.evicted && openShard.leases == 0 && !openShard.closed) {
+                openShard.closed = true;
+                evictedShards.remove(openShard);
+                IOUtil.closeQuietly(openShard.store);
+            }
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("already closed");
+        }
+    }
+
+    /**
+     * Make sure the record counts of at least the first {@code numberOfShards} shards are known.
+     */
+    private void ensureCountsKnown(int numberOfShards) {
+        if (knownShards >= numberOfShards) {
+            return;
+        }
+        synchronized (countLock) {
+            for (int i = knownShards; i < numberOfShards; i++) {
+                long size = shardSizes.get(i);
+                if (size < 0) {
+                    OpenShard openShard = acquire(i);
+                    try {
+                        size = rememberSize(i, openShard.store);
+                    } finally {
+                        release(openShard);
+                    }
+                }
+                cumulativeEnds[i] = (i == 0 ? 0 : cumulativeEnds[i - 1]) + size;
+                //volatile write publishes cumulativeEnds[i]
+                knownShards = i + 1;
+            }
+        }
+    }
+
+    private long rememberSize(int shard, ChemicalDataStore store) {
+        long size = shardSizes.get(shard);
+        if (size < 0) {
+            size = store.getSize();
+            shardSizes.set(shard, size);
+        }
+        return size;
+    }
+
+    private long shardStart(int shard) {
+        return shard == 0 ? 0 : cumulativeEnds[shard - 1];
+    }
+
+    /**
+     * Find the shard that contains the given global offset.
+     */
+    private int route(long offset) {
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException("offset " + offset);
+        }
+        int known = knownShards;
+        while (known == 0 || cumulativeEnds[known - 1] <= offset) {
+            if (known == shardFiles.size()) {
+                throw new IndexOutOfBoundsException("offset " + offset + " size " + getSize());
+            }
+            //only open shards until we find the one that has this offset
+            ensureCountsKnown(known + 1);
+            known = knownShards;
+        }
+        //first shard whose end is > offset; this skips empty shards
+        int low = 0;
+        int high = known - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativeEnds[mid] > offset) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public long getSize() {
+        int numberOfShards = shardFiles.size();
+        if (numberOfShards == 0) {
+            return 0;
+        }
+        ensureCountsKnown(numberOfShards);
+        return cumulativeEnds[numberOfShards - 1];
+    }
+
+    @Override
+    public String getRaw(long offset) {
+        int shard = route(offset);
+        OpenShard openShard = acquire(shard);
+        try {
+            return openShard.store.getRaw(offset - shardStart(shard));
+        } finally {
+            release(openShard);
+        }
+    }
+
+    @Override
+    public Chemical get(long offset) {
+        int shard = route(offset);
+        OpenShard openShard = acquire(shard);
+        try {
+            return openShard.store.get(offset - shardStart(shard));
+        } finally {
+            release(openShard);
+        }
+    }
+
+    /**
+     * Routing an offset to its shard is cheap so this store has efficient random access
+     * if its shards do.  Unless set with {@link Builder#randomAccessShards(boolean)},
+     * all shards are assumed to be the same kind of store as the first one,
+     * which is opened to ask.
+     */
+    @Override
+    public boolean hasEfficientRandomAccess() {
+        Boolean randomAccess = randomAccessShards;
+        if (randomAccess == null) {
+            if (shardFiles.isEmpty()) {
+                return true;
+            }
+            OpenShard openShard = acquire(0);
+            try {
+                randomAccess = openShard.store.hasEfficientRandomAccess();
+            } finally {
+                release(openShard);
+            }
+            randomAccessShards = randomAccess;
+        }
+        return randomAccess;
+    }
+
+    @Override
+    public CloseableIterator<String> getRawIterator() {
+        return new ShardIterator<>(0, shardFiles.size(), ChemicalDataStore::getRawIterator);
+    }
+
+    @Override
+    public CloseableIterator<Chemical> getIterator() {
+        return new ShardIterator<>(0, shardFiles.size(), ChemicalDataStore::getIterator);
+    }
+
+    /**
+     * The returned Spliterator releases the shard it is reading once that shard has been read;
+     * use {@link #rawStream()} and close the Stream if you might stop early.
+     */
+    @Override
+    public Spliterator<String> rawSpliterator() {
+        return new ShardSpliterator<>(0, shardFiles.size(), ChemicalDataStore::getRawIterator);
+    }
+
+    /**
+     * The returned Spliterator releases the shard it is reading once that shard has been read;
+     * use {@link #stream()} and close the Stream if you might stop early.
+     */
+    @Override
+    public Spliterator<Chemical> spliterator() {
+        return new ShardSpliterator<>(0, shardFiles.size(), ChemicalDataStore::getIterator);
+    }
+
+    @Override
+    public Stream<String> rawStream() {
+        ShardSpliterator<String> spliterator = new ShardSpliterator<>(0, shardFiles.size(), ChemicalDataStore::getRawIterator);
+        return StreamSupport.stream(spliterator, false)
+                        .onClose(spliterator::close);
+    }
+
+    @Override
+    public Stream<Chemical> stream() {
+        ShardSpliterator<Chemical> spliterator = new ShardSpliterator<>(0, shardFiles.size(), ChemicalDataStore::getIterator);
+        return StreamSupport.stream(spliterator, false)
+                        .onClose(spliterator::close);
+    }
+
+    /**
+     * Closes all the open shards, including any that are still being read.
+     */
+    @Override
+    public void close() {
+        List<OpenShard> toClose;
+        synchronized (openShards) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(openShards.values());
+            toClose.addAll(evictedShards);
+            openShards.clear();
+            evictedShards.clear();
+            for (OpenShard openShard : toClose) {
+                openShard.closed = true;
+            }
+        }
+        for (OpenShard openShard : toClose) {
+            IOUtil.closeQuietly(openShard.store);
+        }
+    }
+
+    /**
+     * Iterates over the records of a range of shards in order,
+     * keeping only the current shard leased.
+     */
+    private class ShardIterator<T> implements CloseableIterator<T> {
+        private int nextShard;
+        private final int endShard;
+        private final Function<ChemicalDataStore, CloseableIterator<T>> iteratorFunction;
+        private OpenShard current;
+        private CloseableIterator<T> currentIterator;
+
+        ShardIterator(int fromShard, int toShard, Function<ChemicalDataStore, CloseableIterator<T>> iteratorFunction) {
+            this.nextShard = fromShard;
+            this.endShard = toShard;
+            this.iteratorFunction = iteratorFunction;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (currentIterator == null || !currentIterator.hasNext()) {
+                closeCurrent();
+                if (nextShard >= endShard) {
+                    return false;
+                }
+                int shard = nextShard++;
+                current = acquire(shard);
+                //the shard is open anyway so later routing doesn't have to reopen it
+                rememberSize(shard, current.store);
+                currentIterator = iteratorFunction.apply(current.store);
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currentIterator.next();
+        }
+
+        private void closeCurrent() {
+            if (currentIterator != null) {
+                IOUtil.closeQuietly(currentIterator);
+                currentIterator = null;
+            }
+            if (current != null) {
+                release(current);
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            closeCurrent();
+            nextShard = endShard;
+        }
+    }
+
+    /**
+     * Splits by shard so each shard is read sequentially by a single thread.
+     * Shards are only opened when they are traversed so creating and splitting
+     * doesn't wait for every shard to be opened just to count its records.
+     * Closing any Spliterator split from the same original closes them all,
+     * since a Stream only knows about the original.
+     */
+    private final class ShardSpliterator<T> implements Spliterator<T>, Closeable {
+        private int fromShard;
+        private final int toShard;
+        private final Function<ChemicalDataStore, CloseableIterator<T>> iteratorFunction;
+        /**
+         * this and every Spliterator split from the same original; guarded by itself.
+         */
+        private final List<ShardSpliterator<T>> family;
+        private volatile boolean closed;
+        /**
+         * only sized if the counts of all our shards were already known when this was created.
+         */
+        private final boolean sized;
+        private ShardIterator<T> iterator;
+        private long consumed;
+
+        ShardSpliterator(int fromShard, int toShard, Function<ChemicalDataStore, CloseableIterator<T>> iteratorFunction) {
+            this(fromShard, toShard, iteratorFunction, new ArrayList<>());
+        }
+
+        private ShardSpliterator(int fromShard, int toShard, Function<ChemicalDataStore, CloseableIterator<T>> iteratorFunction,
+                                 List<ShardSpliterator<T>> family) {
+            this.fromShard = fromShard;
+            this.toShard = toShard;
+            this.iteratorFunction = iteratorFunction;
+            this.sized = knownShards >= toShard;
+            this.family = family;
+            synchronized (family) {
+                family.add(this);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            if (iterator == null) {
+                iterator = new ShardIterator<>(fromShard, toShard, iteratorFunction);
+            }
+            if (iterator.hasNext()) {
+                consumed++;
+                action.accept(iterator.next());
+                return true;
+            }
+            iterator.close();
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (closed) {
+                return;
+            }
+            if (iterator == null) {
+                iterator = new ShardIterator<>(fromShard, toShard, iteratorFunction);
+            }
+            try {
+                while (iterator.hasNext()) {
+                    consumed++;
+                    action.accept(iterator.next());
+                }
+            } finally {
+                iterator.close();
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (closed || iterator != null || toShard - fromShard < 2) {
+                return null;
+            }
+            int mid = (fromShard + toShard) >>> 1;
+            ShardSpliterator<T> prefix = new ShardSpliterator<>(fromShard, mid, iteratorFunction, family);
+            fromShard = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            if (!sized) {
+                return Long.MAX_VALUE;
+            }
+            long size = toShard == 0 ? 0 : cumulativeEnds[toShard - 1] - shardStart(fromShard);
+            return size - consumed;
+        }
+
+        @Override
+        public int characteristics() {
+            return sized ? ORDERED | SIZED | SUBSIZED : ORDERED;
+        }
+
+        /**
+         * Release the shards still being read by this Spliterator and every Spliterator
+         * split from the same original; after this, none of them return any more records.
+         * This must not be called while any of them are still being traversed.
+         */
+        @Override
+        public void close() {
+            List<ShardSpliterator<T>> toClose;
+            synchronized (family) {
+                toClose = new ArrayList<>(family);
+            }
+            for (ShardSpliterator<T> spliterator : toClose) {
+                spliterator.closed = true;
+                if (spliterator.iterator != null) {
+                    spliterator.iterator.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Builder for a {@link ShardedChemicalDataStore}.
+     */
+    public static final class Builder {
+        private final List<File> shardFiles;
+        private int maxOpenShards = DEFAULT_MAX_OPEN_SHARDS;
+        private ShardOpener opener = ChemicalDataStore::forIndexedFile;
+        private Boolean randomAccessShards;
+
+        private Builder(List<File> shardFiles) {
+            for (File f : shardFiles) {
+                Objects.requireNonNull(f);
+            }
+            this.shardFiles = shardFiles;
+        }
+
+        /**
+         * Set the maximum number of shards to keep open at the same time.
+         * @param maxOpenShards the maximum; must be &ge; 1.
+         * @return this.
+         * @throws IllegalArgumentException if maxOpenShards &lt; 1.
+         */
+        public Builder maxOpenShards(int maxOpenShards) {
+            if (maxOpenShards < 1) {
+                throw new IllegalArgumentException("maxOpenShards must be >= 1");
+            }
+            this.maxOpenShards = maxOpenShards;
+            return this;
+        }
+
+        /**
+         * Set how each shard is opened.  By default, shards are opened with
+         * {@link ChemicalDataStore#forIndexedFile(File)} so each shard's record offsets
+         * are saved to a sidecar and don't have to be re-parsed.
+         * @param opener the ShardOpener to use; can not be null.
+         * @return this.
+         */
+        public Builder shardOpener(ShardOpener opener) {
+            this.opener = Objects.requireNonNull(opener);
+            return this;
+        }
+
+        /**
+         * Set whether the stores returned by the {@link #shardOpener(ShardOpener) ShardOpener}
+         * have {@link ChemicalDataStore#hasEfficientRandomAccess() efficient random access}.
+         * By default, the first shard is opened and asked the first time it matters.
+         * @param randomAccessShards {@code true} if every shard has efficient random access.
+         * @return this.
+         */
+        public Builder randomAccessShards(boolean randomAccessShards) {
+            this.randomAccessShards = randomAccessShards;
+            return this;
+        }
+
+        /**
+         * Create a new {@link ShardedChemicalDataStore}.  No shards are opened yet.
+         * @return a new ShardedChemicalDataStore; will never be null.
+         */
+        public ShardedChemicalDataStore build() {
+            return new ShardedChemicalDataStore(this);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * A threadsafe least recently used cache of values keyed by record offset
+ * bounded by the total weight of its values.
+ *
+ * @param <V> the type of value cached.
+ */
+final class WeightedLruCache<V> {
+
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<Long, V> map = new LinkedHashMap<>(16, 0.75F, true);
+    private long totalWeight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    WeightedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get the cached value and update the hit or miss count.
+     * @param key the record offset.
+     * @return the cached value or null if not cached.
+     */
+    V get(long key) {
+        V value;
+        synchronized (map) {
+            value = map.get(key);
+        }
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Cache the given value evicting the least recently used values
+     * if the maximum weight is exceeded.  Values heavier than the maximum weight
+     * are not cached.
+     * @param key the record offset.
+     * @param value the value to cache; can not be null.
+     */
+    void put(long key, V value) {
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxWeight) {
+            return;
+        }
+        synchronized (map) {
+            V old = map.put(key, value);
+            if (old != null) {
+                totalWeight -= weigher.applyAsLong(old);
+            }
+            totalWeight += weight;
+            Iterator<Map.Entry<Long, V>> iter = map.entrySet().iterator();
+            while (totalWeight > maxWeight && iter.hasNext()) {
+                Map.Entry<Long, V> eldest = iter.next();
+                totalWeight -= weigher.applyAsLong(eldest.getValue());
+                iter.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    void clear() {
+        synchronized (map) {
+            map.clear();
+            totalWeight = 0;
+        }
+    }
+
+    int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    long getTotalWeight() {
+        synchronized (map) {
+            return totalWeight;
+        }
+    }
+
+    CachingChemicalDataStore.Stats getStats() {
+        return new CachingChemicalDataStore.Stats(hits.get(), misses.get(), evictions.get(), size(), getTotalWeight());
+    }
+}
@@ -26,6 +26,10 @@ import java.util.OptionalDouble;
 /**
  * Class that represents a "fingerprint" for
  * a single {@link gov.nih.ncats.molwitch.Chemical} generated by a Fingerprinter.
+ * <p>
+ * Fingerprints are immutable.  Internally the bits are packed
+ * into a fixed width {@code long[]} so the similarity computations
+ * can work a word at a time without allocating any intermediate objects.
  * 
  * @author katzelda
  *
@@ -56,15 +60,36 @@ public class Fingerprint {
 	    }
 	    return bitset;
 	}
+
+	/**
+	 * Create a new Fingerprint instance from the given
+	 * array of 64 bit words using the same bit ordering as {@link BitSet#valueOf(long[])}.
+	 * The array is copied so later changes to the passed in array
+	 * will not affect the returned Fingerprint.
+	 *
+	 * @param words the bits of the fingerprint; can not be null.
+	 * @param bitLength the length of this fingerprint.
+	 * @return a new Fingerprint object.
+	 * @throws NullPointerException if words is null.
+	 * @throws IllegalArgumentException if bitLength is &lt; 1.
+	 */
+	public static Fingerprint fromLongArray(long[] words, int bitLength) {
+		return new Fingerprint(copyWords(words, 0, words.length, bitLength), bitLength, true);
+	}
 	/**
-	 * our internal fingerprint storage is a BitSet
-	 * for its compact-ness and ease of logical operations.
+	 * our internal fingerprint storage is an array of 64 bit words
+	 * sized to exactly hold {@link #bitLength} bits.
+	 * Any bits past the bitLength are always 0.
 	 */
-	private final BitSet bits;
+	private final long[] words;
 	/**
-	 * Number of bits stored for this fingerprint (this may be different than the Bitset length).
+	 * Number of bits stored for this fingerprint (this may be different than the highest set bit).
 	 */
 	private final int bitLength;
+	/**
+	 * Number of bits set, computed once since fingerprints are immutable.
+	 */
+	private final int cardinality;
 	
 	/**
 	 * Create a new fingerprint object for the given bitset and the length of this fingerprint.
@@ -72,16 +97,13 @@ public class Fingerprint {
 	 * 
 	 * @param bits the {@link BitSet} of this fingerprint.
 	 * @param bitLength the length of this fingerprint.  The bitlength should always be
-	 *                  &ge; the highest set bit in the given bitset.
+	 *                  &ge; the highest set bit in the given bitset; any bits set past the bitLength
+	 *                  are ignored.
 	 * @throws NullPointerException if bits is null.
 	 * @throws IllegalArgumentException if bitLength is &lt; 1.
 	 */
 	public Fingerprint(BitSet bits, int bitLength) {
-		if(bitLength <1){
-			throw new IllegalArgumentException("bitLength must be >=1");
-		}
-		this.bitLength = bitLength;
-		this.bits = Objects.requireNonNull(bits);
+		this(fromBitSet(Objects.requireNonNull(bits), bitLength), bitLength, true);
 	}
 	/**
 	 * Create a new fingerprint object for the given byte array.
@@ -89,9 +111,72 @@ public class Fingerprint {
 	 * @param bytes the byte array of this fingerprint.
 	 */
 	public Fingerprint(byte[] bytes) {
+		this(fromBytes(bytes), bytes.length *8, true);
+	}
+
+	/**
+	 * Create a new Fingerprint that takes ownership of the given words array
+	 * without copying.
+	 * @param words the words array which must already be the correct size
+	 *              for the bitLength with any bits past the bitLength cleared.
+	 * @param bitLength the length of this fingerprint.
+	 * @param unused only to distinguish this constructor.
+	 */
+	private Fingerprint(long[] words, int bitLength, boolean unused){
+		this.bitLength = bitLength;
+		this.words = words;
+		this.cardinality = cardinality(words, 0, words.length);
+	}
+
+	/**
+	 * Create a new Fingerprint that wraps the given words array
+	 * without copying it.
+	 * This should only be used by code in this package
+	 * that already knows the array is correctly sized and masked
+	 * and will not be modified.
+	 */
+	static Fingerprint wrap(long[] words, int bitLength){
+		return new Fingerprint(words, bitLength, true);
+	}
+
+	/**
+	 * Get the number of 64 bit words needed to store a fingerprint of the given length.
+	 * @param bitLength the length of the fingerprint in bits.
+	 * @return the number of longs.
+	 */
+	static int numberOfWords(int bitLength){
+		return (bitLength + 63) >>> 6;
+	}
+
+	private static long[] fromBitSet(BitSet bits, int bitLength){
+		long[] a = bits.toLongArray();
+		return copyWords(a, 0, a.length, bitLength);
+	}
+
+	private static long[] fromBytes(byte[] bytes){
+		//same byte ordering as BitSet.valueOf(byte[])
+		long[] a = new long[numberOfWords(bytes.length * 8)];
+		for(int i=0; i< bytes.length; i++){
+			a[i >>> 3] |= (bytes[i] & 0xFFL) << ((i & 7) << 3);
+		}
+		return a;
+	}
 
-		this.bitLength = bytes.length *8;
-		this.bits = BitSet.valueOf(bytes);
+	/**
+	 * Copy the given range of words into a new array sized for the given bitLength
+	 * clearing any bits past the bitLength.
+	 */
+	static long[] copyWords(long[] src, int offset, int length, int bitLength){
+		if(bitLength <1){
+			throw new IllegalArgumentException("bitLength must be >=1");
+		}
+		long[] a = new long[numberOfWords(bitLength)];
+		System.arraycopy(src, offset, a, 0, Math.min(length, a.length));
+		int remainder = bitLength & 63;
+		if(remainder !=0){
+			a[a.length-1] &= (1L << remainder) -1;
+		}
+		return a;
 	}
 	/**
 	 * Perform a logical AND operation between this
@@ -106,12 +191,13 @@ public class Fingerprint {
 	 * @throws NullPointerException if other is null.
 	 */
 	public Fingerprint and(Fingerprint other){
-		//work off of a copy since
-		//the and() operation on BitSet modifies 
-		BitSet result = copyOfBitset();
-		result.and(other.bits);
 		int andedLength = Math.max(bitLength, other.bitLength);
-		return new Fingerprint(result, andedLength);
+		long[] result = new long[numberOfWords(andedLength)];
+		int n = Math.min(words.length, other.words.length);
+		for(int i=0; i< n; i++){
+			result[i] = words[i] & other.words[i];
+		}
+		return new Fingerprint(result, andedLength, true);
 	}
 	
 	/**
@@ -126,19 +212,11 @@ public class Fingerprint {
 	 * @throws NullPointerException if other is null.
 	 */
 	public boolean compatible(Fingerprint other){
-		BitSet otherbits = other.bits;
-		
-		for(int i=bits.nextSetBit(0); i>=0; i = bits.nextSetBit(i+1) ){
-			 // operate on index i here
-		     if (i == Integer.MAX_VALUE) {
-		         break; // or (i+1) would overflow
-		     }
-			
-			if(!otherbits.get(i)){
-				return false;
-			}
+		if(cardinality > other.cardinality){
+			//can't possibly have all our bits set
+			return false;
 		}
-		return true;
+		return isSubset(words, 0, other.words, 0, words.length, other.words.length);
 	}
 	
 	/**
@@ -148,44 +226,48 @@ public class Fingerprint {
 	 * @return the number of bits set to {@code true} in this fingerprint.
 	 */
 	public int populationCount(){
-		return bits.cardinality();
+		return cardinality;
 	}
 	/**
 	 * Convert this fingeprint into a byte array.
 	 * @return a new byte array.
 	 */
 	public byte[] toByteArray(){
-		//can't just use BitSet#toByteArray()
-		//because that only populates up to the highest set bit
-		//so each call won't be a consistent size
+		//make a full length byte array
+		//so each call will be a consistent size
 		//even for the same FingerPrinter implementation
 		//with the same parameters but different Chemical.
-		
-		//so make a full length byte array
-		//and then copy the contents from the bitset into it.
-		//this should then include the correct amount of trailing zeroes.
 		byte[] bytes = new byte[bitLength/8];
-		byte[] bitsetBytes = bits.toByteArray();
-		System.arraycopy(bitsetBytes, 0, bytes, 0, Math.min(bitsetBytes.length, bytes.length));
+		for(int i=0; i< bytes.length; i++){
+			bytes[i] = (byte) (words[i >>> 3] >>> ((i & 7) << 3));
+		}
 		return bytes;
 	}
     /**
-     * Convert this fingeprint into a byte array.
-     * @return a new byte array.
+     * Convert this fingeprint into an int array.
+     * @return a new int array.
      */
 	public int[] toIntArray(){
         int[] temp = new int[bitLength / 32];
 
         for (int i = 0; i < temp.length; i++) {
-            for (int j = 0; j < 32; j++) {
-                if (bits.get(i * 32 + j)) {
-                    temp[i] |= 1 << j;
-                }
-            }
+			temp[i] = (int) (words[i >>> 1] >>> ((i & 1) << 5));
         }
 
         return temp;
     }
+
+	/**
+	 * Convert this fingerprint into an array of 64 bit words
+	 * using the same bit ordering as {@link BitSet#toLongArray()}.
+	 * The returned array will always be {@code ceil(getLength()/64)} long
+	 * so every fingerprint of the same length will have the same size array.
+	 *
+	 * @return a new long array.
+	 */
+	public long[] toLongArray(){
+		return words.clone();
+	}
 	/**
 	 * Convert this fingerprint to a {@link BitSet}.
 	 * Please note, the returned BitSet may have different lengths
@@ -194,12 +276,16 @@ public class Fingerprint {
 	 * @return the {@link BitSet}; will never be null.
 	 */
 	public BitSet toBitSet() {
-		return copyOfBitset();
-		
+		return BitSet.valueOf(words);
 	}
 
-	private BitSet copyOfBitset() {
-		return (BitSet) bits.clone();
+	/**
+	 * Get the internal words array without copying.
+	 * Callers must not modify the returned array.
+	 * @return the internal array.
+	 */
+	long[] words(){
+		return words;
 	}
 	/**
 	 * Get the hamming distance between this {@link Fingerprint}
@@ -212,12 +298,9 @@ public class Fingerprint {
 	 * @return the hamming distance as an int.
 	 */
 	public int hammingDistance(Fingerprint other){
-		//work off of a copy since
-		//the and() operation on BitSet modifies 
-		BitSet result = copyOfBitset();
-		result.xor(other.bits);
-		
-		return result.cardinality();
+		//|A xor B| = |A| + |B| - 2|A and B|
+		return cardinality + other.cardinality
+				- 2 * intersectionCount(words, 0, other.words, 0, Math.min(words.length, other.words.length));
 	}
 	/**
 	 * Compute the Tanimoto Similarity (also known as
@@ -233,21 +316,8 @@ public class Fingerprint {
 	 * @throws NullPointerException if other is null.
 	 */
 	public double tanimotoSimilarity(Fingerprint other){
-		
-		BitSet and = copyOfBitset();
-		and.and(other.bits);
-		
-		BitSet or = copyOfBitset();
-		 or.or(other.bits);
-		
-		//jaccard index is M(11) / (M01 + M10 + M11)
-		int orCardinality = or.cardinality();
-		if(orCardinality ==0){
-			//avoid divide by 0
-			return 1D;
-		}
-		return and.cardinality() / (double)orCardinality;
-		
+		int and = intersectionCount(words, 0, other.words, 0, Math.min(words.length, other.words.length));
+		return tanimoto(and, cardinality, other.cardinality);
 	}
 	
 	/**
@@ -268,24 +338,16 @@ public class Fingerprint {
 	 * @throws NullPointerException if other is null.
 	 */
 	public OptionalDouble tanimotoSimilarityShortCircuit(Fingerprint other){
-		
-		BitSet and = copyOfBitset();
-		and.and(other.bits);
-		
-		if(!bits.equals(and)){
+		if(!compatible(other)){
 			return OptionalDouble.empty();
 		}
-		
-		BitSet or = copyOfBitset();
-		 or.or(other.bits);
-		
-		//jaccard index is M(11) / (M01 + M10 + M11)
-		int orCardinality = or.cardinality();
-		if(orCardinality ==0){
+		//if all our bits are also set in the other fingerprint
+		//then M11 is our cardinality and the union is the other's cardinality
+		if(other.cardinality ==0){
 			//avoid divide by 0
 			return OPTION_DOUBLE_EXACT_MATCH;
 		}
-		return OptionalDouble.of(and.cardinality() / (double)orCardinality);
+		return OptionalDouble.of(cardinality / (double) other.cardinality);
 		
 	}
 	/**
@@ -308,9 +370,63 @@ public class Fingerprint {
 	public int getLength() {
 		return bitLength;
 	}
+
+	/**
+	 * Compute the Tanimoto similarity given the intersection count
+	 * and the population counts of both fingerprints.
+	 */
+	static double tanimoto(int intersection, int cardinalityA, int cardinalityB){
+		//jaccard index is M(11) / (M01 + M10 + M11)
+		int union = cardinalityA + cardinalityB - intersection;
+		if(union ==0){
+			//avoid divide by 0
+			return 1D;
+		}
+		return intersection / (double) union;
+	}
+
+	/**
+	 * Count the number of set bits in the given range of words.
+	 */
+	static int cardinality(long[] a, int offset, int length){
+		int count=0;
+		for(int i=offset, end = offset+length; i< end; i++){
+			count += Long.bitCount(a[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Count the number of bits set in both of the given ranges of words.
+	 */
+	static int intersectionCount(long[] a, int aOffset, long[] b, int bOffset, int length){
+		int count=0;
+		for(int i=0; i< length; i++){
+			count += Long.bitCount(a[aOffset + i] & b[bOffset + i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Are all the bits set in the query words range also set in the target words range.
+	 */
+	static boolean isSubset(long[] query, int queryOffset, long[] target, int targetOffset, int queryLength, int targetLength){
+		int n = Math.min(queryLength, targetLength);
+		for(int i=0; i< n; i++){
+			if((query[queryOffset +i] & ~target[targetOffset +i]) !=0){
+				return false;
+			}
+		}
+		for(int i=n; i< queryLength; i++){
+			if(query[queryOffset + i] !=0){
+				return false;
+			}
+		}
+		return true;
+	}
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(toByteArray());
+		return 31 * bitLength + Arrays.hashCode(words);
 	}
 	@Override
 	public boolean equals(Object obj) {
@@ -321,11 +437,13 @@ public class Fingerprint {
 		if (getClass() != obj.getClass())
 			return false;
 		Fingerprint other = (Fingerprint) obj;
-		return Arrays.equals(toByteArray(), other.toByteArray());
+		return bitLength == other.bitLength
+				&& cardinality == other.cardinality
+				&& Arrays.equals(words, other.words);
 	}
 	@Override
 	public String toString() {
-		return "Fingerprint [bits=" + bits + "]";
+		return "Fingerprint [bits=" + toBitSet() + "]";
 	}
 	
 	
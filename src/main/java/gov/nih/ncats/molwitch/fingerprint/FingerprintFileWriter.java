@@ -0,0 +1,246 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.fingerprint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import gov.nih.ncats.common.io.IOUtil;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.AbstractCfpOptions;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.FcfpSpecification;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.FingerprintSpecification;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.PathBasedSpecification;
+
+/**
+ * Writes {@link Fingerprint}s to a compact binary file
+ * that can later be opened with {@link MappedFingerprintFile}.
+ * <p>
+ * The file format is a header followed by fixed width records:
+ * <pre>
+ *     int     magic number {@code MWFP}
+ *     int     format version
+ *     long    number of records
+ *     int     fingerprint length in bits
+ *     int     path depth or circular fingerprint diameter ({@code -1} if unknown)
+ *     UTF     fingerprint specification name (see {@link java.io.DataOutput#writeUTF(String)}),
+ *             {@code FCFP} for FCFP specifications
+ *     padding to the next multiple of 8 bytes
+ *     records: long id followed by {@code ceil(length/64)} longs of fingerprint bits
+ * </pre>
+ * All values are big endian.
+ * <p>
+ * This class is NOT threadsafe.
+ *
+ * @author katzelda
+ *
+ */
+public class FingerprintFileWriter implements Closeable {
+
+	static final int MAGIC_NUMBER = 0x4D574650; // MWFP
+	static final int VERSION = 1;
+	/**
+	 * offset of the record count in the header which
+	 * isn't known until the file is closed.
+	 */
+	static final int RECORD_COUNT_OFFSET = 8;
+	/**
+	 * name written for FCFP specifications since their
+	 * {@link FingerprintSpecification#name()} is the same as ECFP's.
+	 */
+	static final String FCFP_NAME = "FCFP";
+
+	private final FileChannel channel;
+	private final int bitLength;
+	private final int wordsPerFingerprint;
+	private final ByteBuffer buffer;
+	private long count;
+	private boolean closed;
+
+	/**
+	 * Create a new FingerprintFileWriter for fingerprints
+	 * made with the given specification.  The length and depth (or diameter)
+	 * are taken from the specification if it is a {@link PathBasedSpecification}
+	 * or an ECFP/FCFP specification.
+	 *
+	 * @param outputFile the file to write to; can not be null.  If the file already
+	 *                   exists, it will be overwritten.
+	 * @param spec the specification used to make the fingerprints; can not be null.
+	 * @throws IOException if there is a problem creating the file.
+	 * @throws IllegalArgumentException if the length of the fingerprint can not be determined from the spec.
+	 * @throws NullPointerException if any parameter is null.
+	 */
+	public FingerprintFileWriter(File outputFile, FingerprintSpecification spec) throws IOException{
+		this(outputFile, nameOf(spec), lengthOf(spec), depthOf(spec));
+	}
+
+	/**
+	 * Create a new FingerprintFileWriter.
+	 *
+	 * @param outputFile the file to write to; can not be null.  If the file already
+	 *                   exists, it will be overwritten.
+	 * @param specName the name of the fingerprint algorithm; can not be null.
+	 * @param bitLength the length of every fingerprint that will be written.
+	 * @param depth the path depth or diameter of the fingerprint algorithm or {@code -1} if not applicable.
+	 * @throws IOException if there is a problem creating the file.
+	 * @throws IllegalArgumentException if bitLength &lt; 1.
+	 * @throws NullPointerException if any object parameter is null.
+	 */
+	public FingerprintFileWriter(File outputFile, String specName, int bitLength, int depth) throws IOException{
+		Objects.requireNonNull(specName);
+		if(bitLength <1){
+			throw new IllegalArgumentException("bitLength must be >=1");
+		}
+		this.bitLength = bitLength;
+		this.wordsPerFingerprint = Fingerprint.numberOfWords(bitLength);
+		int recordBytes = recordSize(bitLength);
+		this.buffer = ByteBuffer.allocate(recordBytes * Math.max(1, 65_536 / recordBytes));
+
+		File parent = outputFile.getAbsoluteFile().getParentFile();
+		if(parent !=null){
+			IOUtil.mkdirs(parent);
+		}
+		channel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			writeFully(ByteBuffer.wrap(createHeader(specName, bitLength, depth)));
+		}catch(IOException e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static String nameOf(FingerprintSpecification spec){
+		if(spec instanceof FcfpSpecification){
+			return FCFP_NAME;
+		}
+		return spec.name();
+	}
+
+	private static int lengthOf(FingerprintSpecification spec){
+		if(spec instanceof PathBasedSpecification){
+			return ((PathBasedSpecification) spec).getLength();
+		}
+		if(spec instanceof AbstractCfpOptions){
+			return ((AbstractCfpOptions<?>) spec).getBitLength();
+		}
+		throw new IllegalArgumentException("can not determine fingerprint length of " + spec.name());
+	}
+
+	private static int depthOf(FingerprintSpecification spec){
+		if(spec instanceof PathBasedSpecification){
+			return ((PathBasedSpecification) spec).getDepth();
+		}
+		if(spec instanceof AbstractCfpOptions){
+			return ((AbstractCfpOptions<?>) spec).getDiameter();
+		}
+		return -1;
+	}
+
+	static int recordSize(int bitLength){
+		//id + fingerprint words
+		return 8 * (1 + Fingerprint.numberOfWords(bitLength));
+	}
+
+	private static byte[] createHeader(String specName, int bitLength, int depth) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try(DataOutputStream out = new DataOutputStream(bytes)){
+			out.writeInt(MAGIC_NUMBER);
+			out.writeInt(VERSION);
+			out.writeLong(0L); // record count is updated on close
+			out.writeInt(bitLength);
+			out.writeInt(depth);
+			out.writeUTF(specName);
+			//pad so the records are 8 byte aligned
+			while(out.size() % 8 !=0){
+				out.writeByte(0);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Write the given fingerprint with the given id.
+	 * @param id the id of this record, usually the offset of the record in a
+	 *           {@link gov.nih.ncats.molwitch.datastores.ChemicalDataStore}.
+	 * @param fingerprint the fingerprint to write; can not be null.
+	 * @throws IOException if there is a problem writing to the file.
+	 * @throws NullPointerException if fingerprint is null.
+	 * @throws IllegalArgumentException if the fingerprint is the wrong length.
+	 */
+	public void write(long id, Fingerprint fingerprint) throws IOException{
+		if(closed){
+			throw new IOException("already closed");
+		}
+		if(fingerprint.getLength() != bitLength){
+			throw new IllegalArgumentException("fingerprint length " + fingerprint.getLength() + " does not match file length " + bitLength);
+		}
+		if(buffer.remaining() < 8 * (1 + wordsPerFingerprint)){
+			flush();
+		}
+		buffer.putLong(id);
+		for(long word : fingerprint.words()){
+			buffer.putLong(word);
+		}
+		count++;
+	}
+
+	/**
+	 * Get the number of records written so far.
+	 * @return the number of records.
+	 */
+	public long getCount(){
+		return count;
+	}
+
+	private void flush() throws IOException{
+		buffer.flip();
+		writeFully(buffer);
+		buffer.clear();
+	}
+
+	private void writeFully(ByteBuffer buf) throws IOException{
+		while(buf.hasRemaining()){
+			channel.write(buf);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		try {
+			flush();
+			ByteBuffer countBuffer = ByteBuffer.allocate(8);
+			countBuffer.putLong(count).flip();
+			while (countBuffer.hasRemaining()) {
+				channel.write(countBuffer, RECORD_COUNT_OFFSET + countBuffer.position());
+			}
+		}finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,375 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.fingerprint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An in-memory index of {@link Fingerprint}s that can
+ * quickly find the fingerprints most similar to a query
+ * using Tanimoto similarity.
+ * <p>
+ * All the fingerprints are stored contiguously in one {@code long[]}
+ * and grouped into buckets by their population count.  Since the Tanimoto
+ * similarity between fingerprints with population counts {@code a} and {@code b}
+ * can never be more than {@code min(a,b)/max(a,b)} (Swamidass and Baldi), whole buckets
+ * can be skipped without looking at any of their fingerprints.  For a threshold {@code t}
+ * only buckets between {@code t*a} and {@code a/t} are searched.
+ * <p>
+ * Once built, a FingerprintIndex is immutable and may be searched
+ * by multiple threads concurrently.
+ *
+ * @author katzelda
+ *
+ */
+public final class FingerprintIndex {
+
+	private final int bitLength;
+	private final int wordsPerFingerprint;
+	/**
+	 * all fingerprint words sorted by population count.
+	 */
+	private final long[] data;
+	/**
+	 * the user supplied id of the fingerprint at each position in data.
+	 */
+	private final long[] ids;
+	/**
+	 * bucket for population count {@code b} is the positions
+	 * {@code [bucketStart[b], bucketStart[b+1])}.
+	 */
+	private final int[] bucketStart;
+
+	/**
+	 * Create a new {@link Builder} for an index of
+	 * fingerprints that are all the given length.
+	 * @param bitLength the length of every fingerprint that will be added.
+	 * @return a new Builder.
+	 * @throws IllegalArgumentException if bitLength &lt; 1.
+	 */
+	public static Builder builder(int bitLength){
+		return new Builder(bitLength);
+	}
+
+	private FingerprintIndex(int bitLength, long[] data, long[] ids, int[] bucketStart){
+		this.bitLength = bitLength;
+		this.wordsPerFingerprint = Fingerprint.numberOfWords(bitLength);
+		this.data = data;
+		this.ids = ids;
+		this.bucketStart = bucketStart;
+	}
+
+	/**
+	 * Get the number of fingerprints in this index.
+	 * @return the number of fingerprints.
+	 */
+	public int getSize(){
+		return ids.length;
+	}
+
+	/**
+	 * Get the length of the fingerprints in this index.
+	 * @return the length in bits.
+	 */
+	public int getBitLength(){
+		return bitLength;
+	}
+
+	/**
+	 * Find all the fingerprints in this index whose Tanimoto similarity
+	 * to the given query is at least the given threshold.
+	 *
+	 * @param query the query fingerprint; can not be null and must be the same length as this index.
+	 * @param threshold the minimum similarity between 0 and 1 inclusive.
+	 *
+	 * @return a new List of {@link SimilarityHit}s sorted by {@link SimilarityHit#BEST_FIRST};
+	 * will never be null but may be empty.
+	 *
+	 * @throws NullPointerException if query is null.
+	 * @throws IllegalArgumentException if the query is the wrong length or the threshold is not between 0 and 1.
+	 */
+	public List<SimilarityHit> search(Fingerprint query, double threshold){
+		checkQuery(query);
+		checkThreshold(threshold);
+		long[] q = query.words();
+		int a = query.populationCount();
+
+		List<SimilarityHit> hits = new ArrayList<>();
+		int lowestBucket = lowestPossibleBucket(a, threshold);
+		int highestBucket = highestPossibleBucket(a, threshold);
+		for(int b = lowestBucket; b <= highestBucket; b++){
+			for(int pos = bucketStart[b], end = bucketStart[b+1]; pos < end; pos++){
+				double similarity = Fingerprint.tanimoto(
+										Fingerprint.intersectionCount(q, 0, data, pos * wordsPerFingerprint, wordsPerFingerprint),
+										a, b);
+				if(similarity >= threshold){
+					hits.add(new SimilarityHit(ids[pos], similarity));
+				}
+			}
+		}
+		hits.sort(SimilarityHit.BEST_FIRST);
+		return hits;
+	}
+
+	/**
+	 * Find the {@code k} fingerprints in this index most similar to the given query.
+	 * This is the same as {@link #searchTopK(Fingerprint, int, double) searchTopK(query, k, 0)}.
+	 *
+	 * @param query the query fingerprint; can not be null and must be the same length as this index.
+	 * @param k the maximum number of hits to return; must be &ge; 1.
+	 *
+	 * @return a new List of at most k {@link SimilarityHit}s sorted by {@link SimilarityHit#BEST_FIRST}.
+	 *
+	 * @throws NullPointerException if query is null.
+	 * @throws IllegalArgumentException if the query is the wrong length or k &lt; 1.
+	 */
+	public List<SimilarityHit> searchTopK(Fingerprint query, int k){
+		return searchTopK(query, k, 0D);
+	}
+
+	/**
+	 * Find the {@code k} fingerprints in this index most similar to the given query
+	 * that also have a similarity of at least the given threshold.
+	 * Buckets are visited in order of decreasing best possible similarity
+	 * so the search stops as soon as no remaining bucket could beat the current k-th best hit.
+	 *
+	 * @param query the query fingerprint; can not be null and must be the same length as this index.
+	 * @param k the maximum number of hits to return; must be &ge; 1.
+	 * @param threshold the minimum similarity between 0 and 1 inclusive.
+	 *
+	 * @return a new List of at most k {@link SimilarityHit}s sorted by {@link SimilarityHit#BEST_FIRST}.
+	 *
+	 * @throws NullPointerException if query is null.
+	 * @throws IllegalArgumentException if the query is the wrong length, k &lt; 1
+	 * or the threshold is not between 0 and 1.
+	 */
+	public List<SimilarityHit> searchTopK(Fingerprint query, int k, double threshold){
+		checkQuery(query);
+		checkThreshold(threshold);
+		TopKCollector collector = new TopKCollector(k, threshold);
+		long[] q = query.words();
+		int a = query.populationCount();
+
+		//start at the bucket with the same population count as the query
+		//and work our way outward always picking the side with the better bound
+		int down = a;
+		int up = a+1;
+		while(down >=0 || up <= bitLength){
+			double downBound = down >=0 ? maxSimilarity(a, down) : -1D;
+			double upBound = up <= bitLength ? maxSimilarity(a, up) : -1D;
+			int b;
+			double bound;
+			if(downBound >= upBound){
+				b = down--;
+				bound = downBound;
+			}else{
+				b = up++;
+				bound = upBound;
+			}
+			if(bound < collector.minimumScore()){
+				//every bucket left has an even lower bound
+				break;
+			}
+			for(int pos = bucketStart[b], end = bucketStart[b+1]; pos < end; pos++){
+				collector.offer(ids[pos], Fingerprint.tanimoto(
+						Fingerprint.intersectionCount(q, 0, data, pos * wordsPerFingerprint, wordsPerFingerprint),
+						a, b));
+			}
+		}
+		return collector.toSortedList();
+	}
+
+	/**
+	 * Find the ids of all the fingerprints in this index that have every bit set
+	 * that is set in the given query.  This is the standard substructure screen:
+	 * if a query structure is a substructure of a target then the (path based) fingerprint of the query
+	 * must be a subset of the target's fingerprint.  Only buckets with a population count
+	 * at least as large as the query's are checked and each check is done a word at a time.
+	 *
+	 * @param query the query fingerprint; can not be null and must be the same length as this index.
+	 *
+	 * @return a new sorted array of the ids of the fingerprints that pass the screen;
+	 * will never be null but may be empty.
+	 *
+	 * @throws NullPointerException if query is null.
+	 * @throws IllegalArgumentException if the query is the wrong length.
+	 *
+	 * @see Fingerprint#compatible(Fingerprint)
+	 */
+	public long[] findSupersetsOf(Fingerprint query){
+		checkQuery(query);
+		long[] q = query.words();
+		int a = query.populationCount();
+		int start = bucketStart[a];
+		long[] found = new long[Math.min(1024, ids.length - start)];
+		int count=0;
+		for(int pos = start; pos < ids.length; pos++){
+			if(Fingerprint.isSubset(q, 0, data, pos * wordsPerFingerprint, wordsPerFingerprint, wordsPerFingerprint)){
+				if(count == found.length){
+					found = Arrays.copyOf(found, found.length * 2);
+				}
+				found[count++] = ids[pos];
+			}
+		}
+		long[] result = Arrays.copyOf(found, count);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * The Swamidass-Baldi upper bound of the Tanimoto similarity
+	 * between fingerprints with the given population counts.
+	 */
+	static double maxSimilarity(int a, int b){
+		int max = Math.max(a, b);
+		if(max ==0){
+			return 1D;
+		}
+		return Math.min(a, b) / (double) max;
+	}
+
+	static int lowestPossibleBucket(int a, double threshold){
+		//floor instead of ceil to protect against rounding errors
+		//the actual similarity is always checked later
+		return Math.max(0, (int) Math.floor(threshold * a));
+	}
+
+	private int highestPossibleBucket(int a, double threshold){
+		if(threshold ==0D){
+			return bitLength;
+		}
+		return (int) Math.min(bitLength, Math.ceil(a / threshold));
+	}
+
+	private void checkQuery(Fingerprint query){
+		if(Objects.requireNonNull(query).getLength() != bitLength){
+			throw new IllegalArgumentException("query fingerprint length " + query.getLength() + " does not match index length " + bitLength);
+		}
+	}
+
+	static void checkThreshold(double threshold){
+		if(threshold < 0D || threshold > 1D){
+			throw new IllegalArgumentException("threshold must be between 0 and 1");
+		}
+	}
+
+	/**
+	 * Builds a {@link FingerprintIndex}.
+	 *
+	 * This class is NOT threadsafe.
+	 */
+	public static final class Builder{
+		private final int bitLength;
+		private final int wordsPerFingerprint;
+
+		private long[] data;
+		private long[] ids;
+		private int[] popCounts;
+		private int size;
+
+		private Builder(int bitLength){
+			if(bitLength <1){
+				throw new IllegalArgumentException("bitLength must be >=1");
+			}
+			this.bitLength = bitLength;
+			this.wordsPerFingerprint = Fingerprint.numberOfWords(bitLength);
+			int initialCapacity = 1024;
+			data = new long[initialCapacity * wordsPerFingerprint];
+			ids = new long[initialCapacity];
+			popCounts = new int[initialCapacity];
+		}
+
+		/**
+		 * Add the given fingerprint to the index using
+		 * the number of fingerprints added so far as its id.
+		 * @param fingerprint the fingerprint to add; can not be null.
+		 * @return this.
+		 * @throws NullPointerException if fingerprint is null.
+		 * @throws IllegalArgumentException if the fingerprint is the wrong length.
+		 */
+		public Builder add(Fingerprint fingerprint){
+			return add(size, fingerprint);
+		}
+
+		/**
+		 * Add the given fingerprint to the index with the given id.
+		 * The id is what is returned in the {@link SimilarityHit}s
+		 * and does not have to be unique.
+		 *
+		 * @param id the id for this fingerprint.
+		 * @param fingerprint the fingerprint to add; can not be null.
+		 * @return this.
+		 * @throws NullPointerException if fingerprint is null.
+		 * @throws IllegalArgumentException if the fingerprint is the wrong length.
+		 */
+		public Builder add(long id, Fingerprint fingerprint){
+			if(fingerprint.getLength() != bitLength){
+				throw new IllegalArgumentException("fingerprint length " + fingerprint.getLength() + " does not match index length " + bitLength);
+			}
+			ensureCapacity(size +1);
+			System.arraycopy(fingerprint.words(), 0, data, size * wordsPerFingerprint, wordsPerFingerprint);
+			ids[size] = id;
+			popCounts[size] = fingerprint.populationCount();
+			size++;
+			return this;
+		}
+
+		private void ensureCapacity(int minCapacity){
+			if(minCapacity <= ids.length){
+				return;
+			}
+			long newCapacity = Math.max(minCapacity, (long) ids.length * 2);
+			//data is the biggest array and can't have more than Integer.MAX_VALUE elements
+			newCapacity = Math.min(newCapacity, (Integer.MAX_VALUE - 8) / wordsPerFingerprint);
+			if(newCapacity < minCapacity){
+				throw new IllegalStateException("too many fingerprints for a single index");
+			}
+			data = Arrays.copyOf(data, (int) newCapacity * wordsPerFingerprint);
+			ids = Arrays.copyOf(ids, (int) newCapacity);
+			popCounts = Arrays.copyOf(popCounts, (int) newCapacity);
+		}
+
+		/**
+		 * Create a new {@link FingerprintIndex} containing all the fingerprints added so far.
+		 * @return a new FingerprintIndex.
+		 */
+		public FingerprintIndex build(){
+			//counting sort by population count
+			int[] bucketStart = new int[bitLength +2];
+			for(int i=0; i< size; i++){
+				bucketStart[popCounts[i] +1]++;
+			}
+			for(int b=1; b< bucketStart.length; b++){
+				bucketStart[b] += bucketStart[b-1];
+			}
+			int[] next = Arrays.copyOf(bucketStart, bucketStart.length);
+			long[] sortedData = new long[size * wordsPerFingerprint];
+			long[] sortedIds = new long[size];
+			for(int i=0; i< size; i++){
+				int pos = next[popCounts[i]]++;
+				System.arraycopy(data, i * wordsPerFingerprint, sortedData, pos * wordsPerFingerprint, wordsPerFingerprint);
+				sortedIds[pos] = ids[i];
+			}
+			return new FingerprintIndex(bitLength, sortedData, sortedIds, bucketStart);
+		}
+	}
+}
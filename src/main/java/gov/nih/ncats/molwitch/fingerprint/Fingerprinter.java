@@ -18,11 +18,21 @@
 
 package gov.nih.ncats.molwitch.fingerprint;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import gov.nih.ncats.molwitch.Chemical;
 
 /**
  * Encapsulates an algorithm to compute
  * a Chemical {@link Fingerprint}.
+ * <p>
+ * Implementations do not have to be threadsafe.  Implementations that are
+ * should override {@link #isThreadSafe()} so that a single instance
+ * can be shared across threads.
  * 
  * @author katzelda
  *
@@ -38,4 +48,78 @@ public interface Fingerprinter {
 	 * @throws NullPointerException if chemical is null.
 	 */
 	Fingerprint computeFingerprint(Chemical chemical);
+
+	/**
+	 * Can this Fingerprinter be used by multiple threads concurrently.
+	 * Implementations whose {@link #computeFingerprint(Chemical)} method does not
+	 * modify any shared state should override this method to return {@code true}
+	 * so {@link Fingerprinters} can share a single cached instance
+	 * across threads instead of making a new one for every lookup.
+	 *
+	 * @return {@code true} if this fingerprinter is threadsafe; {@code false} otherwise.
+	 *
+	 * <strong>API Note</strong>: by default, this method returns {@code false}.
+	 */
+	default boolean isThreadSafe(){
+		return false;
+	}
+
+	/**
+	 * Compute the {@link Fingerprint}s for all the given {@link Chemical}s.
+	 * The returned List is in the same order as the input
+	 * so the ith Fingerprint is for the ith Chemical.
+	 *
+	 * <strong>Implementation Note</strong>: the default implementation calls
+	 * {@link #computeFingerprint(Chemical)} for each Chemical in order on the calling thread
+	 * unless {@link #isThreadSafe()} returns {@code true} in which case the fingerprints are computed
+	 * in parallel using the {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+	 * Implementations that can amortize setup costs across
+	 * a batch should override this method.
+	 *
+	 * @param chemicals the {@link Chemical}s to fingerprint; can not be null or contain null elements.
+	 *
+	 * @return a new List of Fingerprints; will never be null.
+	 *
+	 * @throws NullPointerException if chemicals is null or contains null.
+	 */
+	default List<Fingerprint> computeFingerprints(Iterable<Chemical> chemicals){
+		Objects.requireNonNull(chemicals);
+		if(!isThreadSafe()){
+			List<Fingerprint> list = new ArrayList<>();
+			for(Chemical c : chemicals){
+				list.add(computeFingerprint(Objects.requireNonNull(c)));
+			}
+			return list;
+		}
+		List<Chemical> list = new ArrayList<>();
+		for(Chemical c : chemicals){
+			//check before any work is done
+			list.add(Objects.requireNonNull(c));
+		}
+		return list.parallelStream()
+						.map(this::computeFingerprint)
+						.collect(Collectors.toList());
+	}
+
+	/**
+	 * Lazily compute the {@link Fingerprint}s for the given Stream of {@link Chemical}s.
+	 * If the input stream is ordered, the returned stream is in the same order.
+	 * The computation is only done in parallel if the input stream is parallel
+	 * and {@link #isThreadSafe()} returns {@code true}; otherwise the returned stream is sequential
+	 * and should not be made parallel.
+	 *
+	 * <strong>Implementation Note</strong>: the default implementation is the same as
+	 * {@code chemicals.map(this::computeFingerprint)} with the stream made
+	 * {@link Stream#sequential() sequential} first unless {@link #isThreadSafe()} returns {@code true}.
+	 *
+	 * @param chemicals the {@link Chemical}s to fingerprint; can not be null or contain null elements.
+	 *
+	 * @return a new Stream of Fingerprints.
+	 *
+	 * @throws NullPointerException if chemicals is null.
+	 */
+	default Stream<Fingerprint> computeFingerprints(Stream<Chemical> chemicals){
+		Stream<Chemical> stream = isThreadSafe() ? chemicals : chemicals.sequential();
+		return stream.map(this::computeFingerprint);
+	}
 }
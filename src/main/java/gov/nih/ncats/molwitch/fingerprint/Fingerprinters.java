@@ -23,13 +23,22 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Stream;
 
 import gov.nih.ncats.common.util.CachedSupplier;
+import gov.nih.ncats.molwitch.Chemical;
 import gov.nih.ncats.molwitch.spi.FingerprinterImpl;
 /**
  * Lookup for the different {@link Fingerprint}
  * implementations available to use.
+ * <p>
+ * The implementation that supports each specification is looked up only once.
+ * {@link Fingerprinter}s whose {@link Fingerprinter#isThreadSafe()} returns {@code true}
+ * are also cached so repeated lookups with equal specifications return the same shared instance;
+ * any other {@link Fingerprinter} is created new for each call to
+ * {@link #getFingerprinter(FingerprintSpecification)} and belongs to the caller.
  * 
  * @author katzelda
  *
@@ -61,6 +70,58 @@ public class Fingerprinters {
 			}
 		);
 
+	/**
+	 * Fingerprinters already created keyed by a private copy of the
+	 * specification so later changes to the caller's specification object
+	 * can't corrupt the cache.
+	 */
+	private static final ConcurrentMap<FingerprintSpecification, CachedFingerprinter> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * What is cached for a single specification.
+	 */
+	private static final class CachedFingerprinter{
+		private final FingerprinterImpl impl;
+		private final FingerprintSpecification key;
+		/**
+		 * The instance shared by all threads or null if it isn't threadsafe.
+		 */
+		private final Fingerprinter shared;
+		/**
+		 * Each thread's own instance if it isn't threadsafe.
+		 */
+		private final ThreadLocal<Fingerprinter> perThread;
+
+		CachedFingerprinter(FingerprinterImpl impl, FingerprintSpecification key, Fingerprinter created){
+			this.impl = impl;
+			this.key = key;
+			if(created.isThreadSafe()){
+				shared = created;
+				perThread = null;
+			}else{
+				shared = null;
+				perThread = new ThreadLocal<>();
+				perThread.set(created);
+			}
+		}
+
+		/**
+		 * Get the instance the calling thread can use, creating it if this thread doesn't have one yet.
+		 * @return the Fingerprinter or {@code null} if the implementation couldn't create one.
+		 */
+		Fingerprinter getForCurrentThread(){
+			if(shared !=null){
+				return shared;
+			}
+			Fingerprinter fingerprinter = perThread.get();
+			if(fingerprinter ==null){
+				//each new instance gets its own copy of the spec
+				fingerprinter = impl.createFingerPrinterFor(cacheKeyFor(key));
+				perThread.set(fingerprinter);
+			}
+			return fingerprinter;
+		}
+	}
 	
 		public static class PathBasedSpecification implements FingerprintSpecification{
 			public static final int DEFAULT_LENGTH =1024;
@@ -87,6 +148,25 @@ public class Fingerprinters {
 			public String name() {
 				return PATH_BASED.name();
 			}
+			@Override
+			public int hashCode() {
+				return 31 * length + depth;
+			}
+			@Override
+			public boolean equals(Object obj) {
+				if (this == obj)
+					return true;
+				if (obj == null)
+					return false;
+				if (getClass() != obj.getClass())
+					return false;
+				PathBasedSpecification other = (PathBasedSpecification) obj;
+				return length == other.length && depth == other.depth;
+			}
+			@Override
+			public String toString() {
+				return "PathBasedSpecification [length=" + length + ", depth=" + depth + "]";
+			}
 		}
 		public static abstract class AbstractCfpOptions<T extends AbstractCfpOptions<?>> implements FingerprintSpecification{
 			public static int DEFAULT_DIAMETER = 6;
@@ -121,6 +201,26 @@ public class Fingerprinters {
 			public int getDiameter() {
 				return diameter;
 			}
+			@Override
+			public int hashCode() {
+				return Objects.hash(getClass(), diameter, bitLength);
+			}
+			@Override
+			public boolean equals(Object obj) {
+				if (this == obj)
+					return true;
+				if (obj == null)
+					return false;
+				//ECFP and FCFP have the same fields so make sure they are the same type
+				if (getClass() != obj.getClass())
+					return false;
+				AbstractCfpOptions<?> other = (AbstractCfpOptions<?>) obj;
+				return diameter == other.diameter && bitLength == other.bitLength;
+			}
+			@Override
+			public String toString() {
+				return getClass().getSimpleName() + " [diameter=" + diameter + ", bitLength=" + bitLength + "]";
+			}
 		}
 		public static class EcfpSpecification extends AbstractCfpOptions<EcfpSpecification>{
 			
@@ -227,11 +327,92 @@ public class Fingerprinters {
 	}
 	/**
 	 * Get the {@link Fingerprint} with the given fingerprint algorithm name.
+	 * For the built-in specifications ({@link PathBasedSpecification}, {@link EcfpSpecification}
+	 * and {@link FcfpSpecification}) calling this method multiple times with
+	 * equal specifications returns the same {@link Fingerprinter} instance if that instance
+	 * is {@link Fingerprinter#isThreadSafe() threadsafe}; otherwise each thread gets its own instance
+	 * which is returned every time that thread asks, so it must not be handed to other threads.
 	 * @param fingerPrinterOptions specification for the finger printer algorithm to use.
 	 * @return the {@link Fingerprinter} implementation that supports that algorithm
 	 * or {@code null} if no {@link Fingerprinter} is found that supports it.
 	 */
 	public static Fingerprinter getFingerprinter(FingerprintSpecification fingerPrinterOptions){
+		FingerprintSpecification key = cacheKeyFor(fingerPrinterOptions);
+		if(key ==null){
+			//not a spec we know how to safely cache
+			return createFingerprinter(fingerPrinterOptions);
+		}
+		CachedFingerprinter cached = cache.get(key);
+		if(cached !=null){
+			return cached.getForCurrentThread();
+		}
+		FingerprinterImpl impl = findImplFor(key);
+		if(impl ==null){
+			return null;
+		}
+		Fingerprinter created = impl.createFingerPrinterFor(cacheKeyFor(key));
+		if(created ==null){
+			return null;
+		}
+		CachedFingerprinter existing = cache.putIfAbsent(key, new CachedFingerprinter(impl, key, created));
+		if(existing !=null){
+			//another thread cached one first
+			return existing.getForCurrentThread();
+		}
+		return created;
+	}
+
+	private static Fingerprinter createFingerprinter(FingerprintSpecification fingerPrinterOptions){
+		FingerprinterImpl found = findImplFor(fingerPrinterOptions);
+		if(found ==null){
+			return null;
+		}
+		return found.createFingerPrinterFor(fingerPrinterOptions);
+	}
+
+	/**
+	 * Make an immutable copy of the given specification to use as a cache key.
+	 * Only the built-in specifications have value based equals and hashCode methods
+	 * so any other specification returns {@code null} and is not cached.
+	 */
+	private static FingerprintSpecification cacheKeyFor(FingerprintSpecification spec){
+		if(spec.getClass() == PathBasedSpecification.class){
+			PathBasedSpecification pathBased = (PathBasedSpecification) spec;
+			return new PathBasedSpecification().setLength(pathBased.getLength())
+												.setDepth(pathBased.getDepth());
+		}
+		if(spec.getClass() == EcfpSpecification.class){
+			EcfpSpecification ecfp = (EcfpSpecification) spec;
+			return new EcfpSpecification(ecfp.getDiameter()).setBitLength(ecfp.getBitLength());
+		}
+		if(spec.getClass() == FcfpSpecification.class){
+			FcfpSpecification fcfp = (FcfpSpecification) spec;
+			return new FcfpSpecification(fcfp.getDiameter()).setBitLength(fcfp.getBitLength());
+		}
+		return null;
+	}
+
+	/**
+	 * Compute the {@link Fingerprint}s for all the given {@link Chemical}s
+	 * using the implementation that supports the given specification.
+	 * This gives the implementation the chance to share setup
+	 * across the whole batch.
+	 *
+	 * @param fingerPrinterOptions specification for the finger printer algorithm to use.
+	 * @param chemicals the {@link Chemical}s to fingerprint; can not be null or contain null elements.
+	 * @return a new List of Fingerprints in the same order as the input chemicals.
+	 * @throws IllegalArgumentException if no {@link Fingerprinter} is found that supports the specification.
+	 * @see Fingerprinter#computeFingerprints(Iterable)
+	 */
+	public static List<Fingerprint> computeFingerprints(FingerprintSpecification fingerPrinterOptions, Iterable<Chemical> chemicals){
+		FingerprinterImpl found = findImplFor(fingerPrinterOptions);
+		if(found ==null){
+			throw new IllegalArgumentException("no fingerprinter found that supports " + fingerPrinterOptions.name());
+		}
+		return found.computeFingerprints(fingerPrinterOptions, chemicals);
+	}
+
+	private static FingerprinterImpl findImplFor(FingerprintSpecification fingerPrinterOptions){
 		Iterator<FingerprinterImpl> iter = loader.get().iterator();
 		FingerprinterImpl found=null;
 		while(found ==null && iter.hasNext()){
@@ -240,10 +421,7 @@ public class Fingerprinters {
 				found= current;
 			}
 		}
-		if(found ==null){
-			return null;
-		}
-		return found.createFingerPrinterFor(fingerPrinterOptions);
+		return found;
 	}
 	
 	/**
@@ -0,0 +1,337 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.fingerprint;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.EcfpSpecification;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.FcfpSpecification;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.FingerprintSpecification;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.PathBasedSpecification;
+
+/**
+ * Read only access to a fingerprint file written by {@link FingerprintFileWriter}.
+ * <p>
+ * The records are memory mapped so the fingerprints are never
+ * copied onto the heap during similarity scans; the data is read directly
+ * from the OS page cache so the file may be much larger than the heap.
+ * Files larger than 2GB are split over multiple mappings.
+ * <p>
+ * The records are kept in the order they were written, not grouped by population count,
+ * so unlike {@link FingerprintIndex} searches can not skip records whose population count
+ * rules them out: every search is a linear scan of the whole file.
+ * Load the fingerprints into a {@link FingerprintIndex} if they fit on the heap
+ * and many queries will be run.
+ * <p>
+ * MappedFingerprintFile objects are threadsafe and may be searched
+ * by multiple threads concurrently.  Note that Java does not provide a way
+ * to explicitly unmap a file so the mapping is released when this object is garbage collected.
+ *
+ * @author katzelda
+ *
+ */
+public class MappedFingerprintFile implements Closeable {
+
+	private final String specName;
+	private final int bitLength;
+	private final int depth;
+	private final long size;
+
+	private final int wordsPerFingerprint;
+	/**
+	 * number of longs per record including the id.
+	 */
+	private final int longsPerRecord;
+	private final long recordsPerRegion;
+	private volatile LongBuffer[] regions;
+
+	/**
+	 * Open the given fingerprint file.
+	 * @param fingerprintFile the file to open; can not be null.
+	 * @return a new MappedFingerprintFile.
+	 * @throws IOException if there is a problem reading the file
+	 * or it is not a valid fingerprint file.
+	 * @throws NullPointerException if fingerprintFile is null.
+	 */
+	public static MappedFingerprintFile open(File fingerprintFile) throws IOException{
+		return new MappedFingerprintFile(Objects.requireNonNull(fingerprintFile));
+	}
+
+	private MappedFingerprintFile(File file) throws IOException{
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			long dataOffset;
+			//don't close this stream it will close the channel
+			InputStream in = Channels.newInputStream(channel);
+			DataInputStream header = new DataInputStream(in);
+			if(header.readInt() != FingerprintFileWriter.MAGIC_NUMBER){
+				throw new IOException("not a fingerprint file " + file.getAbsolutePath());
+			}
+			int version = header.readInt();
+			if(version != FingerprintFileWriter.VERSION){
+				throw new IOException("unsupported fingerprint file version " + version);
+			}
+			size = header.readLong();
+			bitLength = header.readInt();
+			depth = header.readInt();
+			specName = header.readUTF();
+			dataOffset = channel.position();
+			//skip padding
+			dataOffset += (8 - dataOffset % 8) % 8;
+
+			wordsPerFingerprint = Fingerprint.numberOfWords(bitLength);
+			longsPerRecord = 1 + wordsPerFingerprint;
+			long recordBytes = 8L * longsPerRecord;
+			if(channel.size() < dataOffset + size * recordBytes){
+				throw new IOException("fingerprint file is truncated expected " + size + " records");
+			}
+			recordsPerRegion = Math.max(1, Integer.MAX_VALUE / recordBytes);
+			int numberOfRegions = (int) ((size + recordsPerRegion -1) / recordsPerRegion);
+			LongBuffer[] buffers = new LongBuffer[numberOfRegions];
+			for(int i=0; i< numberOfRegions; i++){
+				long firstRecord = i * recordsPerRegion;
+				long records = Math.min(recordsPerRegion, size - firstRecord);
+				buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + firstRecord * recordBytes, records * recordBytes)
+									.asLongBuffer();
+			}
+			regions = buffers;
+		}
+	}
+
+	/**
+	 * Get the number of fingerprints in this file.
+	 * @return the number of records.
+	 */
+	public long getSize(){
+		return size;
+	}
+
+	/**
+	 * Get the length of each fingerprint in this file.
+	 * @return the length in bits.
+	 */
+	public int getBitLength(){
+		return bitLength;
+	}
+
+	/**
+	 * Get the path depth or diameter of the algorithm that made these fingerprints.
+	 * @return the depth or {@code -1} if not known.
+	 */
+	public int getDepth(){
+		return depth;
+	}
+
+	/**
+	 * Get the name of the fingerprint algorithm that made these fingerprints.
+	 * This is the {@link FingerprintSpecification#name()} except for FCFP
+	 * fingerprints which are named {@code "FCFP"}.
+	 * @return the name as a String; will never be null.
+	 */
+	public String getSpecificationName(){
+		return specName;
+	}
+
+	/**
+	 * Get the {@link FingerprintSpecification} that made these fingerprints
+	 * if it is one of the built in specifications.
+	 * @return an Optional of the specification which will be empty if the specification
+	 * can not be recreated from the information in the file.
+	 */
+	public Optional<FingerprintSpecification> getSpecification(){
+		if(FingerprintSpecification.PATH_BASED.name().equals(specName)){
+			PathBasedSpecification spec = FingerprintSpecification.PATH_BASED.create().setLength(bitLength);
+			if(depth >0){
+				spec.setDepth(depth);
+			}
+			return Optional.of(spec);
+		}
+		if(FingerprintSpecification.ECFP.name().equals(specName) && depth >=2 && depth <=6){
+			return Optional.of(new EcfpSpecification(depth).setBitLength(bitLength));
+		}
+		if(FingerprintFileWriter.FCFP_NAME.equals(specName) && depth >=2 && depth <=6){
+			return Optional.of(new FcfpSpecification(depth).setBitLength(bitLength));
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Get the id of the record at the given index.
+	 * @param index the index of the record from 0 to {@link #getSize()} -1.
+	 * @return the id.
+	 * @throws IndexOutOfBoundsException if index is out of range.
+	 */
+	public long getId(long index){
+		checkIndex(index);
+		return region(index).get(longOffset(index));
+	}
+
+	/**
+	 * Get the Fingerprint of the record at the given index.
+	 * @param index the index of the record from 0 to {@link #getSize()} -1.
+	 * @return a new Fingerprint.
+	 * @throws IndexOutOfBoundsException if index is out of range.
+	 */
+	public Fingerprint getFingerprint(long index){
+		checkIndex(index);
+		LongBuffer region = region(index);
+		int offset = longOffset(index) +1;
+		long[] words = new long[wordsPerFingerprint];
+		for(int i=0; i< words.length; i++){
+			words[i] = region.get(offset + i);
+		}
+		return Fingerprint.wrap(words, bitLength);
+	}
+
+	/**
+	 * Find all the fingerprints in this file whose Tanimoto similarity
+	 * to the given query is at least the given threshold.
+	 * This compares the query to every record in the file; there is no population count pruning.
+	 *
+	 * @param query the query fingerprint; can not be null and must be the same length as the fingerprints in this file.
+	 * @param threshold the minimum similarity between 0 and 1 inclusive.
+	 *
+	 * @return a new List of {@link SimilarityHit}s whose ids are the record ids
+	 * sorted by {@link SimilarityHit#BEST_FIRST}; will never be null but may be empty.
+	 *
+	 * @throws NullPointerException if query is null.
+	 * @throws IllegalArgumentException if the query is the wrong length or the threshold is not between 0 and 1.
+	 */
+	public List<SimilarityHit> search(Fingerprint query, double threshold){
+		checkQuery(query);
+		FingerprintIndex.checkThreshold(threshold);
+		List<SimilarityHit> hits = new ArrayList<>();
+		long[] q = query.words();
+		int a = query.populationCount();
+		for(long i=0; i< size; i++){
+			double similarity = similarity(q, a, i);
+			if(similarity >= threshold){
+				hits.add(new SimilarityHit(getId(i), similarity));
+			}
+		}
+		hits.sort(SimilarityHit.BEST_FIRST);
+		return hits;
+	}
+
+	/**
+	 * Find the {@code k} fingerprints in this file most similar to the given query.
+	 *
+	 * @param query the query fingerprint; can not be null and must be the same length as the fingerprints in this file.
+	 * @param k the maximum number of hits to return; must be &ge; 1.
+	 *
+	 * @return a new List of at most k {@link SimilarityHit}s whose ids are the record ids
+	 * sorted by {@link SimilarityHit#BEST_FIRST}.
+	 *
+	 * @throws NullPointerException if query is null.
+	 * @throws IllegalArgumentException if the query is the wrong length or k &lt; 1.
+	 */
+	public List<SimilarityHit> searchTopK(Fingerprint query, int k){
+		return searchTopK(query, k, 0D);
+	}
+
+	/**
+	 * Find the {@code k} fingerprints in this file most similar to the given query
+	 * that also have a similarity of at least the given threshold.
+	 * This compares the query to every record in the file; there is no population count pruning.
+	 *
+	 * @param query the query fingerprint; can not be null and must be the same length as the fingerprints in this file.
+	 * @param k the maximum number of hits to return; must be &ge; 1.
+	 * @param threshold the minimum similarity between 0 and 1 inclusive.
+	 *
+	 * @return a new List of at most k {@link SimilarityHit}s whose ids are the record ids
+	 * sorted by {@link SimilarityHit#BEST_FIRST}.
+	 *
+	 * @throws NullPointerException if query is null.
+	 * @throws IllegalArgumentException if the query is the wrong length, k &lt; 1
+	 * or the threshold is not between 0 and 1.
+	 */
+	public List<SimilarityHit> searchTopK(Fingerprint query, int k, double threshold){
+		checkQuery(query);
+		FingerprintIndex.checkThreshold(threshold);
+		TopKCollector collector = new TopKCollector(k, threshold);
+		scan(query, 0, size, collector);
+		return collector.toSortedList();
+	}
+
+	/**
+	 * Compute the similarity of the query to every record in the given range
+	 * and offer it to the given collector.
+	 */
+	void scan(Fingerprint query, long fromIndex, long toIndex, TopKCollector collector){
+		long[] q = query.words();
+		int a = query.populationCount();
+		for(long i=fromIndex; i< toIndex; i++){
+			collector.offer(getId(i), similarity(q, a, i));
+		}
+	}
+
+	private double similarity(long[] q, int a, long index){
+		LongBuffer region = region(index);
+		int offset = longOffset(index) +1;
+		int intersection=0;
+		int b=0;
+		for(int i=0; i< wordsPerFingerprint; i++){
+			long word = region.get(offset +i);
+			b += Long.bitCount(word);
+			intersection += Long.bitCount(q[i] & word);
+		}
+		return Fingerprint.tanimoto(intersection, a, b);
+	}
+
+	private LongBuffer region(long index){
+		LongBuffer[] buffers = regions;
+		if(buffers ==null){
+			throw new IllegalStateException("already closed");
+		}
+		return buffers[(int) (index / recordsPerRegion)];
+	}
+
+	private int longOffset(long index){
+		return (int) (index % recordsPerRegion) * longsPerRecord;
+	}
+
+	private void checkIndex(long index){
+		if(index < 0 || index >= size){
+			throw new IndexOutOfBoundsException(Long.toString(index));
+		}
+	}
+
+	void checkQuery(Fingerprint query){
+		if(Objects.requireNonNull(query).getLength() != bitLength){
+			throw new IllegalArgumentException("query fingerprint length " + query.getLength() + " does not match file length " + bitLength);
+		}
+	}
+
+	@Override
+	public void close() {
+		//can't explicitly unmap so just drop our references
+		regions = null;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.fingerprint;
+
+import java.util.Comparator;
+
+/**
+ * A single result of a fingerprint similarity search
+ * which is the id of the matching fingerprint and how similar
+ * it was to the query.
+ *
+ * @author katzelda
+ *
+ */
+public final class SimilarityHit {
+	/**
+	 * Orders hits by decreasing similarity and then by increasing id
+	 * so results are always returned in a deterministic order.
+	 */
+	public static final Comparator<SimilarityHit> BEST_FIRST = Comparator.comparingDouble(SimilarityHit::getSimilarity).reversed()
+																		.thenComparingLong(SimilarityHit::getId);
+
+	private final long id;
+	private final double similarity;
+
+	/**
+	 * Create a new SimilarityHit.
+	 * @param id the id of the fingerprint that matched.
+	 * @param similarity the similarity score of the match.
+	 */
+	public SimilarityHit(long id, double similarity) {
+		this.id = id;
+		this.similarity = similarity;
+	}
+
+	/**
+	 * Get the id of the fingerprint that matched.  What
+	 * the id refers to depends on what was searched,
+	 * usually the id assigned when the fingerprint was added.
+	 * @return the id.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Get the similarity score between the query
+	 * and the matched fingerprint.
+	 * @return a double between {@code 0} and {@code 1}.
+	 */
+	public double getSimilarity() {
+		return similarity;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Long.hashCode(id) + Double.hashCode(similarity);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof SimilarityHit))
+			return false;
+		SimilarityHit other = (SimilarityHit) obj;
+		return id == other.id
+				&& Double.compare(similarity, other.similarity) == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "SimilarityHit [id=" + id + ", similarity=" + similarity + "]";
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.fingerprint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Screens a query {@link Fingerprint} against a large number of fingerprints
+ * by splitting the scan over the threads of a {@link ForkJoinPool}.
+ * Each forked task keeps its own top-k heap which are merged as the tasks are joined
+ * so there is no contention between threads during the scan.
+ * <p>
+ * SimilarityScreener objects are immutable and threadsafe; the same screener
+ * can be used by multiple threads.
+ *
+ * <pre>
+ * {@code
+ * SimilarityScreener screener = SimilarityScreener.create(new ForkJoinPool(16));
+ * try(MappedFingerprintFile file = MappedFingerprintFile.open(fpFile)){
+ *     List<SimilarityHit> hits = screener.searchTopK(query, file, 100, 0.7);
+ * }
+ * }
+ * </pre>
+ *
+ * @author katzelda
+ *
+ */
+public final class SimilarityScreener {
+	/**
+	 * The default minimum number of fingerprints each task scans
+	 * before it stops splitting.
+	 */
+	public static final int DEFAULT_MIN_CHUNK_SIZE = 16_384;
+
+	private final ForkJoinPool pool;
+	private final int minChunkSize;
+
+	/**
+	 * Create a new SimilarityScreener that uses the {@link ForkJoinPool#commonPool()}.
+	 * @return a new SimilarityScreener.
+	 */
+	public static SimilarityScreener create(){
+		return create(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a new SimilarityScreener that uses the given pool.
+	 * @param pool the {@link ForkJoinPool} to run the scans in; can not be null.
+	 * @return a new SimilarityScreener.
+	 * @throws NullPointerException if pool is null.
+	 */
+	public static SimilarityScreener create(ForkJoinPool pool){
+		return create(pool, DEFAULT_MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * Create a new SimilarityScreener that uses the given pool.
+	 * @param pool the {@link ForkJoinPool} to run the scans in; can not be null.
+	 * @param minChunkSize the minimum number of fingerprints each task scans
+	 *                     before it stops splitting; must be &ge; 1.
+	 * @return a new SimilarityScreener.
+	 * @throws NullPointerException if pool is null.
+	 * @throws IllegalArgumentException if minChunkSize &lt; 1.
+	 */
+	public static SimilarityScreener create(ForkJoinPool pool, int minChunkSize){
+		return new SimilarityScreener(pool, minChunkSize);
+	}
+
+	private SimilarityScreener(ForkJoinPool pool, int minChunkSize){
+		if(minChunkSize < 1){
+			throw new IllegalArgumentException("minChunkSize must be >=1");
+		}
+		this.pool = Objects.requireNonNull(pool);
+		this.minChunkSize = minChunkSize;
+	}
+
+	/**
+	 * Find all the fingerprints in the given list whose Tanimoto similarity
+	 * to the query is at least the given threshold.
+	 *
+	 * @param query the query fingerprint; can not be null.
+	 * @param targets the fingerprints to search; can not be null or contain nulls.
+	 * @param threshold the minimum similarity between 0 and 1 inclusive.
+	 *
+	 * @return a new List of {@link SimilarityHit}s whose ids are the indexes into the targets list
+	 * sorted by {@link SimilarityHit#BEST_FIRST}.
+	 *
+	 * @throws NullPointerException if any parameter is null.
+	 * @throws IllegalArgumentException if the threshold is not between 0 and 1.
+	 */
+	public List<SimilarityHit> search(Fingerprint query, List<Fingerprint> targets, double threshold){
+		return searchTopK(query, targets, Integer.MAX_VALUE, threshold);
+	}
+
+	/**
+	 * Find the {@code k} fingerprints in the given list most similar to the query
+	 * that also have a similarity of at least the given threshold.
+	 *
+	 * @param query the query fingerprint; can not be null.
+	 * @param targets the fingerprints to search; can not be null or contain nulls.
+	 * @param k the maximum number of hits to return; must be &ge; 1.
+	 * @param threshold the minimum similarity between 0 and 1 inclusive.
+	 *
+	 * @return a new List of at most k {@link SimilarityHit}s whose ids are the indexes into the targets list
+	 * sorted by {@link SimilarityHit#BEST_FIRST}.
+	 *
+	 * @throws NullPointerException if any parameter is null.
+	 * @throws IllegalArgumentException if k &lt; 1 or the threshold is not between 0 and 1.
+	 */
+	public List<SimilarityHit> searchTopK(Fingerprint query, List<Fingerprint> targets, int k, double threshold){
+		Objects.requireNonNull(query);
+		FingerprintIndex.checkThreshold(threshold);
+		List<Fingerprint> list = targets instanceof RandomAccess ? targets : new ArrayList<>(targets);
+		RangeScanner scanner = (from, to, collector) -> {
+			for(int i= (int) from; i< to; i++){
+				collector.offer(i, query.tanimotoSimilarity(list.get(i)));
+			}
+		};
+		return invoke(scanner, list.size(), k, threshold);
+	}
+
+	/**
+	 * Find all the fingerprints in the given file whose Tanimoto similarity
+	 * to the query is at least the given threshold.
+	 *
+	 * @param query the query fingerprint; can not be null and must be the same length as the fingerprints in the file.
+	 * @param file the fingerprint file to search; can not be null.
+	 * @param threshold the minimum similarity between 0 and 1 inclusive.
+	 *
+	 * @return a new List of {@link SimilarityHit}s whose ids are the record ids
+	 * sorted by {@link SimilarityHit#BEST_FIRST}.
+	 *
+	 * @throws NullPointerException if any parameter is null.
+	 * @throws IllegalArgumentException if the query is the wrong length or the threshold is not between 0 and 1.
+	 */
+	public List<SimilarityHit> search(Fingerprint query, MappedFingerprintFile file, double threshold){
+		return searchTopK(query, file, Integer.MAX_VALUE, threshold);
+	}
+
+	/**
+	 * Find the {@code k} fingerprints in the given file most similar to the query
+	 * that also have a similarity of at least the given threshold.
+	 *
+	 * @param query the query fingerprint; can not be null and must be the same length as the fingerprints in the file.
+	 * @param file the fingerprint file to search; can not be null.
+	 * @param k the maximum number of hits to return; must be &ge; 1.
+	 * @param threshold the minimum similarity between 0 and 1 inclusive.
+	 *
+	 * @return a new List of at most k {@link SimilarityHit}s whose ids are the record ids
+	 * sorted by {@link SimilarityHit#BEST_FIRST}.
+	 *
+	 * @throws NullPointerException if any parameter is null.
+	 * @throws IllegalArgumentException if the query is the wrong length, k &lt; 1
+	 * or the threshold is not between 0 and 1.
+	 */
+	public List<SimilarityHit> searchTopK(Fingerprint query, MappedFingerprintFile file, int k, double threshold){
+		file.checkQuery(query);
+		FingerprintIndex.checkThreshold(threshold);
+		return invoke((from, to, collector)-> file.scan(query, from, to, collector), file.getSize(), k, threshold);
+	}
+
+	private List<SimilarityHit> invoke(RangeScanner scanner, long size, int k, double threshold){
+		if(k < 1){
+			throw new IllegalArgumentException("k must be >=1");
+		}
+		long chunkSize = Math.max(minChunkSize, size / (4L * pool.getParallelism()));
+		return pool.invoke(new ScanTask(scanner, 0, size, chunkSize, k, threshold)).toSortedList();
+	}
+
+	@FunctionalInterface
+	private interface RangeScanner{
+		void scan(long fromIndex, long toIndex, TopKCollector collector);
+	}
+
+	private static final class ScanTask extends RecursiveTask<TopKCollector>{
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient RangeScanner scanner;
+		private final long from, to, chunkSize;
+		private final int k;
+		private final double threshold;
+
+		ScanTask(RangeScanner scanner, long from, long to, long chunkSize, int k, double threshold){
+			this.scanner = scanner;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+			this.k = k;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected TopKCollector compute() {
+			if(to - from <= chunkSize){
+				TopKCollector collector = new TopKCollector(k, threshold);
+				scanner.scan(from, to, collector);
+				return collector;
+			}
+			long mid = (from + to) >>> 1;
+			ScanTask left = new ScanTask(scanner, from, mid, chunkSize, k, threshold);
+			ScanTask right = new ScanTask(scanner, mid, to, chunkSize, k, threshold);
+			left.fork();
+			TopKCollector result = right.compute();
+			result.merge(left.join());
+			return result;
+		}
+	}
+}
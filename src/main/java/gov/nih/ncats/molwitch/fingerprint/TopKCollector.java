@@ -0,0 +1,93 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.fingerprint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps track of the best {@code k} scoring hits seen so far
+ * using a bounded min-heap so the worst of the current best hits
+ * can be evicted in log(k) time.
+ *
+ * This class is NOT threadsafe.  Concurrent searches should
+ * use one collector per thread and {@link #merge(TopKCollector) merge} them afterwards.
+ *
+ * @author katzelda
+ */
+final class TopKCollector {
+
+	private final int k;
+	private final double threshold;
+	//min heap so the head is the worst hit we are keeping
+	private final PriorityQueue<SimilarityHit> heap;
+
+	TopKCollector(int k, double threshold){
+		if(k < 1){
+			throw new IllegalArgumentException("k must be >=1");
+		}
+		this.k = k;
+		this.threshold = threshold;
+		this.heap = new PriorityQueue<>(Math.min(k, 1024) +1, SimilarityHit.BEST_FIRST.reversed());
+	}
+
+	/**
+	 * The lowest score a new hit must have to possibly be kept.
+	 * @return the current minimum score.
+	 */
+	double minimumScore(){
+		if(heap.size() < k){
+			return threshold;
+		}
+		return Math.max(threshold, heap.peek().getSimilarity());
+	}
+
+	void offer(long id, double similarity){
+		if(similarity < threshold){
+			return;
+		}
+		if(heap.size() < k){
+			heap.add(new SimilarityHit(id, similarity));
+			return;
+		}
+		SimilarityHit worst = heap.peek();
+		if(similarity > worst.getSimilarity()
+				|| (similarity == worst.getSimilarity() && id < worst.getId())){
+			heap.poll();
+			heap.add(new SimilarityHit(id, similarity));
+		}
+	}
+
+	void merge(TopKCollector other){
+		for(SimilarityHit hit : other.heap){
+			offer(hit.getId(), hit.getSimilarity());
+		}
+	}
+
+	/**
+	 * Get the collected hits.
+	 * @return a new List sorted by {@link SimilarityHit#BEST_FIRST}.
+	 */
+	List<SimilarityHit> toSortedList(){
+		List<SimilarityHit> list = new ArrayList<>(heap);
+		list.sort(SimilarityHit.BEST_FIRST);
+		return list;
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects the values of selected SD data items (the {@code > <TAG>} blocks
+ * after the {@code M  END} line) from the lines of a record
+ * without parsing the connection table.  This is the one SD data item parser
+ * shared by the datastores' property indexes and {@link gov.nih.ncats.molwitch.io.SdTagReader};
+ * lines can be given either as Strings or as ranges of UTF-8 encoded bytes
+ * so byte oriented readers don't have to decode the whole record.
+ *
+ * <p>
+ * Values of multi-line data items are joined with {@code '\n'}
+ * and leading and trailing whitespace is removed.
+ * </p>
+ *
+ * This is not part of the public API.
+ * This class is NOT threadsafe.
+ */
+public final class DataItemCollector {
+
+    private final Set<String> tags;
+    private final BiConsumer<String, String> consumer;
+
+    private boolean inDataItems;
+    private boolean inValue;
+    private String currentTag;
+    private final StringBuilder value = new StringBuilder();
+    private final ByteLine byteLine = new ByteLine();
+
+    /**
+     * Create a new DataItemCollector.
+     * @param tags the data item names to collect; if null, then all data items are collected.
+     * @param consumer the callback given each collected tag and value.
+     */
+    public DataItemCollector(Set<String> tags, BiConsumer<String, String> consumer) {
+        this.tags = tags;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Parse the data item name out of a data header line
+     * such as {@code >  <REGNO> (MD-1234)}.
+     * @param line the header line.
+     * @return the name or {@code null} if there isn't one.
+     */
+    public static String parseTag(CharSequence line) {
+        int start = -1;
+        for (int i = 1; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (start < 0) {
+                if (c == '<') {
+                    start = i + 1;
+                }
+            } else if (c == '>') {
+                return text(line, start, i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Does the given raw record have a data item with the given name and value.
+     * @param rawRecord the record text.
+     * @param tag the data item name.
+     * @param value the value to compare to the trimmed data item value.
+     * @return {@code true} if the record has that value.
+     */
+    public static boolean hasValue(String rawRecord, String tag, String value) {
+        boolean[] found = new boolean[1];
+        DataItemCollector collector = new DataItemCollector(Collections.singleton(tag), (t, v) -> {
+            if (v.equals(value)) {
+                found[0] = true;
+            }
+        });
+        int start = 0;
+        int length = rawRecord.length();
+        while (start < length && !found[0]) {
+            int end = rawRecord.indexOf('\n', start);
+            end = end < 0 ? length : end + 1;
+            String line = rawRecord.substring(start, end);
+            if (line.startsWith("$$$$")) {
+                break;
+            }
+            collector.accept(line);
+            start = end;
+        }
+        collector.endRecord();
+        return found[0];
+    }
+
+    /**
+     * Has the {@code M  END} line of the current record been seen yet.
+     * @return {@code true} if the following lines are data items.
+     */
+    public boolean isInDataItems() {
+        return inDataItems;
+    }
+
+    /**
+     * Process the next line of the current record, which must not be the {@code $$$$} delimiter.
+     * @param line the line which may include its line terminator.
+     */
+    public void accept(CharSequence line) {
+        int end = line.length();
+        while (end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        if (!inDataItems) {
+            if (startsWith(line, "M  END")) {
+                inDataItems = true;
+            }
+            return;
+        }
+        if (inValue) {
+            if (isBlank(line, end)) {
+                endValue();
+            } else if (currentTag != null) {
+                if (value.length() > 0) {
+                    value.append('\n');
+                }
+                value.append(text(line, 0, end));
+            }
+            return;
+        }
+        if (end > 0 && line.charAt(0) == '>') {
+            String tag = parseTag(line.subSequence(0, end));
+            inValue = true;
+            currentTag = tag != null && (tags == null || tags.contains(tag)) ? tag : null;
+            value.setLength(0);
+        }
+    }
+
+    /**
+     * Process the next line of the current record, which must not be the {@code $$$$} delimiter,
+     * given as UTF-8 encoded bytes.  Only the data item names and the values that are collected
+     * are decoded.
+     * @param line the array containing the line which may include its line terminator.
+     * @param offset the offset into the array where the line starts.
+     * @param length the number of bytes in the line.
+     */
+    public void accept(byte[] line, int offset, int length) {
+        byteLine.set(line, offset, length);
+        accept(byteLine);
+    }
+
+    /**
+     * Finish the current record and reset for the next one.
+     */
+    public void endRecord() {
+        if (inValue) {
+            endValue();
+        }
+        inDataItems = false;
+    }
+
+    private void endValue() {
+        if (currentTag != null) {
+            consumer.accept(currentTag, value.toString().trim());
+        }
+        inValue = false;
+        currentTag = null;
+    }
+
+    private static String text(CharSequence line, int start, int end) {
+        if (line instanceof ByteLine) {
+            return ((ByteLine) line).decode(start, end);
+        }
+        return line.subSequence(start, end).toString();
+    }
+
+    private static boolean startsWith(CharSequence line, String prefix) {
+        if (line.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBlank(CharSequence line, int end) {
+        for (int i = 0; i < end; i++) {
+            if (!Character.isWhitespace(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A reusable view of a range of bytes as chars, one char per byte,
+     * which is enough to find the ASCII markers of an SD record;
+     * use {@link #decode(int, int)} to get the actual text.
+     */
+    private static final class ByteLine implements CharSequence {
+        private byte[] bytes;
+        private int offset;
+        private int length;
+
+        void set(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        String decode(int start, int end) {
+            return new String(bytes, offset + start, end - start, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[offset + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            ByteLine sub = new ByteLine();
+            sub.set(bytes, offset + start, end - start);
+            return sub;
+        }
+
+        @Override
+        public String toString() {
+            return decode(0, length);
+        }
+    }
+}
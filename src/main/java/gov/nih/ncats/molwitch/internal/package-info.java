@@ -19,6 +19,9 @@
 /**
  * Contains classes that are used by the API/SPI
  * but are not meant for the client code to use.
+ * Nothing in this package is part of the public API:
+ * classes here may change or be removed in any release
+ * and public API types never expose them in their signatures.
  * 
  * @author katzelda
  *
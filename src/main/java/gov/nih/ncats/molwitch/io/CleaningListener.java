@@ -0,0 +1,178 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.io;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Callback notified as {@link CtTableCleaner} cleans each record
+ * so callers can find out what was fixed and how long it took.
+ * All methods have empty default implementations so implementations
+ * only need to override the ones they care about.
+ *
+ * @see CleaningStats
+ */
+public interface CleaningListener {
+
+    /**
+     * The fixes the cleaner can make to a record.
+     */
+    enum Rule{
+        /**
+         * The header was missing its first (name) line so a blank one was added.
+         */
+        HEADER_NAME_LINE_ADDED,
+        /**
+         * The header was missing its comment line so a blank one was added.
+         */
+        HEADER_COMMENT_LINE_ADDED,
+        /**
+         * The counts line was not correctly formatted.
+         */
+        COUNTS_LINE_REFORMATTED,
+        /**
+         * An atom line had incorrect leading whitespace.
+         */
+        ATOM_LINE_REALIGNED,
+        /**
+         * A bond line had incorrect leading whitespace.
+         */
+        BOND_LINE_REALIGNED,
+        /**
+         * An M  CHG line was not correctly formatted.
+         */
+        CHG_LINE_REFORMATTED,
+        /**
+         * An M  CHG line with more than 8 charges was broken into multiple lines.
+         */
+        CHG_LINE_SPLIT,
+        /**
+         * An S-group with an invalid type was removed.
+         */
+        INVALID_SGROUP_TYPE_REMOVED,
+        /**
+         * An S-group that was already declared was removed.
+         */
+        DUPLICATE_SGROUP_REMOVED,
+        /**
+         * An M  STY line with more than 8 S-groups was broken into multiple lines.
+         */
+        STY_LINE_SPLIT,
+        /**
+         * An S-group line that referenced an unknown S-group or
+         * isn't allowed for its S-group's type was removed.
+         */
+        SGROUP_LINE_REMOVED,
+        /**
+         * An atom index less than 1 was removed from an M  SAL line.
+         */
+        SAL_INVALID_ATOM_REMOVED,
+        /**
+         * An M  SAL line with more than 15 atoms was broken into multiple lines.
+         */
+        SAL_LINE_SPLIT,
+        /**
+         * An M  SDS EXP line with more than 15 S-groups was broken into multiple lines.
+         */
+        SDS_EXP_LINE_SPLIT,
+        /**
+         * Data S-group M  SCD lines were not followed by an M  SED line.
+         */
+        SCD_WITHOUT_SED,
+        /**
+         * Data S-group M  SCD/M  SED lines were re-chunked into lines of at most 69 characters.
+         */
+        DATA_SGROUP_LINES_RECHUNKED,
+        /**
+         * The M  END line did not have exactly 2 spaces between M and END or had extra text after it.
+         */
+        END_LINE_FIXED,
+        /**
+         * Blank lines between the M  END line and the data items were removed.
+         */
+        BLANK_LINES_BEFORE_DATA_ITEMS_REMOVED,
+        /**
+         * Non-blank lines between the M  END line and the data items were removed.
+         */
+        LINES_BEFORE_DATA_ITEMS_REMOVED,
+        /**
+         * Extra blank lines between the previous record's $$$$ and this record were removed.
+         */
+        BLANK_LINES_BETWEEN_RECORDS_REMOVED,
+        /**
+         * A V3000 M  V30 line had incorrect whitespace around the M and V30.
+         */
+        V3000_LINE_PREFIX_FIXED,
+        /**
+         * A V3000 line longer than 80 characters was joined with its continuation lines
+         * and split into lines of at most 80 characters.
+         */
+        V3000_LINE_REWRAPPED,
+        /**
+         * A blank line inside a V3000 connection table was removed.
+         */
+        V3000_BLANK_LINE_REMOVED
+    }
+
+    /**
+     * The sections of a record that the cleaner reads one after another.
+     */
+    enum Phase{
+        HEADER,
+        COUNTS_LINE,
+        ATOM_LIST,
+        BOND_LIST,
+        CONNECTION_TABLE,
+        /**
+         * The M  V30 lines of a V3000 record up to the M  END line.
+         */
+        V3000_CTAB,
+        BEFORE_DATA_ITEMS,
+        DATA_ITEMS,
+        DELIMITER
+    }
+
+    /**
+     * A record was cleaned.
+     * @param recordIndex the 0-based index of the record in the input.
+     * @param ruleCounts the number of times each rule was applied to this record;
+     *                   rules that weren't applied are not in the map.  Will never be null
+     *                   and is empty if the record didn't need to be changed.
+     */
+    default void recordCleaned(long recordIndex, Map<Rule, Integer> ruleCounts){
+    }
+
+    /**
+     * A record could not be cleaned; the cleaner will stop after this.
+     * @param recordIndex the 0-based index of the record in the input.
+     * @param error the error that will be thrown.
+     */
+    default void recordFailed(long recordIndex, IOException error){
+    }
+
+    /**
+     * The cleaner finished reading a section of a record.
+     * @param recordIndex the 0-based index of the record in the input.
+     * @param phase the section that was read.
+     * @param elapsedNanos how long it took to read and clean that section.
+     */
+    default void phaseFinished(long recordIndex, Phase phase, long elapsedNanos){
+    }
+}
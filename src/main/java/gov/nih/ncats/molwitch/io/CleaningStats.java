@@ -0,0 +1,164 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.io;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link CleaningListener} that keeps a summary of everything that was cleaned,
+ * usually for a single file, such as how many records needed which fixes
+ * and how much time was spent in each section of the records.
+ *
+ * <pre>
+ * {@code
+ * CleaningStats stats = new CleaningStats();
+ * try(CloseableIterator<String> iter = CtTableCleaner.clean(file, stats)){
+ *     ...
+ * }
+ * System.out.println(stats);
+ * }
+ * </pre>
+ *
+ * This class is threadsafe.
+ */
+public final class CleaningStats implements CleaningListener {
+
+    private static final Rule[] RULES = Rule.values();
+    private static final Phase[] PHASES = Phase.values();
+
+    private final AtomicLong numberOfRecords = new AtomicLong();
+    private final AtomicLong numberOfRecordsChanged = new AtomicLong();
+    private final AtomicLong numberOfRecordsFailed = new AtomicLong();
+    private final AtomicLongArray ruleCounts = new AtomicLongArray(RULES.length);
+    private final AtomicLongArray recordsWithRule = new AtomicLongArray(RULES.length);
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(PHASES.length);
+
+    @Override
+    public void recordCleaned(long recordIndex, Map<Rule, Integer> counts) {
+        numberOfRecords.incrementAndGet();
+        if(!counts.isEmpty()){
+            numberOfRecordsChanged.incrementAndGet();
+        }
+        for(Map.Entry<Rule, Integer> entry : counts.entrySet()){
+            int ordinal = entry.getKey().ordinal();
+            ruleCounts.addAndGet(ordinal, entry.getValue());
+            recordsWithRule.incrementAndGet(ordinal);
+        }
+    }
+
+    @Override
+    public void recordFailed(long recordIndex, IOException error) {
+        numberOfRecordsFailed.incrementAndGet();
+    }
+
+    @Override
+    public void phaseFinished(long recordIndex, Phase phase, long elapsedNanos) {
+        phaseNanos.addAndGet(phase.ordinal(), elapsedNanos);
+    }
+
+    /**
+     * Get the number of records that were cleaned.
+     * @return the number of records.
+     */
+    public long getNumberOfRecords(){
+        return numberOfRecords.get();
+    }
+
+    /**
+     * Get the number of records that had at least one fix applied.
+     * @return the number of records.
+     */
+    public long getNumberOfRecordsChanged(){
+        return numberOfRecordsChanged.get();
+    }
+
+    /**
+     * Get the number of records that could not be cleaned.
+     * @return the number of records.
+     */
+    public long getNumberOfRecordsFailed(){
+        return numberOfRecordsFailed.get();
+    }
+
+    /**
+     * Get the total number of times the given rule was applied.
+     * @param rule the rule; can not be null.
+     * @return the number of times.
+     */
+    public long getRuleCount(Rule rule){
+        return ruleCounts.get(rule.ordinal());
+    }
+
+    /**
+     * Get the number of records the given rule was applied to at least once.
+     * @param rule the rule; can not be null.
+     * @return the number of records.
+     */
+    public long getNumberOfRecordsWithRule(Rule rule){
+        return recordsWithRule.get(rule.ordinal());
+    }
+
+    /**
+     * Get the total time spent reading and cleaning the given section of the records.
+     * @param phase the section; can not be null.
+     * @return the time in nanoseconds.
+     */
+    public long getPhaseNanos(Phase phase){
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    /**
+     * Get the total time spent reading and cleaning the records.
+     * @return the time in nanoseconds.
+     */
+    public long getTotalNanos(){
+        long total =0;
+        for(int i=0; i< PHASES.length; i++){
+            total += phaseNanos.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * A multi-line summary of the records cleaned, the rules that were applied
+     * and the time spent per section.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(1024);
+        builder.append("records cleaned = ").append(getNumberOfRecords())
+                .append(", changed = ").append(getNumberOfRecordsChanged())
+                .append(", failed = ").append(getNumberOfRecordsFailed())
+                .append('\n');
+        for(Rule rule : RULES){
+            long count = getRuleCount(rule);
+            if(count >0){
+                builder.append("  ").append(rule).append(" = ").append(count)
+                        .append(" in ").append(getNumberOfRecordsWithRule(rule)).append(" records\n");
+            }
+        }
+        for(Phase phase : PHASES){
+            builder.append("  ").append(phase).append(" ms = ").append(getPhaseNanos(phase) / 1_000_000D).append('\n');
+        }
+        return builder.toString();
+    }
+}
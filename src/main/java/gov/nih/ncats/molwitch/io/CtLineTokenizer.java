@@ -0,0 +1,313 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.io;
+
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits a single line of a CTfile into whitespace delimited tokens
+ * and parses them in place without creating intermediate Strings
+ * or using regular expressions.  Also has helper methods to write
+ * right justified fixed width columns.
+ *
+ * <p>
+ * Tokens are delimited the same way {@link java.util.Scanner} delimits them
+ * by default, so this can be used as a drop in replacement for the
+ * Scanner calls the cleaner used to make on every line.
+ * </p>
+ *
+ * This class is NOT threadsafe.
+ */
+final class CtLineTokenizer {
+
+    private CharSequence line;
+    private int position;
+    private int tokenStart;
+    private int tokenEnd;
+
+    /**
+     * Start tokenizing the given line from the beginning.
+     * @param line the line to tokenize; can not be null.
+     * @return this.
+     */
+    CtLineTokenizer reset(CharSequence line) {
+        return reset(line, 0);
+    }
+
+    /**
+     * Start tokenizing the given line from the given offset.
+     * @param line the line to tokenize; can not be null.
+     * @param offset the offset into the line to start from.
+     * @return this.
+     */
+    CtLineTokenizer reset(CharSequence line, int offset) {
+        this.line = line;
+        this.position = offset;
+        this.tokenStart = offset;
+        this.tokenEnd = offset;
+        return this;
+    }
+
+    /**
+     * The current position in the line; used with {@link #position(int)}
+     * to re-read tokens.
+     * @return the position.
+     */
+    int position() {
+        return position;
+    }
+
+    void position(int position) {
+        this.position = position;
+    }
+
+    /**
+     * Advance to the next token.
+     * @throws NoSuchElementException if there are no more tokens.
+     */
+    void next() {
+        int length = line.length();
+        int i = position;
+        while (i < length && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            throw new NoSuchElementException("no more tokens in line : " + line);
+        }
+        tokenStart = i;
+        while (i < length && !Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        tokenEnd = i;
+        position = i;
+    }
+
+    /**
+     * Advance to the next token and parse it as an int.
+     * @return the parsed int.
+     * @throws NoSuchElementException if there are no more tokens.
+     * @throws NumberFormatException if the token is not an int.
+     */
+    int nextInt() {
+        next();
+        return tokenAsInt();
+    }
+
+    int tokenAsInt() {
+        return parseInt(line, tokenStart, tokenEnd);
+    }
+
+    String token() {
+        return line.subSequence(tokenStart, tokenEnd).toString();
+    }
+
+    boolean tokenEquals(String s) {
+        int length = tokenEnd - tokenStart;
+        if (length != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(tokenStart + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Make sure the current token is only made up of the letters A-Z.
+     * @throws InputMismatchException if it isn't.
+     */
+    void requireUpperCaseToken() {
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            char c = line.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                throw new InputMismatchException("expected upper case token but was " + token());
+            }
+        }
+    }
+
+    /**
+     * Append the current token right justified in a column of the given width.
+     */
+    void appendToken(StringBuilder out, int width) {
+        appendPadded(out, line, tokenStart, tokenEnd, width);
+    }
+
+    /**
+     * Get the rest of the line after the current token,
+     * including any leading whitespace.
+     * @return the rest of the line.
+     * @throws NoSuchElementException if there is nothing left in the line.
+     */
+    CharSequence rest() {
+        if (position >= line.length()) {
+            throw new NoSuchElementException("no more text in line : " + line);
+        }
+        return line.subSequence(position, line.length());
+    }
+
+    /**
+     * Append the given int right justified in a column of the given width;
+     * this is the same as {@code String.format("%<width>d", value)}.
+     */
+    static void appendPadded(StringBuilder out, int value, int width) {
+        int digits = value < 0 ? 2 : 1;
+        for (int v = value / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < width; i++) {
+            out.append(' ');
+        }
+        out.append(value);
+    }
+
+    /**
+     * Append the given range of characters right justified in a column of the given width;
+     * this is the same as {@code String.format("%<width>s", s.subSequence(start, end))}.
+     */
+    static void appendPadded(StringBuilder out, CharSequence s, int start, int end, int width) {
+        for (int i = end - start; i < width; i++) {
+            out.append(' ');
+        }
+        out.append(s, start, end);
+    }
+
+    /**
+     * Parse the given range as an int, ignoring leading and trailing control characters
+     * and spaces the way {@code Integer.parseInt(s.substring(start, end).trim())} does.
+     */
+    static int parseIntTrimmed(CharSequence s, int start, int end) {
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return parseInt(s, start, end);
+    }
+
+    private static int parseInt(CharSequence s, int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("empty int");
+        }
+        int i = start;
+        boolean negative = false;
+        char first = s.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) {
+                throw new NumberFormatException("not an int : " + s.subSequence(start, end));
+            }
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = Character.digit(s.charAt(i), 10);
+            if (digit < 0) {
+                throw new NumberFormatException("not an int : " + s.subSequence(start, end));
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException("int overflow : " + s.subSequence(start, end));
+            }
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("int overflow : " + s.subSequence(start, end));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Is the given line empty or only made up of control characters and spaces;
+     * this is the same as {@code line.trim().isEmpty()}.
+     */
+    static boolean isBlank(CharSequence line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Is the given character whitespace as defined by the regular expression {@code \s}.
+     */
+    static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Find the end of a property line keyword; this is the same as
+     * matching the regular expression {@code ^\s*M\s+<keyword>}.
+     * @param line the line to check.
+     * @param keyword the keyword that must follow "M" and at least one whitespace.
+     *                A '?' in the keyword matches any character.
+     * @return the offset into the line right after the keyword or -1 if the line
+     * doesn't match.
+     */
+    static int indexAfterKeyword(CharSequence line, String keyword) {
+        int length = line.length();
+        int i = 0;
+        while (i < length && isRegexWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i == length || line.charAt(i) != 'M') {
+            return -1;
+        }
+        i++;
+        int afterM = i;
+        while (i < length && isRegexWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i == afterM || length - i < keyword.length()) {
+            return -1;
+        }
+        for (int k = 0; k < keyword.length(); k++, i++) {
+            char expected = keyword.charAt(k);
+            if (expected != '?' && line.charAt(i) != expected) {
+                return -1;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Is the given already trimmed line made up of exactly 2 words;
+     * this is the same as {@code trimmed.matches("\\S+\\s+\\S+$")}.
+     */
+    static boolean isTwoWords(String trimmed) {
+        int runs = 0;
+        boolean inWhitespace = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            boolean ws = isRegexWhitespace(trimmed.charAt(i));
+            if (ws && !inWhitespace) {
+                runs++;
+            }
+            inWhitespace = ws;
+        }
+        return runs == 1 && !trimmed.isEmpty() && !isRegexWhitespace(trimmed.charAt(0))
+                && !inWhitespace;
+    }
+}
@@ -23,10 +23,12 @@ import gov.nih.ncats.common.iter.CloseableIterator;
 import gov.nih.ncats.molwitch.SGroup;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 /**
- * Utility class to fix or "clean up" v2000 mol and sdfile formatted
+ * Utility class to fix or "clean up" v2000 and v3000 mol and sdfile formatted
  * data by fixing common problems that happen from
  * copy and paste errors or known tools and produce invalid results.
  *
@@ -53,6 +55,10 @@ import java.util.Map;
  *     <li>Data Sgroups with a SCD line without a SED line have the last SCD line converted into an SED line</li>
  *     <li>Data Sgroups SCD and SED lines are reformatted to be max 69 characters of data per line</li>
  *     <li>ignore anything after the M  END line start, as it sometimes is added by accident in a few tools</li>
+ *     <li>V3000 M  V30 lines with incorrect whitespace around the M and V30 are fixed</li>
+ *     <li>V3000 lines longer than 80 characters are joined with their continuation lines
+ *     and re-split into lines of at most 80 characters</li>
+ *     <li>blank lines inside a V3000 connection table are removed</li>
  * </ul>
  *
  */
@@ -70,14 +76,40 @@ public final class CtTableCleaner {
      * @throws IOException if there are any problems parsing the mol file.
      */
     public static String clean(String molOrSdText) throws IOException{
-        StringWriter out = new StringWriter(molOrSdText.length());
-        try(BufferedReader reader = new BufferedReader(new StringReader(molOrSdText));
-            BufferedWriter writer = new BufferedWriter(out);
-        ){
-            SdfUtil.copyClean(reader, writer);
+        return clean(molOrSdText, null);
+    }
+    /**
+     * Cleans a mol String and returns a new cleaned String, notifying
+     * the given listener of the fixes made to each record.
+     *
+     * @param molOrSdText the input mol string to clean
+     * @param listener the {@link CleaningListener} to notify; may be null.
+     * @return a new String that is the cleaned mol file.
+     * @throws IOException if there are any problems parsing the mol file.
+     */
+    public static String clean(String molOrSdText, CleaningListener listener) throws IOException{
+        StringBuilder out = new StringBuilder(molOrSdText.length());
+        try(SdfUtil.CleanSdfIterator iter = new SdfUtil.CleanSdfIterator(new BufferedReader(new StringReader(molOrSdText)), listener)){
+            while(iter.hasNext()){
+                out.append(iter.next());
+            }
         }
         return out.toString();
     }
+    /**
+     * Cleans the given mol or SD file using all the available processors
+     * and writes the cleaned records to the given output file.
+     * The output is the same as writing out all the records
+     * returned by {@link #clean(File)}.
+     *
+     * @param molOrSdFile the file to clean, which may be gzipped.
+     * @param outputFile the file to write the cleaned records to, overwriting it if it exists.
+     * @throws IOException if there are any problems parsing the mol file or writing the output.
+     * @see ParallelSdfCleaner
+     */
+    public static void cleanParallel(File molOrSdFile, File outputFile) throws IOException{
+        ParallelSdfCleaner.builder().build().clean(molOrSdFile, outputFile);
+    }
     public static CloseableIterator<String> clean(File molOrSdFile) throws IOException{
         return clean(InputStreamSupplier.forFile(molOrSdFile).get());
 
@@ -92,4 +124,73 @@ public final class CtTableCleaner {
         return new SdfUtil.CleanSdfIterator(molOrSdReader);
 
     }
+    /**
+     * Cleans the records of the given mol or SD file as they are iterated over,
+     * notifying the given listener of the fixes made to each record.
+     *
+     * @param molOrSdFile the file to clean, which may be gzipped.
+     * @param listener the {@link CleaningListener} to notify; may be null.
+     * @return a new CloseableIterator of the cleaned records.
+     * @throws IOException if there are any problems reading or parsing the first record.
+     * @see CleaningStats
+     */
+    public static CloseableIterator<String> clean(File molOrSdFile, CleaningListener listener) throws IOException{
+        return clean(new BufferedReader(new InputStreamReader(InputStreamSupplier.forFile(molOrSdFile).get())), listener);
+    }
+    /**
+     * Cleans the records read from the given reader as they are iterated over,
+     * notifying the given listener of the fixes made to each record.
+     *
+     * @param molOrSdReader the reader to clean.
+     * @param listener the {@link CleaningListener} to notify; may be null.
+     * @return a new CloseableIterator of the cleaned records.
+     * @throws IOException if there are any problems reading or parsing the first record.
+     * @see CleaningStats
+     */
+    public static CloseableIterator<String> clean(BufferedReader molOrSdReader, CleaningListener listener) throws IOException{
+        return new SdfUtil.CleanSdfIterator(molOrSdReader, listener);
+    }
+
+    /**
+     * Create a new Reader that returns the cleaned text of the mol or SD records
+     * read from the given Reader.  Records are only read and cleaned as the returned Reader
+     * is read, so memory use is bounded by the size of a record instead of the whole input.
+     * Closing the returned Reader closes the given Reader.
+     *
+     * @param molOrSdReader the Reader to clean; can not be null.
+     * @return a new Reader of cleaned records.
+     * @throws NullPointerException if molOrSdReader is null.
+     */
+    public static Reader newCleaningReader(Reader molOrSdReader){
+        BufferedReader reader = molOrSdReader instanceof BufferedReader ? (BufferedReader) molOrSdReader : new BufferedReader(molOrSdReader);
+        return new SdfUtil.CleanSdfReader(reader);
+    }
+    /**
+     * Create a new InputStream of the UTF-8 encoded cleaned mol or SD records
+     * read from the given UTF-8 encoded InputStream.
+     * This is the same as {@link #newCleaningInputStream(InputStream, Charset) newCleaningInputStream(in, StandardCharsets.UTF_8)}.
+     *
+     * @param molOrSdInputStream the InputStream to clean; can not be null.
+     * @return a new InputStream of cleaned records.
+     * @throws NullPointerException if molOrSdInputStream is null.
+     */
+    public static InputStream newCleaningInputStream(InputStream molOrSdInputStream){
+        return newCleaningInputStream(molOrSdInputStream, StandardCharsets.UTF_8);
+    }
+    /**
+     * Create a new InputStream of the cleaned mol or SD records read from the given InputStream
+     * that can be passed to any reader such as {@link ChemicalReaderFactory#newReader(InputStream)}.
+     * Records are only read and cleaned as the returned InputStream
+     * is read, so memory use is bounded by the size of a record instead of the whole input.
+     * Closing the returned InputStream closes the given InputStream.
+     *
+     * @param molOrSdInputStream the InputStream to clean; can not be null.
+     * @param charset the charset used to decode the input and encode the cleaned output; can not be null.
+     * @return a new InputStream of cleaned records.
+     * @throws NullPointerException if any parameter is null.
+     */
+    public static InputStream newCleaningInputStream(InputStream molOrSdInputStream, Charset charset){
+        BufferedReader reader = new BufferedReader(new InputStreamReader(molOrSdInputStream, charset));
+        return new SdfUtil.CleanSdfInputStream(new SdfUtil.CleanSdfReader(reader), charset);
+    }
 }
@@ -0,0 +1,571 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.io;
+
+import gov.nih.ncats.common.io.InputStreamSupplier;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Cleans SD files the same way as {@link CtTableCleaner} but using multiple threads.
+ * The calling thread splits the input into batches of records at {@code $$$$} lines,
+ * worker threads clean each batch and the cleaned batches are written
+ * to the output in input order, so the output is byte for byte the same as
+ * cleaning the whole file with {@link CtTableCleaner} in a single thread.
+ *
+ * <p>
+ * A batch is cleaned assuming its first line starts a new record.
+ * If a batch's cleaning doesn't end exactly at its last {@code $$$$}
+ * (for example a malformed record whose delimiter was read as part of the connection table),
+ * that batch is cleaned again on the calling thread together with the batch after it,
+ * adding batches until the cleaning ends at a batch boundary again, and then the batches
+ * after that are cleaned in parallel as before, so the output still matches the single threaded cleaner.
+ * Input that can't be cleaned
+ * throws an IOException just like the single threaded cleaner, but how much of the output
+ * was written before the error is not specified.
+ * </p>
+ *
+ * <pre>
+ * {@code
+ * ParallelSdfCleaner cleaner = ParallelSdfCleaner.builder()
+ *                                     .parallelism(8)
+ *                                     .build();
+ * cleaner.clean(new File("vendor.sdf.gz"), new File("vendor.cleaned.sdf"));
+ * }
+ * </pre>
+ *
+ * <p>
+ * A {@link CleaningListener} set on the builder is notified from the calling thread
+ * in record order, the same as if the records were cleaned by a single thread,
+ * so it doesn't have to be threadsafe unless the same listener is used by several cleaners at once.
+ * </p>
+ *
+ * This class is threadsafe.
+ */
+public final class ParallelSdfCleaner {
+
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final int parallelism;
+    private final int batchSize;
+    private final Charset charset;
+    private final CleaningListener listener;
+
+    /**
+     * Create a new Builder.
+     * @return a new Builder.
+     */
+    public static Builder builder(){
+        return new Builder();
+    }
+
+    private ParallelSdfCleaner(Builder builder){
+        this.parallelism = builder.parallelism;
+        this.batchSize = builder.batchSize;
+        this.charset = builder.charset;
+        this.listener = builder.listener;
+    }
+
+    /**
+     * Clean the given mol or SD file and write the cleaned records to the given output file,
+     * overwriting it if it already exists.
+     * @param molOrSdFile the file to clean, which may be gzipped; can not be null.
+     * @param outputFile the file to write the cleaned records to; can not be null.
+     * @throws IOException if there are any problems reading, parsing or writing.
+     */
+    public void clean(File molOrSdFile, File outputFile) throws IOException{
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(InputStreamSupplier.forFile(molOrSdFile).get(), charset));
+            FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            clean(reader, out);
+        }
+    }
+
+    /**
+     * Clean the mol or SD records read from the given reader and write the cleaned records,
+     * encoded with this cleaner's charset, to the given channel.
+     * Neither the reader nor the channel is closed.
+     * @param molOrSdReader the reader to clean; can not be null.
+     * @param out the channel to write to; can not be null.
+     * @throws IOException if there are any problems reading, parsing or writing.
+     */
+    public void clean(BufferedReader molOrSdReader, WritableByteChannel out) throws IOException{
+        Objects.requireNonNull(out);
+        BatchSplitter splitter = new BatchSplitter(molOrSdReader, batchSize);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r ->{
+            Thread t = new Thread(r, "molwitch-sdf-clean");
+            t.setDaemon(true);
+            return t;
+        });
+        //keep enough batches in flight that the workers don't wait on the splitter
+        //but bound it so memory use doesn't depend on the file size
+        int maxInFlight = parallelism * 2;
+        ArrayDeque<PendingBatch> pending = new ArrayDeque<>(maxInFlight);
+        long recordsWritten = 0;
+        try{
+            boolean moreInput = true;
+            while(true){
+                while(moreInput && pending.size() < maxInFlight){
+                    Batch batch = splitter.next();
+                    if(batch ==null){
+                        moreInput = false;
+                    }else{
+                        pending.add(new PendingBatch(batch, executor.submit(() -> cleanBatch(batch))));
+                    }
+                }
+                PendingBatch head = pending.poll();
+                if(head ==null){
+                    return;
+                }
+                Batch batch = head.batch;
+                CleanedBatch cleaned = await(head.future);
+                int merged = 0;
+                boolean failed = false;
+                while(cleaned ==null){
+                    //this batch didn't end where a sequential clean would have
+                    //so clean it together with the next batch until a batch boundary lines up again
+                    Batch following = failed || batch.last || ++merged > maxInFlight ? null : nextBatch(pending, splitter);
+                    if(following ==null){
+                        //give up on finding a boundary, clean everything from here on sequentially
+                        for(PendingBatch p : pending){
+                            p.future.cancel(true);
+                        }
+                        cleanSequentially(batch, pending, splitter, out, recordsWritten);
+                        return;
+                    }
+                    batch = batch.followedBy(following);
+                    cleaned = cleanBatch(batch);
+                    //let the sequential clean report an error at the right place
+                    failed = cleaned == FAILED;
+                    if(failed){
+                        cleaned = null;
+                    }
+                }
+                if(cleaned.events !=null){
+                    cleaned.events.replay(listener, recordsWritten, batch.extraBlankLinesBefore);
+                }
+                recordsWritten += cleaned.numberOfRecords;
+                write(out, cleaned.bytes);
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Take the batch after the ones already taken, which was either already submitted
+     * or is still in the input.
+     * @return the next batch or {@code null} if there aren't any more.
+     */
+    private static Batch nextBatch(ArrayDeque<PendingBatch> pending, BatchSplitter splitter) throws IOException{
+        PendingBatch next = pending.poll();
+        if(next ==null){
+            return splitter.next();
+        }
+        //its parallel result can't be used since it doesn't start at a record
+        next.future.cancel(true);
+        return next.batch;
+    }
+
+    private static CleanedBatch await(Future<CleanedBatch> future) throws IOException{
+        try {
+            CleanedBatch cleaned = future.get();
+            return cleaned == FAILED ? null : cleaned;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for records to be cleaned");
+        } catch (ExecutionException e) {
+            throw new IOException("error cleaning records", e.getCause());
+        }
+    }
+
+    /**
+     * Clean a batch.
+     * @return the encoded cleaned records, {@code null} if the batch doesn't end where a sequential
+     * clean would have or {@link #FAILED} if the batch couldn't be cleaned.
+     */
+    private CleanedBatch cleanBatch(Batch batch){
+        StringBuilder cleaned = new StringBuilder(batch.text.length());
+        //record the events so they are only reported if this batch is used
+        //and so they are reported in order from the calling thread
+        RecordedEvents events = listener ==null ? null : new RecordedEvents();
+        int numberOfRecords = 0;
+        try(SdfUtil.CleanSdfIterator iter = new SdfUtil.CleanSdfIterator(new BufferedReader(new StringReader(batch.text)), events)){
+            while(iter.hasNext()){
+                cleaned.append(iter.next());
+                numberOfRecords++;
+            }
+            if(!batch.last && !iter.endedAfterDelimiter()){
+                return null;
+            }
+        }catch(IOException | RuntimeException e){
+            //let the sequential clean report it at the right place
+            return FAILED;
+        }
+        if(!batch.last){
+            //the single threaded cleaner adds a newline after $$$$
+            //when there are more lines
+            cleaned.append('\n');
+        }
+        return new CleanedBatch(cleaned.toString().getBytes(charset), numberOfRecords, events);
+    }
+
+    private void cleanSequentially(Batch first, Iterable<PendingBatch> rest, BatchSplitter splitter, WritableByteChannel out, long recordsWritten) throws IOException{
+        ConcatReader concat = new ConcatReader();
+        concat.add(new StringReader(first.text));
+        for(PendingBatch p : rest){
+            concat.add(new StringReader(p.batch.rawText));
+        }
+        concat.add(new StringReader(splitter.carriedText()));
+        concat.add(splitter.reader);
+        //don't close the iterator since that would close the caller's reader
+        CleaningListener offsetListener = listener ==null ? null : new IndexOffsetListener(listener, recordsWritten, first.extraBlankLinesBefore);
+        SdfUtil.CleanSdfIterator iter = new SdfUtil.CleanSdfIterator(new BufferedReader(concat), offsetListener);
+        try {
+            while (iter.hasNext()) {
+                write(out, iter.next().getBytes(charset));
+            }
+        }catch(UncheckedIOException e){
+            throw e.getCause();
+        }
+    }
+
+    private static void write(WritableByteChannel out, byte[] bytes) throws IOException{
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while(buffer.hasRemaining()){
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Returned for a batch that threw an error when it was cleaned.
+     */
+    private static final CleanedBatch FAILED = new CleanedBatch(new byte[0], 0, null);
+
+    private static final class CleanedBatch{
+        private final byte[] bytes;
+        private final int numberOfRecords;
+        private final RecordedEvents events;
+
+        CleanedBatch(byte[] bytes, int numberOfRecords, RecordedEvents events) {
+            this.bytes = bytes;
+            this.numberOfRecords = numberOfRecords;
+            this.events = events;
+        }
+    }
+
+    /**
+     * Passes events on to another listener with the record indexes shifted
+     * to where the batch starts in the whole input.
+     */
+    private static final class IndexOffsetListener implements CleaningListener{
+        private final CleaningListener delegate;
+        private final long offset;
+        /**
+         * The splitter collapses extra blank lines between records instead of
+         * the DELIMITER state so that fix is added to the first record.
+         */
+        private boolean addBlankLinesRule;
+
+        IndexOffsetListener(CleaningListener delegate, long offset, boolean extraBlankLinesBefore) {
+            this.delegate = delegate;
+            this.offset = offset;
+            this.addBlankLinesRule = extraBlankLinesBefore;
+        }
+
+        @Override
+        public void recordCleaned(long recordIndex, Map<Rule, Integer> ruleCounts) {
+            if(addBlankLinesRule){
+                addBlankLinesRule = false;
+                Map<Rule, Integer> withBlankLines = new EnumMap<>(Rule.class);
+                withBlankLines.putAll(ruleCounts);
+                withBlankLines.merge(Rule.BLANK_LINES_BETWEEN_RECORDS_REMOVED, 1, Integer::sum);
+                ruleCounts = Collections.unmodifiableMap(withBlankLines);
+            }
+            delegate.recordCleaned(offset + recordIndex, ruleCounts);
+        }
+
+        @Override
+        public void recordFailed(long recordIndex, IOException error) {
+            addBlankLinesRule = false;
+            delegate.recordFailed(offset + recordIndex, error);
+        }
+
+        @Override
+        public void phaseFinished(long recordIndex, Phase phase, long elapsedNanos) {
+            delegate.phaseFinished(offset + recordIndex, phase, elapsedNanos);
+        }
+    }
+
+    /**
+     * Records the events of a batch so they can be replayed later.
+     */
+    private static final class RecordedEvents implements CleaningListener{
+        private final List<Consumer<CleaningListener>> events = new ArrayList<>();
+
+        @Override
+        public void recordCleaned(long recordIndex, Map<Rule, Integer> ruleCounts) {
+            events.add(l -> l.recordCleaned(recordIndex, ruleCounts));
+        }
+
+        @Override
+        public void recordFailed(long recordIndex, IOException error) {
+            events.add(l -> l.recordFailed(recordIndex, error));
+        }
+
+        @Override
+        public void phaseFinished(long recordIndex, Phase phase, long elapsedNanos) {
+            events.add(l -> l.phaseFinished(recordIndex, phase, elapsedNanos));
+        }
+
+        void replay(CleaningListener listener, long offset, boolean extraBlankLinesBefore){
+            CleaningListener offsetListener = new IndexOffsetListener(listener, offset, extraBlankLinesBefore);
+            for(Consumer<CleaningListener> event : events){
+                event.accept(offsetListener);
+            }
+        }
+    }
+
+    private static final class PendingBatch{
+        private final Batch batch;
+        private final Future<CleanedBatch> future;
+
+        PendingBatch(Batch batch, Future<CleanedBatch> future) {
+            this.batch = batch;
+            this.future = future;
+        }
+    }
+
+    private static final class Batch{
+        /**
+         * The lines of the batch with the blank lines before the first record
+         * collapsed to a single blank line the way the DELIMITER state does.
+         */
+        private final String text;
+        /**
+         * The lines of the batch as they were in the input.
+         */
+        private final String rawText;
+        private final boolean last;
+        /**
+         * Were there more than 1 blank lines before the first record that were collapsed.
+         */
+        private final boolean extraBlankLinesBefore;
+
+        Batch(String text, String rawText, boolean last, boolean extraBlankLinesBefore) {
+            this.text = text;
+            this.rawText = rawText;
+            this.last = last;
+            this.extraBlankLinesBefore = extraBlankLinesBefore;
+        }
+
+        /**
+         * Make a single batch of this batch and the batch after it, keeping the blank lines between
+         * them as they were in the input the way the single threaded cleaner sees them.
+         */
+        Batch followedBy(Batch next){
+            return new Batch(text + next.rawText, rawText + next.rawText, next.last, extraBlankLinesBefore);
+        }
+    }
+
+    /**
+     * Splits the input into batches of whole records.  A batch ends at a {@code $$$$} line;
+     * any blank lines after it are moved to the next batch.
+     */
+    private static final class BatchSplitter{
+        private final BufferedReader reader;
+        private final int batchSize;
+        private final StringBuilder carriedBlankLines = new StringBuilder();
+        private String carriedLine;
+        private boolean eof;
+
+        BatchSplitter(BufferedReader reader, int batchSize) {
+            this.reader = Objects.requireNonNull(reader);
+            this.batchSize = batchSize;
+        }
+
+        Batch next() throws IOException{
+            if(eof){
+                return null;
+            }
+            StringBuilder text = new StringBuilder(8192);
+            String rawPrefix = carriedBlankLines.toString();
+            carriedBlankLines.setLength(0);
+            if(!rawPrefix.isEmpty()){
+                text.append('\n');
+            }
+            int records=0;
+            String line = carriedLine !=null ? carriedLine : reader.readLine();
+            carriedLine = null;
+            while(line !=null){
+                text.append(line).append('\n');
+                if(line.startsWith("$$$$") && ++records >= batchSize){
+                    String next;
+                    while((next = reader.readLine()) !=null && CtLineTokenizer.isBlank(next)){
+                        carriedBlankLines.append(next).append('\n');
+                    }
+                    if(next ==null){
+                        //only blank lines left so they belong to this last batch
+                        text.append(carriedBlankLines);
+                        carriedBlankLines.setLength(0);
+                        eof = true;
+                    }
+                    carriedLine = next;
+                    return newBatch(text, rawPrefix, eof);
+                }
+                line = reader.readLine();
+            }
+            eof = true;
+            if(text.length() ==0){
+                return null;
+            }
+            return newBatch(text, rawPrefix, true);
+        }
+
+        /**
+         * The lines already read for the next batch.
+         */
+        String carriedText(){
+            return carriedLine ==null ? carriedBlankLines.toString() : carriedBlankLines + carriedLine + "\n";
+        }
+
+        private static Batch newBatch(StringBuilder text, String rawPrefix, boolean last){
+            String s = text.toString();
+            String raw = rawPrefix.isEmpty() ? s : rawPrefix + s.substring(1);
+            boolean extraBlankLines = rawPrefix.indexOf('\n') != rawPrefix.lastIndexOf('\n');
+            return new Batch(s, raw, last, extraBlankLines);
+        }
+    }
+
+    /**
+     * Reads from several readers one after the other.
+     */
+    private static final class ConcatReader extends Reader{
+        private final ArrayDeque<Reader> readers = new ArrayDeque<>();
+
+        void add(Reader reader){
+            readers.add(reader);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if(len ==0){
+                return 0;
+            }
+            Iterator<Reader> iter = readers.iterator();
+            while(iter.hasNext()){
+                int n = iter.next().read(cbuf, off, len);
+                if(n >0){
+                    return n;
+                }
+                //only remove readers that hit EOF
+                if(n <0){
+                    iter.remove();
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() {
+            readers.clear();
+        }
+    }
+
+    /**
+     * Builds a {@link ParallelSdfCleaner}.
+     */
+    public static final class Builder{
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private Charset charset = StandardCharsets.UTF_8;
+        private CleaningListener listener;
+
+        private Builder(){
+        }
+
+        /**
+         * Set the listener to notify of the fixes made to each record.  Defaults to none.
+         * @param listener the {@link CleaningListener} to notify; may be null.
+         * @return this.
+         * @see CleaningStats
+         */
+        public Builder listener(CleaningListener listener){
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Set the number of worker threads to use.  Defaults to the number of available processors.
+         * @param parallelism the number of threads; must be &ge; 1.
+         * @return this.
+         * @throws IllegalArgumentException if parallelism &lt; 1.
+         */
+        public Builder parallelism(int parallelism){
+            if(parallelism < 1){
+                throw new IllegalArgumentException("parallelism must be >=1");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Set the number of records in each batch handed to a worker thread.
+         * @param batchSize the number of records; must be &ge; 1.
+         * @return this.
+         * @throws IllegalArgumentException if batchSize &lt; 1.
+         */
+        public Builder batchSize(int batchSize){
+            if(batchSize < 1){
+                throw new IllegalArgumentException("batchSize must be >=1");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Set the charset used to read files and to encode the cleaned output.  Defaults to UTF-8.
+         * @param charset the charset; can not be null.
+         * @return this.
+         */
+        public Builder charset(Charset charset){
+            this.charset = Objects.requireNonNull(charset);
+            return this;
+        }
+
+        /**
+         * Create a new {@link ParallelSdfCleaner}.
+         * @return a new ParallelSdfCleaner.
+         */
+        public ParallelSdfCleaner build(){
+            return new ParallelSdfCleaner(this);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.io;
+
+import gov.nih.ncats.common.io.InputStreamSupplier;
+import gov.nih.ncats.common.iter.CloseableIterator;
+import gov.nih.ncats.molwitch.internal.DataItemCollector;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Reads only the requested SD data items ({@code > <TAG>} blocks) of each record
+ * of an SD file without parsing the connection tables.
+ * The bytes of each record are scanned for the {@code M  END} line and
+ * the data item header lines so no {@link gov.nih.ncats.molwitch.Chemical}
+ * objects are ever built, which makes reading ids or activity values from a large file
+ * limited by disk speed instead of by the chemistry toolkit parser.
+ *
+ * <p>
+ * Every record in the file is returned, even ones that don't have any of the
+ * requested data items, so the {@link TagRecord#getRecordIndex()} matches the
+ * offsets used by {@link gov.nih.ncats.molwitch.datastores.ChemicalDataStore}.
+ * Values of multi-line data items are joined with {@code '\n'} and leading and trailing
+ * whitespace is removed.
+ * </p>
+ *
+ * Example usage:
+ * <pre>
+ * {@code
+ * try(SdTagReader reader = SdTagReader.read(sdFile, Arrays.asList("REGNO", "IC50"))){
+ *     while(reader.hasNext()){
+ *         SdTagReader.TagRecord record = reader.next();
+ *         String regno = record.getTags().get("REGNO");
+ *         ...
+ *     }
+ * }
+ * }
+ * </pre>
+ *
+ * This class is NOT threadsafe.
+ */
+public final class SdTagReader implements CloseableIterator<SdTagReader.TagRecord> {
+
+    private static final byte[] DELIMITER = "$$$$".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream in;
+    private final DataItemCollector collector;
+    //the data items of the record currently being read
+    private Map<String, String> currentValues;
+
+    private final byte[] buffer = new byte[1 << 16];
+    private int bufferPosition;
+    private int bufferLength;
+    private long streamPosition;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+
+    private long recordIndex;
+    private TagRecord next;
+    private boolean done;
+
+    /**
+     * A single record's projected data items.
+     */
+    public static final class TagRecord {
+        private final long recordIndex;
+        private final long recordOffset;
+        private final long molblockLength;
+        private final long recordLength;
+        private final Map<String, String> tags;
+
+        TagRecord(long recordIndex, long recordOffset, long molblockLength, long recordLength, Map<String, String> tags) {
+            this.recordIndex = recordIndex;
+            this.recordOffset = recordOffset;
+            this.molblockLength = molblockLength;
+            this.recordLength = recordLength;
+            this.tags = Collections.unmodifiableMap(tags);
+        }
+
+        /**
+         * The 0-based index of this record in the file.
+         * @return the record index.
+         */
+        public long getRecordIndex() {
+            return recordIndex;
+        }
+
+        /**
+         * The byte offset in the (uncompressed) data where this record, and therefore its molblock, starts.
+         * @return the byte offset.
+         */
+        public long getRecordOffset() {
+            return recordOffset;
+        }
+
+        /**
+         * The number of bytes of the molblock up to and including the {@code M  END} line.
+         * @return the number of bytes or -1 if no {@code M  END} line was found.
+         */
+        public long getMolblockLength() {
+            return molblockLength;
+        }
+
+        /**
+         * The number of bytes of the whole record including the {@code $$$$} line.
+         * @return the number of bytes.
+         */
+        public long getRecordLength() {
+            return recordLength;
+        }
+
+        /**
+         * The requested data items this record has.
+         * @return an unmodifiable Map of data item name to value in file order;
+         * will never be null but may be empty.
+         */
+        public Map<String, String> getTags() {
+            return tags;
+        }
+
+        @Override
+        public String toString() {
+            return "TagRecord{recordIndex=" + recordIndex + ", recordOffset=" + recordOffset + ", tags=" + tags + "}";
+        }
+    }
+
+    /**
+     * Read the given SD file, which may be gzip compressed.
+     * @param sdFile the file to read; can not be null.
+     * @param tags the names of the data items to read; can not be null.
+     * @return a new SdTagReader which should be closed when done.
+     * @throws IOException if there is a problem opening the file.
+     */
+    public static SdTagReader read(File sdFile, Collection<String> tags) throws IOException {
+        return read(InputStreamSupplier.forFile(sdFile).get(), tags);
+    }
+
+    /**
+     * Read the given SD formatted InputStream.
+     * @param in the InputStream to read; can not be null.  The stream is closed when this reader is closed.
+     * @param tags the names of the data items to read; can not be null.
+     * @return a new SdTagReader which should be closed when done.
+     */
+    public static SdTagReader read(InputStream in, Collection<String> tags) {
+        return new SdTagReader(Objects.requireNonNull(in), new HashSet<>(tags));
+    }
+
+    private SdTagReader(InputStream in, Set<String> tags) {
+        this.in = in;
+        this.collector = new DataItemCollector(tags, (tag, value) -> currentValues.put(tag, value));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = readRecord();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (next == null) {
+                done = true;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public TagRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        TagRecord record = next;
+        next = null;
+        return record;
+    }
+
+    private TagRecord readRecord() throws IOException {
+        long recordStart = streamPosition;
+        long molblockLength = -1;
+        Map<String, String> values = new LinkedHashMap<>();
+        currentValues = values;
+        boolean blank = true;
+
+        while (readLine()) {
+            if (startsWith(DELIMITER)) {
+                collector.endRecord();
+                return new TagRecord(recordIndex++, recordStart, molblockLength, streamPosition - recordStart, values);
+            }
+            blank = blank && isBlankLine();
+            collector.accept(line, 0, lineLength);
+            if (molblockLength < 0 && collector.isInDataItems()) {
+                molblockLength = streamPosition - recordStart;
+            }
+        }
+        collector.endRecord();
+        if (!blank) {
+            //last record without a delimiter; whitespace after the last delimiter isn't a record
+            return new TagRecord(recordIndex++, recordStart, molblockLength, streamPosition - recordStart, values);
+        }
+        return null;
+    }
+
+    private boolean isBlankLine() {
+        for (int i = 0; i < lineLength; i++) {
+            if (!Character.isWhitespace(line[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if (lineLength < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the next line including its terminator into the line buffer.
+     * @return {@code false} if there are no more lines.
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        while (true) {
+            if (bufferPosition == bufferLength) {
+                bufferLength = in.read(buffer);
+                bufferPosition = 0;
+                if (bufferLength <= 0) {
+                    bufferLength = 0;
+                    return lineLength > 0;
+                }
+            }
+            int start = bufferPosition;
+            int end = start;
+            while (end < bufferLength && buffer[end] != '\n') {
+                end++;
+            }
+            boolean foundEnd = end < bufferLength;
+            if (foundEnd) {
+                end++;
+            }
+            int len = end - start;
+            if (lineLength + len > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + len));
+            }
+            System.arraycopy(buffer, start, line, lineLength, len);
+            lineLength += len;
+            bufferPosition = end;
+            streamPosition += len;
+            if (foundEnd) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        done = true;
+        next = null;
+        in.close();
+    }
+}
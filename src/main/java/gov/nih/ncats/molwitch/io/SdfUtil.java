@@ -24,9 +24,11 @@ import gov.nih.ncats.molwitch.SGroup;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
 import java.util.*;
-import java.util.regex.Pattern;
 
 class SdfUtil {
 
@@ -42,20 +44,34 @@ class SdfUtil {
         private StringBuilder buffer = new StringBuilder(10_240);
         private String currentRecord;
 
-        private static final Pattern ATOM_SYMBOL_PATTERN = Pattern.compile(".{3}");
-
         private ReadState currentReadState = ReadState.BEGIN;
+        private boolean endedAfterDelimiter;
+
+        private final CleaningListener listener;
+        private final RuleCounter rules = new RuleCounter();
+        private long recordIndex;
+
         public CleanSdfIterator(BufferedReader reader) throws IOException{
+            this(reader, null);
+        }
+        /**
+         * Create a new CleanSdfIterator.
+         * @param reader the reader to clean.
+         * @param listener the {@link CleaningListener} to notify of each record cleaned; may be null.
+         * @throws IOException if there is a problem reading or cleaning the first record.
+         */
+        public CleanSdfIterator(BufferedReader reader, CleaningListener listener) throws IOException{
             this.reader = new PushbackBufferedReader(reader);
+            this.listener = listener;
 
             currentRecord = readNextRecord();
         }
 
         private enum ReadState{
 
-            BEGIN{
+            BEGIN(null){
                 @Override
-                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException {
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException {
                     return reader.peekLine() ==null? EOF : HEADER;
                 }
             },
@@ -65,9 +81,9 @@ class SdfUtil {
              * 1. adds leading blank line if the header is missing the first blank line
              *      (often result from copy and paste or whitespace removal errors)
              */
-            HEADER{
+            HEADER(CleaningListener.Phase.HEADER){
                 @Override
-                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException{
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException{
                     List<String> header = new ArrayList<>(4);
 
                     for(int i=0; i<4; i++){
@@ -76,26 +92,28 @@ class SdfUtil {
                             throw new IOException("invalid mol header early EOF : " + header);
                         }
                         header.add(line);
-                        if(line.contains("V2000")){
+                        if(line.contains("V2000") || isV3000CountsLine(line)){
                             break;
                         }
                     }
                     boolean valid=header.size() ==4;
 
                     if(header.size() ==3){
-                        boolean firstLineBlank =header.get(0).trim().isEmpty();
-                        boolean secondLineBlank =header.get(1).trim().isEmpty();
-                        boolean thirdLineBlank =header.get(2).trim().isEmpty();
+                        boolean firstLineBlank =CtLineTokenizer.isBlank(header.get(0));
+                        boolean secondLineBlank =CtLineTokenizer.isBlank(header.get(1));
+                        boolean thirdLineBlank =CtLineTokenizer.isBlank(header.get(2));
 
                         //common copy and paste error first blank line is missing
                         if( !firstLineBlank && secondLineBlank && !thirdLineBlank){
                             //add blank line
                             header.add(0, "");
+                            rules.fire(CleaningListener.Rule.HEADER_NAME_LINE_ADDED);
                             valid =true;
                         }else if (firstLineBlank && !secondLineBlank && !thirdLineBlank){
                             //missing comment line...
                             //add blank line
                             header.add(2, "");
+                            rules.fire(CleaningListener.Rule.HEADER_COMMENT_LINE_ADDED);
                             valid =true;
                         }else if(!firstLineBlank && !secondLineBlank && !thirdLineBlank){
                             //all 3 lines have text so we're missing a line
@@ -104,16 +122,18 @@ class SdfUtil {
                             //for now we will check for internal whitespace and assume the
                             // name line can't have whitespace
 
-                            if(header.get(0).trim().matches("\\S+\\s+\\S+$")){
+                            if(CtLineTokenizer.isTwoWords(header.get(0).trim())){
                                 //first line has spaces so it's probably the program name line
                                 //add blank line
                                 header.add(0, "");
+                                rules.fire(CleaningListener.Rule.HEADER_NAME_LINE_ADDED);
                                 valid =true;
                             }else {
                                 //if we are here, then our first line has no whitespace so it's a name...?
                                 //missing comment line...
                                 //add blank line
                                 header.add(2, "");
+                                rules.fire(CleaningListener.Rule.HEADER_COMMENT_LINE_ADDED);
                                 valid =true;
                             }
                         }
@@ -128,7 +148,7 @@ class SdfUtil {
                         buffer.append(header.get(i)).append("\n");
                     }
                     String lastLine = header.get(header.size() - 1);
-                    if(lastLine.endsWith("V2000")) {
+                    if(lastLine.endsWith("V2000") || isV3000CountsLine(lastLine)) {
                         //unread counts line
                         reader.pushBack(header.get(3));
                     }else{
@@ -139,32 +159,51 @@ class SdfUtil {
                     return COUNTS_LINE;
                 }
             },
-            COUNTS_LINE{
+            COUNTS_LINE(CleaningListener.Phase.COUNTS_LINE){
                 @Override
-                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException {
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException {
                     String line = reader.readLine();
-//                    System.out.println(line);
+                    if(isV3000CountsLine(line)){
+                        //the V3000 counts line is only a placeholder
+                        //the real counts are inside the CTAB block
+                        buffer.append(line).append('\n');
+                        return V3000_CTAB;
+                    }
                     //aaabbblllfffcccsssxxxrrrpppiiimmmvvvvvv
-                    int numAtoms = Integer.parseInt(line.substring(0,3).trim());
-                    int numBonds = Integer.parseInt(line.substring(3,6).trim());
-                    int atomLists = Integer.parseInt(line.substring(6,9).trim());
+                    if(line.length() < 33){
+                        throw new IOException("counts line too short : " + line);
+                    }
+                    int numAtoms = CtLineTokenizer.parseIntTrimmed(line, 0, 3);
+                    int numBonds = CtLineTokenizer.parseIntTrimmed(line, 3, 6);
+                    int atomLists = CtLineTokenizer.parseIntTrimmed(line, 6, 9);
 
-                    int chiral = Integer.parseInt(line.substring(12,15).trim());
-                    int stexts = Integer.parseInt(line.substring(15,18).trim());
-                    //TODO for consistency keep the ignored part the same maybe make that configurable?
-                    String ignoredPart = line.substring(18,30);
-                    int numAdditionalProperties = Integer.parseInt(line.substring(30,33).trim());
+                    int chiral = CtLineTokenizer.parseIntTrimmed(line, 12, 15);
+                    int stexts = CtLineTokenizer.parseIntTrimmed(line, 15, 18);
+                    int numAdditionalProperties = CtLineTokenizer.parseIntTrimmed(line, 30, 33);
                     //ignore the rest
 
-                    buffer.append(String.format("%3d%3d%3d%3d%3d%3d%s%3d V2000\n", numAtoms, numBonds, atomLists, 0,chiral, stexts, ignoredPart, numAdditionalProperties));
+                    int start = buffer.length();
+                    CtLineTokenizer.appendPadded(buffer, numAtoms, 3);
+                    CtLineTokenizer.appendPadded(buffer, numBonds, 3);
+                    CtLineTokenizer.appendPadded(buffer, atomLists, 3);
+                    buffer.append("  0");
+                    CtLineTokenizer.appendPadded(buffer, chiral, 3);
+                    CtLineTokenizer.appendPadded(buffer, stexts, 3);
+                    //TODO for consistency keep the ignored part the same maybe make that configurable?
+                    buffer.append(line, 18, 30);
+                    CtLineTokenizer.appendPadded(buffer, numAdditionalProperties, 3);
+                    buffer.append(" V2000\n");
+                    if(!isUnchanged(buffer, start, line)){
+                        rules.fire(CleaningListener.Rule.COUNTS_LINE_REFORMATTED);
+                    }
                     properties.put(PARSE_PROPERTIES.EXPECTED_NUM_ATOMS, numAtoms);
                     properties.put(PARSE_PROPERTIES.EXPECTED_NUM_BONDS, numBonds);
                     return ATOM_LIST;
                 }
             },
-            ATOM_LIST{
+            ATOM_LIST(CleaningListener.Phase.ATOM_LIST){
                 @Override
-                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException {
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException {
                     int numAtoms = (Integer) properties.get(PARSE_PROPERTIES.EXPECTED_NUM_ATOMS);
                     int numBonds = (Integer) properties.get(PARSE_PROPERTIES.EXPECTED_NUM_BONDS);
                     for(int i=0; i< numAtoms; i++){
@@ -173,53 +212,63 @@ class SdfUtil {
                         //except possibly leading whitespace
                         //due to copy and paste mistakes or weird formatting from editors
                         int indexofFirstDecimal = line.indexOf('.');
-                        String xCoordinateIntPart = line.substring(0, indexofFirstDecimal).trim();
-
-                        buffer.append(String.format("%5s", xCoordinateIntPart)).append(line.substring(indexofFirstDecimal)).append("\n");
+                        if(indexofFirstDecimal < 0){
+                            throw new IOException("atom line missing coordinates : " + line);
+                        }
+                        int intPartStart = 0;
+                        int intPartEnd = indexofFirstDecimal;
+                        while(intPartStart < intPartEnd && line.charAt(intPartStart) <= ' '){
+                            intPartStart++;
+                        }
+                        while(intPartEnd > intPartStart && line.charAt(intPartEnd-1) <= ' '){
+                            intPartEnd--;
+                        }
+                        int start = buffer.length();
+                        CtLineTokenizer.appendPadded(buffer, line, intPartStart, intPartEnd, 5);
+                        buffer.append(line, indexofFirstDecimal, line.length()).append('\n');
+                        if(!isUnchanged(buffer, start, line)){
+                            rules.fire(CleaningListener.Rule.ATOM_LINE_REALIGNED);
+                        }
                     }
                     return BOND_LIST;
                 }
             },
-            BOND_LIST{
+            BOND_LIST(CleaningListener.Phase.BOND_LIST){
                 @Override
-                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException {
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException {
                     int numAtoms = (Integer) properties.get(PARSE_PROPERTIES.EXPECTED_NUM_ATOMS);
                     int numBonds = (Integer) properties.get(PARSE_PROPERTIES.EXPECTED_NUM_BONDS);
 
+                    CtLineTokenizer tokenizer = new CtLineTokenizer();
                     for(int i=0; i< numBonds; i++){
                         String line = reader.readLine();
                         //for now assume the line is formatted correctly
                         //except possibly leading whitespace
                         //due to copy and paste mistakes or weird formatting from editors
-                        char[] asChars = line.toCharArray();
                         int j=0;
-                        while(asChars[j] <= ' '){
+                        while(line.charAt(j) <= ' '){
                             j++;
                         }
-                        String leftTrimmed = new String(asChars, j, asChars.length-j);
-                        try(Scanner scanner = new Scanner(leftTrimmed)){
-                            int index = scanner.nextInt();
-                            if(index < 10){
-                                buffer.append("  ").append(leftTrimmed).append("\n");
-                            }else if(index < 100){
-                                buffer.append(" ").append(leftTrimmed).append("\n");
-                            }else if(index < 1000){
-                                //3 digit first atom index 2 or less digit 2nd index
-                                buffer.append(leftTrimmed).append("\n");
-                            }else if(index <10_000){
-                                    //4 digits = abbb
-                                    buffer.append("  ").append(leftTrimmed).append("\n");
-                            }else if(index < 100_000){
-                                //5 digits = aabbb
-                                buffer.append(" ").append(leftTrimmed).append("\n");
-                            }else{
-                                //6 digits aaabbb
-                                buffer.append(leftTrimmed).append("\n");
-                            }
-
-
+                        int index = tokenizer.reset(line, j).nextInt();
+                        int start = buffer.length();
+                        if(index < 10){
+                            buffer.append("  ");
+                        }else if(index < 100){
+                            buffer.append(" ");
+                        }else if(index < 1000){
+                            //3 digit first atom index 2 or less digit 2nd index
+                        }else if(index <10_000){
+                            //4 digits = abbb
+                            buffer.append("  ");
+                        }else if(index < 100_000){
+                            //5 digits = aabbb
+                            buffer.append(" ");
+                        }
+                        //else 6 digits aaabbb
+                        buffer.append(line, j, line.length()).append('\n');
+                        if(!isUnchanged(buffer, start, line)){
+                            rules.fire(CleaningListener.Rule.BOND_LINE_REALIGNED);
                         }
-
                     }
                     return CONNECTION_TABLE;
                 }
@@ -234,21 +283,16 @@ class SdfUtil {
              *   5. Removes any Sgroup lines that reference Sgroup not defined in STY
              *   6. break M  STY lines with more than 8 Sgroups into multiple lines with at most 8 S-groups per line.
              */
-            CONNECTION_TABLE{
-
-                private Pattern END_PATTERN = Pattern.compile("^\\s*M\\s+END");
-                private Pattern SGROUP_DEF_PATTERN = Pattern.compile("^\\s*M\\s+STY(.+)");
-                private Pattern SGROUP_CATCHALL_PATTERN = Pattern.compile("^\\s*M\\s+S..(.+)");
-
+            CONNECTION_TABLE(CleaningListener.Phase.CONNECTION_TABLE){
 
                 @Override
-                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException {
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException {
 
                     Map<Integer, String> knownSgroups = new TreeMap<>();
-                    Map<Integer, String> sgroupLabels = new TreeMap<>();
-                    Map<Integer, DataBuilder> dataBuilders = new TreeMap<>();
 
                     Set<Integer> removedSgroups = new HashSet<>();
+                    List<Integer> groupsDefinedInThisLine = new ArrayList<>();
+                    CtLineTokenizer tokenizer = new CtLineTokenizer();
                     DataBuilder currentDataBuilder=null;
                     String line;
                     while( (line = reader.readLine()) !=null){
@@ -256,201 +300,221 @@ class SdfUtil {
                             //incorrectly formatted DATA group block..
                             //supposed to be consecutive SCD(s) followed by SED line
                             //just write out what we have
-                            buffer.append(currentDataBuilder.format());
+                            rules.fire(CleaningListener.Rule.SCD_WITHOUT_SED);
+                            currentDataBuilder.formatTo(buffer, rules);
                             currentDataBuilder = null;
                         }
                         if(line.startsWith("M  CHG")) {
-                            try (Scanner scanner = new Scanner(line)) {
-                                scanner.next(); //M
-                                scanner.next(); // CHG
-                                int numCharges = scanner.nextInt();
-
-                                //break into blocks of 8
-                                while(numCharges>0) {
-
-                                    int chargesOnLine = Math.min(8, numCharges);
-
-                                    buffer.append("M  CHG").append(String.format("%3s", chargesOnLine));
-                                    for (int j = 0; j < chargesOnLine; j++) {
-                                        buffer.append(String.format(" %3s %3s", scanner.next(), scanner.next()));
-                                    }
-                                    buffer.append("\n");
-                                    numCharges-=8;
+                            tokenizer.reset(line);
+                            tokenizer.next(); //M
+                            tokenizer.next(); // CHG
+                            int numCharges = tokenizer.nextInt();
+                            int start = buffer.length();
+                            boolean split = numCharges > 8;
+                            if(split){
+                                rules.fire(CleaningListener.Rule.CHG_LINE_SPLIT);
+                            }
+                            //break into blocks of 8
+                            while(numCharges>0) {
+
+                                int chargesOnLine = Math.min(8, numCharges);
+
+                                buffer.append("M  CHG");
+                                CtLineTokenizer.appendPadded(buffer, chargesOnLine, 3);
+                                for (int j = 0; j < chargesOnLine; j++) {
+                                    buffer.append(' ');
+                                    tokenizer.next();
+                                    tokenizer.appendToken(buffer, 3);
+                                    buffer.append(' ');
+                                    tokenizer.next();
+                                    tokenizer.appendToken(buffer, 3);
                                 }
-
+                                buffer.append('\n');
+                                numCharges-=8;
+                            }
+                            if(!split && !isUnchanged(buffer, start, line)){
+                                rules.fire(CleaningListener.Rule.CHG_LINE_REFORMATTED);
                             }
-                        }else if(SGROUP_DEF_PATTERN.matcher(line).find()) {
-                            try (Scanner scanner = new Scanner(line)) {
-                                scanner.next(); //M
-                                scanner.next(); // STY
-                                //we could have multiple STY lines we don't want to duplicate records
-                                //so only write out the cleaned up ones defined in this line
-                                Set<Integer> groupsDefinedInThisLine = new LinkedHashSet<>();
-                                int numberOfRecords = scanner.nextInt();
-                                if (numberOfRecords > 8) {
-                                    //need to split this into lines of 8
+                        }else if(isSgroupDefinitionLine(line)) {
+                            tokenizer.reset(line);
+                            tokenizer.next(); //M
+                            tokenizer.next(); // STY
+                            //we could have multiple STY lines we don't want to duplicate records
+                            //so only write out the cleaned up ones defined in this line
+                            groupsDefinedInThisLine.clear();
+                            int numberOfRecords = tokenizer.nextInt();
+                            for (int i = 0; i < numberOfRecords; i++) {
+                                Integer num = tokenizer.nextInt();
+                                tokenizer.next();
+                                String sgroupType = tokenizer.token();
+
+                                if (SGroup.SGroupType.valueByTypeName(sgroupType) == null) {
+                                    //not a valid sgroup type ignore ?
+                                    removedSgroups.add(num);
+                                    rules.fire(CleaningListener.Rule.INVALID_SGROUP_TYPE_REMOVED);
+                                    continue;
+                                }
+                                //when we are here we have a valid group
+                                if(knownSgroups.containsKey(num)){
+                                    //we have a duplicate s-group number!
+                                    //TODO how do we handle that? error out? overwrite?
+                                    //for now just assume it's an error and do not redeclare it
+                                    rules.fire(CleaningListener.Rule.DUPLICATE_SGROUP_REMOVED);
+                                }else{
+                                    knownSgroups.put(num, sgroupType);
+                                    groupsDefinedInThisLine.add(num);
                                 }
-                                for (int i = 0; i < numberOfRecords; i++) {
-                                    Integer num = scanner.nextInt();
-                                    String sgroupType = scanner.next();
-
-                                    if (SGroup.SGroupType.valueByTypeName(sgroupType) == null) {
-                                        //not a valid sgroup type ignore ?
-                                        removedSgroups.add(num);
-                                        continue;
-                                    }
-                                    //when we are here we have a valid group
-                                    if(knownSgroups.containsKey(num)){
-                                        //we have a duplicate s-group number!
-                                        //TODO how do we handle that? error out? overwrite?
-                                        //for now just assume it's an error and do not redeclare it
-                                    }else{
-                                        knownSgroups.put(num, sgroupType);
-                                        groupsDefinedInThisLine.add(num);
-                                    }
 
+                            }
+                            //need to split this into lines of 8
+                            int numLeft = groupsDefinedInThisLine.size();
+                            if(numLeft > 8){
+                                rules.fire(CleaningListener.Rule.STY_LINE_SPLIT);
+                            }
+                            Iterator<Integer> iter = groupsDefinedInThisLine.iterator();
+                            do {
+                                buffer.append("M  STY  ").append(Math.min(numLeft, 8));
+
+                                for (int i = 0; i < 8 && iter.hasNext(); i++) {
+                                    Integer num = iter.next();
+                                    String type = knownSgroups.get(num);
+                                    buffer.append(' ');
+                                    CtLineTokenizer.appendPadded(buffer, num, 3);
+                                    buffer.append(' ');
+                                    CtLineTokenizer.appendPadded(buffer, type, 0, type.length(), 3);
                                 }
-                                if(groupsDefinedInThisLine.size() <=8) {
-                                    buffer.append("M  STY  " + groupsDefinedInThisLine.size());
-                                    for (Integer num : groupsDefinedInThisLine) {
-                                        String type = knownSgroups.get(num);
-                                        buffer.append(String.format(" %3s %3s", num, type));
+                                buffer.append('\n');
+                                numLeft -= 8;
+                            }while(numLeft>0);
+                        }else if(isSgroupLine(line)){
+                            tokenizer.reset(line);
+                            tokenizer.next(); //M
+                            tokenizer.next(); // SXX
+                            String typeCode = tokenizer.token();
+                            //GSRS-1596
+                            //not all S group lines have a group number
+                            if("SDS".equals(typeCode)){
+                                //format is M SDS EXPn15
+                                tokenizer.next();
+                                tokenizer.requireUpperCaseToken();
+                                if(tokenizer.tokenEquals("EXP")){
+                                    int numLeft =tokenizer.nextInt();
+                                    if(numLeft > 15){
+                                        rules.fire(CleaningListener.Rule.SDS_EXP_LINE_SPLIT);
                                     }
-                                    buffer.append("\n");
-                                }else{
-                                    int numLeft = groupsDefinedInThisLine.size();
-                                    Iterator<Integer> iter = groupsDefinedInThisLine.iterator();
-                                    do {
-                                        buffer.append("M  STY  " + Math.min(numLeft, 8));
-
-                                        for (int i = 0; i < 8 && iter.hasNext(); i++) {
-                                            Integer num = iter.next();
-                                            String type = knownSgroups.get(num);
-                                            buffer.append(String.format(" %3s %3s", num, type));
+                                    //break into blocks of 15
+                                    do{
+                                        int currentLine = Math.min(15, numLeft);
+                                        buffer.append("M  SDS EXP");
+                                        CtLineTokenizer.appendPadded(buffer, currentLine, 3);
+                                        for (int i = 0; i < currentLine; i++) {
+                                            buffer.append(' ');
+                                            CtLineTokenizer.appendPadded(buffer, tokenizer.nextInt(), 3);
                                         }
-                                        buffer.append("\n");
-                                        numLeft -= 8;
+                                        buffer.append('\n');
+                                        numLeft -=15;
                                     }while(numLeft>0);
-
+                                    continue;
                                 }
+                                //if we are here it's an SDS line that's not an EXP ?
+                                //write out as is ?
+                                buffer.append(line).append('\n');
+                                continue;
                             }
-                        }else if(SGROUP_CATCHALL_PATTERN.matcher(line).find()){
-                            try (Scanner scanner = new Scanner(line)) {
-                                scanner.next(); //M
-                                String typeCode = scanner.next(); // SXX
-                                //GSRS-1596
-                                //not all S group lines have a group number
-                                if("SDS".equals(typeCode)){
-                                    //format is M SDS EXPn15
-                                    String expansion = scanner.next("[A-Z]+");
-                                    if("EXP".equals(expansion)){
-                                        int count =scanner.nextInt();
-                                        if(count <=15) {
-                                            buffer.append(String.format("M  SDS EXP%3d", count));
-                                            for (int i = 0; i < count; i++) {
-                                                buffer.append(String.format(" %3d", scanner.nextInt()));
-                                            }
-                                            buffer.append("\n");
+                            //TODO should we check is something is valid?
+
+                            int sgroupNumber = tokenizer.nextInt();
+                            //only write out sgroups we haven't removed
+                            String sgroupType = knownSgroups.get(sgroupNumber);
+                            if(sgroupType ==null || !isValidSgroupLineForType(sgroupType, typeCode)){
+                                //not valid don't write it out
+                                rules.fire(CleaningListener.Rule.SGROUP_LINE_REMOVED);
+                                continue;
+                            }else if("SAL".equals(typeCode)){
+                                int numAtoms = tokenizer.nextInt();
+                                //break into blocks of 15
+                                int numLines = numAtoms / 15 + 1;
+                                if(numAtoms > 15){
+                                    rules.fire(CleaningListener.Rule.SAL_LINE_SPLIT);
+                                }
+
+                                for (int i = 0; i < numLines; i++) {
+                                    int atomsOnLine = Math.min(15, (numAtoms - (i * 15)));
+                                    //count the valid atoms first since the count is written before the atoms
+                                    int mark = tokenizer.position();
+                                    int validAtoms=0;
+                                    for (int j = 0; j < atomsOnLine; j++) {
+                                        if(tokenizer.nextInt()>0) {
+                                            validAtoms++;
                                         }else{
-                                            int numLeft = count;
-                                            do{
-                                                int currentLine = Math.min(15, numLeft);
-                                                buffer.append(String.format("M  SDS EXP%3d", currentLine));
-                                                for (int i = 0; i < currentLine; i++) {
-                                                    buffer.append(String.format(" %3d", scanner.nextInt()));
-                                                }
-                                                buffer.append("\n");
-                                                numLeft -=15;
-                                            }while(numLeft>0);
+                                            rules.fire(CleaningListener.Rule.SAL_INVALID_ATOM_REMOVED);
                                         }
-                                        continue;
                                     }
-                                    //if we are here it's an SDS line that's not an EXP ?
-                                    //write out as is ?
-                                    buffer.append(line).append("\n");
-                                    continue;
-                                }
-                                //TODO should we check is something is valid?
-
-                                Integer sgroupNumber = scanner.nextInt();
-                                //only write out sgroups we haven't removed
-                                String sgroupType = knownSgroups.get(sgroupNumber);
-                                if(sgroupType ==null || !isValidSgroupLineForType(sgroupType, typeCode)){
-                                    //not valid don't write it out
-                                    continue;
-                                }else if("SAL".equals(typeCode)){
-                                    int numAtoms = scanner.nextInt();
-//                                    if (numAtoms <= 15) {
-//                                        //fine as is
-//                                        buffer.append(line).append("\n");
-//                                    } else {
-                                        //break into blocks of 15
-                                        int numLines = numAtoms / 15 + 1;
-
-                                        for (int i = 0; i < numLines; i++) {
-                                            int atomsOnLine = Math.min(15, (numAtoms - (i * 15)));
-
-                                            int validAtoms=0;
-                                            StringBuilder tmp = new StringBuilder();
-                                             for (int j = 0; j < atomsOnLine; j++) {
-                                                 int offset =  scanner.nextInt();
-                                                 if(offset>0) {
-                                                     validAtoms++;
-                                                     tmp.append(String.format(" %3d", offset));
-                                                 }
-                                            }
-                                             tmp.append("\n");
-                                            if(validAtoms >0) {
-                                                buffer.append(String.format("M  SAL %3d%3d", sgroupNumber, validAtoms)).append(tmp);
+                                    if(validAtoms >0) {
+                                        buffer.append("M  SAL ");
+                                        CtLineTokenizer.appendPadded(buffer, sgroupNumber, 3);
+                                        CtLineTokenizer.appendPadded(buffer, validAtoms, 3);
+                                        tokenizer.position(mark);
+                                        for (int j = 0; j < atomsOnLine; j++) {
+                                            int offset = tokenizer.nextInt();
+                                            if(offset>0) {
+                                                buffer.append(' ');
+                                                CtLineTokenizer.appendPadded(buffer, offset, 3);
                                             }
-//                                        }
+                                        }
+                                        buffer.append('\n');
                                     }
-                                }else if("SED".equals(typeCode)){
-                                    if(currentDataBuilder ==null){
+                                }
+                            }else if("SED".equals(typeCode)){
+                                if(currentDataBuilder ==null){
+                                    currentDataBuilder =  new DataBuilder(sgroupNumber);
+                                }else{
+                                    //already have a current data builder
+                                    if(sgroupNumber != currentDataBuilder.sgroupNum){
+                                        //a different group !?
+                                        //write old one out
+                                        rules.fire(CleaningListener.Rule.SCD_WITHOUT_SED);
+                                        currentDataBuilder.formatTo(buffer, rules);
+                                        //now make new one...
                                         currentDataBuilder =  new DataBuilder(sgroupNumber);
-                                    }else{
-                                        //already have a current data builder
-                                        if(sgroupNumber.intValue() != currentDataBuilder.sgroupNum){
-                                            //a different group !?
-                                            //write old one out
-                                            buffer.append(currentDataBuilder.format());
-                                            //now make new one...
-                                            currentDataBuilder =  new DataBuilder(sgroupNumber);
-                                        }
                                     }
+                                }
 
-                                    currentDataBuilder.handleSED(scanner.nextLine());
-                                    buffer.append(currentDataBuilder.format());
-                                    currentDataBuilder=null;
+                                currentDataBuilder.handleSED(tokenizer.rest());
+                                currentDataBuilder.formatTo(buffer, rules);
+                                currentDataBuilder=null;
 
 
-                                }else if("SCD".equals(typeCode)){
-                                    if(currentDataBuilder ==null){
+                            }else if("SCD".equals(typeCode)){
+                                if(currentDataBuilder ==null){
+                                    currentDataBuilder =  new DataBuilder(sgroupNumber);
+                                }else{
+                                    //already have a current data builder
+                                    if(sgroupNumber != currentDataBuilder.sgroupNum){
+                                        //a different group !?
+                                        //write old one out
+                                        rules.fire(CleaningListener.Rule.SCD_WITHOUT_SED);
+                                        currentDataBuilder.formatTo(buffer, rules);
+                                        //now make new one...
                                         currentDataBuilder =  new DataBuilder(sgroupNumber);
-                                    }else{
-                                        //already have a current data builder
-                                        if(sgroupNumber.intValue() != currentDataBuilder.sgroupNum){
-                                            //a different group !?
-                                            //write old one out
-                                            buffer.append(currentDataBuilder.format());
-                                            //now make new one...
-                                            currentDataBuilder =  new DataBuilder(sgroupNumber);
-                                        }
                                     }
-                                    currentDataBuilder.handleSCD(scanner.nextLine());
-                                }else{
-                                    buffer.append(line).append("\n");
                                 }
+                                currentDataBuilder.handleSCD(tokenizer.rest());
+                            }else{
+                                buffer.append(line).append('\n');
+                            }
+                        } else if(isEndLine(line)){
+                            if(!"M  END".equals(line)){
+                                rules.fire(CleaningListener.Rule.END_LINE_FIXED);
                             }
-                        } else if(END_PATTERN.matcher(line).find()){
 
                             buffer.append("M  END"); //NOTE 2 spaces
                             if(reader.peekLine() !=null){
-                                buffer.append("\n");
+                                buffer.append('\n');
                             }
                             break;
                         }else{
-                            buffer.append(line).append("\n");
+                            buffer.append(line).append('\n');
                         }
                     }
                     if(line ==null){
@@ -459,20 +523,97 @@ class SdfUtil {
                     return BEFORE_DATA_ITEMS;
                 }
             },
+            /**
+             * Cleans a V3000 connection table which is made up of "M  V30" lines
+             * up to the M  END line.  A V30 line that ends in '-' continues on the next V30 line.
+             * Current cleans:
+             *   1. V30 lines with incorrect whitespace around the M and V30 are fixed.
+             *   2. V30 lines longer than 80 characters are joined with any continuation lines
+             *      and re-split into lines of at most 80 characters.
+             *   3. blank lines are removed.
+             *   4. the M  END line is forced to have 2 spaces between M and END.
+             *   5. ignore anything after the M  END line start, same as V2000.
+             */
+            V3000_CTAB(CleaningListener.Phase.V3000_CTAB){
+                @Override
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException {
+                    //a logical line can span several physical lines
+                    //write out the physical lines as they are and only rewrite them if they weren't valid
+                    StringBuilder logicalLine = new StringBuilder(128);
+                    int groupStart = -1;
+                    boolean groupValid = true;
+                    boolean groupTooLong = false;
+                    String line;
+                    while( (line = reader.readLine()) !=null){
+                        int contentStart = v30ContentStart(line);
+                        if(contentStart >=0){
+                            if(groupStart <0){
+                                groupStart = buffer.length();
+                                groupValid = true;
+                                groupTooLong = false;
+                                logicalLine.setLength(0);
+                            }
+                            if(!line.startsWith("M  V30") || contentStart != Math.min(7, line.length())){
+                                rules.fire(CleaningListener.Rule.V3000_LINE_PREFIX_FIXED);
+                                groupValid = false;
+                            }
+                            if(line.length() > 80){
+                                groupTooLong = true;
+                                groupValid = false;
+                            }
+                            buffer.append(line).append('\n');
+                            if(line.length() > contentStart && line.charAt(line.length()-1) == '-'){
+                                //continued on next line
+                                logicalLine.append(line, contentStart, line.length()-1);
+                            }else{
+                                logicalLine.append(line, contentStart, line.length());
+                                endV30Group(buffer, groupStart, logicalLine, groupValid, groupTooLong, rules);
+                                groupStart = -1;
+                            }
+                            continue;
+                        }
+                        if(groupStart >=0){
+                            //the last V30 line ended in '-' but there was no continuation line
+                            //so the '-' was part of the text
+                            logicalLine.append('-');
+                            endV30Group(buffer, groupStart, logicalLine, groupValid, groupTooLong, rules);
+                            groupStart = -1;
+                        }
+                        if(CtLineTokenizer.isBlank(line)){
+                            rules.fire(CleaningListener.Rule.V3000_BLANK_LINE_REMOVED);
+                        }else if(isEndLine(line)){
+                            if(!"M  END".equals(line)){
+                                rules.fire(CleaningListener.Rule.END_LINE_FIXED);
+                            }
+                            buffer.append("M  END"); //NOTE 2 spaces
+                            if(reader.peekLine() !=null){
+                                buffer.append('\n');
+                            }
+                            return BEFORE_DATA_ITEMS;
+                        }else{
+                            buffer.append(line).append('\n');
+                        }
+                    }
+                    throw new IOException("reached EOF while in V3000 connection table");
+                }
+            },
             /**
              * Cleans the lines between the connection table and any properties of an SD formatted record.
              *
              * Current Cleans:
              * 1. Removes all leading blank lines.  The spec allows at most 1 blank line but some vendors put 2.
              */
-            BEFORE_DATA_ITEMS{
+            BEFORE_DATA_ITEMS(CleaningListener.Phase.BEFORE_DATA_ITEMS){
                 @Override
-                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException {
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException {
 
                     String line;
+                    int blankLines=0;
+                    int otherLines=0;
                     while( (line = reader.readLine()) !=null){
                         // some vendors have extra blank lines space between M  END and the start of data items
-                        if(line.trim().isEmpty()){
+                        if(CtLineTokenizer.isBlank(line)){
+                            blankLines++;
                             continue;
                         }
                         if(line.startsWith(">")){
@@ -480,6 +621,13 @@ class SdfUtil {
                             reader.pushBack(line);
                             break;
                         }
+                        otherLines++;
+                    }
+                    if(blankLines > 0){
+                        rules.fire(CleaningListener.Rule.BLANK_LINES_BEFORE_DATA_ITEMS_REMOVED);
+                    }
+                    if(otherLines >0){
+                        rules.fire(CleaningListener.Rule.LINES_BEFORE_DATA_ITEMS_REMOVED, otherLines);
                     }
                     if(line ==null){
                         return EOF;
@@ -495,9 +643,9 @@ class SdfUtil {
              * Current Cleans:
              *  1. removes final new lines after last $$$$ if there are any.
              */
-            DATA_ITEMS{
+            DATA_ITEMS(CleaningListener.Phase.DATA_ITEMS){
                 @Override
-                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException {
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException {
 
                     String line;
                     while( (line = reader.readLine()) !=null ){
@@ -524,9 +672,9 @@ class SdfUtil {
              * Current cleans:
              *  1. removes extra blank lines between $$$$ and next header. some vendors have extra blank lines.
              */
-            DELIMITER {
+            DELIMITER(CleaningListener.Phase.DELIMITER) {
                 @Override
-                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException {
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException {
                     //We've already read the $$$$ part
                     //so just remove extra blank lines until the next record
                     String line;
@@ -542,7 +690,7 @@ class SdfUtil {
                         // and either way we have to pushback the line so the header can be correctly parsed
                         //(the header state will correctly add missing blank lines for us)
 
-                        if (line.trim().isEmpty()) {
+                        if (CtLineTokenizer.isBlank(line)) {
 
                             numBlankLines++;
                         } else {
@@ -557,6 +705,9 @@ class SdfUtil {
 
                                 //found blank lines
                                 reader.pushBack(""); //unread 1 empty line no matter how many lines read
+                                if(numBlankLines > 1){
+                                    rules.fire(CleaningListener.Rule.BLANK_LINES_BETWEEN_RECORDS_REMOVED);
+                                }
                             }
                             return HEADER;
                         }
@@ -565,9 +716,9 @@ class SdfUtil {
                     return EOF;
                 }
             },
-            EOF{
+            EOF(null){
                 @Override
-                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException {
+                public ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException {
                     //infinite Loop?
 
                     return EOF;
@@ -575,6 +726,14 @@ class SdfUtil {
             }
             ;
 
+            /**
+             * The phase reported to {@link CleaningListener}s or null if this state doesn't read anything.
+             */
+            private final CleaningListener.Phase phase;
+
+            ReadState(CleaningListener.Phase phase){
+                this.phase = phase;
+            }
 
             /**
              * Read potentially multiple lines from the reader, clean up the read lines and append
@@ -582,18 +741,26 @@ class SdfUtil {
              * @param reader the {@link PushbackBufferedReader} to read from.
              * @param buffer the StringBuilder to write to.
              * @param properties any properties that need to be set in one readState and used in a later state
+             * @param rules the counter of the cleaning rules that were applied to the current record.
              * @return the next {@link ReadState} based on the lines read from the reader.
              * @throws IOException if there are any problems reading the lines or parsing the data that was read.
              */
-            public abstract ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties) throws IOException;
+            public abstract ReadState readClean(PushbackBufferedReader reader, StringBuilder buffer, Map<PARSE_PROPERTIES, Object> properties, RuleCounter rules) throws IOException;
 
         }
         private String readNextRecord() throws IOException {
             buffer.setLength(0); //clear old state
             Map<PARSE_PROPERTIES, Object> properties = new EnumMap<>(PARSE_PROPERTIES.class);
+            rules.reset();
             try {
                 while (currentReadState != ReadState.EOF) {
-                    currentReadState = currentReadState.readClean(reader, buffer, properties);
+                    long start = listener ==null ? 0 : System.nanoTime();
+                    ReadState nextState = currentReadState.readClean(reader, buffer, properties, rules);
+                    if(listener !=null && currentReadState.phase !=null){
+                        listener.phaseFinished(recordIndex, currentReadState.phase, System.nanoTime() - start);
+                    }
+                    endedAfterDelimiter = currentReadState == ReadState.DELIMITER && nextState == ReadState.EOF;
+                    currentReadState = nextState;
                     //we check delimiter here because if we put it up in the while loop
                     //with the EOF check then when  on the 2nd call to next() we never enter the while loop!
                     if (currentReadState == ReadState.DELIMITER) {
@@ -602,14 +769,31 @@ class SdfUtil {
                 }
 
                 if (buffer.length() > 0) {
+                    if(listener !=null){
+                        listener.recordCleaned(recordIndex, rules.toMap());
+                    }
+                    recordIndex++;
                     return buffer.toString();
                 }
                 return null;
             }catch(Exception e){
-                //usually a runtime exception from scanner
-                throw new IOException("error parsing ctfile",e);
+                //usually a runtime exception from parsing a number
+                IOException error = new IOException("error parsing ctfile",e);
+                if(listener !=null){
+                    listener.recordFailed(recordIndex, error);
+                }
+                throw error;
             }
         }
+        /**
+         * Did the input end right after a {@code $$$$} delimiter line
+         * that was read as the end of a record's data items (optionally followed by blank lines).
+         * Only meaningful once {@link #hasNext()} returns false.
+         * @return {@code true} if the last record was terminated normally.
+         */
+        boolean endedAfterDelimiter(){
+            return endedAfterDelimiter;
+        }
         @Override
         public boolean hasNext(){
             return currentRecord !=null;
@@ -636,6 +820,225 @@ class SdfUtil {
         }
     }
 
+    /**
+     * A Reader of the cleaned records of a mol or SD file that only cleans
+     * the next record when the previous one has been read, so at most a couple of records are held in memory.
+     */
+    static final class CleanSdfReader extends Reader {
+        private final BufferedReader in;
+        private CleanSdfIterator iter;
+        private String record = "";
+        private int position;
+        private boolean closed;
+
+        CleanSdfReader(BufferedReader in) {
+            this.in = Objects.requireNonNull(in);
+        }
+
+        /**
+         * Get the rest of the current record if there is any, or else
+         * the entire next record.
+         * @return the cleaned text or {@code null} if there are no more records.
+         * @throws IOException if there is a problem reading or cleaning the next record.
+         */
+        String nextRecord() throws IOException{
+            ensureOpen();
+            if(position < record.length()){
+                String rest = record.substring(position);
+                position = record.length();
+                return rest;
+            }
+            if(iter ==null){
+                //create lazily since the iterator reads the first record right away
+                iter = new CleanSdfIterator(in);
+            }
+            if(!iter.hasNext()){
+                return null;
+            }
+            try {
+                record = iter.next();
+            }catch(UncheckedIOException e){
+                throw e.getCause();
+            }
+            position = record.length();
+            return record;
+        }
+
+        private boolean fill() throws IOException{
+            while(position >= record.length()){
+                if(nextRecord() ==null){
+                    return false;
+                }
+                position = 0;
+            }
+            return true;
+        }
+
+        private void ensureOpen() throws IOException{
+            if(closed){
+                throw new IOException("reader closed");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            ensureOpen();
+            if(!fill()){
+                return -1;
+            }
+            return record.charAt(position++);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            ensureOpen();
+            if(len ==0){
+                return 0;
+            }
+            if(!fill()){
+                return -1;
+            }
+            int n = Math.min(len, record.length() - position);
+            record.getChars(position, position + n, cbuf, off);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed){
+                return;
+            }
+            closed = true;
+            record = "";
+            if(iter ==null){
+                in.close();
+            }else {
+                iter.close();
+            }
+        }
+    }
+
+    /**
+     * An InputStream of the encoded cleaned records of a mol or SD file.
+     * Records are cleaned and encoded one at a time as the bytes are read.
+     */
+    static final class CleanSdfInputStream extends InputStream {
+        private static final byte[] EMPTY = new byte[0];
+
+        private final CleanSdfReader reader;
+        private final Charset charset;
+        private byte[] bytes = EMPTY;
+        private int position;
+
+        CleanSdfInputStream(CleanSdfReader reader, Charset charset) {
+            this.reader = reader;
+            this.charset = Objects.requireNonNull(charset);
+        }
+
+        private boolean fill() throws IOException{
+            while(position >= bytes.length){
+                String record = reader.nextRecord();
+                if(record ==null){
+                    return false;
+                }
+                bytes = record.getBytes(charset);
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(!fill()){
+                return -1;
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len ==0){
+                return 0;
+            }
+            if(!fill()){
+                return -1;
+            }
+            int n = Math.min(len, bytes.length - position);
+            System.arraycopy(bytes, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return bytes.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            bytes = EMPTY;
+            position = 0;
+            reader.close();
+        }
+    }
+
+    /**
+     * Counts how many times each {@link CleaningListener.Rule} was applied to a record.
+     */
+    static final class RuleCounter{
+        private static final CleaningListener.Rule[] RULES = CleaningListener.Rule.values();
+
+        private final int[] counts = new int[RULES.length];
+        private boolean fired;
+
+        void fire(CleaningListener.Rule rule){
+            fire(rule, 1);
+        }
+
+        void fire(CleaningListener.Rule rule, int times){
+            counts[rule.ordinal()] += times;
+            fired = true;
+        }
+
+        void reset(){
+            if(fired){
+                Arrays.fill(counts, 0);
+                fired = false;
+            }
+        }
+
+        Map<CleaningListener.Rule, Integer> toMap(){
+            if(!fired){
+                return Collections.emptyMap();
+            }
+            Map<CleaningListener.Rule, Integer> map = new EnumMap<>(CleaningListener.Rule.class);
+            for(int i=0; i< counts.length; i++){
+                if(counts[i] >0){
+                    map.put(RULES[i], counts[i]);
+                }
+            }
+            return Collections.unmodifiableMap(map);
+        }
+    }
+
+    /**
+     * Is the cleaned line that was appended to the buffer starting at the given offset,
+     * not counting its final new line, the same as the given line.
+     */
+    private static boolean isUnchanged(StringBuilder buffer, int start, String line){
+        int length = buffer.length() - 1 - start;
+        if(length != line.length()){
+            return false;
+        }
+        for(int i=0; i< length; i++){
+            if(buffer.charAt(start + i) != line.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
     private enum PARSE_PROPERTIES{
         EXPECTED_NUM_ATOMS,
         EXPECTED_NUM_BONDS;
@@ -654,6 +1057,78 @@ class SdfUtil {
         }
     }
 
+    /**
+     * Same as matching {@code ^\s*M\s+STY(.+)}.
+     */
+    private static boolean isSgroupDefinitionLine(String line){
+        int end = CtLineTokenizer.indexAfterKeyword(line, "STY");
+        return end >=0 && end < line.length();
+    }
+    /**
+     * Same as matching {@code ^\s*M\s+S..(.+)}.
+     */
+    private static boolean isSgroupLine(String line){
+        int end = CtLineTokenizer.indexAfterKeyword(line, "S??");
+        return end >=0 && end < line.length();
+    }
+    /**
+     * Is this the counts line of a V3000 molfile.
+     */
+    private static boolean isV3000CountsLine(String line){
+        int end = line.length();
+        while(end > 0 && line.charAt(end-1) <= ' '){
+            end--;
+        }
+        return line.startsWith("V3000", end - 5);
+    }
+
+    /**
+     * Find where the text of a V3000 line starts.
+     * @return the offset after the "M  V30 " prefix, allowing for incorrect whitespace,
+     * or -1 if this is not a V30 line.
+     */
+    private static int v30ContentStart(String line){
+        int end = CtLineTokenizer.indexAfterKeyword(line, "V30");
+        if(end <0 || (end < line.length() && !CtLineTokenizer.isRegexWhitespace(line.charAt(end)))){
+            return -1;
+        }
+        if(end < line.length() && line.charAt(end) == ' '){
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Finish a logical V3000 line whose physical lines have already been written
+     * to the buffer starting at groupStart; if any of them were invalid,
+     * replace them with the logical line split into lines of at most 80 characters.
+     */
+    private static void endV30Group(StringBuilder buffer, int groupStart, StringBuilder logicalLine,
+                                    boolean valid, boolean tooLong, RuleCounter rules){
+        if(valid){
+            return;
+        }
+        if(tooLong){
+            rules.fire(CleaningListener.Rule.V3000_LINE_REWRAPPED);
+        }
+        buffer.setLength(groupStart);
+        int length = logicalLine.length();
+        int start = 0;
+        //7 char prefix + 72 chars + '-' = 80
+        while(length - start > 73){
+            buffer.append("M  V30 ").append(logicalLine, start, start + 72).append("-\n");
+            start += 72;
+        }
+        buffer.append("M  V30 ").append(logicalLine, start, length).append('\n');
+    }
+
+    /**
+     * Same as matching {@code ^\s*M\s+END}.
+     */
+    private static boolean isEndLine(String line){
+        return CtLineTokenizer.indexAfterKeyword(line, "END") >=0;
+    }
+
     private static boolean isValidSgroupLineForType(String sgroupType, String typeCode){
         if("SPA".equals(typeCode) && !("MUL".equals(sgroupType))){
             //parent atoms only allowed for multiple groups?
@@ -666,42 +1141,60 @@ class SdfUtil {
         private boolean seenSED=false;
         private StringBuilder builder = new StringBuilder(200);
         private final int sgroupNum;
+        private int linesRead;
 
         public DataBuilder(int sgroupNum){
             this.sgroupNum=sgroupNum;
         }
-        public void handleSED(String text){
+        public void handleSED(CharSequence text){
             handleSCD(text);
             seenSED=true;
         }
-        public void handleSCD(String text){
+        public void handleSCD(CharSequence text){
+            linesRead++;
             if(seenSED){
                 //TODO already seen SED!!
                 //do nothing I guess
                 return;
             }
             if(Character.isWhitespace(text.charAt(0))){
-                builder.append(text.substring(1));
+                builder.append(text, 1, text.length());
             }else{
                 builder.append(text);
             }
         }
 
-        public String format(){
+        /**
+         * Write out the data as SCD lines of 70 characters
+         * followed by a final SED line.
+         * @param out the StringBuilder to append to.
+         * @param rules the counter to notify if the lines had to be re-chunked.
+         */
+        public void formatTo(StringBuilder out, RuleCounter rules){
             //right trim but not left
-            String rightTrimmed = builder.toString().replaceAll("\\s+$","");
-            if(rightTrimmed.length()<=69){
-                //only one line
-                return String.format("M  SED %3d %s\n",sgroupNum, rightTrimmed);
+            int end = builder.length();
+            while(end > 0 && CtLineTokenizer.isRegexWhitespace(builder.charAt(end-1))){
+                end--;
+            }
+            int start=0;
+            int linesWritten = 1;
+            if(end>69){
+                do {
+                    appendLine(out, "M  SCD ", start, start+70);
+                    start+=70;
+                    linesWritten++;
+                }while(end - start>70);
             }
-            StringBuilder builder = new StringBuilder(200);
-            do {
-
-                builder.append(String.format("M  SCD %3d %s\n", sgroupNum, rightTrimmed.substring(0, 70)));
-                rightTrimmed = rightTrimmed.substring(70);
-            }while(rightTrimmed.length()>70);
-             builder.append(String.format("M  SED %3d %s\n",sgroupNum, rightTrimmed));
-             return builder.toString();
+            appendLine(out, "M  SED ", start, end);
+            if(linesWritten != linesRead){
+                rules.fire(CleaningListener.Rule.DATA_SGROUP_LINES_RECHUNKED);
+            }
+        }
+
+        private void appendLine(StringBuilder out, String prefix, int start, int end){
+            out.append(prefix);
+            CtLineTokenizer.appendPadded(out, sgroupNum, 3);
+            out.append(' ').append(builder, start, end).append('\n');
         }
 
     }
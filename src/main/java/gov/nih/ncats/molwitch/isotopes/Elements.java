@@ -20,6 +20,7 @@ package gov.nih.ncats.molwitch.isotopes;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.OptionalInt;
 
 public class Elements {
     private static String[] elements = new String[119];
@@ -155,6 +156,16 @@ public class Elements {
     public static boolean isElementSymbol(String s){
         return SymbolMap.containsKey(s);
     }
+    /**
+     * Get the atomic number of the element with the given symbol.
+     * @param s the element symbol which is case sensitive (for example "Cl").
+     * @return an OptionalInt of the atomic number which will be empty
+     * if the symbol is not a known element.
+     */
+    public static OptionalInt getAtomicNumberBySymbol(String s){
+        Integer atomicNumber = SymbolMap.get(s);
+        return atomicNumber ==null ? OptionalInt.empty() : OptionalInt.of(atomicNumber);
+    }
     public static String getSymbolByAtomicNumber(int atomicNumber){
         return elements[atomicNumber];
     }
@@ -0,0 +1,232 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import gov.nih.ncats.molwitch.Atom;
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.isotopes.Elements;
+
+import java.util.OptionalInt;
+
+/**
+ * Counts of heavy atoms by atomic number used to cheaply rule out
+ * a query before running a full substructure search.
+ * A query composition is a lower bound on the number of each element
+ * any matching target must contain; anything that can not be
+ * determined with certainty from the query contributes no requirement
+ * so that a pre-check can never cause a false negative.
+ *
+ * <p>
+ * Hydrogens are always ignored since they are often implicit.
+ * </p>
+ */
+final class AtomComposition {
+
+    private static final int MAX_ATOMIC_NUMBER = 118;
+
+    private static final AtomComposition NO_REQUIREMENTS = new AtomComposition(new int[0]);
+
+    private final int[] counts;
+
+    private AtomComposition(int[] counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * Compute the composition of the given target.
+     * @param target the Chemical to count; can not be null.
+     * @return a new AtomComposition; will never be null.
+     */
+    static AtomComposition ofTarget(Chemical target) {
+        int[] counts = new int[MAX_ATOMIC_NUMBER + 1];
+        for (Atom a : target.getAtoms()) {
+            int atomicNumber = a.getAtomicNumber();
+            if (atomicNumber > 1 && atomicNumber <= MAX_ATOMIC_NUMBER) {
+                counts[atomicNumber]++;
+            }
+        }
+        return new AtomComposition(counts);
+    }
+
+    /**
+     * Compute the minimum composition a target must have to match the given query
+     * Chemical.  Query, pseudo and R-group atoms contribute no requirements.
+     * @param query the query Chemical; can not be null.
+     * @return a new AtomComposition; will never be null.
+     */
+    static AtomComposition requiredBy(Chemical query) {
+        int[] counts = new int[MAX_ATOMIC_NUMBER + 1];
+        for (Atom a : query.getAtoms()) {
+            if (a.isQueryAtom() || a.isPseudoAtom() || a.isRGroupAtom()) {
+                continue;
+            }
+            int atomicNumber = a.getAtomicNumber();
+            if (atomicNumber > 1 && atomicNumber <= MAX_ATOMIC_NUMBER) {
+                counts[atomicNumber]++;
+            }
+        }
+        return new AtomComposition(counts);
+    }
+
+    /**
+     * Compute the minimum composition a target must have to match the given SMARTS pattern.
+     * Only atoms whose element is unambiguous are counted: organic subset
+     * atoms outside of brackets and bracket atoms that start with an element symbol
+     * or atomic number and do not contain an OR ({@code ','}).  Reaction SMARTS
+     * have no requirements.
+     *
+     * @param smarts the SMARTS pattern; can not be null.
+     * @return a new AtomComposition; will never be null.
+     */
+    static AtomComposition requiredBy(String smarts) {
+        if (smarts.indexOf('>') >= 0) {
+            return NO_REQUIREMENTS;
+        }
+        int[] counts = new int[MAX_ATOMIC_NUMBER + 1];
+        int length = smarts.length();
+        int i = 0;
+        while (i < length) {
+            char c = smarts.charAt(i);
+            if (c == '[') {
+                int end = findClosingBracket(smarts, i);
+                if (end < 0) {
+                    //malformed let the searcher complain
+                    return NO_REQUIREMENTS;
+                }
+                increment(counts, bracketAtomicNumber(smarts.substring(i + 1, end)));
+                i = end + 1;
+                continue;
+            }
+            if (c == '%') {
+                //two digit ring closure
+                i += 3;
+                continue;
+            }
+            if (c == 'C' && i + 1 < length && smarts.charAt(i + 1) == 'l') {
+                increment(counts, 17);
+                i += 2;
+                continue;
+            }
+            if (c == 'B' && i + 1 < length && smarts.charAt(i + 1) == 'r') {
+                increment(counts, 35);
+                i += 2;
+                continue;
+            }
+            increment(counts, organicSubsetAtomicNumber(c));
+            i++;
+        }
+        return new AtomComposition(counts);
+    }
+
+    private static int findClosingBracket(String smarts, int openIndex) {
+        //recursive SMARTS can nest brackets inside $( )
+        int depth = 0;
+        for (int j = openIndex + 1; j < smarts.length(); j++) {
+            char c = smarts.charAt(j);
+            if (c == '[' || c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ']') {
+                if (depth == 0) {
+                    return j;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    private static int organicSubsetAtomicNumber(char c) {
+        switch (c) {
+            case 'B': case 'b': return 5;
+            case 'C': case 'c': return 6;
+            case 'N': case 'n': return 7;
+            case 'O': case 'o': return 8;
+            case 'F': return 9;
+            case 'P': case 'p': return 15;
+            case 'S': case 's': return 16;
+            case 'I': return 53;
+            default: return -1;
+        }
+    }
+
+    private static int bracketAtomicNumber(String content) {
+        if (content.indexOf(',') >= 0) {
+            //an OR means the element isn't certain
+            return -1;
+        }
+        int i = 0;
+        int length = content.length();
+        //skip isotope
+        while (i < length && Character.isDigit(content.charAt(i))) {
+            i++;
+        }
+        if (i >= length) {
+            return -1;
+        }
+        char c = content.charAt(i);
+        if (c == '#') {
+            int start = ++i;
+            while (i < length && Character.isDigit(content.charAt(i))) {
+                i++;
+            }
+            return i == start ? -1 : Integer.parseInt(content.substring(start, i));
+        }
+        if (Character.isUpperCase(c)) {
+            if (i + 1 < length && Character.isLowerCase(content.charAt(i + 1))) {
+                OptionalInt twoLetter = Elements.getAtomicNumberBySymbol(content.substring(i, i + 2));
+                if (twoLetter.isPresent()) {
+                    return twoLetter.getAsInt();
+                }
+            }
+            //single upper case letters like A, D, R and X are primitives not elements
+            return Elements.getAtomicNumberBySymbol(String.valueOf(c)).orElse(-1);
+        }
+        if (content.startsWith("se", i)) {
+            return 34;
+        }
+        if (content.startsWith("as", i)) {
+            return 33;
+        }
+        //a lone 'a' is any aromatic atom
+        return c == 'a' ? -1 : organicSubsetAtomicNumber(c);
+    }
+
+    private static void increment(int[] counts, int atomicNumber) {
+        if (atomicNumber > 1 && atomicNumber <= MAX_ATOMIC_NUMBER) {
+            counts[atomicNumber]++;
+        }
+    }
+
+    /**
+     * Can a target with the given composition satisfy this composition's requirements.
+     * @param target the composition of the target computed by {@link #ofTarget(Chemical)}.
+     * @return {@code false} if the target definitely can not match; {@code true} otherwise.
+     */
+    boolean isSatisfiedBy(AtomComposition target) {
+        int[] available = target.counts;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 && (i >= available.length || counts[i] > available[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -37,4 +37,19 @@ public interface MolSearcher {
      * @throws NullPointerException if target is null.
      */
     Optional<int[]> search(Chemical target);
+
+    /**
+     * Can this MolSearcher be used by multiple threads concurrently.
+     * Implementations whose {@link #search(Chemical)} method does not
+     * modify any shared state should override this method to return {@code true}
+     * so caches such as {@link MolSearcherCache} can share a single instance
+     * across threads instead of making a copy per thread.
+     *
+     * @return {@code true} if this searcher is threadsafe; {@code false} otherwise.
+     *
+     * <strong>API Note</strong>: by default, this method returns {@code false}.
+     */
+    default boolean isThreadSafe(){
+        return false;
+    }
 }
@@ -0,0 +1,290 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, least recently used cache of compiled {@link MolSearcher}s
+ * keyed either by SMARTS text or by the identity of a query {@link Chemical}.
+ * Compiling a query is often more expensive than searching a single target
+ * so applications that apply the same queries over and over should reuse them.
+ * <p>
+ * This class is threadsafe.  Since {@link MolSearcher} implementations are not required to be threadsafe,
+ * a searcher is only shared across threads if its {@link MolSearcher#isThreadSafe()} returns {@code true};
+ * otherwise each thread gets its own compiled copy for each cached query.  Either way,
+ * the MolSearcher returned by {@link #get(String)} or {@link #get(Chemical)}
+ * is always safe to use by the calling thread.
+ * <p>
+ * Query Chemicals are keyed by identity not by structure, so the same Chemical object must be passed in
+ * to get a cache hit and the Chemical should not be modified after it is cached.
+ *
+ * @see MolSearcherFactory#getCached(String)
+ */
+public final class MolSearcherCache {
+    /**
+     * Default maximum number of queries to cache.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1_000;
+
+    private final int maxSize;
+    private final Map<Object, CachedSearcher> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a new MolSearcherCache that holds up to {@link #DEFAULT_MAX_SIZE} queries.
+     */
+    public MolSearcherCache(){
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a new MolSearcherCache that holds up to the given number of queries.
+     * @param maxSize the maximum number of queries to cache; must be &ge; 1.
+     * @throws IllegalArgumentException if maxSize &lt; 1.
+     */
+    public MolSearcherCache(int maxSize){
+        if(maxSize < 1){
+            throw new IllegalArgumentException("maxSize must be >=1");
+        }
+        this.maxSize = maxSize;
+        this.cache = new LinkedHashMap<Object, CachedSearcher>(Math.min(maxSize, 1024), 0.75F, true){
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CachedSearcher> eldest) {
+                if(size() > MolSearcherCache.this.maxSize){
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the compiled {@link MolSearcher} for the given SMARTS pattern,
+     * compiling it with {@link MolSearcherFactory#create(String)} if it isn't already cached.
+     * @param smartsPattern the pattern to query against; can not be null.
+     * @return an Optional of the MolSearcher which will be empty if there is no
+     * MolSearcher implementation.
+     * @throws NullPointerException if smartsPattern is null.
+     */
+    public Optional<MolSearcher> get(String smartsPattern){
+        Objects.requireNonNull(smartsPattern);
+        return get(smartsPattern, ()-> MolSearcherFactory.create(smartsPattern));
+    }
+
+    /**
+     * Get the compiled {@link MolSearcher} for the given query Chemical,
+     * compiling it with {@link MolSearcherFactory#create(Chemical)} if it isn't already cached.
+     * @param query the query Chemical; can not be null.
+     * @return an Optional of the MolSearcher which will be empty if there is no
+     * MolSearcher implementation.
+     * @throws NullPointerException if query is null.
+     */
+    public Optional<MolSearcher> get(Chemical query){
+        Objects.requireNonNull(query);
+        return get(new IdentityKey(query), ()-> MolSearcherFactory.create(query));
+    }
+
+    private Optional<MolSearcher> get(Object key, Supplier<Optional<MolSearcher>> compiler){
+        CachedSearcher cached;
+        synchronized (cache){
+            cached = cache.get(key);
+        }
+        if(cached !=null){
+            MolSearcher searcher = cached.getForCurrentThread();
+            if(searcher !=null){
+                hits.incrementAndGet();
+                return Optional.of(searcher);
+            }
+        }
+        //either not cached or this thread needs its own copy
+        //both cost a compile so both are misses
+        misses.incrementAndGet();
+        //compile outside of the lock since it may be slow
+        Optional<MolSearcher> compiled = compiler.get();
+        if(!compiled.isPresent()){
+            return compiled;
+        }
+        if(cached !=null){
+            cached.setForCurrentThread(compiled.get());
+            return compiled;
+        }
+        CachedSearcher newValue = new CachedSearcher(compiled.get());
+        synchronized (cache){
+            //if another thread compiled it first keep theirs,
+            //our copy is still safe for this thread to use
+            cache.putIfAbsent(key, newValue);
+        }
+        return compiled;
+    }
+
+    /**
+     * Remove all the cached queries.  The statistics are not reset.
+     */
+    public void clear(){
+        synchronized (cache){
+            cache.clear();
+        }
+    }
+
+    /**
+     * Get the number of queries currently cached.
+     * @return the number of queries.
+     */
+    public int size(){
+        synchronized (cache){
+            return cache.size();
+        }
+    }
+
+    /**
+     * Get the maximum number of queries this cache will hold.
+     * @return the maximum size.
+     */
+    public int getMaxSize(){
+        return maxSize;
+    }
+
+    /**
+     * Get a snapshot of the hit and miss statistics of this cache.
+     * @return a new {@link Stats} object.
+     */
+    public Stats getStats(){
+        return new Stats(hits.get(), misses.get(), evictions.get());
+    }
+
+    /**
+     * Cache statistics.
+     */
+    public static final class Stats{
+        private final long hitCount, missCount, evictionCount;
+
+        Stats(long hitCount, long missCount, long evictionCount){
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+        }
+
+        /**
+         * Number of lookups that found an already compiled query.
+         * @return the number of hits.
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Number of lookups that had to compile the query.  This includes lookups of a cached query
+         * whose {@link MolSearcher} isn't threadsafe from a thread that didn't have its own copy yet.
+         * @return the number of misses.
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Number of queries removed to keep the cache under its maximum size.
+         * @return the number of evictions.
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * The ratio of hits to all lookups.
+         * @return a number between 0 and 1 or {@code NaN} if there have been no lookups.
+         */
+        public double getHitRate(){
+            long total = hitCount + missCount;
+            return total ==0 ? Double.NaN : hitCount / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats [hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount + "]";
+        }
+    }
+
+    /**
+     * Either a single shared threadsafe searcher
+     * or one copy per thread.
+     */
+    private static final class CachedSearcher{
+        private final MolSearcher shared;
+        private final ThreadLocal<MolSearcher> perThread;
+
+        CachedSearcher(MolSearcher compiled){
+            if(compiled.isThreadSafe()){
+                shared = compiled;
+                perThread = null;
+            }else{
+                shared = null;
+                perThread = new ThreadLocal<>();
+                perThread.set(compiled);
+            }
+        }
+
+        /**
+         * Get the searcher the calling thread can use.
+         * @return the searcher or {@code null} if this thread has to compile its own copy.
+         */
+        MolSearcher getForCurrentThread(){
+            return shared !=null ? shared : perThread.get();
+        }
+
+        void setForCurrentThread(MolSearcher compiled){
+            //only reached if not shared
+            perThread.set(compiled);
+        }
+    }
+
+    /**
+     * Wraps a query so equality is by identity.
+     */
+    private static final class IdentityKey{
+        private final Object ref;
+
+        IdentityKey(Object ref){
+            this.ref = ref;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(ref);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdentityKey && ((IdentityKey) obj).ref == ref;
+        }
+    }
+}
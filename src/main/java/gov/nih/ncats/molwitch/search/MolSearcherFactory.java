@@ -33,9 +33,49 @@ public class MolSearcherFactory {
         }
         return list;
     });
+    private static final MolSearcherCache CACHE = new MolSearcherCache();
+
     private MolSearcherFactory(){
         //can not instantiate
     }
+
+    /**
+     * Get a compiled {@link MolSearcher} for the given SMARTS pattern
+     * from a shared {@link MolSearcherCache} compiling it only if it hasn't been used recently.
+     * The returned MolSearcher is safe to use by the calling thread;
+     * see {@link MolSearcherCache} for the threading contract.
+     *
+     * @param smartsPattern the pattern to query against; can not be null.
+     * @return an Optional of the MolSearcher which will be empty if there is no implementation.
+     * @throws NullPointerException if smartsPattern is null.
+     */
+    public static Optional<MolSearcher> getCached(String smartsPattern){
+        return CACHE.get(smartsPattern);
+    }
+
+    /**
+     * Get a compiled {@link MolSearcher} for the given query Chemical
+     * from a shared {@link MolSearcherCache} compiling it only if this same Chemical object
+     * hasn't been used recently.
+     * The returned MolSearcher is safe to use by the calling thread;
+     * see {@link MolSearcherCache} for the threading contract.
+     *
+     * @param query the query to use; can not be null.
+     * @return an Optional of the MolSearcher which will be empty if there is no implementation.
+     * @throws NullPointerException if query is null.
+     */
+    public static Optional<MolSearcher> getCached(Chemical query){
+        return CACHE.get(query);
+    }
+
+    /**
+     * Get the shared {@link MolSearcherCache} used by the {@code getCached()} methods
+     * to look at its statistics or clear it.
+     * @return the shared MolSearcherCache; will never be null.
+     */
+    public static MolSearcherCache getCache(){
+        return CACHE;
+    }
     public static Optional<MolSearcher> create(String smartsPattern){
         Iterator<MolSearcherImplFactory> iterator = searchers.get().iterator();
         if(iterator.hasNext()){
@@ -0,0 +1,245 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+import java.util.*;
+
+/**
+ * A fixed set of compiled query patterns that can be matched against
+ * a target {@link Chemical} in one call to find which patterns it contains.
+ * This is useful for applying a library of structural alerts or
+ * functional group patterns to every record of a dataset.
+ *
+ * <p>
+ * Each pattern is compiled into a {@link MolSearcher} only once when the set is built.
+ * For each target, the heavy atom composition is computed once and shared across all the patterns
+ * so that any pattern that requires more atoms of an element than the target has
+ * is skipped without running the full substructure search.  This pre-check is conservative
+ * and will never cause a pattern to not be reported that would otherwise match.
+ * </p>
+ *
+ * Example usage:
+ * <pre>
+ * {@code
+ * MolSearcherSet alerts = MolSearcherSet.builder()
+ *                              .add("nitro", "[N+](=O)[O-]")
+ *                              .add("azide", "N=[N+]=[N-]")
+ *                              .build();
+ *
+ * Set<String> hits = alerts.findMatches(chemical);
+ * }
+ * </pre>
+ *
+ * This class is NOT threadsafe unless all of the compiled searchers are;
+ * see {@link #isThreadSafe()}.  Use a separate instance per thread otherwise.
+ */
+public final class MolSearcherSet {
+
+    private final List<Entry> entries;
+
+    private MolSearcherSet(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Create a new MolSearcherSet from the given map of pattern ids to SMARTS patterns.
+     * The iteration order of the map is the order the patterns are checked.
+     * @param smartsById the map of pattern id to SMARTS; can not be null.
+     * @return a new MolSearcherSet; will never be null.
+     * @throws NullPointerException if any parameter, key or value is null.
+     * @throws IllegalStateException if there is no {@link MolSearcher} implementation.
+     */
+    public static MolSearcherSet fromSmarts(Map<String, String> smartsById) {
+        Builder builder = builder();
+        for (Map.Entry<String, String> entry : smartsById.entrySet()) {
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Create a new Builder.
+     * @return a new Builder; will never be null.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the number of patterns in this set.
+     * @return the number of patterns.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the ids of all the patterns in this set in the order they were added.
+     * @return a new List of ids; will never be null.
+     */
+    public List<String> getPatternIds() {
+        List<String> ids = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            ids.add(e.id);
+        }
+        return ids;
+    }
+
+    /**
+     * Can this MolSearcherSet be used by multiple threads concurrently.
+     * @return {@code true} only if every compiled {@link MolSearcher#isThreadSafe()}.
+     */
+    public boolean isThreadSafe() {
+        for (Entry e : entries) {
+            if (!e.searcher.isThreadSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the ids of all the patterns that match the given target.
+     * @param target the Chemical to search; can not be null.
+     * @return a new Set of the matching pattern ids in the order the patterns were added;
+     * will never be null but may be empty.
+     * @throws NullPointerException if target is null.
+     */
+    public Set<String> findMatches(Chemical target) {
+        Set<String> matches = new LinkedHashSet<>();
+        AtomComposition composition = AtomComposition.ofTarget(target);
+        for (Entry e : entries) {
+            if (e.required.isSatisfiedBy(composition) && e.searcher.search(target).isPresent()) {
+                matches.add(e.id);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Find all the patterns that match the given target along with
+     * their hit positions.
+     * @param target the Chemical to search; can not be null.
+     * @return a new Map of the matching pattern ids to their hit positions
+     * in the order the patterns were added;
+     * will never be null but may be empty.
+     * @throws NullPointerException if target is null.
+     */
+    public Map<String, int[]> findMatchesWithPositions(Chemical target) {
+        Map<String, int[]> map = new LinkedHashMap<>();
+        AtomComposition composition = AtomComposition.ofTarget(target);
+        for (Entry e : entries) {
+            if (e.required.isSatisfiedBy(composition)) {
+                e.searcher.search(target).ifPresent(hits -> map.put(e.id, hits));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Does any pattern in this set match the given target.
+     * This stops searching at the first match.
+     * @param target the Chemical to search; can not be null.
+     * @return {@code true} if at least one pattern matches; {@code false} otherwise.
+     * @throws NullPointerException if target is null.
+     */
+    public boolean matchesAny(Chemical target) {
+        AtomComposition composition = AtomComposition.ofTarget(target);
+        for (Entry e : entries) {
+            if (e.required.isSatisfiedBy(composition) && e.searcher.search(target).isPresent()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Entry {
+        private final String id;
+        private final MolSearcher searcher;
+        private final AtomComposition required;
+
+        Entry(String id, MolSearcher searcher, AtomComposition required) {
+            this.id = id;
+            this.searcher = searcher;
+            this.required = required;
+        }
+    }
+
+    /**
+     * Builder for a {@link MolSearcherSet}.
+     * Patterns are compiled as they are added.
+     */
+    public static final class Builder {
+        private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Add the given SMARTS pattern.
+         * @param id the id of this pattern to report when it matches; can not be null.
+         * @param smarts the SMARTS pattern; can not be null.
+         * @return this.
+         * @throws NullPointerException if any parameter is null.
+         * @throws IllegalArgumentException if the id has already been added.
+         * @throws IllegalStateException if there is no {@link MolSearcher} implementation.
+         */
+        public Builder add(String id, String smarts) {
+            Objects.requireNonNull(smarts);
+            MolSearcher searcher = MolSearcherFactory.create(smarts)
+                    .orElseThrow(() -> new IllegalStateException("no MolSearcher implementation found"));
+            return add(id, searcher, AtomComposition.requiredBy(smarts));
+        }
+
+        /**
+         * Add the given query Chemical.
+         * @param id the id of this pattern to report when it matches; can not be null.
+         * @param query the query; can not be null.
+         * @return this.
+         * @throws NullPointerException if any parameter is null.
+         * @throws IllegalArgumentException if the id has already been added.
+         * @throws IllegalStateException if there is no {@link MolSearcher} implementation.
+         */
+        public Builder add(String id, Chemical query) {
+            Objects.requireNonNull(query);
+            MolSearcher searcher = MolSearcherFactory.create(query)
+                    .orElseThrow(() -> new IllegalStateException("no MolSearcher implementation found"));
+            return add(id, searcher, AtomComposition.requiredBy(query));
+        }
+
+        private Builder add(String id, MolSearcher searcher, AtomComposition required) {
+            Objects.requireNonNull(id);
+            if (entries.containsKey(id)) {
+                throw new IllegalArgumentException("pattern id already added: " + id);
+            }
+            entries.put(id, new Entry(id, searcher, required));
+            return this;
+        }
+
+        /**
+         * Create a new {@link MolSearcherSet} from the patterns added so far.
+         * @return a new MolSearcherSet; will never be null.
+         */
+        public MolSearcherSet build() {
+            return new MolSearcherSet(Collections.unmodifiableList(new ArrayList<>(entries.values())));
+        }
+    }
+}
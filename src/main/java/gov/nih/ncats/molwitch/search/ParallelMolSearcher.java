@@ -0,0 +1,481 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import gov.nih.ncats.common.iter.CloseableIterator;
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.datastores.ChemicalDataStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Runs a substructure search over every record in a {@link ChemicalDataStore}
+ * using multiple threads.  Each worker thread claims chunks of consecutive records,
+ * parses them and searches them with its own {@link MolSearcher}
+ * (so {@link MolSearcher} implementations do not need to be threadsafe).
+ * If the datastore {@link ChemicalDataStore#hasEfficientRandomAccess() has efficient random access}
+ * then workers claim ranges of offsets and fetch each record themselves; otherwise
+ * the records are read once, in order, from a single shared {@link ChemicalDataStore#getRawIterator() raw iterator}
+ * and handed out in chunks so that only parsing and searching run in parallel.
+ * Hits are streamed back to the caller as soon as they are found.
+ * <p>
+ * The search stops early once the maximum number of hits is found or the
+ * timeout elapses.  Since the workers run concurrently, hits are NOT returned in offset order.
+ *
+ * <pre>
+ * {@code
+ * ParallelMolSearcher searcher = ParallelMolSearcher.builder(dataStore)
+ *                                          .parallelism(8)
+ *                                          .maxHits(1000)
+ *                                          .timeout(30, TimeUnit.SECONDS)
+ *                                          .build();
+ * try(ParallelMolSearcher.SearchHitIterator iter = searcher.search("c1ccccc1[N+](=O)[O-]")){
+ *     while(iter.hasNext()){
+ *         SearchHit hit = iter.next();
+ *         ...
+ *     }
+ * }
+ * }
+ * </pre>
+ */
+public final class ParallelMolSearcher {
+
+    private static final int DEFAULT_CHUNK_SIZE = 256;
+    private static final int QUEUE_SIZE = 8192;
+    /**
+     * marker put on the queue once all workers are finished.
+     */
+    private static final SearchHit END = new SearchHit(-1, new int[0]);
+
+    private final ChemicalDataStore dataStore;
+    private final int parallelism;
+    private final long maxHits;
+    private final long timeoutNanos;
+    private final int chunkSize;
+
+    /**
+     * Create a new Builder to search the given {@link ChemicalDataStore}.
+     * @param dataStore the {@link ChemicalDataStore} to search; can not be null.
+     * @return a new Builder.
+     * @throws NullPointerException if dataStore is null.
+     */
+    public static Builder builder(ChemicalDataStore dataStore){
+        return new Builder(dataStore);
+    }
+
+    private ParallelMolSearcher(Builder builder){
+        this.dataStore = builder.dataStore;
+        this.parallelism = builder.parallelism;
+        this.maxHits = builder.maxHits;
+        this.timeoutNanos = builder.timeoutNanos;
+        this.chunkSize = builder.chunkSize;
+    }
+
+    /**
+     * Search every record in the datastore for the given SMARTS pattern.
+     * @param smartsPattern the pattern to query; can not be null.
+     * @return a new {@link SearchHitIterator} of the hits whose ids are the record offsets.
+     * @throws NullPointerException if smartsPattern is null.
+     * @throws IllegalStateException if there is no {@link MolSearcher} implementation.
+     */
+    public SearchHitIterator search(String smartsPattern){
+        Objects.requireNonNull(smartsPattern);
+        return search(worker-> MolSearcherFactory.create(smartsPattern));
+    }
+
+    /**
+     * Search every record in the datastore for the given query.
+     * @param query the query; can not be null. Each worker thread gets its own copy,
+     *              all of which are made on the calling thread before the search starts.
+     * @return a new {@link SearchHitIterator} of the hits whose ids are the record offsets.
+     * @throws NullPointerException if query is null.
+     * @throws IllegalStateException if there is no {@link MolSearcher} implementation.
+     */
+    public SearchHitIterator search(Chemical query){
+        Objects.requireNonNull(query);
+        //copying isn't threadsafe so don't let the workers copy the caller's query concurrently
+        List<Chemical> copies = new ArrayList<>(parallelism);
+        for(int i=0; i< parallelism; i++){
+            copies.add(query.copy());
+        }
+        return search(worker-> MolSearcherFactory.create(copies.get(worker)));
+    }
+
+    /**
+     * @param searcherFactory creates the {@link MolSearcher} for the given worker index.
+     */
+    private SearchHitIterator search(IntFunction<Optional<MolSearcher>> searcherFactory){
+        //create the first searcher now so we fail fast if there isn't an implementation
+        MolSearcher first = searcherFactory.apply(0)
+                                .orElseThrow(()-> new IllegalStateException("no MolSearcher implementation found"));
+        long deadline = timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeoutNanos;
+        SearchHitIterator iter = new SearchHitIterator(deadline);
+        for(int i=0; i< parallelism; i++){
+            int worker = i;
+            MolSearcher searcher = i==0? first : null;
+            iter.executor.execute(()-> iter.work(searcher, ()-> searcherFactory.apply(worker)));
+        }
+        iter.executor.shutdown();
+        return iter;
+    }
+
+    /**
+     * {@link CloseableIterator} of the {@link SearchHit}s found by
+     * a search.  Closing the iterator before it is finished
+     * cancels the search.
+     *
+     * This class is NOT threadsafe.
+     */
+    public final class SearchHitIterator implements CloseableIterator<SearchHit>{
+        private final ExecutorService executor;
+        private final BlockingQueue<SearchHit> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private final AtomicLong nextOffset = new AtomicLong();
+        /**
+         * The shared raw iterator used if the datastore doesn't have efficient random access;
+         * guarded by {@code this} and only created once a worker asks for records.
+         */
+        private CloseableIterator<String> rawIterator;
+        private boolean rawIteratorClosed;
+        private final AtomicLong hitCount = new AtomicLong();
+        private final AtomicInteger activeWorkers = new AtomicInteger(parallelism);
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final long deadline;
+
+        private volatile boolean stopped;
+        private volatile boolean closed;
+        private volatile boolean timedOut;
+        private boolean done;
+        private SearchHit next;
+
+        private SearchHitIterator(long deadline){
+            this.deadline = deadline;
+            this.executor = Executors.newFixedThreadPool(parallelism, r ->{
+                Thread t = new Thread(r, "molwitch-search");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        private void work(MolSearcher initialSearcher, Supplier<Optional<MolSearcher>> searcherSupplier){
+            try {
+                MolSearcher searcher = initialSearcher !=null ? initialSearcher
+                                            : searcherSupplier.get().orElseThrow(()-> new IllegalStateException("no MolSearcher implementation found"));
+                boolean randomAccess = dataStore.hasEfficientRandomAccess();
+                long size = dataStore.getSize();
+                List<String> raws = randomAccess ? null : new ArrayList<>(chunkSize);
+                while (!shouldStop()) {
+                    long start;
+                    long end;
+                    if(randomAccess){
+                        start = nextOffset.getAndAdd(chunkSize);
+                        end = Math.min(size, start + chunkSize);
+                    }else{
+                        start = nextRawChunk(raws);
+                        end = start + raws.size();
+                    }
+                    if(start >= end){
+                        break;
+                    }
+                    for (long offset = start; offset < end && !shouldStop(); offset++) {
+                        Chemical target = randomAccess ? dataStore.get(offset) : parse(raws.get((int) (offset - start)));
+                        if (target == null) {
+                            //could not parse
+                            continue;
+                        }
+                        Optional<int[]> result = searcher.search(target);
+                        if (result.isPresent()) {
+                            long count = hitCount.incrementAndGet();
+                            if (count > maxHits) {
+                                stopped = true;
+                                break;
+                            }
+                            enqueue(new SearchHit(offset, result.get()));
+                            if (count == maxHits) {
+                                stopped = true;
+                            }
+                        }
+                    }
+                }
+            }catch(Throwable t){
+                error.compareAndSet(null, t);
+                stopped = true;
+            }finally {
+                workerFinished(1);
+            }
+        }
+
+        private void workerFinished(int numberOfWorkers){
+            if(activeWorkers.addAndGet(-numberOfWorkers) ==0){
+                closeRawIterator();
+                enqueue(END);
+            }
+        }
+
+        /**
+         * Read the next chunk of records from the shared raw iterator.
+         * @param raws the list to fill with the records; any previous contents are cleared.
+         * @return the offset of the first record in the chunk.
+         */
+        private synchronized long nextRawChunk(List<String> raws){
+            raws.clear();
+            if(rawIteratorClosed){
+                return nextOffset.get();
+            }
+            if(rawIterator ==null){
+                rawIterator = dataStore.getRawIterator();
+            }
+            while(raws.size() < chunkSize && rawIterator.hasNext()){
+                raws.add(rawIterator.next());
+            }
+            return nextOffset.getAndAdd(raws.size());
+        }
+
+        private synchronized void closeRawIterator(){
+            rawIteratorClosed = true;
+            if(rawIterator !=null){
+                try {
+                    rawIterator.close();
+                } catch (IOException e) {
+                    //ignore we are done with it
+                }
+                rawIterator = null;
+            }
+        }
+
+        private Chemical parse(String raw){
+            if(raw ==null){
+                return null;
+            }
+            try{
+                return Chemical.parse(raw);
+            }catch(IOException e){
+                return null;
+            }
+        }
+
+        private boolean shouldStop(){
+            if(stopped){
+                return true;
+            }
+            if(deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0){
+                timedOut = true;
+                stopped = true;
+            }
+            return stopped;
+        }
+
+        private void enqueue(SearchHit hit){
+            try {
+                //if the consumer closed the iterator nobody will drain the queue
+                //so don't block forever
+                while (!queue.offer(hit, 100, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        return;
+                    }
+                }
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(next !=null){
+                return true;
+            }
+            if(done){
+                return false;
+            }
+            try {
+                while (true) {
+                    long waitNanos = deadline == Long.MAX_VALUE ? TimeUnit.MILLISECONDS.toNanos(100)
+                                                                : Math.min(deadline - System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(100));
+                    if (waitNanos <= 0) {
+                        timedOut = true;
+                        stopped = true;
+                        //still return the hits that were found in time
+                        SearchHit queued = queue.poll();
+                        if (queued != null && queued != END) {
+                            next = queued;
+                            return true;
+                        }
+                        close();
+                        return false;
+                    }
+                    SearchHit hit = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (hit == END) {
+                        done = true;
+                        Throwable t = error.get();
+                        if (t != null) {
+                            if(t instanceof RuntimeException){
+                                throw (RuntimeException) t;
+                            }
+                            throw new IllegalStateException("error searching datastore", t);
+                        }
+                        return false;
+                    }
+                    if (hit != null) {
+                        next = hit;
+                        return true;
+                    }
+                }
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                close();
+                return false;
+            }
+        }
+
+        @Override
+        public SearchHit next() {
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            SearchHit ret = next;
+            next = null;
+            return ret;
+        }
+
+        /**
+         * Did the search stop early because the timeout elapsed.
+         * @return {@code true} if the search timed out; {@code false} otherwise.
+         */
+        public boolean isTimedOut(){
+            return timedOut;
+        }
+
+        /**
+         * Did the search stop early because the maximum number of hits was found.
+         * @return {@code true} if the max number of hits were found; {@code false} otherwise.
+         */
+        public boolean isMaxHitsReached(){
+            return hitCount.get() >= maxHits;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            stopped = true;
+            done = true;
+            next = null;
+            //tasks that never started never release their worker count
+            int neverStarted = executor.shutdownNow().size();
+            if(neverStarted >0){
+                workerFinished(neverStarted);
+            }
+            queue.clear();
+        }
+    }
+
+    /**
+     * Builds a {@link ParallelMolSearcher}.
+     */
+    public static final class Builder{
+        private final ChemicalDataStore dataStore;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private long maxHits = Long.MAX_VALUE;
+        private long timeoutNanos = Long.MAX_VALUE;
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+        private Builder(ChemicalDataStore dataStore){
+            this.dataStore = Objects.requireNonNull(dataStore);
+        }
+
+        /**
+         * Set the number of worker threads to use.  Defaults to the number of available processors.
+         * @param parallelism the number of threads; must be &ge; 1.
+         * @return this.
+         * @throws IllegalArgumentException if parallelism &lt; 1.
+         */
+        public Builder parallelism(int parallelism){
+            if(parallelism < 1){
+                throw new IllegalArgumentException("parallelism must be >=1");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Stop the search once this many hits are found.  Defaults to no limit.
+         * @param maxHits the maximum number of hits; must be &ge; 1.
+         * @return this.
+         * @throws IllegalArgumentException if maxHits &lt; 1.
+         */
+        public Builder maxHits(long maxHits){
+            if(maxHits < 1){
+                throw new IllegalArgumentException("maxHits must be >=1");
+            }
+            this.maxHits = maxHits;
+            return this;
+        }
+
+        /**
+         * Stop the search if it takes longer than the given amount of time.  Defaults to no timeout.
+         * @param timeout the amount of time; must be &gt; 0.
+         * @param unit the unit of the timeout; can not be null.
+         * @return this.
+         * @throws IllegalArgumentException if timeout &le; 0.
+         */
+        public Builder timeout(long timeout, TimeUnit unit){
+            if(timeout <= 0){
+                throw new IllegalArgumentException("timeout must be > 0");
+            }
+            this.timeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * Set the number of consecutive records each worker claims at a time.
+         * @param chunkSize the number of records; must be &ge; 1.
+         * @return this.
+         * @throws IllegalArgumentException if chunkSize &lt; 1.
+         */
+        public Builder chunkSize(int chunkSize){
+            if(chunkSize < 1){
+                throw new IllegalArgumentException("chunkSize must be >=1");
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Create a new {@link ParallelMolSearcher}.
+         * @return a new ParallelMolSearcher.
+         */
+        public ParallelMolSearcher build(){
+            return new ParallelMolSearcher(this);
+        }
+    }
+}
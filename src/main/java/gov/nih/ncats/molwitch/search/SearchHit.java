@@ -0,0 +1,79 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import java.util.Arrays;
+
+/**
+ * A single hit of a substructure search over
+ * many targets: the id (usually the offset in a {@link gov.nih.ncats.molwitch.datastores.ChemicalDataStore})
+ * of the target that matched and the hit positions returned by {@link MolSearcher#search(gov.nih.ncats.molwitch.Chemical)}.
+ */
+public final class SearchHit {
+
+    private final long id;
+    private final int[] hitPositions;
+
+    /**
+     * Create a new SearchHit.
+     * @param id the id of the target that matched.
+     * @param hitPositions the hit positions of the match; can not be null.
+     * @throws NullPointerException if hitPositions is null.
+     */
+    public SearchHit(long id, int[] hitPositions) {
+        this.id = id;
+        this.hitPositions = hitPositions.clone();
+    }
+
+    /**
+     * Get the id of the target that matched.
+     * @return the id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Get the hit positions (the atom mapping of the query to the target).
+     * @return a new array of the hit positions.
+     */
+    public int[] getHitPositions() {
+        return hitPositions.clone();
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(id) + Arrays.hashCode(hitPositions);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof SearchHit))
+            return false;
+        SearchHit other = (SearchHit) obj;
+        return id == other.id && Arrays.equals(hitPositions, other.hitPositions);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchHit [id=" + id + ", hitPositions=" + Arrays.toString(hitPositions) + "]";
+    }
+}
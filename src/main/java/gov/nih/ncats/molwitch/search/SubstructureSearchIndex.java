@@ -0,0 +1,169 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import gov.nih.ncats.common.iter.CloseableIterator;
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.datastores.ChemicalDataStore;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprint;
+import gov.nih.ncats.molwitch.fingerprint.FingerprintIndex;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinter;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.FingerprintSpecification;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.LongFunction;
+
+/**
+ * Substructure search over many targets that uses a fingerprint screen
+ * to avoid running the expensive graph isomorphism of {@link MolSearcher} on every target.
+ * <p>
+ * If a query is a substructure of a target, then every bit set in the query's path based
+ * fingerprint must also be set in the target's fingerprint.  So the targets' fingerprints are kept in a
+ * {@link FingerprintIndex} and only targets that pass {@link FingerprintIndex#findSupersetsOf(Fingerprint)}
+ * are looked up and given to the {@link MolSearcher} from {@link MolSearcherFactory}.
+ * <p>
+ * The {@link Fingerprinter} must produce fingerprints where a substructure's bits are always
+ * a subset of the superstructure's bits (for example {@link FingerprintSpecification#PATH_BASED path based} fingerprints)
+ * otherwise the screen may incorrectly drop real hits.
+ */
+public final class SubstructureSearchIndex {
+
+    private final Fingerprinter fingerprinter;
+    private final FingerprintIndex index;
+    private final LongFunction<Chemical> targetLookup;
+
+    /**
+     * Create a new SubstructureSearchIndex of all the records in the given {@link ChemicalDataStore}
+     * using the default path based fingerprint.  The ids of the hits are the offsets into the datastore.
+     *
+     * @param dataStore the {@link ChemicalDataStore} to index; can not be null.
+     * @return a new SubstructureSearchIndex.
+     * @throws IOException if there is a problem reading the datastore.
+     * @throws IllegalStateException if there is no path based fingerprinter available.
+     * @throws NullPointerException if dataStore is null.
+     */
+    public static SubstructureSearchIndex create(ChemicalDataStore dataStore) throws IOException{
+        Fingerprinter fingerprinter = Fingerprinters.getFingerprinter(FingerprintSpecification.PATH_BASED.create());
+        if(fingerprinter ==null){
+            throw new IllegalStateException("no path based fingerprinter found");
+        }
+        return create(dataStore, fingerprinter);
+    }
+
+    /**
+     * Create a new SubstructureSearchIndex of all the records in the given {@link ChemicalDataStore}
+     * using the given {@link Fingerprinter}.  The ids of the hits are the offsets into the datastore.
+     *
+     * @param dataStore the {@link ChemicalDataStore} to index; can not be null.
+     * @param fingerprinter the {@link Fingerprinter} to use to screen; can not be null.
+     * @return a new SubstructureSearchIndex.
+     * @throws IOException if there is a problem reading the datastore.
+     * @throws NullPointerException if any parameter is null.
+     */
+    public static SubstructureSearchIndex create(ChemicalDataStore dataStore, Fingerprinter fingerprinter) throws IOException{
+        Objects.requireNonNull(fingerprinter);
+        FingerprintIndex.Builder builder = null;
+        List<Chemical> batch = new ArrayList<>(1024);
+        try(CloseableIterator<Chemical> iter = dataStore.getIterator()){
+            while(iter.hasNext()){
+                batch.add(iter.next());
+                if(batch.size() == 1024 || !iter.hasNext()){
+                    for(Fingerprint fp : fingerprinter.computeFingerprints(batch)){
+                        if(builder ==null){
+                            builder = FingerprintIndex.builder(fp.getLength());
+                        }
+                        builder.add(fp);
+                    }
+                    batch.clear();
+                }
+            }
+        }
+        FingerprintIndex index = builder ==null ? FingerprintIndex.builder(1).build() : builder.build();
+        return new SubstructureSearchIndex(fingerprinter, index, dataStore::get);
+    }
+
+    /**
+     * Create a new SubstructureSearchIndex from an already built {@link FingerprintIndex}.
+     *
+     * @param fingerprinter the {@link Fingerprinter} that was used to make the fingerprints in the index
+     *                      and that will be used to fingerprint queries; can not be null.
+     * @param index the {@link FingerprintIndex} of the targets; can not be null.
+     * @param targetLookup function to get the target {@link Chemical} for an id in the index; can not be null.
+     * @throws NullPointerException if any parameter is null.
+     */
+    public SubstructureSearchIndex(Fingerprinter fingerprinter, FingerprintIndex index, LongFunction<Chemical> targetLookup){
+        this.fingerprinter = Objects.requireNonNull(fingerprinter);
+        this.index = Objects.requireNonNull(index);
+        this.targetLookup = Objects.requireNonNull(targetLookup);
+    }
+
+    /**
+     * Get the ids of all the targets that pass the fingerprint screen
+     * for the given query.  These targets might contain the query
+     * but they still have to be confirmed with a {@link MolSearcher}.
+     *
+     * @param query the query; can not be null.
+     * @return a new sorted array of the candidate ids.
+     * @throws NullPointerException if query is null.
+     */
+    public long[] screen(Chemical query){
+        Fingerprint fp = fingerprinter.computeFingerprint(query);
+        if(fp.getLength() != index.getBitLength()){
+            //empty index
+            return new long[0];
+        }
+        return index.findSupersetsOf(fp);
+    }
+
+    /**
+     * Search all the targets for the given query.  Only the
+     * targets that pass the {@link #screen(Chemical) screen} are
+     * searched with a {@link MolSearcher}.
+     *
+     * @param query the query; can not be null.
+     * @return a new List of the {@link SearchHit}s in id order; will never be null but may be empty.
+     * @throws NullPointerException if query is null.
+     * @throws IllegalStateException if no {@link MolSearcher} implementation is found.
+     */
+    public List<SearchHit> search(Chemical query){
+        long[] candidates = screen(query);
+        List<SearchHit> hits = new ArrayList<>();
+        if(candidates.length ==0){
+            return hits;
+        }
+        MolSearcher searcher = MolSearcherFactory.create(query)
+                                    .orElseThrow(()-> new IllegalStateException("no MolSearcher implementation found"));
+        for(long id : candidates){
+            Chemical target = targetLookup.apply(id);
+            if(target ==null){
+                continue;
+            }
+            Optional<int[]> result = searcher.search(target);
+            if(result.isPresent()){
+                hits.add(new SearchHit(id, result.get()));
+            }
+        }
+        return hits;
+    }
+}
@@ -18,9 +18,12 @@
 
 package gov.nih.ncats.molwitch.spi;
 
+import java.util.List;
 import java.util.ServiceLoader;
 import java.util.Set;
 
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprint;
 import gov.nih.ncats.molwitch.fingerprint.Fingerprinter;
 import gov.nih.ncats.molwitch.fingerprint.Fingerprinters;
 import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.FingerprintSpecification;
@@ -70,11 +73,33 @@ public interface FingerprinterImpl{
 	Set<String> getSupportedAlgorithmNames();
 	/**
 	 * Create a {@link Fingerprinter} with the given specification.
+	 * {@link Fingerprinters#getFingerprinter(FingerprintSpecification)} caches
+	 * the returned Fingerprinter; it is only shared across threads
+	 * if its {@link Fingerprinter#isThreadSafe()} returns {@code true}.
 	 * @param spec the {@link FingerprintSpecification}
 	 * @return a new Fingerprinter.
 	 */
 	Fingerprinter createFingerPrinterFor(FingerprintSpecification spec);
 
+	/**
+	 * Compute the {@link Fingerprint}s for all the given {@link Chemical}s
+	 * using the given specification.  The returned List is in the same order as the input.
+	 * Implementations may override this method to share expensive setup
+	 * such as path enumerators or hash tables across the whole batch.
+	 *
+	 * <strong>API Note</strong>: by default, this method is the same as
+	 * {@code createFingerPrinterFor(spec).computeFingerprints(chemicals)}.
+	 *
+	 * @param spec the {@link FingerprintSpecification}.
+	 * @param chemicals the {@link Chemical}s to fingerprint; can not be null or contain null elements.
+	 * @return a new List of Fingerprints; will never be null.
+	 *
+	 * @see Fingerprinter#computeFingerprints(Iterable)
+	 */
+	default List<Fingerprint> computeFingerprints(FingerprintSpecification spec, Iterable<Chemical> chemicals){
+		return createFingerPrinterFor(spec).computeFingerprints(chemicals);
+	}
+
 	/**
 	 * Create a new Fingerprinter object using the default
 	 * implementation with default settings.
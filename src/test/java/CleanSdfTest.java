@@ -16,12 +16,22 @@
  *    limitations under the License.
  */
 
+import gov.nih.ncats.molwitch.io.CleaningListener;
+import gov.nih.ncats.molwitch.io.CleaningStats;
 import gov.nih.ncats.molwitch.io.CtTableCleaner;
+import gov.nih.ncats.molwitch.io.ParallelSdfCleaner;
 import org.junit.Test;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class CleanSdfTest {
 
@@ -5177,4 +5187,309 @@ public class CleanSdfTest {
 
             assertCleanedCorrectly(mol, mol);
         }
+
+    private static String sloppyRecord(int i){
+        return "name" + i + "\n  ACCLDraw09152014282D\n" +
+                "  3  2  0  0  0  0  0  0  0  0999 V2000\n" +
+                "12.5547   -9.5481    0.0000 C   0  0  0  0  0  0  0  0  0  0  0  0\n" +
+                "   11.7570   -9.5481    0.0000 C   0  0  0  0  0  0  0  0  0  0  0  0\n" +
+                "   12.9561  -10.2274    0.0000 O   0  0  0  0  0  0  0  0  0  0  0  0\n" +
+                "2  1  1  0  0  0  0\n" +
+                "  3  1  2  0  0  0  0\n" +
+                "M  CHG  1   3  -1\n" +
+                "M  END\n" +
+                "\n\n" +
+                "> <ID>\n" + i + "\n\n$$$$\n" +
+                (i % 3 ==0 ? "\n\n" : "");
+    }
+
+    private static String cleanParallel(String uncleaned, int batchSize) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(BufferedReader reader = new BufferedReader(new StringReader(uncleaned))){
+            ParallelSdfCleaner.builder()
+                    .parallelism(3)
+                    .batchSize(batchSize)
+                    .build()
+                    .clean(reader, Channels.newChannel(out));
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void parallelCleanMatchesSequentialClean() throws IOException{
+        StringBuilder sdf = new StringBuilder();
+        for(int i=0; i< 50; i++){
+            sdf.append(sloppyRecord(i));
+        }
+        String expected = CtTableCleaner.clean(sdf.toString());
+        for(int batchSize : new int[]{1, 2, 7, 100}) {
+            assertEquals(expected, cleanParallel(sdf.toString(), batchSize));
+        }
+    }
+
+    @Test
+    public void parallelCleanRecordWithoutDataItemsMatchesSequentialClean() throws IOException{
+        StringBuilder sdf = new StringBuilder();
+        for(int i=0; i< 20; i++){
+            String record = sloppyRecord(i);
+            if(i == 5){
+                //the delimiter after M  END with no data items isn't seen as the end of this record
+                record = record.substring(0, record.indexOf("> <ID>")) + "$$$$\n";
+            }
+            sdf.append(record);
+        }
+        String expected = CtTableCleaner.clean(sdf.toString());
+        for(int batchSize : new int[]{1, 3}) {
+            assertEquals(expected, cleanParallel(sdf.toString(), batchSize));
+        }
+    }
+
+    @Test
+    public void parallelCleanResumesParallelBatchesAfterRecordWithoutDataItems() throws IOException{
+        StringBuilder sdf = new StringBuilder();
+        List<Integer> recordStarts = new ArrayList<>();
+        for(int i=0; i< 400; i++){
+            String record = sloppyRecord(i);
+            if(i == 5){
+                //the delimiter after M  END with no data items isn't seen as the end of this record
+                record = record.substring(0, record.indexOf("> <ID>")) + "$$$$\n";
+            }
+            recordStarts.add(sdf.length());
+            sdf.append(record);
+        }
+        String expected = CtTableCleaner.clean(sdf.toString());
+        //how much of the input was read when each record was reported
+        long[] charsRead = new long[1];
+        Reader counting = new FilterReader(new StringReader(sdf.toString())){
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                int n = super.read(cbuf, off, len);
+                if(n > 0){
+                    charsRead[0] += n;
+                }
+                return n;
+            }
+        };
+        Map<Long, Long> readWhenReported = new HashMap<>();
+        CleaningListener listener = new CleaningListener() {
+            @Override
+            public void recordCleaned(long recordIndex, Map<Rule, Integer> ruleCounts) {
+                readWhenReported.put(recordIndex, charsRead[0]);
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(BufferedReader reader = new BufferedReader(counting, 64)){
+            ParallelSdfCleaner.builder()
+                    .parallelism(20)
+                    .batchSize(2)
+                    .listener(listener)
+                    .build()
+                    .clean(reader, Channels.newChannel(out));
+        }
+        assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        //parallel batches are split 40 batches ahead of the one being reported
+        //which is much further ahead than a sequential clean reads
+        assertTrue(readWhenReported.get(200L) >= recordStarts.get(260));
+    }
+
+    @Test(expected = IOException.class)
+    public void parallelCleanInvalidRecordThrowsIOException() throws IOException{
+        StringBuilder sdf = new StringBuilder();
+        for(int i=0; i< 20; i++){
+            String record = sloppyRecord(i);
+            if(i == 11){
+                record = record.replace("  3  2  0", "  x  2  0");
+            }
+            sdf.append(record);
+        }
+        cleanParallel(sdf.toString(), 2);
+    }
+
+    @Test
+    public void cleaningReaderMatchesClean() throws IOException{
+        StringBuilder sdf = new StringBuilder();
+        for(int i=0; i< 10; i++){
+            sdf.append(sloppyRecord(i));
+        }
+        StringBuilder actual = new StringBuilder();
+        try(Reader reader = CtTableCleaner.newCleaningReader(new StringReader(sdf.toString()))){
+            //odd sized buffer so reads span records
+            char[] buf = new char[37];
+            int n;
+            while((n = reader.read(buf)) > 0){
+                actual.append(buf, 0, n);
+            }
+        }
+        assertEquals(CtTableCleaner.clean(sdf.toString()), actual.toString());
+    }
+
+    @Test
+    public void cleaningInputStreamMatchesClean() throws IOException{
+        StringBuilder sdf = new StringBuilder();
+        for(int i=0; i< 10; i++){
+            sdf.append(sloppyRecord(i));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(InputStream in = CtTableCleaner.newCleaningInputStream(new ByteArrayInputStream(sdf.toString().getBytes(StandardCharsets.UTF_8)))){
+            int b;
+            while((b = in.read()) >=0){
+                out.write(b);
+            }
+        }
+        assertEquals(CtTableCleaner.clean(sdf.toString()), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void cleaningReaderInvalidRecordThrowsIOException() throws IOException{
+        String sdf = sloppyRecord(1) + sloppyRecord(2).replace("  3  2  0", "  x  2  0");
+        try(Reader reader = CtTableCleaner.newCleaningReader(new StringReader(sdf))){
+            while(reader.read() >=0){
+                //consume
+            }
+        }
+    }
+
+    @Test
+    public void cleaningStatsCountRulesPerRecord() throws IOException{
+        StringBuilder sdf = new StringBuilder();
+        for(int i=0; i< 10; i++){
+            sdf.append(sloppyRecord(i));
+        }
+        CleaningStats stats = new CleaningStats();
+        String cleaned = CtTableCleaner.clean(sdf.toString(), stats);
+        assertEquals(CtTableCleaner.clean(sdf.toString()), cleaned);
+
+        assertEquals(10, stats.getNumberOfRecords());
+        assertEquals(10, stats.getNumberOfRecordsChanged());
+        assertEquals(0, stats.getNumberOfRecordsFailed());
+        assertEquals(10, stats.getRuleCount(CleaningListener.Rule.ATOM_LINE_REALIGNED));
+        assertEquals(10, stats.getRuleCount(CleaningListener.Rule.BOND_LINE_REALIGNED));
+        assertEquals(10, stats.getNumberOfRecordsWithRule(CleaningListener.Rule.BLANK_LINES_BEFORE_DATA_ITEMS_REMOVED));
+        //records after the extra blank lines have a complete header
+        assertEquals(3, stats.getRuleCount(CleaningListener.Rule.BLANK_LINES_BETWEEN_RECORDS_REMOVED));
+        assertEquals(7, stats.getRuleCount(CleaningListener.Rule.HEADER_COMMENT_LINE_ADDED));
+        assertEquals(0, stats.getRuleCount(CleaningListener.Rule.CHG_LINE_REFORMATTED));
+        assertEquals(0, stats.getRuleCount(CleaningListener.Rule.END_LINE_FIXED));
+
+        CleaningStats cleanedAgain = new CleaningStats();
+        CtTableCleaner.clean(cleaned, cleanedAgain);
+        assertEquals(0, cleanedAgain.getNumberOfRecordsChanged());
+    }
+
+    @Test
+    public void cleaningListenerSeesRecordsInOrderWhenCleanedInParallel() throws IOException{
+        StringBuilder sdf = new StringBuilder();
+        for(int i=0; i< 30; i++){
+            sdf.append(sloppyRecord(i));
+        }
+        CleaningStats expected = new CleaningStats();
+        CtTableCleaner.clean(sdf.toString(), expected);
+
+        CleaningStats stats = new CleaningStats();
+        List<Long> indexes = new ArrayList<>();
+        CleaningListener listener = new CleaningListener() {
+            @Override
+            public void recordCleaned(long recordIndex, Map<Rule, Integer> ruleCounts) {
+                indexes.add(recordIndex);
+                stats.recordCleaned(recordIndex, ruleCounts);
+            }
+        };
+        try(BufferedReader reader = new BufferedReader(new StringReader(sdf.toString()))){
+            ParallelSdfCleaner.builder()
+                    .parallelism(3)
+                    .batchSize(4)
+                    .listener(listener)
+                    .build()
+                    .clean(reader, Channels.newChannel(new ByteArrayOutputStream()));
+        }
+        for(int i=0; i< 30; i++){
+            assertEquals(i, indexes.get(i).longValue());
+        }
+        for(CleaningListener.Rule rule : CleaningListener.Rule.values()){
+            assertEquals(rule.name(), expected.getRuleCount(rule), stats.getRuleCount(rule));
+        }
+    }
+
+    private static String v3000Record(int i){
+        return "name" + i + "\n  -INDIGO-01302514042D\n" +
+                "\n" +
+                "  0  0  0  0  0  0  0  0  0  0  0 V3000\n" +
+                "M  V30 BEGIN CTAB\n" +
+                "M  V30 COUNTS 3 2 0 0 0\n" +
+                "M  V30 BEGIN ATOM\n" +
+                "M  V30 1 C 12.5547 -9.5481 0.0 0\n" +
+                "M  V30 2 C 11.757 -9.5481 0.0 0\n" +
+                "M  V30 3 O 12.9561 -10.2274 0.0 0 CHG=-1\n" +
+                "M  V30 END ATOM\n" +
+                "M  V30 BEGIN BOND\n" +
+                "M  V30 1 1 2 1\n" +
+                "M  V30 2 2 3 1\n" +
+                "M  V30 END BOND\n" +
+                "M  V30 END CTAB\n" +
+                "M  END\n" +
+                "> <ID>\n" + i + "\n\n$$$$\n";
+    }
+
+    @Test
+    public void validV3000RecordUnchanged() throws IOException{
+        String sdf = v3000Record(1);
+        CleaningStats stats = new CleaningStats();
+        assertEquals(sdf.substring(0, sdf.length()-1), CtTableCleaner.clean(sdf, stats));
+        assertEquals(0, stats.getNumberOfRecordsChanged());
+    }
+
+    @Test
+    public void v3000ContinuationLinesJoinedWhenRewrapped() throws IOException{
+        StringBuilder longLine = new StringBuilder("1 C 12.5547 -9.5481 0.0 0");
+        for(int i=0; i< 10; i++){
+            longLine.append(" ATTCHORD=(2 3 x)");
+        }
+        String atom = longLine.toString();
+        String sloppy = v3000Record(1)
+                .replace("M  V30 1 C 12.5547 -9.5481 0.0 0\n",
+                        "M  V30 " + atom.substring(0, 30) + "-\nM  V30 " + atom.substring(30) + "\n")
+                .replace("M  V30 BEGIN BOND\n", "M V30 BEGIN BOND\n\n");
+
+        CleaningStats stats = new CleaningStats();
+        String cleaned = CtTableCleaner.clean(sloppy, stats);
+
+        String expected = v3000Record(1)
+                .replace("M  V30 1 C 12.5547 -9.5481 0.0 0\n",
+                        "M  V30 " + atom.substring(0, 72) + "-\nM  V30 " + atom.substring(72, 144) + "-\nM  V30 " + atom.substring(144) + "\n");
+        assertEquals(expected.substring(0, expected.length()-1), cleaned);
+        assertEquals(1, stats.getRuleCount(CleaningListener.Rule.V3000_LINE_REWRAPPED));
+        assertEquals(1, stats.getRuleCount(CleaningListener.Rule.V3000_LINE_PREFIX_FIXED));
+        assertEquals(1, stats.getRuleCount(CleaningListener.Rule.V3000_BLANK_LINE_REMOVED));
+        for(String line : cleaned.split("\n")){
+            assertTrue(line, line.length() <= 80);
+        }
+
+        CleaningStats cleanedAgain = new CleaningStats();
+        assertEquals(cleaned, CtTableCleaner.clean(cleaned, cleanedAgain));
+        assertEquals(0, cleanedAgain.getNumberOfRecordsChanged());
+    }
+
+    @Test(expected = IOException.class)
+    public void v3000MissingEndThrowsIOException() throws IOException{
+        String sdf = v3000Record(1);
+        CtTableCleaner.clean(sdf.substring(0, sdf.indexOf("M  END")));
+    }
+
+    @Test
+    public void mixedV2000AndV3000RecordsCleanedInOnePass() throws IOException{
+        StringBuilder sdf = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for(int i=0; i< 20; i++){
+            String record = i % 2 ==0 ? sloppyRecord(i) : v3000Record(i);
+            sdf.append(record);
+            expected.append(CtTableCleaner.clean(record));
+            if(i < 19){
+                expected.append('\n');
+            }
+        }
+        assertEquals(expected.toString(), CtTableCleaner.clean(sdf.toString()));
+        for(int batchSize : new int[]{1, 3, 100}) {
+            assertEquals(expected.toString(), cleanParallel(sdf.toString(), batchSize));
+        }
+    }
 }
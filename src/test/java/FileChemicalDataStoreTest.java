@@ -0,0 +1,800 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import gov.nih.ncats.common.iter.CloseableIterator;
+import gov.nih.ncats.common.io.IOUtil;
+import gov.nih.ncats.common.io.InputStreamSupplier;
+import gov.nih.ncats.molwitch.datastores.AppendableChemicalDataStore;
+import gov.nih.ncats.molwitch.datastores.BlockGzipConverter;
+import gov.nih.ncats.molwitch.datastores.CachingChemicalDataStore;
+import gov.nih.ncats.molwitch.datastores.ChemicalDataStore;
+import gov.nih.ncats.molwitch.datastores.ShardedChemicalDataStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class FileChemicalDataStoreTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private static String record(int i){
+        return "record " + i + "\n  molwitch\n\n  0  0  0  0  0  0            999 V2000\nM  END\n> <ID>\n" + i + "\n\n$$$$\n";
+    }
+
+    private static void write(File f, boolean append, int from, int to) throws IOException{
+        try(OutputStream out = new FileOutputStream(f, append)){
+            for(int i=from; i< to; i++){
+                out.write(record(i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static List<String> readAllRaw(ChemicalDataStore store){
+        List<String> list = new ArrayList<>();
+        for(long i=0; i< store.getSize(); i++){
+            list.add(store.getRaw(i));
+        }
+        return list;
+    }
+
+    private static void assertRecords(ChemicalDataStore store, int expectedCount){
+        assertEquals(expectedCount, store.getSize());
+        List<String> actual = readAllRaw(store);
+        for(int i=0; i< expectedCount; i++){
+            assertEquals(record(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void rawRecordsAndIteratorAgree() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 20);
+        try(ChemicalDataStore store = ChemicalDataStore.forFile(f);
+            CloseableIterator<String> iter = store.getRawIterator()){
+            assertTrue(store.hasEfficientRandomAccess());
+            assertRecords(store, 20);
+            List<String> iterated = new ArrayList<>();
+            iter.forEachRemaining(iterated::add);
+            assertEquals(readAllRaw(store), iterated);
+        }
+    }
+
+    @Test
+    public void compressedSpliteratorsCloseFileWhenExhaustedOrStreamClosed() throws Exception{
+        File f = tmpDir.newFile("data.sdf.gz");
+        try(OutputStream out = new GZIPOutputStream(new FileOutputStream(f))){
+            for(int i=0; i< 15; i++){
+                out.write(record(i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        AtomicInteger openStreams = new AtomicInteger();
+        InputStreamSupplier supplier = ()-> {
+            openStreams.incrementAndGet();
+            return new FilterInputStream(new GZIPInputStream(new FileInputStream(f))){
+                private boolean closed;
+                @Override
+                public void close() throws IOException {
+                    if(!closed){
+                        closed = true;
+                        openStreams.decrementAndGet();
+                    }
+                    super.close();
+                }
+            };
+        };
+        try(ChemicalDataStore store = ChemicalDataStore.forFile(supplier)){
+            assertFalse(store.hasEfficientRandomAccess());
+            awaitAllClosed(openStreams);
+
+            List<String> records = new ArrayList<>();
+            store.rawSpliterator().forEachRemaining(records::add);
+            assertEquals(15, records.size());
+            awaitAllClosed(openStreams);
+
+            Spliterator<String> spliterator = store.rawSpliterator();
+            int count=0;
+            while(spliterator.tryAdvance(r->{})){
+                count++;
+            }
+            assertEquals(15, count);
+            awaitAllClosed(openStreams);
+
+            //an action that throws part way through also releases the file
+            Spliterator<String> failing = store.rawSpliterator();
+            assertTrue(failing.tryAdvance(r->{}));
+            try{
+                failing.forEachRemaining(r-> {
+                    throw new IllegalStateException("stop");
+                });
+                fail("should throw");
+            }catch(IllegalStateException expected){
+                //expected
+            }
+            awaitAllClosed(openStreams);
+            assertFalse(failing.tryAdvance(r->{}));
+
+            try(Stream<String> s = store.rawStream()){
+                assertEquals(record(0), s.findFirst().get());
+            }
+            awaitAllClosed(openStreams);
+        }
+    }
+
+    private static void awaitAllClosed(AtomicInteger openStreams) throws InterruptedException{
+        //the records are read on a separate producer thread which closes the file asynchronously
+        long end = System.currentTimeMillis() + 5_000;
+        while(openStreams.get() !=0 && System.currentTimeMillis() < end){
+            Thread.sleep(10);
+        }
+        assertEquals(0, openStreams.get());
+    }
+
+    @Test
+    public void gzippedFilesAreReadWithoutMapping() throws IOException{
+        File f = tmpDir.newFile("data.sdf.gz");
+        try(OutputStream out = new GZIPOutputStream(new FileOutputStream(f))){
+            for(int i=0; i< 15; i++){
+                out.write(record(i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        try(ChemicalDataStore store = ChemicalDataStore.forFile(f)){
+            assertFalse(store.hasEfficientRandomAccess());
+            assertRecords(store, 15);
+        }
+    }
+
+    @Test
+    public void zippedFilesAreReadWithoutMapping() throws IOException{
+        File f = tmpDir.newFile("data.sdf.zip");
+        try(ZipOutputStream out = new ZipOutputStream(new FileOutputStream(f))){
+            out.putNextEntry(new ZipEntry("data.sdf"));
+            for(int i=0; i< 15; i++){
+                out.write(record(i).getBytes(StandardCharsets.UTF_8));
+            }
+            out.closeEntry();
+        }
+        try(ChemicalDataStore store = ChemicalDataStore.forFile(f)){
+            assertFalse(store.hasEfficientRandomAccess());
+            assertRecords(store, 15);
+        }
+        //the sidecar must not treat decompressed offsets as file offsets either
+        for(int i=0; i< 2; i++) {
+            try (ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)) {
+                assertRecords(store, 15);
+            }
+        }
+    }
+
+    @Test
+    public void blockGzipRandomAccess() throws IOException{
+        File f = tmpDir.newFile("data.sdf.gz");
+        StringBuilder expected = new StringBuilder();
+        try(OutputStream out = new GZIPOutputStream(new FileOutputStream(f))){
+            for(int i=0; i< 5000; i++){
+                String record = i == 1234 ? hugeRecord() : record(i);
+                expected.append(record);
+                out.write(record.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        File bgz = new File(tmpDir.getRoot(), "data.sdf.bgz");
+        assertEquals(5000, BlockGzipConverter.convert(f, bgz));
+
+        //still a valid gzip file
+        try(InputStream in = new GZIPInputStream(new FileInputStream(bgz))){
+            assertEquals(expected.toString(), new String(IOUtil.toByteArray(in), StandardCharsets.UTF_8));
+        }
+        try(ChemicalDataStore store = ChemicalDataStore.forBlockGzipFile(bgz)){
+            assertBlockGzipRecords(store);
+        }
+        //missing index is rebuilt by scanning the blocks
+        assertTrue(BlockGzipConverter.getIndexFileFor(bgz).delete());
+        try(ChemicalDataStore store = ChemicalDataStore.forBlockGzipFile(bgz)){
+            assertBlockGzipRecords(store);
+        }
+        assertTrue(BlockGzipConverter.getIndexFileFor(bgz).exists());
+    }
+
+    private static String hugeRecord(){
+        StringBuilder builder = new StringBuilder("huge\n");
+        for(int i=0; i< 20_000; i++){
+            builder.append("line ").append(i).append('\n');
+        }
+        return builder.append("$$$$\n").toString();
+    }
+
+    private static void assertBlockGzipRecords(ChemicalDataStore store) throws IOException{
+        assertEquals(5000, store.getSize());
+        for(int i : new int[]{4999, 0, 1233, 1234, 1235, 2500}){
+            assertEquals(i == 1234 ? hugeRecord() : record(i), store.getRaw(i));
+        }
+        try(CloseableIterator<String> iter = store.getRawIterator()){
+            int i=0;
+            while(iter.hasNext()){
+                assertEquals(i == 1234 ? hugeRecord() : record(i), iter.next());
+                i++;
+            }
+            assertEquals(5000, i);
+        }
+    }
+
+    @Test
+    public void cachingStoreCountsRawHitsAndEvicts() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 10);
+        int recordLength = record(0).length();
+        try(CachingChemicalDataStore store = CachingChemicalDataStore.builder(ChemicalDataStore.forFile(f))
+                                                        .maxRawCharacters(3L * recordLength)
+                                                        .build()){
+            assertRecords(store, 10);
+            CachingChemicalDataStore.Stats stats = store.getRawStats();
+            assertEquals(0, stats.getHitCount());
+            assertEquals(10, stats.getMissCount());
+            assertEquals(7, stats.getEvictionCount());
+            assertEquals(3, stats.getSize());
+
+            //7,8,9 are still cached
+            assertEquals(record(8), store.getRaw(8));
+            assertEquals(record(9), store.getRaw(9));
+            assertEquals(record(0), store.getRaw(0));
+            stats = store.getRawStats();
+            assertEquals(2, stats.getHitCount());
+            assertEquals(11, stats.getMissCount());
+            assertTrue(stats.getWeight() <= 3L * recordLength);
+        }
+    }
+
+    @Test
+    public void parallelRawStreamKeepsOrder() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 2000);
+        File gz = tmpDir.newFile("data.sdf.gz");
+        try(OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))){
+            Files.copy(f.toPath(), out);
+        }
+        for(File file : new File[]{f, gz}) {
+            try (ChemicalDataStore store = ChemicalDataStore.forFile(file)) {
+                List<String> expected = readAllRaw(store);
+                try (Stream<String> stream = store.rawStream()) {
+                    assertEquals(expected, stream.parallel().collect(Collectors.toList()));
+                }
+            }
+        }
+        try (ChemicalDataStore store = ChemicalDataStore.forFile(f)) {
+            Spliterator<String> spliterator = store.rawSpliterator();
+            assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+            Spliterator<String> prefix = spliterator.trySplit();
+            assertEquals(1000, prefix.estimateSize());
+            assertEquals(1000, spliterator.estimateSize());
+        }
+    }
+
+    @Test
+    public void propertyIndexLookups() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 100);
+        Set<String> tags = Collections.singleton("ID");
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f, tags)){
+            assertEquals(tags, store.getIndexedProperties());
+            assertArrayEquals(new long[]{42}, store.findByProperty("ID", "42"));
+            assertArrayEquals(new long[0], store.findByProperty("ID", "100"));
+        }
+        assertTrue(new File(f.getParentFile(), "data.sdf.mwidx.props").exists());
+        write(f, true, 100, 150);
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f, tags)){
+            assertRecords(store, 150);
+            assertArrayEquals(new long[]{42}, store.findByProperty("ID", "42"));
+            assertArrayEquals(new long[]{120}, store.findByProperty("ID", "120"));
+        }
+        //not indexed falls back to a scan
+        try(ChemicalDataStore store = ChemicalDataStore.forFile(f)){
+            assertTrue(store.getIndexedProperties().isEmpty());
+            assertArrayEquals(new long[]{120}, store.findByProperty("ID", "120"));
+            assertArrayEquals(new long[0], store.findByProperty("OTHER", "120"));
+        }
+    }
+
+    @Test
+    public void appendableStoreWithConcurrentReaders() throws Exception{
+        File f = new File(tmpDir.getRoot(), "appendable.sdf");
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f)){
+            assertEquals(0, store.getSize());
+            assertEquals(0, store.append(record(0)));
+            //delimiter is added if missing
+            String withoutDelimiter = record(1).replace("$$$$\n", "");
+            assertEquals(1, store.append(withoutDelimiter));
+
+            ExecutorService executor = Executors.newFixedThreadPool(3);
+            try{
+                List<Future<?>> futures = new ArrayList<>();
+                for(int t=0; t< 2; t++){
+                    futures.add(executor.submit(()->{
+                        //readers always see complete records
+                        for(int i=0; i< 2000; i++){
+                            long size = store.getSize();
+                            long offset = size -1;
+                            assertEquals(record((int) offset), store.getRaw(offset));
+                        }
+                        return null;
+                    }));
+                }
+                futures.add(executor.submit(()->{
+                    for(int i=2; i< 500; i+=2){
+                        store.appendAll(Arrays.asList(record(i), record(i+1)));
+                        if(i % 50 ==0){
+                            store.commit();
+                        }
+                    }
+                    return null;
+                }));
+                for(Future<?> future : futures){
+                    future.get();
+                }
+            }finally{
+                executor.shutdownNow();
+            }
+            assertRecords(store, 500);
+        }
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 500);
+        }
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f)){
+            assertEquals(500, store.append(record(500)));
+            assertRecords(store, 501);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void appendingMultipleRecordsAsOneFails() throws IOException{
+        File f = new File(tmpDir.getRoot(), "appendable.sdf");
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f)){
+            store.append(record(0) + record(1));
+        }
+    }
+
+    @Test
+    public void appendingToUnterminatedFileAddsDelimiter() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 3);
+        try(OutputStream out = new FileOutputStream(f, true)){
+            out.write(record(3).replace("$$$$\n", "").getBytes(StandardCharsets.UTF_8));
+        }
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f, true)){
+            assertEquals(4, store.append(record(4)));
+            assertRecords(store, 5);
+        }
+    }
+
+    @Test
+    public void partiallyAppendedRecordIsTruncated() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 3);
+        long end = f.length();
+        //an append that died part way through a record
+        try(OutputStream out = new FileOutputStream(f, true)){
+            String partial = record(3);
+            out.write(partial.substring(0, partial.indexOf("M  END")).getBytes(StandardCharsets.UTF_8));
+        }
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f)){
+            assertEquals(3, store.getSize());
+            assertEquals(3, store.append(record(3)));
+            assertRecords(store, 4);
+        }
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 4);
+        }
+        assertEquals(end + record(3).length(), f.length());
+
+        //nothing complete to keep
+        File torn = tmpDir.newFile("torn.sdf");
+        Files.write(torn.toPath(), "record 0\n  mol".getBytes(StandardCharsets.UTF_8));
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(torn)){
+            assertEquals(0, store.getSize());
+        }
+        assertEquals(0, torn.length());
+
+        //partial record bigger than the buffer used to scan backwards
+        File big = tmpDir.newFile("big.sdf");
+        write(big, false, 0, 2);
+        StringBuilder padding = new StringBuilder("record 2\n");
+        for(int i=0; i< 1000; i++){
+            padding.append("$$$ ").append(i).append('\n');
+        }
+        try(OutputStream out = new FileOutputStream(big, true)){
+            out.write(padding.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(big)){
+            assertRecords(store, 2);
+        }
+        assertEquals((record(0) + record(1)).length(), big.length());
+    }
+
+    @Test
+    public void trailingWhitespaceIsNotAnAppendedRecord() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 3);
+        try(OutputStream out = new FileOutputStream(f, true)){
+            out.write("\n  \n\n".getBytes(StandardCharsets.UTF_8));
+        }
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f)){
+            assertEquals(3, store.getSize());
+            assertEquals(3, store.append(record(3)));
+            assertRecords(store, 4);
+        }
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 4);
+        }
+
+        File blank = tmpDir.newFile("blank.sdf");
+        Files.write(blank.toPath(), "\n\n \n".getBytes(StandardCharsets.UTF_8));
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(blank)){
+            assertEquals(0, store.getSize());
+            assertEquals(0, store.append(record(0)));
+            assertRecords(store, 1);
+        }
+        assertArrayEquals(record(0).getBytes(StandardCharsets.UTF_8), Files.readAllBytes(blank.toPath()));
+    }
+
+    @Test
+    public void longWhitespaceTailIsNotAnAppendedRecord() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 1);
+        char[] newlines = new char[100];
+        Arrays.fill(newlines, '\n');
+        try(OutputStream out = new FileOutputStream(f, true)){
+            out.write(new String(newlines).getBytes(StandardCharsets.UTF_8));
+        }
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f)){
+            assertEquals(1, store.getSize());
+            assertRecords(store, 1);
+        }
+        assertArrayEquals(record(0).getBytes(StandardCharsets.UTF_8), Files.readAllBytes(f.toPath()));
+    }
+
+    @Test
+    public void fileCanOnlyBeOpenedForAppendingOnce() throws IOException{
+        File f = new File(tmpDir.getRoot(), "appendable.sdf");
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f)){
+            store.append(record(0));
+            try(AppendableChemicalDataStore other = AppendableChemicalDataStore.open(f)){
+                fail("should not open a file that is already open for appending");
+            }catch(IOException expected){
+                //expected
+            }
+            assertEquals(1, store.append(record(1)));
+        }
+        //lock is released on close
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f)){
+            assertRecords(store, 2);
+        }
+    }
+
+    @Test
+    public void appendingToCompressedFileFailsWithoutChangingIt() throws IOException{
+        File zip = tmpDir.newFile("data.sdf.zip");
+        try(ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))){
+            out.putNextEntry(new ZipEntry("data.sdf"));
+            out.write(record(0).getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        File gz = tmpDir.newFile("data.sdf.gz");
+        try(OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))){
+            out.write(record(0).getBytes(StandardCharsets.UTF_8));
+        }
+        for(File f : new File[]{zip, gz}) {
+            byte[] before = Files.readAllBytes(f.toPath());
+            try (AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f)) {
+                fail("should not open compressed file " + f.getName());
+            } catch (IOException expected) {
+                //expected
+            }
+            assertArrayEquals(before, Files.readAllBytes(f.toPath()));
+        }
+    }
+
+    @Test
+    public void appendedRecordsAreUtf8Encoded() throws IOException{
+        File f = new File(tmpDir.getRoot(), "appendable.sdf");
+        String record = record(0).replace("> <ID>\n0", "> <NAME>\n\u00b5-opioid \u00b0C");
+        try(AppendableChemicalDataStore store = AppendableChemicalDataStore.open(f)){
+            store.append(record);
+            assertEquals(record, store.getRaw(0));
+        }
+        assertArrayEquals(record.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(f.toPath()));
+    }
+
+    @Test
+    public void sidecarIndexIsWrittenAndReused() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 50);
+        File sidecar = new File(f.getParentFile(), "data.sdf.mwidx");
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 50);
+        }
+        assertTrue(sidecar.exists());
+        long lastModified = sidecar.lastModified();
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 50);
+        }
+        //unchanged data file doesn't rewrite the index
+        assertEquals(lastModified, sidecar.lastModified());
+    }
+
+    @Test
+    public void appendedRecordsAreIndexedIncrementally() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 10);
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 10);
+        }
+        write(f, true, 10, 25);
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 25);
+        }
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 25);
+        }
+    }
+
+    @Test
+    public void staleOrCorruptSidecarIsRebuilt() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        write(f, false, 0, 30);
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 30);
+        }
+        //rewrite with fewer records
+        write(f, false, 0, 5);
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 5);
+        }
+        File sidecar = new File(f.getParentFile(), "data.sdf.mwidx");
+        try(OutputStream out = new FileOutputStream(sidecar, true)){
+            out.write(new byte[]{1,2,3});
+        }
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 5);
+        }
+    }
+
+    @Test
+    public void sameLengthRewriteRebuildsSidecar() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        //bigger than the tail sample that is checksummed
+        StringBuilder tail = new StringBuilder();
+        for(int i=0; i< 1000; i++){
+            tail.append("padding\n");
+        }
+        tail.append("$$$$\n");
+        try(OutputStream out = new FileOutputStream(f)){
+            out.write(("abc\n$$$$\naaaaaaaa\n$$$$\n" + tail).getBytes(StandardCharsets.UTF_8));
+        }
+        long originalLength = f.length();
+        long originalLastModified = f.lastModified();
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertEquals(3, store.getSize());
+        }
+        //same length and tail but different record boundaries
+        try(OutputStream out = new FileOutputStream(f)){
+            out.write(("abcaaaaaaaaa\n$$$$\n$$$$\n" + tail).getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(originalLength, f.length());
+        assertTrue(f.setLastModified(originalLastModified + 10_000));
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertEquals(3, store.getSize());
+            assertEquals("abcaaaaaaaaa\n$$$$\n", store.getRaw(0));
+            assertEquals(tail.toString(), store.getRaw(2));
+        }
+    }
+
+    @Test
+    public void rewrittenAndGrownFileRebuildsSidecar() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        //bigger than the tail sample that is checksummed
+        write(f, false, 0, 200);
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 200);
+        }
+        //merge the first 2 records without changing the length then append
+        String original = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+        String merged = original.replaceFirst("\n\\$\\$\\$\\$\n", "\nXXXX\n");
+        try(OutputStream out = new FileOutputStream(f)){
+            out.write(merged.getBytes(StandardCharsets.UTF_8));
+        }
+        write(f, true, 200, 201);
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertEquals(200, store.getSize());
+            assertEquals(record(0).replace("$$$$", "XXXX") + record(1), store.getRaw(0));
+            assertEquals(record(200), store.getRaw(199));
+        }
+    }
+
+    @Test
+    public void rewrittenEndOfLargeGrownFileRebuildsSidecar() throws IOException{
+        File f = tmpDir.newFile("data.sdf");
+        //big enough that only sampled blocks are checksummed
+        write(f, false, 0, 2000);
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertRecords(store, 2000);
+        }
+        //merge the last 2 records without changing the length then append
+        String original = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+        int lastDelimiter = original.lastIndexOf("\n$$$$\n", original.length() - 7);
+        String merged = original.substring(0, lastDelimiter) + "\nXXXX\n" + original.substring(lastDelimiter + 6);
+        try(OutputStream out = new FileOutputStream(f)){
+            out.write(merged.getBytes(StandardCharsets.UTF_8));
+        }
+        write(f, true, 2000, 2001);
+        try(ChemicalDataStore store = ChemicalDataStore.forIndexedFile(f)){
+            assertEquals(2000, store.getSize());
+            assertEquals(record(1998).replace("$$$$", "XXXX") + record(1999), store.getRaw(1998));
+            assertEquals(record(2000), store.getRaw(1999));
+        }
+    }
+
+    @Test
+    public void shardedStoreRoutesGlobalOffsets() throws IOException{
+        List<File> shards = new ArrayList<>();
+        int[] sizes = {5, 0, 7, 1, 12, 0};
+        int start = 0;
+        for(int i=0; i< sizes.length; i++){
+            File f = tmpDir.newFile("shard" + i + ".sdf");
+            write(f, false, start, start + sizes[i]);
+            shards.add(f);
+            start += sizes[i];
+        }
+        try(ShardedChemicalDataStore store = ShardedChemicalDataStore.builder(shards)
+                                                    .maxOpenShards(2)
+                                                    .build()){
+            //random access before the size is known only opens the shards it needs
+            assertEquals(record(6), store.getRaw(6));
+            assertEquals(record(24), store.getRaw(24));
+            assertEquals(25, store.getSize());
+            assertRecords(store, 25);
+            try(CloseableIterator<String> iter = store.getRawIterator()){
+                List<String> iterated = new ArrayList<>();
+                iter.forEachRemaining(iterated::add);
+                assertEquals(readAllRaw(store), iterated);
+            }
+            try(Stream<String> stream = store.rawStream()){
+                assertEquals(readAllRaw(store), stream.parallel().collect(Collectors.toList()));
+            }
+            Spliterator<String> spliterator = store.rawSpliterator();
+            assertEquals(25, spliterator.estimateSize());
+            Spliterator<String> prefix = spliterator.trySplit();
+            assertEquals(12, prefix.estimateSize());
+            assertEquals(13, spliterator.estimateSize());
+        }
+    }
+
+    @Test
+    public void shardedSpliteratorOnlyOpensShardsWhenTraversed() throws IOException{
+        List<File> shards = new ArrayList<>();
+        for(int i=0; i< 8; i++){
+            File f = tmpDir.newFile("shard" + i + ".sdf");
+            write(f, false, i * 3, i * 3 + 3);
+            shards.add(f);
+        }
+        AtomicInteger opened = new AtomicInteger();
+        try(ShardedChemicalDataStore store = ShardedChemicalDataStore.builder(shards)
+                                                    .maxOpenShards(1)
+                                                    .shardOpener(f-> {
+                                                        opened.incrementAndGet();
+                                                        return ChemicalDataStore.forFile(f);
+                                                    })
+                                                    .build()){
+            Spliterator<String> spliterator = store.rawSpliterator();
+            Spliterator<String> prefix = spliterator.trySplit();
+            assertNotNull(prefix);
+            assertEquals(0, opened.get());
+            assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+            assertEquals(Long.MAX_VALUE, spliterator.estimateSize());
+
+            try(Stream<String> stream = store.rawStream()){
+                assertEquals(IntStream.range(0, 24).mapToObj(i-> record(i)).collect(Collectors.toList()),
+                        stream.parallel().collect(Collectors.toList()));
+            }
+            assertEquals(8, opened.get());
+            //the counts were remembered while streaming so the shards don't have to be reopened
+            assertEquals(24, store.getSize());
+            assertEquals(8, opened.get());
+
+            Spliterator<String> sized = store.rawSpliterator();
+            assertTrue(sized.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+            assertEquals(24, sized.estimateSize());
+        }
+    }
+
+    @Test
+    public void shardedStreamStoppedEarlyReleasesItsShard() throws IOException{
+        List<File> shards = new ArrayList<>();
+        for(int i=0; i< 2; i++){
+            File f = tmpDir.newFile("shard" + i + ".sdf");
+            write(f, false, i * 3, i * 3 + 3);
+            shards.add(f);
+        }
+        List<ChemicalDataStore> opened = new ArrayList<>();
+        ShardedChemicalDataStore store = ShardedChemicalDataStore.builder(shards)
+                                                    .maxOpenShards(1)
+                                                    .shardOpener(f-> {
+                                                        ChemicalDataStore shard = ChemicalDataStore.forFile(f);
+                                                        opened.add(shard);
+                                                        return shard;
+                                                    })
+                                                    .build();
+        try{
+            try(Stream<String> stream = store.rawStream()){
+                assertEquals(record(0), stream.findFirst().get());
+            }
+            //closed shards are no longer mapped
+            assertTrue(opened.get(0).hasEfficientRandomAccess());
+            //evicting the first shard closes it since the stream no longer leases it
+            assertEquals(record(3), store.getRaw(3));
+            assertFalse(opened.get(0).hasEfficientRandomAccess());
+
+            //an abandoned spliterator still leases its shard after it is evicted
+            Spliterator<String> spliterator = store.rawSpliterator();
+            assertTrue(spliterator.tryAdvance(s-> {}));
+            assertEquals(record(3), store.getRaw(3));
+            assertTrue(opened.get(2).hasEfficientRandomAccess());
+        }finally{
+            store.close();
+        }
+        for(ChemicalDataStore shard : opened){
+            assertFalse(shard.hasEfficientRandomAccess());
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shardedStoreOffsetPastEnd() throws IOException{
+        File f = tmpDir.newFile("shard.sdf");
+        write(f, false, 0, 3);
+        try(ChemicalDataStore store = ShardedChemicalDataStore.builder(Arrays.asList(f, f)).build()){
+            store.getRaw(6);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import gov.nih.ncats.molwitch.fingerprint.Fingerprint;
+import gov.nih.ncats.molwitch.fingerprint.FingerprintFileWriter;
+import gov.nih.ncats.molwitch.fingerprint.FingerprintIndex;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters;
+import gov.nih.ncats.molwitch.fingerprint.MappedFingerprintFile;
+import gov.nih.ncats.molwitch.fingerprint.SimilarityHit;
+import gov.nih.ncats.molwitch.fingerprint.SimilarityScreener;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class FingerprintIndexTest {
+
+    private static final int LENGTH = 512;
+    private static List<Fingerprint> fingerprints;
+    private static FingerprintIndex index;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @BeforeClass
+    public static void createIndex(){
+        Random random = new Random(98765);
+        fingerprints = new ArrayList<>();
+        FingerprintIndex.Builder builder = FingerprintIndex.builder(LENGTH);
+        for(int i=0; i< 2000; i++){
+            Fingerprint fp = randomFingerprint(random);
+            fingerprints.add(fp);
+            builder.add(fp);
+        }
+        index = builder.build();
+    }
+
+    private static Fingerprint randomFingerprint(Random random){
+        //vary the density so we get lots of different population counts
+        double density = random.nextDouble() * .4;
+        BitSet bits = new BitSet(LENGTH);
+        for(int j=0; j< LENGTH; j++){
+            if(random.nextDouble() < density){
+                bits.set(j);
+            }
+        }
+        return new Fingerprint(bits, LENGTH);
+    }
+
+    private static List<SimilarityHit> bruteForce(Fingerprint query, double threshold){
+        List<SimilarityHit> hits = new ArrayList<>();
+        for(int i=0; i< fingerprints.size(); i++){
+            double similarity = query.tanimotoSimilarity(fingerprints.get(i));
+            if(similarity >= threshold){
+                hits.add(new SimilarityHit(i, similarity));
+            }
+        }
+        hits.sort(SimilarityHit.BEST_FIRST);
+        return hits;
+    }
+
+    @Test
+    public void thresholdSearchMatchesBruteForce(){
+        Random random = new Random(1);
+        for(double threshold : new double[]{0, .3, .5, .7, .9, 1}) {
+            for (int i = 0; i < 10; i++) {
+                Fingerprint query = randomFingerprint(random);
+                assertEquals(bruteForce(query, threshold), index.search(query, threshold));
+            }
+        }
+    }
+
+    @Test
+    public void exactMatchIsFound(){
+        Fingerprint query = fingerprints.get(42);
+        List<SimilarityHit> hits = index.search(query, 1D);
+        assertEquals(bruteForce(query, 1D), hits);
+        assertEquals(new SimilarityHit(42, 1D), hits.get(0));
+    }
+
+    @Test
+    public void topKMatchesBruteForce(){
+        Random random = new Random(2);
+        for(int k : new int[]{1, 5, 50}) {
+            for (int i = 0; i < 10; i++) {
+                Fingerprint query = randomFingerprint(random);
+                List<SimilarityHit> expected = bruteForce(query, 0D);
+                assertEquals(expected.subList(0, k), index.searchTopK(query, k));
+            }
+        }
+    }
+
+    @Test
+    public void mappedFileRecreatesCircularSpecifications() throws Exception{
+        Fingerprinters.FingerprintSpecification[] specs = {
+                new Fingerprinters.EcfpSpecification(4).setBitLength(LENGTH),
+                Fingerprinters.FingerprintSpecification.FCFP.withDiameter(4).setBitLength(LENGTH)
+        };
+        for(Fingerprinters.FingerprintSpecification spec : specs){
+            File file = tmpDir.newFile();
+            try(FingerprintFileWriter writer = new FingerprintFileWriter(file, spec)){
+                writer.write(1, fingerprints.get(1));
+            }
+            try(MappedFingerprintFile mapped = MappedFingerprintFile.open(file)){
+                assertEquals(4, mapped.getDepth());
+                assertEquals(Optional.of(spec), mapped.getSpecification());
+            }
+        }
+    }
+
+    @Test
+    public void mappedFileRoundTrip() throws Exception{
+        File file = tmpDir.newFile("fingerprints.bin");
+        Fingerprinters.PathBasedSpecification spec = Fingerprinters.FingerprintSpecification.PATH_BASED.create()
+                                                                    .setLength(LENGTH)
+                                                                    .setDepth(5);
+        try(FingerprintFileWriter writer = new FingerprintFileWriter(file, spec)){
+            for(int i=0; i< fingerprints.size(); i++){
+                writer.write(i, fingerprints.get(i));
+            }
+        }
+        try(MappedFingerprintFile mapped = MappedFingerprintFile.open(file)){
+            assertEquals(fingerprints.size(), mapped.getSize());
+            assertEquals(LENGTH, mapped.getBitLength());
+            assertEquals(5, mapped.getDepth());
+            assertEquals(spec.name(), mapped.getSpecificationName());
+            assertEquals(fingerprints.get(17), mapped.getFingerprint(17));
+            assertEquals(17, mapped.getId(17));
+
+            Random random = new Random(3);
+            for (int i = 0; i < 10; i++) {
+                Fingerprint query = randomFingerprint(random);
+                assertEquals(bruteForce(query, .4), mapped.search(query, .4));
+                assertEquals(index.searchTopK(query, 10), mapped.searchTopK(query, 10));
+            }
+        }
+    }
+
+    @Test
+    public void parallelScreenMatchesBruteForce(){
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SimilarityScreener screener = SimilarityScreener.create(pool, 100);
+            Random random = new Random(4);
+            for (int i = 0; i < 10; i++) {
+                Fingerprint query = randomFingerprint(random);
+                assertEquals(bruteForce(query, .4), screener.search(query, fingerprints, .4));
+                assertEquals(index.searchTopK(query, 25), screener.searchTopK(query, fingerprints, 25, 0D));
+            }
+        }finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelScreenOfMappedFileMatchesBruteForce() throws Exception{
+        File file = tmpDir.newFile("screened.bin");
+        Fingerprinters.PathBasedSpecification spec = Fingerprinters.FingerprintSpecification.PATH_BASED.create()
+                                                                    .setLength(LENGTH);
+        //record ids that aren't the positions in the file
+        long idOffset = 1_000;
+        try(FingerprintFileWriter writer = new FingerprintFileWriter(file, spec)){
+            for(int i=0; i< fingerprints.size(); i++){
+                writer.write(idOffset + i, fingerprints.get(i));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try(MappedFingerprintFile mapped = MappedFingerprintFile.open(file)) {
+            SimilarityScreener screener = SimilarityScreener.create(pool, 100);
+            Random random = new Random(6);
+            for (int i = 0; i < 10; i++) {
+                Fingerprint query = randomFingerprint(random);
+                List<SimilarityHit> expected = new ArrayList<>();
+                for(SimilarityHit hit : bruteForce(query, .4)){
+                    expected.add(new SimilarityHit(idOffset + hit.getId(), hit.getSimilarity()));
+                }
+                assertEquals(expected, screener.search(query, mapped, .4));
+                assertEquals(expected.subList(0, Math.min(25, expected.size())), screener.searchTopK(query, mapped, 25, .4));
+            }
+        }finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void supersetScreenMatchesCompatible(){
+        Random random = new Random(5);
+        for (int i = 0; i < 10; i++) {
+            //sparse queries so some targets pass the screen
+            BitSet bits = new BitSet(LENGTH);
+            for(int j=0; j< 3; j++){
+                bits.set(random.nextInt(LENGTH));
+            }
+            Fingerprint query = new Fingerprint(bits, LENGTH);
+            List<Long> expected = new ArrayList<>();
+            for(int j=0; j< fingerprints.size(); j++){
+                if(query.compatible(fingerprints.get(j))){
+                    expected.add((long) j);
+                }
+            }
+            List<Long> actual = new ArrayList<>();
+            for(long id : index.findSupersetsOf(query)){
+                actual.add(id);
+            }
+            assertEquals(expected, actual);
+        }
+    }
+}
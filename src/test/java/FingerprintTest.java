@@ -0,0 +1,126 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import gov.nih.ncats.molwitch.fingerprint.Fingerprint;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.OptionalDouble;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FingerprintTest {
+
+    private static BitSet randomBits(Random random, int length, double density){
+        BitSet bits = new BitSet(length);
+        for(int i=0; i< length; i++){
+            if(random.nextDouble() < density){
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    private static double bitsetTanimoto(BitSet a, BitSet b){
+        BitSet and = (BitSet) a.clone();
+        and.and(b);
+        BitSet or = (BitSet) a.clone();
+        or.or(b);
+        return or.cardinality()==0? 1D : and.cardinality() / (double) or.cardinality();
+    }
+
+    @Test
+    public void kernelsMatchBitSetOperations(){
+        Random random = new Random(1234);
+        for(int length : new int[]{8, 64, 100, 1024, 2048}) {
+            for (int i = 0; i < 50; i++) {
+                BitSet a = randomBits(random, length, .2);
+                BitSet b = randomBits(random, length, .3);
+                Fingerprint fpA = new Fingerprint(a, length);
+                Fingerprint fpB = new Fingerprint(b, length);
+
+                assertEquals(a.cardinality(), fpA.populationCount());
+                assertEquals(bitsetTanimoto(a, b), fpA.tanimotoSimilarity(fpB), 0D);
+
+                BitSet xor = (BitSet) a.clone();
+                xor.xor(b);
+                assertEquals(xor.cardinality(), fpA.hammingDistance(fpB));
+
+                BitSet and = (BitSet) a.clone();
+                and.and(b);
+                assertEquals(and, fpA.and(fpB).toBitSet());
+                assertEquals(and.equals(a), fpA.compatible(fpB));
+                assertEquals(a, fpA.toBitSet());
+            }
+        }
+    }
+
+    @Test
+    public void shortCircuitOnlyReturnsValueForSubsets(){
+        Fingerprint query = Fingerprint.fromBinaryString("00100101");
+        Fingerprint superset = Fingerprint.fromBinaryString("10110111");
+        Fingerprint notSuperset = Fingerprint.fromBinaryString("10110011");
+
+        assertTrue(query.compatible(superset));
+        assertFalse(query.compatible(notSuperset));
+
+        OptionalDouble result = query.tanimotoSimilarityShortCircuit(superset);
+        assertTrue(result.isPresent());
+        assertEquals(query.tanimotoSimilarity(superset), result.getAsDouble(), 0D);
+        assertFalse(query.tanimotoSimilarityShortCircuit(notSuperset).isPresent());
+    }
+
+    @Test
+    public void emptyFingerprintsAreIdentical(){
+        Fingerprint a = new Fingerprint(new BitSet(), 64);
+        Fingerprint b = new Fingerprint(new BitSet(), 64);
+        assertEquals(1D, a.tanimotoSimilarity(b), 0D);
+        assertEquals(1D, a.tanimotoSimilarityShortCircuit(b).getAsDouble(), 0D);
+    }
+
+    @Test
+    public void byteAndIntArraysRoundTrip(){
+        Random random = new Random(42);
+        BitSet bits = randomBits(random, 1024, .25);
+        Fingerprint fp = new Fingerprint(bits, 1024);
+
+        byte[] bytes = fp.toByteArray();
+        assertEquals(128, bytes.length);
+        assertEquals(fp, new Fingerprint(bytes));
+        assertEquals(fp.hashCode(), new Fingerprint(bytes).hashCode());
+
+        int[] ints = fp.toIntArray();
+        assertEquals(32, ints.length);
+        for(int i=0; i< 1024; i++){
+            assertEquals(bits.get(i), (ints[i/32] & (1 << (i%32))) !=0);
+        }
+        assertEquals(fp, Fingerprint.fromLongArray(fp.toLongArray(), 1024));
+    }
+
+    @Test
+    public void binaryStringMostSignificantBitIsLeftmost(){
+        Fingerprint fp = Fingerprint.fromBinaryString("10010100");
+        BitSet expected = new BitSet();
+        expected.set(2);
+        expected.set(4);
+        expected.set(7);
+        assertEquals(expected, fp.toBitSet());
+        assertEquals(8, fp.getLength());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprint;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinter;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.EcfpSpecification;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.PathBasedSpecification;
+import gov.nih.ncats.molwitch.spi.StubFingerprinterImpl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class FingerprintersTest {
+
+    private static Fingerprinter getOnOtherThread(Fingerprinters.FingerprintSpecification spec) throws Exception{
+        return CompletableFuture.supplyAsync(()-> Fingerprinters.getFingerprinter(spec)).get();
+    }
+
+    @Test
+    public void equalThreadSafeSpecificationsHitTheCache(){
+        int created = StubFingerprinterImpl.getNumberOfFingerprintersCreated();
+        Fingerprinter first = Fingerprinters.getFingerprinter(new EcfpSpecification(4).setBitLength(512));
+        Fingerprinter second = Fingerprinters.getFingerprinter(new EcfpSpecification(4).setBitLength(512));
+        assertSame(first, second);
+        assertEquals(created +1, StubFingerprinterImpl.getNumberOfFingerprintersCreated());
+
+        assertNotSame(first, Fingerprinters.getFingerprinter(new EcfpSpecification(6).setBitLength(512)));
+    }
+
+    @Test
+    public void changingSpecificationAfterLookupDoesNotCorruptCache() throws Exception{
+        EcfpSpecification spec = new EcfpSpecification(4).setBitLength(128);
+        Fingerprinter small = Fingerprinters.getFingerprinter(spec);
+        spec.setBitLength(256);
+        Fingerprinter large = Fingerprinters.getFingerprinter(spec);
+        assertNotSame(small, large);
+
+        Chemical chemical = Chemical.parse("CCO");
+        assertEquals(256, large.computeFingerprint(chemical).getLength());
+        Fingerprinter cachedSmall = Fingerprinters.getFingerprinter(new EcfpSpecification(4).setBitLength(128));
+        assertSame(small, cachedSmall);
+        assertEquals(128, cachedSmall.computeFingerprint(chemical).getLength());
+    }
+
+    @Test
+    public void nonThreadSafeFingerprintersAreCachedPerThread() throws Exception{
+        PathBasedSpecification spec = new PathBasedSpecification().setLength(64).setDepth(5);
+        int created = StubFingerprinterImpl.getNumberOfFingerprintersCreated();
+        Fingerprinter first = Fingerprinters.getFingerprinter(spec);
+        assertFalse(first.isThreadSafe());
+        assertSame(first, Fingerprinters.getFingerprinter(spec));
+        assertEquals(created +1, StubFingerprinterImpl.getNumberOfFingerprintersCreated());
+        Fingerprinter other = getOnOtherThread(spec);
+        assertNotSame(first, other);
+        assertFalse(other.isThreadSafe());
+        assertEquals(created +2, StubFingerprinterImpl.getNumberOfFingerprintersCreated());
+
+        //the caller's spec can still be changed without affecting the returned instances
+        spec.setLength(128);
+        Chemical chemical = Chemical.parse("CCO");
+        assertEquals(64, first.computeFingerprint(chemical).getLength());
+        assertEquals(128, Fingerprinters.getFingerprinter(spec).computeFingerprint(chemical).getLength());
+    }
+
+    @Test
+    public void threadSafeFingerprintersAreSharedAcrossThreads() throws Exception{
+        EcfpSpecification ecfp = new EcfpSpecification(4).setBitLength(64);
+        Fingerprinter threadSafe = Fingerprinters.getFingerprinter(ecfp);
+        assertTrue(threadSafe.isThreadSafe());
+        assertSame(threadSafe, getOnOtherThread(ecfp));
+    }
+
+    private static List<Chemical> chemicals(int count) throws Exception{
+        List<Chemical> list = new ArrayList<>(count);
+        for(int i=0; i< count; i++){
+            list.add(Chemical.parse(Integer.toString(i, 36)));
+        }
+        return list;
+    }
+
+    @Test
+    public void batchFingerprintsAreInInputOrder() throws Exception{
+        List<Chemical> chemicals = chemicals(500);
+        for(Fingerprinter fingerprinter : new Fingerprinter[]{
+                Fingerprinters.getFingerprinter(new PathBasedSpecification().setLength(64)),
+                Fingerprinters.getFingerprinter(new EcfpSpecification().setBitLength(64))}){
+            List<Fingerprint> batch = fingerprinter.computeFingerprints(chemicals);
+            assertEquals(chemicals.size(), batch.size());
+            for(int i=0; i< chemicals.size(); i++){
+                assertEquals(fingerprinter.computeFingerprint(chemicals.get(i)), batch.get(i));
+            }
+            //non Collection Iterables too
+            assertEquals(batch, fingerprinter.computeFingerprints(()-> chemicals.iterator()));
+        }
+        assertEquals(Fingerprinters.getFingerprinter(new PathBasedSpecification().setLength(64)).computeFingerprints(chemicals),
+                Fingerprinters.computeFingerprints(new PathBasedSpecification().setLength(64), chemicals));
+    }
+
+    @Test
+    public void batchFingerprintsOfNonThreadSafeFingerprinterUseCallingThread() throws Exception{
+        Fingerprinter delegate = Fingerprinters.getFingerprinter(new PathBasedSpecification().setLength(64));
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        Fingerprinter notThreadSafe = c -> {
+            threads.add(Thread.currentThread());
+            return delegate.computeFingerprint(c);
+        };
+        notThreadSafe.computeFingerprints(chemicals(2000));
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    @Test
+    public void parallelStreamOfFingerprintsOfNonThreadSafeFingerprinterUsesCallingThread() throws Exception{
+        Fingerprinter delegate = Fingerprinters.getFingerprinter(new PathBasedSpecification().setLength(64));
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        Fingerprinter notThreadSafe = c -> {
+            threads.add(Thread.currentThread());
+            return delegate.computeFingerprint(c);
+        };
+        List<Chemical> chemicals = chemicals(2000);
+        List<Fingerprint> fingerprints = notThreadSafe.computeFingerprints(chemicals.parallelStream())
+                                                    .collect(Collectors.toList());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+        assertEquals(delegate.computeFingerprints(chemicals), fingerprints);
+    }
+
+    @Test
+    public void batchWithNullElementThrowsNullPointerException() throws Exception{
+        List<Chemical> chemicals = chemicals(10);
+        chemicals.set(5, null);
+        for(Fingerprinter fingerprinter : new Fingerprinter[]{
+                Fingerprinters.getFingerprinter(new PathBasedSpecification().setLength(64)),
+                Fingerprinters.getFingerprinter(new EcfpSpecification().setBitLength(64))}){
+            try{
+                fingerprinter.computeFingerprints(chemicals);
+                fail("should throw NullPointerException");
+            }catch(NullPointerException expected){
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void emptyBatchReturnsEmptyList(){
+        Fingerprinter fingerprinter = Fingerprinters.getFingerprinter(new EcfpSpecification().setBitLength(64));
+        assertTrue(fingerprinter.computeFingerprints(Arrays.<Chemical>asList()).isEmpty());
+    }
+}
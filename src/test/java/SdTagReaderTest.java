@@ -0,0 +1,94 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import gov.nih.ncats.molwitch.io.SdTagReader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SdTagReaderTest {
+
+    private static final String MOLBLOCK = "\n  molwitch\n\n  0  0  0  0  0  0            999 V2000\nM  END\n";
+
+    private static List<SdTagReader.TagRecord> readAll(String sdf, String... tags) throws IOException{
+        List<SdTagReader.TagRecord> list = new ArrayList<>();
+        try(SdTagReader reader = SdTagReader.read(new ByteArrayInputStream(sdf.getBytes(StandardCharsets.UTF_8)), Arrays.asList(tags))){
+            reader.forEachRemaining(list::add);
+        }
+        return list;
+    }
+
+    @Test
+    public void onlyRequestedTagsAreReturned() throws IOException{
+        String record1 = MOLBLOCK + "> <ID>\n1\n\n> <NAME>\nfoo\n\n> <NOTES>\nline one\r\nline two\n\n$$$$\n";
+        String record2 = MOLBLOCK + ">  <ID>  (MD-2)\n  2  \n\n$$$$\n";
+        List<SdTagReader.TagRecord> records = readAll(record1 + record2, "ID", "NOTES");
+        assertEquals(2, records.size());
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("ID", "1");
+        expected.put("NOTES", "line one\nline two");
+        assertEquals(expected, records.get(0).getTags());
+        assertEquals(Collections.singletonMap("ID", "2"), records.get(1).getTags());
+
+        assertEquals(0, records.get(0).getRecordOffset());
+        assertEquals(MOLBLOCK.length(), records.get(0).getMolblockLength());
+        assertEquals(record1.length(), records.get(0).getRecordLength());
+        assertEquals(record1.length(), records.get(1).getRecordOffset());
+        assertEquals(1, records.get(1).getRecordIndex());
+    }
+
+    @Test
+    public void recordsWithoutTagsAndUnterminatedLastRecord() throws IOException{
+        String sdf = MOLBLOCK + "$$$$\n" + MOLBLOCK + "> <ID>\n3";
+        List<SdTagReader.TagRecord> records = readAll(sdf, "ID");
+        assertEquals(2, records.size());
+        assertTrue(records.get(0).getTags().isEmpty());
+        assertEquals(Collections.singletonMap("ID", "3"), records.get(1).getTags());
+    }
+
+    @Test
+    public void whitespaceAfterLastDelimiterIsNotARecord() throws IOException{
+        for(String tail : new String[]{"\r\n\r\n", "\n\n\n", " \t\n  "}){
+            String sdf = MOLBLOCK + "> <ID>\n1\n\n$$$$\r\n" + MOLBLOCK + "> <ID>\n2\n\n$$$$" + tail;
+            List<SdTagReader.TagRecord> records = readAll(sdf, "ID");
+            assertEquals(2, records.size());
+            assertEquals(1, records.get(1).getRecordIndex());
+            assertEquals(Collections.singletonMap("ID", "2"), records.get(1).getTags());
+        }
+    }
+
+    @Test
+    public void dataItemLikeLinesInMolblockAreIgnored() throws IOException{
+        String sdf = "> <ID>\n" + MOLBLOCK + "> <ID>\n4\n\n$$$$\n";
+        List<SdTagReader.TagRecord> records = readAll(sdf, "ID");
+        assertEquals(Collections.singletonMap("ID", "4"), records.get(0).getTags());
+    }
+
+    @Test
+    public void nonAsciiNamesAndValuesAreDecodedAsUtf8() throws IOException{
+        String sdf = MOLBLOCK + "> <NAME\u00e9>\n\u03b1-caf\u00e9\u00efne\n\u00c5\n\n$$$$\n";
+        List<SdTagReader.TagRecord> records = readAll(sdf, "NAME\u00e9");
+        assertEquals(Collections.singletonMap("NAME\u00e9", "\u03b1-caf\u00e9\u00efne\n\u00c5"), records.get(0).getTags());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedFileRegionsTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private byte[] data;
+    private File file;
+
+    private void createFile(int size) throws IOException{
+        data = new byte[size];
+        new Random(12345).nextBytes(data);
+        file = tmpDir.newFile();
+        Files.write(file.toPath(), data);
+    }
+
+    @Test
+    public void readsSpanningMultipleRegions() throws IOException{
+        createFile(1000);
+        try(MappedFileRegions regions = MappedFileRegions.map(file, 64)){
+            assertEquals(1000, regions.length());
+            for(int offset : new int[]{0, 10, 63, 64, 100, 990}){
+                for(int length : new int[]{0, 1, 10, 64, 200}){
+                    if(offset + length > data.length){
+                        continue;
+                    }
+                    assertArrayEquals(Arrays.copyOfRange(data, offset, offset + length), regions.read(offset, length));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void readPastEndThrows() throws IOException{
+        createFile(100);
+        try(MappedFileRegions regions = MappedFileRegions.map(file, 64)){
+            regions.read(90, 20);
+        }
+    }
+
+    @Test
+    public void concurrentReaders() throws Exception{
+        createFile(10_000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try(MappedFileRegions regions = MappedFileRegions.map(file, 100)){
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for(int t=0; t< 8; t++){
+                int seed = t;
+                futures.add(executor.submit(()->{
+                    Random random = new Random(seed);
+                    for(int i=0; i< 1000; i++){
+                        int offset = random.nextInt(data.length);
+                        int length = random.nextInt(data.length - offset);
+                        if(!Arrays.equals(Arrays.copyOfRange(data, offset, offset + length), regions.read(offset, length))){
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for(Future<Boolean> f : futures){
+                assertTrue(f.get());
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OffsetTableTest {
+
+    @Test
+    public void randomAccessMatchesAddedValues(){
+        Random random = new Random(9876);
+        int n = 10_000;
+        long[] expected = new long[n];
+        OffsetTable table = new OffsetTable(10);
+        long value = 0;
+        for(int i=0; i< n; i++){
+            //mix of duplicates, typical record sizes and huge jumps
+            int kind = random.nextInt(20);
+            if(kind ==0){
+                value += 1L << (33 + random.nextInt(20));
+            }else if(kind > 1){
+                value += random.nextInt(8000);
+            }
+            expected[i] = value;
+            table.add(value);
+            assertEquals(value, table.last());
+        }
+        assertEquals(n, table.size());
+        for(int i=0; i< n; i++){
+            assertEquals(expected[i], table.get(i));
+        }
+    }
+
+    @Test
+    public void typicalRecordOffsetsAreCompact(){
+        Random random = new Random(1);
+        int n = 1_000_000;
+        OffsetTable table = new OffsetTable(n);
+        long value = 0;
+        for(int i=0; i< n; i++){
+            table.add(value);
+            value += 1000 + random.nextInt(4000);
+        }
+        double bytesPerValue = table.estimatedSizeInBytes() / (double) n;
+        assertTrue("bytes per value " + bytesPerValue, bytesPerValue < 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decreasingValuesAreRejected(){
+        OffsetTable table = new OffsetTable();
+        table.add(10);
+        table.add(9);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getPastEndThrows(){
+        OffsetTable table = new OffsetTable();
+        table.add(10);
+        table.get(1);
+    }
+}
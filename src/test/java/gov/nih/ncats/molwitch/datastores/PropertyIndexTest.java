@@ -0,0 +1,108 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.datastores;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.*;
+
+public class PropertyIndexTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @Test
+    public void lowCardinalityValuesKeepEveryOffset(){
+        PropertyIndex index = new PropertyIndex(Arrays.asList("ACTIVE", "ID"));
+        int n = 500_000;
+        for(long i=0; i< n; i++){
+            index.add("ACTIVE", i % 3 ==0 ? "yes" : "no", i);
+            //same value twice in one record is only indexed once
+            index.add("ACTIVE", i % 3 ==0 ? "yes" : "no", i);
+            index.add("ID", Long.toString(i), i);
+            index.add("NOT_INDEXED", "x", i);
+        }
+        assertArrayEquals(LongStream.range(0, n).filter(i-> i % 3 ==0).toArray(), index.find("ACTIVE", "yes"));
+        assertArrayEquals(LongStream.range(0, n).filter(i-> i % 3 !=0).toArray(), index.find("ACTIVE", "no"));
+        assertArrayEquals(new long[]{1234}, index.find("ID", "1234"));
+        assertArrayEquals(new long[0], index.find("ID", "missing"));
+    }
+
+    @Test
+    public void writeOnlyIncludesRequestedRecordsAndCanBeRead() throws IOException{
+        PropertyIndex index = new PropertyIndex(Arrays.asList("ACTIVE"));
+        for(long i=0; i< 100; i++){
+            index.add("ACTIVE", i % 2 ==0 ? "yes" : "no", i);
+        }
+        File sidecar = new File(tmpDir.getRoot(), "data.sdf.mwidx.props");
+        index.write(sidecar, 12345, 10);
+        //can keep adding after a write
+        index.add("ACTIVE", "yes", 100);
+        assertArrayEquals(LongStream.rangeClosed(0, 100).filter(i-> i % 2 ==0).toArray(), index.find("ACTIVE", "yes"));
+
+        PropertyIndex read = PropertyIndex.read(sidecar);
+        assertNotNull(read);
+        assertEquals(12345, read.getIndexedLength());
+        assertArrayEquals(new long[]{0, 2, 4, 6, 8}, read.find("ACTIVE", "yes"));
+        assertArrayEquals(new long[]{1, 3, 5, 7, 9}, read.find("ACTIVE", "no"));
+        read.add("ACTIVE", "no", 11);
+        assertArrayEquals(new long[]{1, 3, 5, 7, 9, 11}, read.find("ACTIVE", "no"));
+    }
+
+    @Test
+    public void concurrentWritersOfSameSidecarDoNotClash() throws Exception{
+        PropertyIndex index = new PropertyIndex(Arrays.asList("ID"));
+        for(long i=0; i< 10_000; i++){
+            index.add("ID", Long.toString(i), i);
+        }
+        File sidecar = new File(tmpDir.getRoot(), "data.sdf.mwidx.props");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try{
+            List<Future<?>> futures = new ArrayList<>();
+            for(int i=0; i< 8; i++){
+                futures.add(executor.submit(()-> {
+                    index.write(sidecar, 42, 10_000);
+                    return null;
+                }));
+            }
+            for(Future<?> f : futures){
+                f.get();
+            }
+        }finally{
+            executor.shutdown();
+        }
+        PropertyIndex read = PropertyIndex.read(sidecar);
+        assertNotNull(read);
+        assertArrayEquals(new long[]{9999}, read.find("ID", "9999"));
+        //no temp files left behind
+        assertArrayEquals(new String[]{sidecar.getName()}, tmpDir.getRoot().list());
+    }
+}
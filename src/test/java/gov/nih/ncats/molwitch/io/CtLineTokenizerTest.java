@@ -0,0 +1,93 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.io;
+
+import org.junit.Test;
+
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class CtLineTokenizerTest {
+
+    private static String padded(int value, int width){
+        StringBuilder sb = new StringBuilder();
+        CtLineTokenizer.appendPadded(sb, value, width);
+        return sb.toString();
+    }
+
+    @Test
+    public void paddingMatchesStringFormat(){
+        for(int value : new int[]{0, 1, -1, 9, 10, -10, 99, 100, 999, 1000, -999, Integer.MAX_VALUE, Integer.MIN_VALUE}){
+            assertEquals(String.format("%3d", value), padded(value, 3));
+            assertEquals(String.format("%5d", value), padded(value, 5));
+        }
+    }
+
+    @Test
+    public void tokensMatchScanner(){
+        String line = "M  CHG  3   1  -1\t 12   1 123  +2 ";
+        CtLineTokenizer tokenizer = new CtLineTokenizer().reset(line);
+        try(Scanner scanner = new Scanner(line)){
+            assertEquals(scanner.next(), nextToken(tokenizer));
+            assertEquals(scanner.next(), nextToken(tokenizer));
+            while(scanner.hasNext()){
+                assertEquals(scanner.nextInt(), tokenizer.nextInt());
+            }
+        }
+        assertFalse(hasNext(tokenizer));
+    }
+
+    private static String nextToken(CtLineTokenizer tokenizer){
+        tokenizer.next();
+        return tokenizer.token();
+    }
+
+    private static boolean hasNext(CtLineTokenizer tokenizer){
+        try{
+            tokenizer.next();
+            return true;
+        }catch(java.util.NoSuchElementException e){
+            return false;
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void nonIntTokenFails(){
+        new CtLineTokenizer().reset("1x").nextInt();
+    }
+
+    @Test
+    public void keywordMatchesRegex(){
+        Pattern sty = Pattern.compile("^\\s*M\\s+STY");
+        Pattern sgroup = Pattern.compile("^\\s*M\\s+S..");
+        for(String line : new String[]{"M  STY  1   1 SUP", " M STY", "MSTY", "M  ST", "M  SAL", "\tM\tSDS", "X  STY", "M  S", "", "M"}){
+            assertEquals(line, sty.matcher(line).find(), CtLineTokenizer.indexAfterKeyword(line, "STY") >=0);
+            assertEquals(line, sgroup.matcher(line).find(), CtLineTokenizer.indexAfterKeyword(line, "S??") >=0);
+        }
+    }
+
+    @Test
+    public void twoWordsMatchesRegex(){
+        for(String line : new String[]{"a b", "ab", "a  b", "a b c", "a\tb", "abc  def"}){
+            assertEquals(line, line.matches("\\S+\\s+\\S+$"), CtLineTokenizer.isTwoWords(line));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AtomCompositionTest {
+
+    private static boolean satisfied(String smarts, String smilesLikeTarget){
+        return AtomComposition.requiredBy(smarts).isSatisfiedBy(AtomComposition.requiredBy(smilesLikeTarget));
+    }
+
+    @Test
+    public void organicSubsetAtomsAreCounted(){
+        assertTrue(satisfied("C(=O)Cl", "CC(=O)Cl"));
+        assertFalse(satisfied("ClCCl", "CC(=O)Cl"));
+        assertFalse(satisfied("c1ccccc1Br", "c1ccccc1Cl"));
+    }
+
+    @Test
+    public void bracketAtomsWithElementAreCounted(){
+        assertFalse(satisfied("[N+](=O)[O-]", "CC(=O)O"));
+        assertTrue(satisfied("[#7]", "CCN"));
+        assertFalse(satisfied("[Se]", "CCS"));
+        assertTrue(satisfied("[13CH3;R0]", "CC"));
+    }
+
+    @Test
+    public void ambiguousAtomsHaveNoRequirements(){
+        assertTrue(satisfied("[N,O]", "CC"));
+        assertTrue(satisfied("[!C]", "CC"));
+        assertTrue(satisfied("*~a~A", "CC"));
+        assertTrue(satisfied("[R2]", "CC"));
+        assertTrue(satisfied("CN>>CO", "C"));
+    }
+
+    @Test
+    public void recursiveSmartsNestedBracketsAreSkipped(){
+        //the [O] inside the recursive SMARTS doesn't have to be in the target
+        assertTrue(satisfied("[C;$(C[OH])]", "CC"));
+        assertFalse(satisfied("[C;$(C[OH])]N", "CC"));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.spi.StubMolSearcherImplFactory;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class MolSearcherCacheTest {
+
+    private static MolSearcher getOnOtherThread(MolSearcherCache cache, String smarts) throws Exception{
+        return CompletableFuture.supplyAsync(()-> cache.get(smarts).get()).get();
+    }
+
+    private static void assertStats(MolSearcherCache cache, long hits, long misses, long evictions){
+        MolSearcherCache.Stats stats = cache.getStats();
+        assertEquals(stats.toString(), hits, stats.getHitCount());
+        assertEquals(stats.toString(), misses, stats.getMissCount());
+        assertEquals(stats.toString(), evictions, stats.getEvictionCount());
+    }
+
+    @Test
+    public void statsCountHitsAndMisses(){
+        MolSearcherCache cache = new MolSearcherCache();
+        assertTrue(Double.isNaN(cache.getStats().getHitRate()));
+        MolSearcher first = cache.get("CCO").get();
+        assertSame(first, cache.get("CCO").get());
+        assertNotSame(first, cache.get("CCN").get());
+        assertStats(cache, 1, 2, 0);
+        assertEquals(1 / 3D, cache.getStats().getHitRate(), 0D);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedQueryIsEvicted(){
+        MolSearcherCache cache = new MolSearcherCache(2);
+        MolSearcher a = cache.get("a").get();
+        cache.get("b");
+        //a is now more recently used than b
+        cache.get("a");
+        cache.get("c");
+        assertEquals(2, cache.size());
+        assertStats(cache, 1, 3, 1);
+
+        assertSame(a, cache.get("a").get());
+        cache.get("b");
+        assertStats(cache, 2, 4, 2);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertStats(cache, 2, 4, 2);
+    }
+
+    @Test
+    public void threadSafeSearchersAreSharedAcrossThreads() throws Exception{
+        MolSearcherCache cache = new MolSearcherCache();
+        int created = StubMolSearcherImplFactory.getNumberOfSearchersCreated();
+        MolSearcher searcher = cache.get("threadsafe:CCO").get();
+        assertTrue(searcher.isThreadSafe());
+        assertSame(searcher, getOnOtherThread(cache, "threadsafe:CCO"));
+        assertEquals(created +1, StubMolSearcherImplFactory.getNumberOfSearchersCreated());
+        assertStats(cache, 1, 1, 0);
+    }
+
+    @Test
+    public void recompilingForAnotherThreadIsAMiss() throws Exception{
+        MolSearcherCache cache = new MolSearcherCache();
+        MolSearcher searcher = cache.get("CCO").get();
+        assertFalse(searcher.isThreadSafe());
+        CompletableFuture<Void> other = CompletableFuture.runAsync(()->{
+            MolSearcher copy = cache.get("CCO").get();
+            assertNotSame(searcher, copy);
+            //the copy is now cached for this thread
+            assertSame(copy, cache.get("CCO").get());
+        });
+        other.get();
+        assertSame(searcher, cache.get("CCO").get());
+        assertEquals(1, cache.size());
+        assertStats(cache, 2, 2, 0);
+        assertEquals(0.5D, cache.getStats().getHitRate(), 0D);
+    }
+
+    @Test
+    public void chemicalQueriesAreKeyedByIdentity() throws Exception{
+        MolSearcherCache cache = new MolSearcherCache();
+        Chemical query = Chemical.parse("CCO");
+        MolSearcher searcher = cache.get(query).get();
+        assertSame(searcher, cache.get(query).get());
+        assertNotSame(searcher, cache.get(Chemical.parse("CCO")).get());
+        assertStats(cache, 1, 2, 0);
+    }
+}
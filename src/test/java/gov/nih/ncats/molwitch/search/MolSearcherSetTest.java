@@ -0,0 +1,98 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * The stub searchers match targets whose text contains the pattern text
+ * and stub targets have no atoms, so the patterns here avoid letters that
+ * {@link AtomComposition} would count as required atoms.
+ */
+public class MolSearcherSetTest {
+
+    private static Map<String, String> patterns(){
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("wizard", "wiz");
+        map.put("missing", "zeta");
+        map.put("article", "the");
+        map.put("adjective", "lazy");
+        map.put("also missing", "quartz");
+        return map;
+    }
+
+    @Test
+    public void sameMatchesInInsertionOrderAsSeparateSearchers() throws IOException{
+        MolSearcherSet set = MolSearcherSet.fromSmarts(patterns());
+        assertEquals(new ArrayList<>(patterns().keySet()), set.getPatternIds());
+        for(String text : new String[]{"the lazy wizard", "zeta the", "nothing here", "quartz wizard zeta"}){
+            Chemical target = Chemical.parse(text);
+            List<String> expectedIds = new ArrayList<>();
+            Map<String, int[]> expectedPositions = new LinkedHashMap<>();
+            for(Map.Entry<String, String> entry : patterns().entrySet()){
+                Optional<int[]> result = MolSearcherFactory.create(entry.getValue()).get().search(target);
+                if(result.isPresent()){
+                    expectedIds.add(entry.getKey());
+                    expectedPositions.put(entry.getKey(), result.get());
+                }
+            }
+            assertEquals(text, expectedIds, new ArrayList<>(set.findMatches(target)));
+
+            Map<String, int[]> positions = set.findMatchesWithPositions(target);
+            assertEquals(text, expectedIds, new ArrayList<>(positions.keySet()));
+            for(String id : expectedIds){
+                assertArrayEquals(text + " " + id, expectedPositions.get(id), positions.get(id));
+            }
+            assertEquals(text, !expectedIds.isEmpty(), set.matchesAny(target));
+        }
+    }
+
+    @Test
+    public void matchesAnyStopsAtFirstMatch() throws IOException{
+        MolSearcherSet set = MolSearcherSet.builder()
+                                    .add("first", "the")
+                                    .add("second", "fail:the")
+                                    .build();
+        Chemical target = Chemical.parse("the lazy wizard");
+        assertTrue(set.matchesAny(target));
+        try{
+            set.findMatches(target);
+            fail("second searcher should have been run and failed");
+        }catch(IllegalStateException expected){
+            //expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateIdThrows(){
+        MolSearcherSet.builder()
+                .add("id", "the")
+                .add("id", "lazy");
+    }
+}
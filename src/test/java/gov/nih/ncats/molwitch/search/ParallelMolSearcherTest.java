@@ -0,0 +1,291 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import gov.nih.ncats.common.iter.CloseableIterator;
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.datastores.ChemicalDataStore;
+import gov.nih.ncats.molwitch.datastores.ShardedChemicalDataStore;
+import gov.nih.ncats.molwitch.spi.StubChemicalImplFactory;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ParallelMolSearcherTest {
+
+    /**
+     * In memory store that records how it is accessed.
+     */
+    private static final class ListDataStore implements ChemicalDataStore{
+        private final List<String> records;
+        private final boolean randomAccess;
+        private final AtomicLong randomGets = new AtomicLong();
+        private final AtomicInteger openIterators = new AtomicInteger();
+        private final AtomicInteger iteratorsCreated = new AtomicInteger();
+
+        ListDataStore(int numberOfRecords, boolean randomAccess){
+            records = new ArrayList<>(numberOfRecords);
+            for(int i=0; i< numberOfRecords; i++){
+                records.add("record " + i + (i % 10 ==3 ? " benzene" : "") + "\n$$$$\n");
+            }
+            this.randomAccess = randomAccess;
+        }
+
+        @Override
+        public long getSize() {
+            return records.size();
+        }
+
+        @Override
+        public String getRaw(long offset) {
+            randomGets.incrementAndGet();
+            return records.get((int) offset);
+        }
+
+        @Override
+        public Chemical get(long offset) {
+            try {
+                return Chemical.parse(getRaw(offset));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasEfficientRandomAccess() {
+            return randomAccess;
+        }
+
+        @Override
+        public CloseableIterator<String> getRawIterator() {
+            iteratorsCreated.incrementAndGet();
+            openIterators.incrementAndGet();
+            Iterator<String> iter = records.iterator();
+            return new CloseableIterator<String>() {
+                private boolean closed;
+                @Override
+                public boolean hasNext() {
+                    return !closed && iter.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return iter.next();
+                }
+
+                @Override
+                public void close() {
+                    if(!closed){
+                        closed = true;
+                        openIterators.decrementAndGet();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public CloseableIterator<Chemical> getIterator() {
+            return CloseableIterator.map(getRawIterator(), s-> {
+                try {
+                    return Chemical.parse(s);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static Set<Long> search(ParallelMolSearcher searcher, String query){
+        Set<Long> ids = new TreeSet<>();
+        try(ParallelMolSearcher.SearchHitIterator iter = searcher.search(query)){
+            while(iter.hasNext()){
+                assertTrue(ids.add(iter.next().getId()));
+            }
+        }
+        return ids;
+    }
+
+    private static Set<Long> expectedBenzeneHits(int numberOfRecords){
+        Set<Long> expected = new TreeSet<>();
+        for(long i=3; i< numberOfRecords; i+=10){
+            expected.add(i);
+        }
+        return expected;
+    }
+
+    private static void awaitIteratorsClosed(ListDataStore store) throws InterruptedException{
+        long end = System.currentTimeMillis() + 5_000;
+        while(store.openIterators.get() !=0 && System.currentTimeMillis() < end){
+            Thread.sleep(10);
+        }
+        assertEquals(0, store.openIterators.get());
+    }
+
+    @Test
+    public void randomAccessStoreIsSearchedByOffset(){
+        ListDataStore store = new ListDataStore(1000, true);
+        ParallelMolSearcher searcher = ParallelMolSearcher.builder(store).parallelism(4).chunkSize(16).build();
+        assertEquals(expectedBenzeneHits(1000), search(searcher, "benzene"));
+        assertEquals(1000, store.randomGets.get());
+        assertEquals(0, store.iteratorsCreated.get());
+    }
+
+    @Test
+    public void shardedStoreIsSearchedLikeItsShards(){
+        for(boolean randomAccess : new boolean[]{true, false}) {
+            List<File> shardFiles = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                shardFiles.add(new File("shard" + i + ".sdf"));
+            }
+            Map<File, ListDataStore> shards = new ConcurrentHashMap<>();
+            try (ShardedChemicalDataStore store = ShardedChemicalDataStore.builder(shardFiles)
+                                                    .maxOpenShards(2)
+                                                    .shardOpener(f -> shards.computeIfAbsent(f, k -> new ListDataStore(250, randomAccess)))
+                                                    .build()) {
+                assertEquals(randomAccess, store.hasEfficientRandomAccess());
+                ParallelMolSearcher searcher = ParallelMolSearcher.builder(store).parallelism(4).chunkSize(16).build();
+                //every shard has 250 records so the global offsets of the hits line up with the local ones
+                assertEquals(expectedBenzeneHits(1000), search(searcher, "benzene"));
+                long randomGets = 0;
+                int iteratorsCreated = 0;
+                for (ListDataStore shard : shards.values()) {
+                    randomGets += shard.randomGets.get();
+                    iteratorsCreated += shard.iteratorsCreated.get();
+                }
+                assertEquals(randomAccess ? 1000 : 0, randomGets);
+                assertEquals(randomAccess ? 0 : 4, iteratorsCreated);
+            }
+        }
+    }
+
+    @Test
+    public void sequentialStoreIsReadOnceInOrder() throws InterruptedException{
+        ListDataStore store = new ListDataStore(1000, false);
+        ParallelMolSearcher searcher = ParallelMolSearcher.builder(store).parallelism(4).chunkSize(16).build();
+        assertEquals(expectedBenzeneHits(1000), search(searcher, "benzene"));
+        assertEquals(0, store.randomGets.get());
+        assertEquals(1, store.iteratorsCreated.get());
+        awaitIteratorsClosed(store);
+    }
+
+    @Test
+    public void queryIsCopiedOnCallingThread() throws IOException{
+        ListDataStore store = new ListDataStore(1000, true);
+        ParallelMolSearcher searcher = ParallelMolSearcher.builder(store).parallelism(4).chunkSize(16).build();
+        Chemical query = Chemical.parse("benzene");
+        StubChemicalImplFactory.getCopyingThreads().clear();
+        Set<Long> ids = new TreeSet<>();
+        try(ParallelMolSearcher.SearchHitIterator iter = searcher.search(query)){
+            while(iter.hasNext()){
+                ids.add(iter.next().getId());
+            }
+        }
+        assertEquals(expectedBenzeneHits(1000), ids);
+        assertEquals(Collections.singleton(Thread.currentThread()), StubChemicalImplFactory.getCopyingThreads());
+    }
+
+    @Test
+    public void stopsAtMaxHits(){
+        for(boolean randomAccess : new boolean[]{true, false}) {
+            ListDataStore store = new ListDataStore(1000, randomAccess);
+            ParallelMolSearcher searcher = ParallelMolSearcher.builder(store).parallelism(3).chunkSize(8).maxHits(7).build();
+            try (ParallelMolSearcher.SearchHitIterator iter = searcher.search("benzene")) {
+                int count = 0;
+                while (iter.hasNext()) {
+                    assertTrue(expectedBenzeneHits(1000).contains(iter.next().getId()));
+                    count++;
+                }
+                assertEquals(7, count);
+                assertTrue(iter.isMaxHitsReached());
+                assertFalse(iter.isTimedOut());
+            }
+        }
+    }
+
+    @Test
+    public void stopsAtTimeout() throws InterruptedException{
+        ListDataStore store = new ListDataStore(100_000, false);
+        ParallelMolSearcher searcher = ParallelMolSearcher.builder(store).parallelism(2).chunkSize(4)
+                                                .timeout(200, TimeUnit.MILLISECONDS).build();
+        long start = System.nanoTime();
+        try (ParallelMolSearcher.SearchHitIterator iter = searcher.search("slow:benzene")) {
+            //the hits found before the timeout are still returned to a slow reader
+            Thread.sleep(400);
+            int count = 0;
+            while (iter.hasNext()) {
+                iter.next();
+                count++;
+            }
+            assertTrue(iter.isTimedOut());
+            assertFalse(iter.isMaxHitsReached());
+            assertTrue(count > 0);
+            assertTrue(count < 10_000);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    public void closeCancelsSearchAndClosesIterator() throws InterruptedException{
+        ListDataStore store = new ListDataStore(100_000, false);
+        ParallelMolSearcher searcher = ParallelMolSearcher.builder(store).parallelism(2).chunkSize(4).build();
+        try (ParallelMolSearcher.SearchHitIterator iter = searcher.search("slow:benzene")) {
+            assertTrue(iter.hasNext());
+            iter.next();
+            iter.close();
+            assertFalse(iter.hasNext());
+        }
+        awaitIteratorsClosed(store);
+    }
+
+    @Test
+    public void searcherErrorIsThrownToCaller() throws InterruptedException{
+        for(boolean randomAccess : new boolean[]{true, false}) {
+            ListDataStore store = new ListDataStore(1000, randomAccess);
+            ParallelMolSearcher searcher = ParallelMolSearcher.builder(store).parallelism(3).chunkSize(8).build();
+            try (ParallelMolSearcher.SearchHitIterator iter = searcher.search("fail:benzene")) {
+                while (iter.hasNext()) {
+                    iter.next();
+                }
+                fail("should throw searcher error");
+            } catch (IllegalStateException expected) {
+                assertEquals("search failed for benzene", expected.getMessage());
+            }
+            awaitIteratorsClosed(store);
+        }
+    }
+}
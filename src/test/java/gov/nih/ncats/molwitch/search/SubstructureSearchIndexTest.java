@@ -0,0 +1,105 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.search;
+
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.datastores.ChemicalDataStore;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinter;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.PathBasedSpecification;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class SubstructureSearchIndexTest {
+
+    private static final String[] WORDS = {"benzene", "pyridine", "azulene", "quinoxaline", "methane"};
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private ChemicalDataStore createStore(int numberOfRecords) throws IOException{
+        StringBuilder builder = new StringBuilder();
+        for(int i=0; i< numberOfRecords; i++){
+            builder.append(WORDS[i % WORDS.length]).append(' ').append(i).append("\n$$$$\n");
+        }
+        File f = tmpDir.newFile("data.sdf");
+        Files.write(f.toPath(), builder.toString().getBytes(StandardCharsets.UTF_8));
+        return ChemicalDataStore.forFile(f);
+    }
+
+    /**
+     * Run the searcher on every record without screening.
+     */
+    private static List<SearchHit> searchAll(ChemicalDataStore store, Chemical query){
+        MolSearcher searcher = MolSearcherFactory.create(query).get();
+        List<SearchHit> hits = new ArrayList<>();
+        for(long i=0; i< store.getSize(); i++){
+            Optional<int[]> result = searcher.search(store.get(i));
+            if(result.isPresent()){
+                hits.add(new SearchHit(i, result.get()));
+            }
+        }
+        return hits;
+    }
+
+    @Test
+    public void screenNeverDropsTrueHitsAndIdsAreOffsets() throws IOException{
+        Fingerprinter fingerprinter = Fingerprinters.getFingerprinter(new PathBasedSpecification().setLength(64));
+        try(ChemicalDataStore store = createStore(200)){
+            SubstructureSearchIndex index = SubstructureSearchIndex.create(store, fingerprinter);
+            for(String text : new String[]{"benzene", "ine", "zul", "7", "methane 15", "xyz"}){
+                Chemical query = Chemical.parse(text);
+                List<SearchHit> expected = searchAll(store, query);
+                long[] candidates = index.screen(query);
+                for(SearchHit hit : expected){
+                    assertTrue(text + " screen dropped " + hit.getId(), Arrays.binarySearch(candidates, hit.getId()) >=0);
+                }
+                List<SearchHit> actual = index.search(query);
+                assertEquals(text, expected, actual);
+                for(SearchHit hit : actual){
+                    assertTrue(store.getRaw(hit.getId()).contains(text));
+                }
+            }
+            //the screen does remove records that can't match
+            assertTrue(index.screen(Chemical.parse("quinoxaline")).length < store.getSize());
+        }
+    }
+
+    @Test
+    public void emptyStoreHasNoHits() throws IOException{
+        Fingerprinter fingerprinter = Fingerprinters.getFingerprinter(new PathBasedSpecification().setLength(64));
+        try(ChemicalDataStore store = createStore(0)){
+            SubstructureSearchIndex index = SubstructureSearchIndex.create(store, fingerprinter);
+            assertEquals(0, index.screen(Chemical.parse("benzene")).length);
+            assertTrue(index.search(Chemical.parse("benzene")).isEmpty());
+        }
+    }
+}
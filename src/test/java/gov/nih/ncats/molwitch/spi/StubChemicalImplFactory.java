@@ -0,0 +1,181 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.spi;
+
+import gov.nih.ncats.common.io.InputStreamSupplier;
+import gov.nih.ncats.molwitch.Chemical;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link ChemicalImplFactory} for tests that doesn't parse anything;
+ * every {@link ChemicalImpl} it creates has no atoms and just remembers the text it was created from
+ * so test searchers and fingerprinters can work on the text.
+ */
+public class StubChemicalImplFactory implements ChemicalImplFactory {
+
+    private static final Set<Thread> COPYING_THREADS = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Get the threads that have copied a stub Chemical so far.
+     * @return a live view of the threads; the caller may clear it.
+     */
+    public static Set<Thread> getCopyingThreads(){
+        return COPYING_THREADS;
+    }
+
+    /**
+     * Get the text the given Chemical was created from.
+     * @param chemical a Chemical created by this factory.
+     * @return the text.
+     * @throws IllegalArgumentException if the Chemical wasn't created by this factory.
+     */
+    public static String textOf(Chemical chemical){
+        ChemicalImpl impl = chemical.getImpl();
+        if(!Proxy.isProxyClass(impl.getClass()) || !(Proxy.getInvocationHandler(impl) instanceof TextHandler)){
+            throw new IllegalArgumentException("not a stub chemical");
+        }
+        return ((TextHandler) Proxy.getInvocationHandler(impl)).text;
+    }
+
+    private static final class TextHandler implements InvocationHandler{
+        private final String text;
+
+        TextHandler(String text){
+            this.text = text;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch(method.getName()){
+                case "getSource": return null;
+                case "getAtomCount": return 0;
+                case "deepCopy":
+                    COPYING_THREADS.add(Thread.currentThread());
+                    return stub(text);
+                case "toString": return text;
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+
+    private static ChemicalImpl stub(String text){
+        return (ChemicalImpl) Proxy.newProxyInstance(StubChemicalImplFactory.class.getClassLoader(),
+                new Class<?>[]{ChemicalImpl.class}, new TextHandler(text));
+    }
+
+    @Override
+    public ChemicalImpl create(String unknownFormattedInput) throws IOException {
+        return stub(unknownFormattedInput);
+    }
+
+    @Override
+    public ChemicalImpl createFromSmiles(String smiles) throws IOException {
+        return stub(smiles);
+    }
+
+    @Override
+    public ChemicalImpl createFromString(String format, String input) throws IOException {
+        return stub(input);
+    }
+
+    @Override
+    public ChemicalImpl createFromSmarts(String smarts) throws IOException {
+        return stub(smarts);
+    }
+
+    @Override
+    public ChemicalImpl createNewEmptyChemical() {
+        return stub("");
+    }
+
+    @Override
+    public boolean supports(String format) {
+        return false;
+    }
+
+    @Override
+    public boolean isDefault() {
+        return false;
+    }
+
+    @Override
+    public boolean isFormatAgnostic() {
+        return true;
+    }
+
+    @Override
+    public ChemicalImplReader create(byte[] bytes, int start, int length) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChemicalImplReader create(String format, byte[] bytes, int start, int length) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChemicalImplReader create(String format, String input) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChemicalImplReader create(File file) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChemicalImplReader create(String format, InputStream in) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChemicalImplReader create(String format, File file) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChemicalImplReader create(String format, InputStreamSupplier in) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChemicalImplReader create(InputStreamSupplier in) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChemicalImplReader create(InputStream in) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChemicalImplReader create(InputStream in, String encoding) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+}
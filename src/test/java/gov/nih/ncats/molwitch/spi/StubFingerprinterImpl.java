@@ -0,0 +1,99 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.spi;
+
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprint;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinter;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.AbstractCfpOptions;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.FingerprintSpecification;
+import gov.nih.ncats.molwitch.fingerprint.Fingerprinters.PathBasedSpecification;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link FingerprinterImpl} for tests whose fingerprints set one bit per character
+ * of the {@link StubChemicalImplFactory} text.  Path based fingerprinters are not threadsafe
+ * and ECFP fingerprinters are.
+ */
+public class StubFingerprinterImpl implements FingerprinterImpl {
+
+    private static final AtomicInteger CREATED = new AtomicInteger();
+
+    /**
+     * Get the number of fingerprinters created so far by any instance of this class.
+     * @return the number of fingerprinters.
+     */
+    public static int getNumberOfFingerprintersCreated(){
+        return CREATED.get();
+    }
+
+    @Override
+    public boolean supports(FingerprintSpecification spec) {
+        return getSupportedAlgorithmNames().contains(spec.name());
+    }
+
+    @Override
+    public boolean isDefault() {
+        return false;
+    }
+
+    @Override
+    public Set<String> getSupportedAlgorithmNames() {
+        return new HashSet<>(Arrays.asList(FingerprintSpecification.PATH_BASED.name(), FingerprintSpecification.ECFP.name()));
+    }
+
+    @Override
+    public Fingerprinter createFingerPrinterFor(FingerprintSpecification spec) {
+        CREATED.incrementAndGet();
+        if(spec instanceof PathBasedSpecification){
+            return new StubFingerprinter(((PathBasedSpecification) spec).getLength(), false);
+        }
+        return new StubFingerprinter(((AbstractCfpOptions<?>) spec).getBitLength(), true);
+    }
+
+    private static final class StubFingerprinter implements Fingerprinter{
+        private final int length;
+        private final boolean threadSafe;
+
+        StubFingerprinter(int length, boolean threadSafe){
+            this.length = length;
+            this.threadSafe = threadSafe;
+        }
+
+        @Override
+        public Fingerprint computeFingerprint(Chemical chemical) {
+            String text = StubChemicalImplFactory.textOf(chemical);
+            BitSet bits = new BitSet(length);
+            for(int i=0; i< text.length(); i++){
+                bits.set(text.charAt(i) % length);
+            }
+            return new Fingerprint(bits, length);
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return threadSafe;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * NCATS-MOLWITCH
+ *
+ * Copyright 2025 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.spi;
+
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.search.MolSearcher;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link MolSearcherImplFactory} for tests whose searchers
+ * match any {@link StubChemicalImplFactory} target whose text contains the query text.
+ * The query may start with any of these prefixes to change how the searcher behaves:
+ * <ul>
+ *     <li>{@code slow:} sleep a few milliseconds before each search</li>
+ *     <li>{@code fail:} throw an IllegalStateException instead of returning a hit</li>
+ *     <li>{@code threadsafe:} the searcher reports it is threadsafe</li>
+ * </ul>
+ */
+public class StubMolSearcherImplFactory implements MolSearcherImplFactory {
+
+    private static final AtomicInteger CREATED = new AtomicInteger();
+
+    /**
+     * Get the number of searchers created so far by any instance of this factory.
+     * @return the number of searchers.
+     */
+    public static int getNumberOfSearchersCreated(){
+        return CREATED.get();
+    }
+
+    @Override
+    public MolSearcher create(Chemical query) {
+        return create(StubChemicalImplFactory.textOf(query));
+    }
+
+    @Override
+    public MolSearcher create(String smartsPattern) {
+        CREATED.incrementAndGet();
+        return new StubSearcher(smartsPattern);
+    }
+
+    private static final class StubSearcher implements MolSearcher{
+        private final boolean slow;
+        private final boolean fail;
+        private final boolean threadSafe;
+        private final String text;
+
+        StubSearcher(String query){
+            String text = query;
+            boolean slow = false, fail = false, threadSafe = false;
+            while(true){
+                if(text.startsWith("slow:")){
+                    slow = true;
+                }else if(text.startsWith("fail:")){
+                    fail = true;
+                }else if(text.startsWith("threadsafe:")){
+                    threadSafe = true;
+                }else{
+                    break;
+                }
+                text = text.substring(text.indexOf(':') +1);
+            }
+            this.slow = slow;
+            this.fail = fail;
+            this.threadSafe = threadSafe;
+            this.text = text;
+        }
+
+        @Override
+        public Optional<int[]> search(Chemical target) {
+            if(slow){
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            int index = StubChemicalImplFactory.textOf(target).indexOf(text);
+            if(index <0){
+                return Optional.empty();
+            }
+            if(fail){
+                throw new IllegalStateException("search failed for " + text);
+            }
+            return Optional.of(new int[]{index});
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return threadSafe;
+        }
+    }
+}